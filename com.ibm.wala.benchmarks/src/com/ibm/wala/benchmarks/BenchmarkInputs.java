@@ -0,0 +1,167 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.ipa.callgraph.AnalysisCache;
+import com.ibm.wala.ipa.callgraph.AnalysisOptions;
+import com.ibm.wala.ipa.callgraph.AnalysisScope;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.callgraph.Entrypoint;
+import com.ibm.wala.ipa.callgraph.impl.DefaultEntrypoint;
+import com.ibm.wala.ipa.callgraph.impl.Util;
+import com.ibm.wala.ipa.cha.IClassHierarchy;
+import com.ibm.wala.types.ClassLoaderReference;
+import com.ibm.wala.types.TypeReference;
+import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.config.AnalysisScopeReader;
+import com.ibm.wala.util.io.FileProvider;
+
+/**
+ * The inputs shared by the benchmarks.
+ *
+ * The scope is read from the file named by the system property {@value #SCOPE_PROPERTY} if it is set, and is the primordial scope
+ * otherwise. Benchmarks pick the classes they work on by name from {@link #CLASSES}, or from the application loader when a scope
+ * file is given, so that runs on the same scope always see the same input.
+ */
+final class BenchmarkInputs {
+
+  /**
+   * system property naming a scope file to analyze instead of the primordial scope
+   */
+  static final String SCOPE_PROPERTY = "wala.benchmarks.scope";
+
+  /**
+   * primordial classes the benchmarks work on when no scope file is given
+   */
+  static final String[] CLASSES = { "Ljava/lang/Math", "Ljava/util/BitSet", "Ljava/lang/String", "Ljava/util/HashMap",
+      "Ljava/util/TreeMap", "Ljava/util/regex/Pattern" };
+
+  /**
+   * classes whose public static methods are the call graph entrypoints when no scope file is given. These keep call graph
+   * construction down to a few seconds, and tabulation and slicing over the result to less than a minute.
+   */
+  static final String[] ENTRYPOINT_CLASSES = { "Ljava/lang/Math", "Ljava/util/BitSet" };
+
+  /**
+   * class hierarchy exclusions, a resource of this module; the same as the regression tests use
+   */
+  static final String EXCLUSIONS = "BenchmarkExclusions.txt";
+
+  /**
+   * fixed seed for benchmarks that need random input
+   */
+  static final long SEED = 0x57414C41L;
+
+  private BenchmarkInputs() {
+  }
+
+  static AnalysisScope makeScope() throws IOException {
+    String scopeFile = System.getProperty(SCOPE_PROPERTY);
+    if (scopeFile == null) {
+      return AnalysisScopeReader.makePrimordialScope((new FileProvider()).getFile(EXCLUSIONS));
+    } else {
+      return AnalysisScopeReader.readJavaScope(scopeFile, (new FileProvider()).getFile(EXCLUSIONS),
+          BenchmarkInputs.class.getClassLoader());
+    }
+  }
+
+  /**
+   * @return the classes to work on: those of the application loader if the scope has any, the {@link #CLASSES} otherwise
+   */
+  static List<IClass> getClasses(IClassHierarchy cha) {
+    List<IClass> result = new ArrayList<IClass>();
+    if (System.getProperty(SCOPE_PROPERTY) != null) {
+      for (Iterator<IClass> it = cha.getLoader(ClassLoaderReference.Application).iterateAllClasses(); it.hasNext();) {
+        result.add(it.next());
+      }
+      // the loader does not promise any particular order
+      Collections.sort(result, new Comparator<IClass>() {
+        @Override
+        public int compare(IClass a, IClass b) {
+          return a.getName().toString().compareTo(b.getName().toString());
+        }
+      });
+    }
+    if (result.isEmpty()) {
+      for (String name : CLASSES) {
+        result.add(lookup(cha, name));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return the concrete methods declared by the classes to work on
+   */
+  static List<IMethod> getMethods(IClassHierarchy cha) {
+    List<IMethod> result = new ArrayList<IMethod>();
+    for (IClass klass : getClasses(cha)) {
+      for (IMethod m : klass.getDeclaredMethods()) {
+        if (!m.isAbstract() && !m.isNative()) {
+          result.add(m);
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return the main methods of the application loader if there are any, the public static methods of the
+   *         {@link #ENTRYPOINT_CLASSES} otherwise
+   */
+  static Iterable<Entrypoint> makeEntrypoints(AnalysisScope scope, IClassHierarchy cha) {
+    List<Entrypoint> result = new ArrayList<Entrypoint>();
+    if (System.getProperty(SCOPE_PROPERTY) != null) {
+      for (Entrypoint e : Util.makeMainEntrypoints(scope, cha)) {
+        result.add(e);
+      }
+    }
+    if (result.isEmpty()) {
+      for (String name : ENTRYPOINT_CLASSES) {
+        for (IMethod m : lookup(cha, name).getDeclaredMethods()) {
+          if (m.isStatic() && m.isPublic() && !m.isNative()) {
+            result.add(new DefaultEntrypoint(m, cha));
+          }
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return options for a call graph from the {@link #makeEntrypoints(AnalysisScope, IClassHierarchy) entrypoints}
+   */
+  static AnalysisOptions makeOptions(AnalysisScope scope, IClassHierarchy cha) {
+    return new AnalysisOptions(scope, makeEntrypoints(scope, cha));
+  }
+
+  static CallGraph makeZeroCFACallGraph(AnalysisScope scope, IClassHierarchy cha) throws IllegalArgumentException, CancelException {
+    AnalysisOptions options = makeOptions(scope, cha);
+    return Util.makeZeroCFABuilder(options, new AnalysisCache(), cha, scope).makeCallGraph(options, null);
+  }
+
+  private static IClass lookup(IClassHierarchy cha, String name) {
+    IClass klass = cha.lookupClass(TypeReference.findOrCreate(ClassLoaderReference.Primordial, name));
+    if (klass == null) {
+      throw new IllegalStateException("class not in scope: " + name);
+    }
+    return klass;
+  }
+}
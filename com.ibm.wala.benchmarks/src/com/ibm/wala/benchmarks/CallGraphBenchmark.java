@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ibm.wala.ipa.callgraph.AnalysisCache;
+import com.ibm.wala.ipa.callgraph.AnalysisOptions;
+import com.ibm.wala.ipa.callgraph.AnalysisScope;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.callgraph.CallGraphBuilder;
+import com.ibm.wala.ipa.callgraph.impl.Util;
+import com.ibm.wala.ipa.callgraph.propagation.PropagationSystem;
+import com.ibm.wala.ipa.cha.ClassHierarchy;
+import com.ibm.wala.util.CancelException;
+
+/**
+ * Time to build a call graph and solve its {@link PropagationSystem}, with 0-CFA and 0-1-CFA, and with one or more solver threads.
+ *
+ * Each invocation starts from a fresh {@link AnalysisCache}, so IR construction is measured along with the solver.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 3, jvmArgs = { "-Xmx4g" })
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class CallGraphBenchmark {
+
+  @Param({ "0-CFA", "0-1-CFA" })
+  public String policy;
+
+  @Param({ "1", "4" })
+  public int threads;
+
+  private AnalysisScope scope;
+
+  private ClassHierarchy cha;
+
+  private AnalysisOptions options;
+
+  @Setup
+  public void setUp() throws Exception {
+    scope = BenchmarkInputs.makeScope();
+    cha = ClassHierarchy.make(scope);
+    options = BenchmarkInputs.makeOptions(scope, cha);
+    options.setNumberOfSolverThreads(threads);
+  }
+
+  @Benchmark
+  public CallGraph makeCallGraph() throws IllegalArgumentException, CancelException {
+    CallGraphBuilder builder;
+    if (policy.equals("0-CFA")) {
+      builder = Util.makeZeroCFABuilder(options, new AnalysisCache(), cha, scope);
+    } else if (policy.equals("0-1-CFA")) {
+      builder = Util.makeZeroOneCFABuilder(options, new AnalysisCache(), cha, scope);
+    } else {
+      throw new IllegalArgumentException("unknown policy " + policy);
+    }
+    return builder.makeCallGraph(options, null);
+  }
+}
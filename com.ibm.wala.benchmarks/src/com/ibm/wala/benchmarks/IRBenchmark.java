@@ -0,0 +1,81 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.ipa.callgraph.AnalysisOptions;
+import com.ibm.wala.ipa.callgraph.impl.Everywhere;
+import com.ibm.wala.ipa.cha.ClassHierarchy;
+import com.ibm.wala.ssa.CompactIR;
+import com.ibm.wala.ssa.DefaultIRFactory;
+import com.ibm.wala.ssa.IR;
+import com.ibm.wala.ssa.SSAOptions;
+
+/**
+ * Time to build the IRs of the methods of a fixed set of classes from bytecode, which covers the Shrike CFG, {@code SSABuilder}
+ * and the SSA conversion, and for comparison, to decode them from their {@link CompactIR} encoding.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 3, jvmArgs = { "-Xmx2g" })
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+public class IRBenchmark {
+
+  private final SSAOptions options = new AnalysisOptions().getSSAOptions();
+
+  private final DefaultIRFactory factory = new DefaultIRFactory();
+
+  private List<IMethod> methods;
+
+  private byte[][] encoded;
+
+  @Setup
+  public void setUp() throws Exception {
+    methods = BenchmarkInputs.getMethods(ClassHierarchy.make(BenchmarkInputs.makeScope()));
+    encoded = new byte[methods.size()][];
+    for (int i = 0; i < encoded.length; i++) {
+      encoded[i] = CompactIR.encode(factory.makeIR(methods.get(i), Everywhere.EVERYWHERE, options));
+    }
+  }
+
+  @Benchmark
+  public void makeIR(Blackhole bh) {
+    for (IMethod m : methods) {
+      bh.consume(factory.makeIR(m, Everywhere.EVERYWHERE, options));
+    }
+  }
+
+  @Benchmark
+  public void decodeIR(Blackhole bh) {
+    for (int i = 0; i < encoded.length; i++) {
+      IR ir = encoded[i] == null ? null : CompactIR.decode(methods.get(i), options, ByteBuffer.wrap(encoded[i]));
+      bh.consume(ir);
+    }
+  }
+}
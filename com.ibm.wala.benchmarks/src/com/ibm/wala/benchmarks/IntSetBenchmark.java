@@ -0,0 +1,159 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ibm.wala.util.intset.BimodalMutableIntSetFactory;
+import com.ibm.wala.util.intset.BitVectorIntSetFactory;
+import com.ibm.wala.util.intset.IntIterator;
+import com.ibm.wala.util.intset.MutableIntSet;
+import com.ibm.wala.util.intset.MutableIntSetFactory;
+import com.ibm.wala.util.intset.MutableSharedBitVectorIntSetFactory;
+import com.ibm.wala.util.intset.MutableSparseIntSetFactory;
+import com.ibm.wala.util.intset.RoaringMutableIntSetFactory;
+import com.ibm.wala.util.intset.SemiSparseMutableIntSetFactory;
+
+/**
+ * Throughput of the basic operations of the {@link MutableIntSet} implementations, on sets of pseudo-random elements drawn from a
+ * fixed seed, so that every run sees the same sets.
+ * 
+ * The sets are either dense, over a universe of 2^16, or spread out over 2^24 as instance keys are under allocation-site heap
+ * models. Run with {@code -prof gc} to compare footprints: the normalized allocation rate of {@link #add()} is the size of one set.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 3)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+public class IntSetBenchmark {
+
+  @Param({ "Bimodal", "BitVector", "MutableSharedBitVector", "MutableSparse", "Roaring", "SemiSparse" })
+  public String implementation;
+
+  /**
+   * number of elements drawn for each set; there may be duplicates
+   */
+  @Param({ "64", "4096" })
+  public int size;
+
+  /**
+   * the elements are drawn from [0, universe)
+   */
+  @Param({ "65536", "16777216" })
+  public int universe;
+
+  private MutableIntSetFactory<?> factory;
+
+  private int[] elements;
+
+  private int[] queries;
+
+  private MutableIntSet a;
+
+  private MutableIntSet b;
+
+  @Setup
+  public void setUp() {
+    factory = makeFactory(implementation);
+    Random r = new Random(BenchmarkInputs.SEED);
+    elements = new int[size];
+    queries = new int[size];
+    a = factory.make();
+    b = factory.make();
+    for (int i = 0; i < size; i++) {
+      elements[i] = r.nextInt(universe);
+      queries[i] = r.nextInt(universe);
+      a.add(elements[i]);
+      b.add(queries[i]);
+    }
+  }
+
+  private static MutableIntSetFactory<?> makeFactory(String implementation) {
+    if (implementation.equals("Bimodal")) {
+      return new BimodalMutableIntSetFactory();
+    } else if (implementation.equals("BitVector")) {
+      return new BitVectorIntSetFactory();
+    } else if (implementation.equals("MutableSharedBitVector")) {
+      return new MutableSharedBitVectorIntSetFactory();
+    } else if (implementation.equals("MutableSparse")) {
+      return new MutableSparseIntSetFactory();
+    } else if (implementation.equals("Roaring")) {
+      return new RoaringMutableIntSetFactory();
+    } else if (implementation.equals("SemiSparse")) {
+      return new SemiSparseMutableIntSetFactory();
+    } else {
+      throw new IllegalArgumentException("unknown implementation " + implementation);
+    }
+  }
+
+  @Benchmark
+  public MutableIntSet add() {
+    MutableIntSet s = factory.make();
+    for (int x : elements) {
+      s.add(x);
+    }
+    return s;
+  }
+
+  @Benchmark
+  public int contains() {
+    int found = 0;
+    for (int x : queries) {
+      if (a.contains(x)) {
+        found++;
+      }
+    }
+    return found;
+  }
+
+  @Benchmark
+  public boolean containsAny() {
+    return a.containsAny(b);
+  }
+
+  @Benchmark
+  public MutableIntSet union() {
+    MutableIntSet s = factory.makeCopy(a);
+    s.addAll(b);
+    return s;
+  }
+
+  @Benchmark
+  public MutableIntSet intersection() {
+    MutableIntSet s = factory.makeCopy(a);
+    s.intersectWith(b);
+    return s;
+  }
+
+  @Benchmark
+  public int iterate() {
+    int sum = 0;
+    for (IntIterator it = a.intIterator(); it.hasNext();) {
+      sum += it.next();
+    }
+    return sum;
+  }
+}
@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ibm.wala.ipa.callgraph.AnalysisCache;
+import com.ibm.wala.ipa.callgraph.AnalysisOptions;
+import com.ibm.wala.ipa.callgraph.AnalysisScope;
+import com.ibm.wala.ipa.callgraph.CGNode;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.callgraph.impl.Util;
+import com.ibm.wala.ipa.callgraph.propagation.InstanceKey;
+import com.ibm.wala.ipa.callgraph.propagation.PointerAnalysis;
+import com.ibm.wala.ipa.callgraph.propagation.SSAPropagationCallGraphBuilder;
+import com.ibm.wala.ipa.cha.ClassHierarchy;
+import com.ibm.wala.ipa.slicer.NormalStatement;
+import com.ibm.wala.ipa.slicer.SDG;
+import com.ibm.wala.ipa.slicer.Slicer;
+import com.ibm.wala.ipa.slicer.Slicer.ControlDependenceOptions;
+import com.ibm.wala.ipa.slicer.Slicer.DataDependenceOptions;
+import com.ibm.wala.ipa.slicer.Statement;
+import com.ibm.wala.ssa.IR;
+import com.ibm.wala.ssa.SSAInstruction;
+import com.ibm.wala.ssa.SSAReturnInstruction;
+import com.ibm.wala.util.CancelException;
+
+/**
+ * Time to compute a backward slice from the return statements of the entrypoints of a 0-CFA call graph. Each invocation uses a
+ * fresh {@link SDG}, which builds the PDGs it needs lazily, so their construction is measured along with the slice.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 3, jvmArgs = { "-Xmx4g" })
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class SlicerBenchmark {
+
+  @Param({ "NO_BASE_NO_HEAP", "NO_BASE_PTRS" })
+  public DataDependenceOptions dataDependence;
+
+  @Param({ "NONE", "FULL" })
+  public ControlDependenceOptions controlDependence;
+
+  private CallGraph cg;
+
+  private PointerAnalysis<InstanceKey> pa;
+
+  private final List<Statement> seeds = new ArrayList<Statement>();
+
+  @Setup
+  public void setUp() throws Exception {
+    AnalysisScope scope = BenchmarkInputs.makeScope();
+    ClassHierarchy cha = ClassHierarchy.make(scope);
+    AnalysisOptions options = BenchmarkInputs.makeOptions(scope, cha);
+    SSAPropagationCallGraphBuilder builder = Util.makeZeroCFABuilder(options, new AnalysisCache(), cha, scope);
+    cg = builder.makeCallGraph(options, null);
+    pa = builder.getPointerAnalysis();
+    for (CGNode entry : cg.getEntrypointNodes()) {
+      IR ir = entry.getIR();
+      if (ir == null) {
+        continue;
+      }
+      SSAInstruction[] instructions = ir.getInstructions();
+      for (int i = 0; i < instructions.length; i++) {
+        if (instructions[i] instanceof SSAReturnInstruction && ((SSAReturnInstruction) instructions[i]).getResult() != -1) {
+          seeds.add(new NormalStatement(entry, i));
+        }
+      }
+    }
+  }
+
+  @Benchmark
+  public Collection<Statement> computeBackwardSlice() throws IllegalArgumentException, CancelException {
+    return Slicer.computeBackwardSlice(new SDG(cg, pa, dataDependence, controlDependence), seeds);
+  }
+}
@@ -0,0 +1,64 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ibm.wala.dataflow.IFDS.TabulationResult;
+import com.ibm.wala.dataflow.IFDS.TabulationSolver;
+import com.ibm.wala.examples.analysis.dataflow.ContextSensitiveReachingDefs;
+import com.ibm.wala.ipa.callgraph.AnalysisCache;
+import com.ibm.wala.ipa.callgraph.AnalysisScope;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.cha.ClassHierarchy;
+
+/**
+ * Time for the {@link TabulationSolver} to solve the {@link ContextSensitiveReachingDefs} problem over a 0-CFA call graph, with
+ * one or more threads. The supergraph is built lazily, so its construction is measured too.
+ *
+ * This is a long benchmark: on the default inputs, a single tabulation takes more than a minute.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgs = { "-Xmx4g" })
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+public class TabulationBenchmark {
+
+  @Param({ "1", "4" })
+  public int threads;
+
+  private CallGraph cg;
+
+  @Setup
+  public void setUp() throws Exception {
+    AnalysisScope scope = BenchmarkInputs.makeScope();
+    cg = BenchmarkInputs.makeZeroCFACallGraph(scope, ClassHierarchy.make(scope));
+  }
+
+  @Benchmark
+  public TabulationResult<?, ?, ?> analyze() {
+    return new ContextSensitiveReachingDefs(cg, new AnalysisCache()).analyze(threads);
+  }
+}
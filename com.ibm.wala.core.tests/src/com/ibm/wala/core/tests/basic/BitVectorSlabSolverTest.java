@@ -0,0 +1,199 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.basic;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.wala.core.tests.util.WalaTestCase;
+import com.ibm.wala.dataflow.graph.AbstractMeetOperator;
+import com.ibm.wala.dataflow.graph.BitVectorFilter;
+import com.ibm.wala.dataflow.graph.BitVectorFramework;
+import com.ibm.wala.dataflow.graph.BitVectorIdentity;
+import com.ibm.wala.dataflow.graph.BitVectorIntersection;
+import com.ibm.wala.dataflow.graph.BitVectorKillGen;
+import com.ibm.wala.dataflow.graph.BitVectorSlabSolver;
+import com.ibm.wala.dataflow.graph.BitVectorSolver;
+import com.ibm.wala.dataflow.graph.BitVectorUnion;
+import com.ibm.wala.dataflow.graph.BitVectorUnionConstant;
+import com.ibm.wala.dataflow.graph.ITransferFunctionProvider;
+import com.ibm.wala.fixpoint.BitVectorVariable;
+import com.ibm.wala.fixpoint.UnaryOperator;
+import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.graph.Graph;
+import com.ibm.wala.util.graph.impl.SlowSparseNumberedGraph;
+import com.ibm.wala.util.intset.BitVector;
+import com.ibm.wala.util.intset.MutableMapping;
+import com.ibm.wala.util.intset.OrdinalSetMapping;
+
+/**
+ * Check that {@link BitVectorSlabSolver} computes the same results as {@link BitVectorSolver}.
+ */
+public class BitVectorSlabSolverTest extends WalaTestCase {
+
+  public static void main(String[] args) {
+    justThisTest(BitVectorSlabSolverTest.class);
+  }
+
+  private static final String nodeNames = "ABCDEFGH";
+
+  private static String[] nodes() {
+    String[] result = new String[nodeNames.length()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = nodeNames.substring(i, i + 1);
+    }
+    return result;
+  }
+
+  /**
+   * the graph of {@link GraphDataflowTest}, with a back edge from F to B if loop is set
+   */
+  private static Graph<String> buildGraph(String[] nodes, boolean loop) {
+    Graph<String> G = SlowSparseNumberedGraph.make();
+    for (String n : nodes) {
+      G.addNode(n);
+    }
+    G.addEdge(nodes[0], nodes[1]);
+    G.addEdge(nodes[1], nodes[2]);
+    G.addEdge(nodes[1], nodes[3]);
+    G.addEdge(nodes[2], nodes[4]);
+    G.addEdge(nodes[3], nodes[4]);
+    G.addEdge(nodes[4], nodes[5]);
+    if (loop) {
+      G.addEdge(nodes[5], nodes[1]);
+    }
+    return G;
+  }
+
+  private static BitVector bits(int... xs) {
+    BitVector b = new BitVector();
+    for (int x : xs) {
+      b.set(x);
+    }
+    return b;
+  }
+
+  /**
+   * A problem over the graph: each node generates its own number, and, if killGen is set, D kills 0 and F kills 1. If edges is set,
+   * B passes only 1 to C and only 0 to D, as in {@link GraphDataflowTest}.
+   */
+  private static BitVectorFramework<String, String> makeProblem(final String[] nodes, boolean loop, final boolean edges,
+      final boolean killGen, final boolean intersect) {
+    final OrdinalSetMapping<String> values = new MutableMapping<String>(nodes);
+    ITransferFunctionProvider<String, BitVectorVariable> functions = new ITransferFunctionProvider<String, BitVectorVariable>() {
+
+      @Override
+      public UnaryOperator<BitVectorVariable> getNodeTransferFunction(String node) {
+        int i = values.getMappedIndex(node);
+        if (killGen && i == 3) {
+          return new BitVectorKillGen(bits(0), bits(3));
+        } else if (killGen && i == 5) {
+          return new BitVectorKillGen(bits(1), bits(5));
+        } else {
+          return new BitVectorUnionConstant(i);
+        }
+      }
+
+      @Override
+      public boolean hasNodeTransferFunctions() {
+        return true;
+      }
+
+      @Override
+      public UnaryOperator<BitVectorVariable> getEdgeTransferFunction(String from, String to) {
+        if (from == nodes[1] && to == nodes[3]) {
+          return new BitVectorFilter(bits(0));
+        } else if (from == nodes[1] && to == nodes[2]) {
+          return new BitVectorFilter(bits(1));
+        } else {
+          return BitVectorIdentity.instance();
+        }
+      }
+
+      @Override
+      public boolean hasEdgeTransferFunctions() {
+        return edges;
+      }
+
+      @Override
+      public AbstractMeetOperator<BitVectorVariable> getMeetOperator() {
+        return intersect ? BitVectorIntersection.instance() : BitVectorUnion.instance();
+      }
+    };
+    return new BitVectorFramework<String, String>(buildGraph(nodes, loop), functions, values);
+  }
+
+  private static String result2String(String[] nodes, BitVectorSlabSolver<String> solver) {
+    StringBuffer result = new StringBuffer("------\n");
+    for (int i = 0; i < nodes.length; i++) {
+      result.append("Node " + nodes[i] + "(" + i + ") = " + solver.getOut(nodes[i]) + "\n");
+    }
+    return result.toString();
+  }
+
+  private static void assertSameResults(String[] nodes, BitVectorFramework<String, String> F, BitVectorSlabSolver<String> slab)
+      throws CancelException {
+    BitVectorSolver<String> reference = new BitVectorSolver<String>(F);
+    reference.solve(null);
+    for (String n : nodes) {
+      Assert.assertEquals(reference.getIn(n).toString(), slab.getIn(n).toString());
+      Assert.assertEquals(reference.getOut(n).toString(), slab.getOut(n).toString());
+    }
+  }
+
+  @Test
+  public void testSolverNodeOnly() throws CancelException {
+    String[] nodes = nodes();
+    BitVectorSlabSolver<String> s = new BitVectorSlabSolver<String>(makeProblem(nodes, false, false, false, false));
+    s.solve(null);
+    Assert.assertEquals(GraphDataflowTest.expectedStringNodeOnly(), result2String(nodes, s));
+  }
+
+  @Test
+  public void testSolverNodeEdge() throws CancelException {
+    String[] nodes = nodes();
+    BitVectorSlabSolver<String> s = new BitVectorSlabSolver<String>(makeProblem(nodes, false, true, false, false));
+    s.solve(null);
+    Assert.assertEquals(GraphDataflowTest.expectedStringNodeEdge(), result2String(nodes, s));
+  }
+
+  @Test
+  public void testLoops() throws CancelException {
+    String[] nodes = nodes();
+    for (int k = 0; k < 8; k++) {
+      BitVectorFramework<String, String> F = makeProblem(nodes, true, (k & 1) != 0, (k & 2) != 0, (k & 4) != 0);
+      BitVectorSlabSolver<String> s = new BitVectorSlabSolver<String>(F);
+      s.solve(null);
+      assertSameResults(nodes, F, s);
+    }
+  }
+
+  @Test
+  public void testParallel() throws CancelException {
+    List<String[]> nodes = new ArrayList<String[]>();
+    List<BitVectorFramework<String, String>> problems = new ArrayList<BitVectorFramework<String, String>>();
+    List<BitVectorSlabSolver<String>> solvers = new ArrayList<BitVectorSlabSolver<String>>();
+    for (int k = 0; k < 64; k++) {
+      String[] ns = nodes();
+      BitVectorFramework<String, String> F = makeProblem(ns, (k & 8) != 0, (k & 1) != 0, (k & 2) != 0, (k & 4) != 0);
+      nodes.add(ns);
+      problems.add(F);
+      solvers.add(new BitVectorSlabSolver<String>(F));
+    }
+    BitVectorSlabSolver.solve(solvers, 4, null);
+    for (int k = 0; k < solvers.size(); k++) {
+      assertSameResults(nodes.get(k), problems.get(k), solvers.get(k));
+    }
+  }
+}
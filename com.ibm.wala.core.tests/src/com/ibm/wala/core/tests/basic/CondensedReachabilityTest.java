@@ -0,0 +1,129 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.basic;
+
+import java.util.Collections;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.wala.core.tests.util.WalaTestCase;
+import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.functions.Function;
+import com.ibm.wala.util.graph.CondensedReachability;
+import com.ibm.wala.util.graph.Graph;
+import com.ibm.wala.util.graph.impl.SlowSparseNumberedGraph;
+import com.ibm.wala.util.graph.traverse.DFS;
+import com.ibm.wala.util.intset.IntSet;
+import com.ibm.wala.util.intset.MutableSparseIntSet;
+import com.ibm.wala.util.intset.SparseIntSet;
+
+/**
+ * Check that {@link CondensedReachability} computes the same results as a depth-first search from each node.
+ */
+public class CondensedReachabilityTest extends WalaTestCase {
+
+  public static void main(String[] args) {
+    justThisTest(CondensedReachabilityTest.class);
+  }
+
+  /**
+   * each node generates its own number
+   */
+  private static final Function<Integer, IntSet> self = new Function<Integer, IntSet>() {
+    @Override
+    public IntSet apply(Integer n) {
+      return SparseIntSet.singleton(n);
+    }
+  };
+
+  private static Graph<Integer> randomGraph(int nodes, int edges, long seed) {
+    Graph<Integer> G = SlowSparseNumberedGraph.make();
+    for (int i = 0; i < nodes; i++) {
+      G.addNode(i);
+    }
+    Random r = new Random(seed);
+    for (int i = 0; i < edges; i++) {
+      G.addEdge(r.nextInt(nodes), r.nextInt(nodes));
+    }
+    return G;
+  }
+
+  private static void assertSameResults(Graph<Integer> G, CondensedReachability<Integer> r) {
+    for (Integer n : G) {
+      MutableSparseIntSet expected = MutableSparseIntSet.makeEmpty();
+      for (Integer m : DFS.getReachableNodes(G, Collections.singleton(n))) {
+        expected.add(m);
+      }
+      Assert.assertTrue("wrong result for " + n, r.getReachableSet(n).sameValue(expected));
+    }
+  }
+
+  @Test
+  public void testCycle() throws CancelException {
+    Graph<Integer> G = SlowSparseNumberedGraph.make();
+    for (int i = 0; i < 5; i++) {
+      G.addNode(i);
+    }
+    // 0 -> 1 -> 2 -> 1, 2 -> 3, 4 alone
+    G.addEdge(0, 1);
+    G.addEdge(1, 2);
+    G.addEdge(2, 1);
+    G.addEdge(2, 3);
+    CondensedReachability<Integer> r = new CondensedReachability<Integer>(G, self);
+    r.solve(null);
+    assertSameResults(G, r);
+    Assert.assertEquals(4, r.getNumberOfComponents());
+    Assert.assertTrue(r.getReachableSet(1) == r.getReachableSet(2));
+  }
+
+  @Test
+  public void testSharing() throws CancelException {
+    Graph<Integer> G = SlowSparseNumberedGraph.make();
+    for (int i = 0; i < 4; i++) {
+      G.addNode(i);
+    }
+    // only 3 generates anything, so all nodes that reach it share one set
+    G.addEdge(0, 1);
+    G.addEdge(1, 3);
+    G.addEdge(2, 3);
+    CondensedReachability<Integer> r = new CondensedReachability<Integer>(G, new Function<Integer, IntSet>() {
+      @Override
+      public IntSet apply(Integer n) {
+        return n == 3 ? SparseIntSet.singleton(3) : null;
+      }
+    });
+    r.solve(null);
+    Assert.assertEquals(1, r.getNumberOfDistinctSets());
+    Assert.assertTrue(r.getReachableSet(0).contains(3));
+  }
+
+  @Test
+  public void testRandom() throws CancelException {
+    for (long seed = 0; seed < 8; seed++) {
+      Graph<Integer> G = randomGraph(200, 300, seed);
+      CondensedReachability<Integer> r = new CondensedReachability<Integer>(G, self);
+      r.solve(null);
+      assertSameResults(G, r);
+    }
+  }
+
+  @Test
+  public void testParallel() throws CancelException {
+    for (long seed = 0; seed < 8; seed++) {
+      Graph<Integer> G = randomGraph(500, 600, seed);
+      CondensedReachability<Integer> r = new CondensedReachability<Integer>(G, self);
+      r.solve(4, null);
+      assertSameResults(G, r);
+    }
+  }
+}
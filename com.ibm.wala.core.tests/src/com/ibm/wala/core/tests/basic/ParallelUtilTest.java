@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.basic;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.wala.core.tests.util.WalaTestCase;
+import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.NullProgressMonitor;
+import com.ibm.wala.util.ParallelUtil;
+import com.ibm.wala.util.ParallelUtil.IntAction;
+
+/**
+ * Check that {@link ParallelUtil} runs each index once, and passes on failures and cancellation.
+ */
+public class ParallelUtilTest extends WalaTestCase {
+
+  public static void main(String[] args) {
+    justThisTest(ParallelUtilTest.class);
+  }
+
+  private static void assertEachIndexOnce(AtomicIntegerArray counts) {
+    for (int i = 0; i < counts.length(); i++) {
+      Assert.assertEquals("index " + i, 1, counts.get(i));
+    }
+  }
+
+  @Test
+  public void testEachIndexOnce() throws CancelException {
+    for (int threads = 1; threads <= 4; threads++) {
+      final AtomicIntegerArray counts = new AtomicIntegerArray(1000);
+      ParallelUtil.forEachIndex(counts.length(), threads, new IntAction<RuntimeException>() {
+        @Override
+        public void apply(int i) {
+          counts.incrementAndGet(i);
+        }
+      }, null);
+      assertEachIndexOnce(counts);
+    }
+  }
+
+  @Test
+  public void testChunksOnPool() throws CancelException {
+    ExecutorService pool = Executors.newFixedThreadPool(3);
+    try {
+      for (int n = 0; n < 50; n++) {
+        final AtomicIntegerArray counts = new AtomicIntegerArray(n);
+        ParallelUtil.forEachIndex(pool, 3, n, 7, new IntAction<RuntimeException>() {
+          @Override
+          public void apply(int i) {
+            counts.incrementAndGet(i);
+          }
+        }, null);
+        assertEachIndexOnce(counts);
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testCheckedException() throws CancelException {
+    try {
+      ParallelUtil.forEachIndex(100, 4, new IntAction<IOException>() {
+        @Override
+        public void apply(int i) throws IOException {
+          if (i == 42) {
+            throw new IOException("42");
+          }
+        }
+      }, null);
+      Assert.fail("expected an IOException");
+    } catch (IOException e) {
+      Assert.assertEquals("42", e.getMessage());
+    }
+  }
+
+  @Test
+  public void testRuntimeException() throws CancelException {
+    try {
+      ParallelUtil.forEachIndex(100, 4, new IntAction<RuntimeException>() {
+        @Override
+        public void apply(int i) {
+          if (i == 42) {
+            throw new IllegalStateException("42");
+          }
+        }
+      }, null);
+      Assert.fail("expected an IllegalStateException");
+    } catch (IllegalStateException e) {
+      Assert.assertEquals("42", e.getMessage());
+    }
+  }
+
+  @Test
+  public void testCancel() {
+    final AtomicInteger runs = new AtomicInteger();
+    final NullProgressMonitor monitor = new NullProgressMonitor() {
+      @Override
+      public boolean isCanceled() {
+        return runs.get() >= 10;
+      }
+
+      @Override
+      public String getCancelMessage() {
+        return "canceled";
+      }
+    };
+    for (int threads = 1; threads <= 4; threads += 3) {
+      runs.set(0);
+      try {
+        ParallelUtil.forEachIndex(10000, threads, new IntAction<RuntimeException>() {
+          @Override
+          public void apply(int i) {
+            runs.incrementAndGet();
+          }
+        }, monitor);
+        Assert.fail("expected a CancelException");
+      } catch (CancelException e) {
+        Assert.assertTrue(runs.get() < 10000);
+      }
+    }
+  }
+}
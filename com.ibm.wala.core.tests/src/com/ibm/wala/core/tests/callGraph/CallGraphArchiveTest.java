@@ -0,0 +1,135 @@
+/*******************************************************************************
+ * Copyright (c) 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.callGraph;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.wala.classLoader.CallSiteReference;
+import com.ibm.wala.core.tests.util.TestConstants;
+import com.ibm.wala.core.tests.util.WalaTestCase;
+import com.ibm.wala.ipa.callgraph.AnalysisCache;
+import com.ibm.wala.ipa.callgraph.AnalysisOptions;
+import com.ibm.wala.ipa.callgraph.AnalysisScope;
+import com.ibm.wala.ipa.callgraph.CGNode;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.callgraph.Entrypoint;
+import com.ibm.wala.ipa.callgraph.impl.CallGraphArchive;
+import com.ibm.wala.ipa.callgraph.impl.Util;
+import com.ibm.wala.ipa.callgraph.propagation.InstanceKey;
+import com.ibm.wala.ipa.callgraph.propagation.PointerAnalysis;
+import com.ibm.wala.ipa.callgraph.propagation.PointerKey;
+import com.ibm.wala.ipa.callgraph.propagation.SSAPropagationCallGraphBuilder;
+import com.ibm.wala.ipa.cha.ClassHierarchy;
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.collections.HashSetFactory;
+import com.ibm.wala.util.intset.MutableSparseIntSet;
+
+/**
+ * Check that a {@link CallGraphArchive} answers queries as the call graph and pointer analysis it was written from.
+ */
+public class CallGraphArchiveTest extends WalaTestCase {
+
+  public static void main(String[] args) {
+    justThisTest(CallGraphArchiveTest.class);
+  }
+
+  private static int[] numbers(CallGraph cg, Iterator<CGNode> nodes) {
+    MutableSparseIntSet result = MutableSparseIntSet.makeEmpty();
+    while (nodes.hasNext()) {
+      result.add(cg.getNumber(nodes.next()));
+    }
+    return result.toIntArray();
+  }
+
+  @Test
+  public void testJLexZeroCFA() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+    AnalysisScope scope = CallGraphTestUtil.makeJ2SEAnalysisScope(TestConstants.JLEX, CallGraphTestUtil.REGRESSION_EXCLUSIONS);
+    ClassHierarchy cha = ClassHierarchy.make(scope);
+    Iterable<Entrypoint> entrypoints = Util.makeMainEntrypoints(scope, cha, TestConstants.JLEX_MAIN);
+    AnalysisOptions options = CallGraphTestUtil.makeAnalysisOptions(scope, entrypoints);
+    SSAPropagationCallGraphBuilder builder = Util.makeZeroCFABuilder(options, new AnalysisCache(), cha, scope);
+    CallGraph cg = builder.makeCallGraph(options, null);
+    PointerAnalysis<InstanceKey> pa = builder.getPointerAnalysis();
+
+    File f = File.createTempFile("wala", ".cga");
+    try {
+      CallGraphArchive.write(cg, pa, f);
+      CallGraphArchive archive = CallGraphArchive.open(f);
+      try {
+        checkCallGraph(cg, archive);
+        checkPointerAnalysis(pa, archive);
+      } finally {
+        archive.close();
+      }
+    } finally {
+      f.delete();
+    }
+  }
+
+  private static void checkCallGraph(CallGraph cg, CallGraphArchive archive) {
+    Assert.assertEquals(cg.getNumberOfNodes(), archive.getNumberOfNodes());
+    Assert.assertEquals(cg.getMaxNumber(), archive.getMaxNumber());
+    Assert.assertEquals(cg.getNumber(cg.getFakeRootNode()), archive.getFakeRootNode());
+    Assert.assertTrue(Arrays.equals(numbers(cg, cg.getEntrypointNodes().iterator()), archive.getEntrypointNodes()));
+    for (CGNode n : cg) {
+      int number = cg.getNumber(n);
+      Assert.assertTrue(archive.containsNode(number));
+      Assert.assertEquals(n.getMethod().getSignature(), archive.getMethod(number));
+      Assert.assertEquals(n.getContext().toString(), archive.getContext(number));
+      Assert.assertTrue(Arrays.binarySearch(archive.getNodes(n.getMethod().getSignature()), number) >= 0);
+      Assert.assertTrue(Arrays.equals(numbers(cg, cg.getSuccNodes(n)), archive.getSuccNodes(number)));
+      Assert.assertTrue(Arrays.equals(numbers(cg, cg.getPredNodes(n)), archive.getPredNodes(number)));
+      for (Iterator<CallSiteReference> sites = n.iterateCallSites(); sites.hasNext();) {
+        CallSiteReference site = sites.next();
+        int pc = site.getProgramCounter();
+        Assert.assertEquals(site.getDeclaredTarget().getSignature(), archive.getDeclaredTarget(number, pc));
+        Assert.assertTrue(Arrays.equals(numbers(cg, cg.getPossibleTargets(n, site).iterator()), archive.getPossibleTargets(number, pc)));
+      }
+    }
+    Assert.assertEquals(0, archive.getNodes("no.such.method()V").length);
+  }
+
+  private static void checkPointerAnalysis(PointerAnalysis<InstanceKey> pa, CallGraphArchive archive) {
+    Map<String, Set<String>> expected = HashMapFactory.make();
+    for (PointerKey pk : pa.getPointerKeys()) {
+      Set<String> pts = expected.get(pk.toString());
+      if (pts == null) {
+        pts = HashSetFactory.make();
+        expected.put(pk.toString(), pts);
+      }
+      for (InstanceKey ik : pa.getPointsToSet(pk)) {
+        pts.add(ik.toString());
+      }
+    }
+    Assert.assertEquals(expected.size(), archive.getNumberOfPointerKeys());
+    for (Map.Entry<String, Set<String>> e : expected.entrySet()) {
+      int pk = archive.lookupPointerKey(e.getKey());
+      Assert.assertEquals(e.getKey(), archive.getPointerKey(pk));
+      Set<String> actual = HashSetFactory.make();
+      for (int ik : archive.getPointsToSet(pk)) {
+        actual.add(archive.getInstanceKey(ik));
+        Assert.assertEquals(ik, archive.lookupInstanceKey(archive.getInstanceKey(ik)));
+      }
+      Assert.assertEquals(e.getValue(), actual);
+    }
+    Assert.assertEquals(-1, archive.lookupPointerKey("no such key"));
+  }
+}
@@ -11,16 +11,30 @@
 package com.ibm.wala.core.tests.callGraph;
 
 import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
 
+import com.ibm.wala.core.tests.util.TestConstants;
 import com.ibm.wala.ipa.callgraph.AnalysisCache;
 import com.ibm.wala.ipa.callgraph.AnalysisOptions;
 import com.ibm.wala.ipa.callgraph.AnalysisScope;
+import com.ibm.wala.ipa.callgraph.CGNode;
 import com.ibm.wala.ipa.callgraph.CallGraph;
 import com.ibm.wala.ipa.callgraph.CallGraphBuilder;
 import com.ibm.wala.ipa.callgraph.Entrypoint;
 import com.ibm.wala.ipa.callgraph.impl.Util;
+import com.ibm.wala.ipa.callgraph.propagation.InstanceKey;
+import com.ibm.wala.ipa.callgraph.propagation.PointerAnalysis;
+import com.ibm.wala.ipa.callgraph.propagation.PointerKey;
+import com.ibm.wala.ipa.callgraph.propagation.SSAPropagationCallGraphBuilder;
+import com.ibm.wala.ipa.cha.ClassHierarchy;
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
 import com.ibm.wala.ipa.cha.IClassHierarchy;
 import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.Predicate;
+import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.collections.Iterator2Iterable;
+import com.ibm.wala.util.collections.MapUtil;
 import com.ibm.wala.util.config.AnalysisScopeReader;
 import com.ibm.wala.util.io.FileProvider;
 import com.ibm.wala.util.perf.StopwatchGC;
@@ -163,4 +177,66 @@ public class CallGraphTestUtil {
     return cg;
   }
 
+  /**
+   * Build a 0-CFA, or a 0-1-CFA, with the given options, and solve it.
+   */
+  public static SSAPropagationCallGraphBuilder buildPropagation(AnalysisOptions options, AnalysisCache cache, IClassHierarchy cha,
+      AnalysisScope scope, boolean zeroOne) throws IllegalArgumentException, CancelException {
+    SSAPropagationCallGraphBuilder builder = zeroOne ? Util.makeZeroOneCFABuilder(options, cache, cha, scope) : Util
+        .makeZeroCFABuilder(options, cache, cha, scope);
+    builder.makeCallGraph(options, null);
+    return builder;
+  }
+
+  /**
+   * Build a 0-CFA, or a 0-1-CFA, of JLex from its main method. The analysis scope and entrypoints of options are set here; the
+   * rest, such as the solver mode under test, is left as the caller set it.
+   */
+  public static SSAPropagationCallGraphBuilder buildJLex(AnalysisOptions options, boolean zeroOne) throws ClassHierarchyException,
+      IOException, IllegalArgumentException, CancelException {
+    AnalysisScope scope = makeJ2SEAnalysisScope(TestConstants.JLEX, REGRESSION_EXCLUSIONS);
+    ClassHierarchy cha = ClassHierarchy.make(scope);
+    options.setAnalysisScope(scope);
+    options.setEntrypoints(Util.makeMainEntrypoints(scope, cha, TestConstants.JLEX_MAIN));
+    return buildPropagation(options, new AnalysisCache(), cha, scope, zeroOne);
+  }
+
+  /**
+   * Summarize a call graph by printed node, mapped to the printed successor nodes.
+   */
+  public static Map<String, Set<String>> edges(CallGraph cg) {
+    Map<String, Set<String>> result = HashMapFactory.make();
+    for (CGNode n : cg) {
+      Set<String> succs = MapUtil.findOrCreateSet(result, n.toString());
+      for (CGNode s : Iterator2Iterable.make(cg.getSuccNodes(n))) {
+        succs.add(s.toString());
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Summarize a pointer analysis by printed pointer key, mapped to the printed instance keys it may point to.
+   */
+  public static Map<String, Set<String>> pointsTo(PointerAnalysis<InstanceKey> pa) {
+    return pointsTo(pa, Predicate.<PointerKey> truePred());
+  }
+
+  /**
+   * Summarize the pointer keys of a pointer analysis that satisfy include, as in {@link #pointsTo(PointerAnalysis)}. Keys that
+   * print the same are merged.
+   */
+  public static Map<String, Set<String>> pointsTo(PointerAnalysis<InstanceKey> pa, Predicate<PointerKey> include) {
+    Map<String, Set<String>> result = HashMapFactory.make();
+    for (PointerKey k : pa.getPointerKeys()) {
+      if (include.test(k)) {
+        Set<String> iks = MapUtil.findOrCreateSet(result, k.toString());
+        for (InstanceKey ik : pa.getPointsToSet(k)) {
+          iks.add(ik.toString());
+        }
+      }
+    }
+    return result;
+  }
+
 }
@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * Copyright (c) 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.callGraph;
+
+import java.io.IOException;
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.core.tests.util.TestConstants;
+import com.ibm.wala.core.tests.util.WalaTestCase;
+import com.ibm.wala.ipa.callgraph.AnalysisOptions;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.callgraph.propagation.SSAPropagationCallGraphBuilder;
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import com.ibm.wala.types.ClassLoaderReference;
+import com.ibm.wala.types.TypeReference;
+import com.ibm.wala.util.CancelException;
+
+/**
+ * Check that collapsing cycles of assignments, and unifying other variables with equal points-to sets, while solving does not
+ * change the result of the pointer analysis, even after an incremental update.
+ */
+public class CycleEliminationTest extends WalaTestCase {
+
+  public static void main(String[] args) {
+    justThisTest(CycleEliminationTest.class);
+  }
+
+  private static SSAPropagationCallGraphBuilder build(boolean cycleElimination) throws ClassHierarchyException, IOException,
+      IllegalArgumentException, CancelException {
+    AnalysisOptions options = new AnalysisOptions();
+    options.setCycleElimination(cycleElimination);
+    return CallGraphTestUtil.buildJLex(options, false);
+  }
+
+  @Test
+  public void testJLexZeroCFA() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+    SSAPropagationCallGraphBuilder plain = build(false);
+    SSAPropagationCallGraphBuilder collapsed = build(true);
+
+    Assert.assertTrue(collapsed.getPropagationSystem().getNumberOfCollapsedVariables() > 0);
+    CallGraph pcg = plain.getCallGraph();
+    CallGraph ccg = collapsed.getCallGraph();
+    Assert.assertEquals(pcg.getNumberOfNodes(), ccg.getNumberOfNodes());
+    Assert.assertEquals(CallGraphTestUtil.pointsTo(plain.getPointerAnalysis()), CallGraphTestUtil.pointsTo(collapsed
+        .getPointerAnalysis()));
+  }
+
+  @Test
+  public void testIncrementalUpdate() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+    SSAPropagationCallGraphBuilder plain = build(false);
+    AnalysisOptions options = new AnalysisOptions();
+    options.setCycleElimination(true);
+    options.setIncrementalUpdates(true);
+    SSAPropagationCallGraphBuilder collapsed = CallGraphTestUtil.buildJLex(options, false);
+
+    Assert.assertTrue(collapsed.getPropagationSystem().getNumberOfCollapsedVariables() > 0);
+    IClass main = collapsed.getClassHierarchy().lookupClass(
+        TypeReference.findOrCreate(ClassLoaderReference.Application, TestConstants.JLEX_MAIN));
+    collapsed.updateCallGraph(Collections.singleton(main), null);
+    Assert.assertEquals(plain.getCallGraph().getNumberOfNodes(), collapsed.getCallGraph().getNumberOfNodes());
+    Assert.assertEquals(CallGraphTestUtil.pointsTo(plain.getPointerAnalysis()), CallGraphTestUtil.pointsTo(collapsed
+        .getPointerAnalysis()));
+  }
+}
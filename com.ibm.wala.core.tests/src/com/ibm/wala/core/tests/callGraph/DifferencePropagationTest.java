@@ -0,0 +1,67 @@
+/*******************************************************************************
+ * Copyright (c) 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.callGraph;
+
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.wala.core.tests.util.WalaTestCase;
+import com.ibm.wala.ipa.callgraph.AnalysisOptions;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.callgraph.propagation.SSAPropagationCallGraphBuilder;
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import com.ibm.wala.util.CancelException;
+
+/**
+ * Check that propagating only the differences of points-to sets does not change the result of the pointer analysis.
+ */
+public class DifferencePropagationTest extends WalaTestCase {
+
+  public static void main(String[] args) {
+    justThisTest(DifferencePropagationTest.class);
+  }
+
+  private static SSAPropagationCallGraphBuilder build(boolean differencePropagation, int threads, boolean cycleElimination)
+      throws ClassHierarchyException, IOException, IllegalArgumentException, CancelException {
+    AnalysisOptions options = new AnalysisOptions();
+    options.setDifferencePropagation(differencePropagation);
+    options.setNumberOfSolverThreads(threads);
+    options.setCycleElimination(cycleElimination);
+    return CallGraphTestUtil.buildJLex(options, false);
+  }
+
+  private static void check(SSAPropagationCallGraphBuilder plain, SSAPropagationCallGraphBuilder byDifferences) {
+    Assert.assertTrue(byDifferences.getPropagationSystem().getDifferencePropagation());
+    CallGraph pcg = plain.getCallGraph();
+    CallGraph dcg = byDifferences.getCallGraph();
+    Assert.assertEquals(pcg.getNumberOfNodes(), dcg.getNumberOfNodes());
+    Assert.assertEquals(CallGraphTestUtil.pointsTo(plain.getPointerAnalysis()), CallGraphTestUtil.pointsTo(byDifferences
+        .getPointerAnalysis()));
+  }
+
+  @Test
+  public void testJLexZeroCFA() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+    check(build(false, 1, false), build(true, 1, false));
+  }
+
+  @Test
+  public void testJLexZeroCFAInParallel() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+    check(build(false, 1, false), build(true, 4, false));
+  }
+
+  @Test
+  public void testJLexZeroCFAWithCycleElimination() throws ClassHierarchyException, IllegalArgumentException, CancelException,
+      IOException {
+    check(build(false, 1, false), build(true, 1, true));
+  }
+}
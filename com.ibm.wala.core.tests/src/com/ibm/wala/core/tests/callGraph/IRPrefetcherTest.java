@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright (c) 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.callGraph;
+
+import java.io.IOException;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.core.tests.util.TestConstants;
+import com.ibm.wala.core.tests.util.WalaTestCase;
+import com.ibm.wala.ipa.callgraph.AnalysisCache;
+import com.ibm.wala.ipa.callgraph.AnalysisOptions;
+import com.ibm.wala.ipa.callgraph.AnalysisScope;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.callgraph.Entrypoint;
+import com.ibm.wala.ipa.callgraph.impl.Everywhere;
+import com.ibm.wala.ipa.callgraph.impl.IRPrefetcher;
+import com.ibm.wala.ipa.callgraph.impl.Util;
+import com.ibm.wala.ipa.callgraph.propagation.SSAPropagationCallGraphBuilder;
+import com.ibm.wala.ipa.cha.ClassHierarchy;
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import com.ibm.wala.ssa.SSACache;
+import com.ibm.wala.util.CancelException;
+
+/**
+ * Check that building IRs ahead of call graph construction with {@link IRPrefetcher} fills the cache without changing the result.
+ */
+public class IRPrefetcherTest extends WalaTestCase {
+
+  public static void main(String[] args) {
+    justThisTest(IRPrefetcherTest.class);
+  }
+
+  private static SSAPropagationCallGraphBuilder build(int prefetchThreads) throws ClassHierarchyException, IOException,
+      IllegalArgumentException, CancelException {
+    AnalysisOptions options = new AnalysisOptions();
+    options.setNumberOfIRPrefetchThreads(prefetchThreads);
+    return CallGraphTestUtil.buildJLex(options, false);
+  }
+
+  private static Set<IMethod> prefetch(ClassHierarchy cha, AnalysisScope scope, AnalysisCache cache, int threads)
+      throws CancelException {
+    Iterable<Entrypoint> entrypoints = Util.makeMainEntrypoints(scope, cha, TestConstants.JLEX_MAIN);
+    return new IRPrefetcher(cha, cache, new AnalysisOptions().getSSAOptions(), threads).prefetch(entrypoints, null);
+  }
+
+  @Test
+  public void testJLexZeroCFA() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+    SSAPropagationCallGraphBuilder lazy = build(0);
+    SSAPropagationCallGraphBuilder prefetched = build(4);
+
+    CallGraph lcg = lazy.getCallGraph();
+    CallGraph pcg = prefetched.getCallGraph();
+    Assert.assertEquals(lcg.getNumberOfNodes(), pcg.getNumberOfNodes());
+    Assert.assertEquals(CallGraphTestUtil.pointsTo(lazy.getPointerAnalysis()), CallGraphTestUtil.pointsTo(prefetched
+        .getPointerAnalysis()));
+  }
+
+  @Test
+  public void testIRsAreCached() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+    AnalysisScope scope = CallGraphTestUtil.makeJ2SEAnalysisScope(TestConstants.JLEX, CallGraphTestUtil.REGRESSION_EXCLUSIONS);
+    ClassHierarchy cha = ClassHierarchy.make(scope);
+    AnalysisCache cache = new AnalysisCache();
+    Set<IMethod> visited = prefetch(cha, scope, cache, 4);
+    Assert.assertTrue(visited.size() > 100);
+
+    SSACache ssaCache = cache.getSSACache();
+    long misses = ssaCache.getIRStatistics().getMisses();
+    for (IMethod m : visited) {
+      if (cache.getIRFactory().contextIsIrrelevant(m)) {
+        ssaCache.findOrCreateIR(m, Everywhere.EVERYWHERE, new AnalysisOptions().getSSAOptions());
+      }
+    }
+    Assert.assertEquals(misses, ssaCache.getIRStatistics().getMisses());
+  }
+
+  @Test
+  public void testSameMethodsForAnyNumberOfThreads() throws ClassHierarchyException, IllegalArgumentException, CancelException,
+      IOException {
+    AnalysisScope scope = CallGraphTestUtil.makeJ2SEAnalysisScope(TestConstants.JLEX, CallGraphTestUtil.REGRESSION_EXCLUSIONS);
+    ClassHierarchy cha = ClassHierarchy.make(scope);
+    Assert.assertEquals(prefetch(cha, scope, new AnalysisCache(), 1), prefetch(cha, scope, new AnalysisCache(), 4));
+  }
+}
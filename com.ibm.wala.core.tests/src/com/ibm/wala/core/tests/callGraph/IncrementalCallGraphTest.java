@@ -0,0 +1,506 @@
+/*******************************************************************************
+ * Copyright (c) 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.callGraph;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.wala.classLoader.CallSiteReference;
+import com.ibm.wala.classLoader.ClassLoaderFactory;
+import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.classLoader.IClassLoader;
+import com.ibm.wala.classLoader.IField;
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.core.tests.util.WalaTestCase;
+import com.ibm.wala.ipa.callgraph.AnalysisCache;
+import com.ibm.wala.ipa.callgraph.AnalysisOptions;
+import com.ibm.wala.ipa.callgraph.AnalysisScope;
+import com.ibm.wala.ipa.callgraph.CGNode;
+import com.ibm.wala.ipa.callgraph.Context;
+import com.ibm.wala.ipa.callgraph.Entrypoint;
+import com.ibm.wala.ipa.callgraph.impl.DefaultEntrypoint;
+import com.ibm.wala.ipa.callgraph.impl.ExplicitCallGraph;
+import com.ibm.wala.ipa.callgraph.impl.Util;
+import com.ibm.wala.ipa.callgraph.propagation.InstanceKey;
+import com.ibm.wala.ipa.callgraph.propagation.LocalPointerKey;
+import com.ibm.wala.ipa.callgraph.propagation.PointerAnalysis;
+import com.ibm.wala.ipa.callgraph.propagation.PointerKey;
+import com.ibm.wala.ipa.callgraph.propagation.PropagationSystem;
+import com.ibm.wala.ipa.callgraph.propagation.SSAPropagationCallGraphBuilder;
+import com.ibm.wala.ipa.cha.ClassHierarchy;
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import com.ibm.wala.ipa.cha.IClassHierarchy;
+import com.ibm.wala.ssa.DefaultIRFactory;
+import com.ibm.wala.ssa.IR;
+import com.ibm.wala.ssa.IRFactory;
+import com.ibm.wala.ssa.SSAOptions;
+import com.ibm.wala.types.ClassLoaderReference;
+import com.ibm.wala.types.FieldReference;
+import com.ibm.wala.types.MethodReference;
+import com.ibm.wala.types.Selector;
+import com.ibm.wala.types.TypeReference;
+import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.Predicate;
+import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.collections.HashSetFactory;
+import com.ibm.wala.util.collections.Iterator2Iterable;
+import com.ibm.wala.util.config.AnalysisScopeReader;
+import com.ibm.wala.util.io.FileProvider;
+
+/**
+ * Check that updating a call graph after a change gives the same result as building it from scratch.
+ */
+public class IncrementalCallGraphTest extends WalaTestCase {
+
+  public static void main(String[] args) {
+    justThisTest(IncrementalCallGraphTest.class);
+  }
+
+  /**
+   * Simulates edits to methods by building the IR of another method, with the same descriptor, in place of an edited one.
+   */
+  private static class EditingIRFactory implements IRFactory<IMethod> {
+
+    private final DefaultIRFactory delegate = new DefaultIRFactory();
+
+    private final Map<IMethod, IMethod> edits = HashMapFactory.make();
+
+    @Override
+    public IR makeIR(IMethod method, Context c, SSAOptions options) {
+      IMethod body = edits.get(method);
+      return delegate.makeIR(body == null ? method : body, c, options);
+    }
+
+    @Override
+    public boolean contextIsIrrelevant(IMethod method) {
+      return delegate.contextIsIrrelevant(method);
+    }
+  }
+
+  /**
+   * Simulates adding and removing classes by hiding them from the class hierarchy that call graph construction sees. Only classes
+   * without subclasses should be hidden, since their subclasses would still see them.
+   */
+  private static class HidingClassHierarchy implements IClassHierarchy {
+
+    private final IClassHierarchy delegate;
+
+    private final Set<IClass> hidden = HashSetFactory.make();
+
+    HidingClassHierarchy(IClassHierarchy delegate) {
+      this.delegate = delegate;
+    }
+
+    private boolean isVisible(IClass klass) {
+      return klass != null && !hidden.contains(klass);
+    }
+
+    private IMethod visible(IMethod m) {
+      return m != null && isVisible(m.getDeclaringClass()) ? m : null;
+    }
+
+    private IField visible(IField f) {
+      return f != null && isVisible(f.getDeclaringClass()) ? f : null;
+    }
+
+    private Set<IMethod> visibleMethods(Set<IMethod> methods) {
+      Set<IMethod> result = HashSetFactory.make();
+      for (IMethod m : methods) {
+        if (visible(m) != null) {
+          result.add(m);
+        }
+      }
+      return result;
+    }
+
+    private Set<IClass> visibleClasses(Collection<IClass> classes) {
+      Set<IClass> result = HashSetFactory.make();
+      if (classes != null) {
+        for (IClass c : classes) {
+          if (isVisible(c)) {
+            result.add(c);
+          }
+        }
+      }
+      return result;
+    }
+
+    @Override
+    public Iterator<IClass> iterator() {
+      List<IClass> result = new ArrayList<IClass>();
+      for (IClass c : delegate) {
+        if (isVisible(c)) {
+          result.add(c);
+        }
+      }
+      return result.iterator();
+    }
+
+    @Override
+    public ClassLoaderFactory getFactory() {
+      return delegate.getFactory();
+    }
+
+    @Override
+    public AnalysisScope getScope() {
+      return delegate.getScope();
+    }
+
+    @Override
+    public IClassLoader[] getLoaders() {
+      return delegate.getLoaders();
+    }
+
+    @Override
+    public IClassLoader getLoader(ClassLoaderReference loaderRef) {
+      return delegate.getLoader(loaderRef);
+    }
+
+    @Override
+    public boolean addClass(IClass klass) {
+      return delegate.addClass(klass);
+    }
+
+    @Override
+    public int getNumberOfClasses() {
+      return delegate.getNumberOfClasses() - hidden.size();
+    }
+
+    @Override
+    public boolean isRootClass(IClass c) {
+      return delegate.isRootClass(c);
+    }
+
+    @Override
+    public IClass getRootClass() {
+      return delegate.getRootClass();
+    }
+
+    @Override
+    public int getNumber(IClass c) {
+      return delegate.getNumber(c);
+    }
+
+    @Override
+    public Set<TypeReference> getUnresolvedClasses() {
+      return delegate.getUnresolvedClasses();
+    }
+
+    @Override
+    public Set<IMethod> getPossibleTargets(MethodReference ref) {
+      return visibleMethods(delegate.getPossibleTargets(ref));
+    }
+
+    @Override
+    public Set<IMethod> getPossibleTargets(IClass receiverClass, MethodReference ref) {
+      return isVisible(receiverClass) ? visibleMethods(delegate.getPossibleTargets(receiverClass, ref)) : Collections
+          .<IMethod> emptySet();
+    }
+
+    @Override
+    public IMethod resolveMethod(MethodReference m) {
+      return visible(delegate.resolveMethod(m));
+    }
+
+    @Override
+    public IField resolveField(FieldReference f) {
+      return visible(delegate.resolveField(f));
+    }
+
+    @Override
+    public IField resolveField(IClass klass, FieldReference f) {
+      return isVisible(klass) ? visible(delegate.resolveField(klass, f)) : null;
+    }
+
+    @Override
+    public IMethod resolveMethod(IClass receiverClass, Selector selector) {
+      return isVisible(receiverClass) ? visible(delegate.resolveMethod(receiverClass, selector)) : null;
+    }
+
+    @Override
+    public IClass lookupClass(TypeReference A) {
+      IClass result = delegate.lookupClass(A);
+      return isVisible(result) ? result : null;
+    }
+
+    @Override
+    public boolean isInterface(TypeReference type) {
+      return delegate.isInterface(type);
+    }
+
+    @Override
+    public IClass getLeastCommonSuperclass(IClass A, IClass B) {
+      return delegate.getLeastCommonSuperclass(A, B);
+    }
+
+    @Override
+    public TypeReference getLeastCommonSuperclass(TypeReference A, TypeReference B) {
+      return delegate.getLeastCommonSuperclass(A, B);
+    }
+
+    @Override
+    public boolean isSubclassOf(IClass c, IClass T) {
+      return delegate.isSubclassOf(c, T);
+    }
+
+    @Override
+    public boolean implementsInterface(IClass c, IClass i) {
+      return delegate.implementsInterface(c, i);
+    }
+
+    @Override
+    public Collection<IClass> computeSubClasses(TypeReference type) {
+      return visibleClasses(delegate.computeSubClasses(type));
+    }
+
+    @Override
+    public Collection<TypeReference> getJavaLangErrorTypes() {
+      return delegate.getJavaLangErrorTypes();
+    }
+
+    @Override
+    public Collection<TypeReference> getJavaLangRuntimeExceptionTypes() {
+      return delegate.getJavaLangRuntimeExceptionTypes();
+    }
+
+    @Override
+    public Set<IClass> getImplementors(TypeReference type) {
+      return visibleClasses(delegate.getImplementors(type));
+    }
+
+    @Override
+    public int getNumberOfImmediateSubclasses(IClass klass) {
+      return getImmediateSubclasses(klass).size();
+    }
+
+    @Override
+    public Collection<IClass> getImmediateSubclasses(IClass klass) {
+      return visibleClasses(delegate.getImmediateSubclasses(klass));
+    }
+
+    @Override
+    public boolean isAssignableFrom(IClass c1, IClass c2) {
+      return delegate.isAssignableFrom(c1, c2);
+    }
+  }
+
+  private static AnalysisScope scope;
+
+  private static IClassHierarchy cha;
+
+  private static AnalysisScope getScope() throws IOException {
+    if (scope == null) {
+      scope = AnalysisScopeReader.makePrimordialScope((new FileProvider()).getFile(CallGraphTestUtil.REGRESSION_EXCLUSIONS));
+    }
+    return scope;
+  }
+
+  private static IClassHierarchy getClassHierarchy() throws IOException, ClassHierarchyException {
+    if (cha == null) {
+      cha = ClassHierarchy.make(getScope());
+    }
+    return cha;
+  }
+
+  private static IMethod lookup(String klass, String selector) throws IOException, ClassHierarchyException {
+    MethodReference m = MethodReference.findOrCreate(TypeReference.findOrCreate(ClassLoaderReference.Primordial, klass), selector
+        .substring(0, selector.indexOf('(')), selector.substring(selector.indexOf('(')));
+    IMethod result = getClassHierarchy().resolveMethod(m);
+    Assert.assertNotNull(m.toString(), result);
+    return result;
+  }
+
+  private static IClass lookupClass(String klass) throws IOException, ClassHierarchyException {
+    IClass result = getClassHierarchy().lookupClass(TypeReference.findOrCreate(ClassLoaderReference.Primordial, klass));
+    Assert.assertNotNull(klass, result);
+    return result;
+  }
+
+  private static SSAPropagationCallGraphBuilder build(EditingIRFactory factory, boolean zeroOne, boolean cycleElimination)
+      throws IOException, ClassHierarchyException, IllegalArgumentException, CancelException {
+    return build(factory, getClassHierarchy(), zeroOne, cycleElimination);
+  }
+
+  private static SSAPropagationCallGraphBuilder build(EditingIRFactory factory, IClassHierarchy cha, boolean zeroOne,
+      boolean cycleElimination) throws IOException, ClassHierarchyException, IllegalArgumentException, CancelException {
+    // the changes are in BitSet and Collections; the code reached from the other entrypoints should mostly stay
+    List<Entrypoint> entrypoints = new ArrayList<Entrypoint>();
+    for (String klass : new String[] { "Ljava/util/BitSet", "Ljava/lang/Math", "Ljava/util/Collections" }) {
+      for (IMethod m : lookupClass(klass).getDeclaredMethods()) {
+        if (m.isStatic() && m.isPublic() && !m.isNative()) {
+          entrypoints.add(new DefaultEntrypoint(m, cha));
+        }
+      }
+    }
+    AnalysisOptions options = CallGraphTestUtil.makeAnalysisOptions(getScope(), entrypoints);
+    options.setIncrementalUpdates(true);
+    options.setCycleElimination(cycleElimination);
+    return CallGraphTestUtil.buildPropagation(options, new AnalysisCache(factory), cha, getScope(), zeroOne);
+  }
+
+  /**
+   * Summarize the targets of each call site, except those of the fake world clinit node, whose sites are numbered in the order
+   * the class initializers are found.
+   */
+  private static Set<String> sites(ExplicitCallGraph cg) {
+    Set<String> result = HashSetFactory.make();
+    for (CGNode n : cg) {
+      if (!n.equals(cg.getFakeWorldClinitNode())) {
+        for (CallSiteReference site : Iterator2Iterable.make(n.iterateCallSites())) {
+          for (CGNode t : cg.getPossibleTargets(n, site)) {
+            result.add(n + " @" + site.getProgramCounter() + " -> " + t);
+          }
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Summarize a pointer analysis as {@link CallGraphTestUtil#pointsTo(PointerAnalysis)} does, leaving out empty points-to sets
+   * and the locals of the fake world clinit node.
+   */
+  private static Map<String, Set<String>> pointsTo(PointerAnalysis<InstanceKey> pa, final ExplicitCallGraph cg) {
+    Map<String, Set<String>> result = CallGraphTestUtil.pointsTo(pa, new Predicate<PointerKey>() {
+      @Override
+      public boolean test(PointerKey k) {
+        return !(k instanceof LocalPointerKey && ((LocalPointerKey) k).getNode().equals(cg.getFakeWorldClinitNode()));
+      }
+    });
+    for (Iterator<Set<String>> it = result.values().iterator(); it.hasNext();) {
+      if (it.next().isEmpty()) {
+        it.remove();
+      }
+    }
+    return result;
+  }
+
+  /**
+   * like assertEquals, but only report the entries that differ
+   */
+  private static <T> void assertSameMap(String what, Map<String, T> expected, Map<String, T> actual) {
+    StringBuffer diff = new StringBuffer();
+    Set<String> keys = HashSetFactory.make(expected.keySet());
+    keys.addAll(actual.keySet());
+    for (String k : keys) {
+      T e = expected.get(k);
+      T a = actual.get(k);
+      if (e == null ? a != null : !e.equals(a)) {
+        diff.append(k).append("\n  expected: ").append(e).append("\n  actual: ").append(a).append("\n");
+      }
+    }
+    Assert.assertTrue(what + " differ:\n" + diff, diff.length() == 0);
+  }
+
+  private static void assertSameResult(SSAPropagationCallGraphBuilder expected, SSAPropagationCallGraphBuilder actual) {
+    ExplicitCallGraph ecg = expected.getCallGraph();
+    ExplicitCallGraph acg = actual.getCallGraph();
+    assertSameMap("call graph edges", CallGraphTestUtil.edges(ecg), CallGraphTestUtil.edges(acg));
+    Assert.assertEquals(sites(ecg), sites(acg));
+    assertSameMap("points-to sets", pointsTo(expected.getPointerAnalysis(), ecg), pointsTo(actual.getPointerAnalysis(), acg));
+  }
+
+  /**
+   * edit a method, update, and then undo the edit and update again
+   */
+  private static void checkEdit(boolean zeroOne, boolean cycleElimination, String klass, String selector, String newBodySelector)
+      throws IOException, ClassHierarchyException, IllegalArgumentException, CancelException {
+    EditingIRFactory factory = new EditingIRFactory();
+    SSAPropagationCallGraphBuilder incremental = build(factory, zeroOne, cycleElimination);
+    SSAPropagationCallGraphBuilder original = build(new EditingIRFactory(), zeroOne, false);
+    if (cycleElimination) {
+      Assert.assertTrue(incremental.getPropagationSystem().getNumberOfCollapsedVariables() > 0);
+    }
+
+    IMethod edited = lookup(klass, selector);
+    Collection<IClass> changed = Collections.singleton(edited.getDeclaringClass());
+    factory.edits.put(edited, lookup(klass, newBodySelector));
+    PropagationSystem system = incremental.getPropagationSystem();
+    incremental.updateCallGraph(changed, null);
+    // the constraints outside the affected region are kept
+    Assert.assertSame(system, incremental.getPropagationSystem());
+    assertSameResult(build(factory, zeroOne, false), incremental);
+    // make sure the edit made a difference
+    Assert.assertFalse(CallGraphTestUtil.edges(original.getCallGraph()).equals(
+        CallGraphTestUtil.edges(incremental.getCallGraph())));
+
+    factory.edits.clear();
+    incremental.updateCallGraph(changed, null);
+    assertSameResult(original, incremental);
+  }
+
+  /**
+   * add or remove a class, update, and compare with a build from scratch
+   */
+  private static void checkClassChange(boolean zeroOne, String klass, boolean add) throws IOException, ClassHierarchyException,
+      IllegalArgumentException, CancelException {
+    IClass changed = lookupClass(klass);
+    HidingClassHierarchy hiding = new HidingClassHierarchy(getClassHierarchy());
+    if (add) {
+      hiding.hidden.add(changed);
+    }
+    SSAPropagationCallGraphBuilder incremental = build(new EditingIRFactory(), hiding, zeroOne, false);
+    Map<String, Set<String>> before = CallGraphTestUtil.edges(incremental.getCallGraph());
+    if (add) {
+      hiding.hidden.remove(changed);
+    } else {
+      hiding.hidden.add(changed);
+    }
+    incremental.updateCallGraph(Collections.singleton(changed), null);
+    assertSameResult(build(new EditingIRFactory(), hiding, zeroOne, false), incremental);
+    // make sure the change made a difference
+    Assert.assertFalse(before.equals(CallGraphTestUtil.edges(incremental.getCallGraph())));
+  }
+
+  @Test
+  public void testZeroCFA() throws IOException, ClassHierarchyException, IllegalArgumentException, CancelException {
+    checkEdit(false, false, "Ljava/util/BitSet", "checkInvariants()V", "trimToSize()V");
+  }
+
+  @Test
+  public void testZeroCFACycleElimination() throws IOException, ClassHierarchyException, IllegalArgumentException,
+      CancelException {
+    checkEdit(false, true, "Ljava/util/BitSet", "checkInvariants()V", "trimToSize()V");
+  }
+
+  @Test
+  public void testZeroOneCFA() throws IOException, ClassHierarchyException, IllegalArgumentException, CancelException {
+    checkEdit(true, false, "Ljava/util/BitSet", "checkInvariants()V", "trimToSize()V");
+  }
+
+  @Test
+  public void testAddedClass() throws IOException, ClassHierarchyException, IllegalArgumentException, CancelException {
+    checkClassChange(false, "Ljava/util/Collections$SingletonSet", true);
+  }
+
+  @Test
+  public void testRemovedClass() throws IOException, ClassHierarchyException, IllegalArgumentException, CancelException {
+    checkClassChange(false, "Ljava/util/Collections$SingletonSet", false);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testNotIncremental() throws IOException, ClassHierarchyException, IllegalArgumentException, CancelException {
+    Entrypoint entrypoint = new DefaultEntrypoint(lookup("Ljava/util/BitSet", "valueOf([J)Ljava/util/BitSet;"), getClassHierarchy());
+    AnalysisOptions options = CallGraphTestUtil.makeAnalysisOptions(getScope(), Collections.singleton(entrypoint));
+    SSAPropagationCallGraphBuilder builder = Util.makeZeroCFABuilder(options, new AnalysisCache(), getClassHierarchy(), getScope());
+    builder.makeCallGraph(options, null);
+    builder.updateCallGraph(Collections.<IClass> emptySet(), null);
+  }
+}
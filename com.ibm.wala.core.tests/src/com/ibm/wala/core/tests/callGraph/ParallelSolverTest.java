@@ -0,0 +1,53 @@
+/*******************************************************************************
+ * Copyright (c) 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.callGraph;
+
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.wala.core.tests.util.WalaTestCase;
+import com.ibm.wala.ipa.callgraph.AnalysisOptions;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.callgraph.propagation.SSAPropagationCallGraphBuilder;
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import com.ibm.wala.util.CancelException;
+
+/**
+ * Check that the multi-threaded pointer analysis solver computes the same result as the sequential one.
+ */
+public class ParallelSolverTest extends WalaTestCase {
+
+  public static void main(String[] args) {
+    justThisTest(ParallelSolverTest.class);
+  }
+
+  private static SSAPropagationCallGraphBuilder build(int threads) throws ClassHierarchyException, IOException,
+      IllegalArgumentException, CancelException {
+    AnalysisOptions options = new AnalysisOptions();
+    options.setNumberOfSolverThreads(threads);
+    return CallGraphTestUtil.buildJLex(options, true);
+  }
+
+  @Test
+  public void testJLexZeroOneCFA() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+    SSAPropagationCallGraphBuilder sequential = build(1);
+    SSAPropagationCallGraphBuilder parallel = build(4);
+
+    CallGraph scg = sequential.getCallGraph();
+    CallGraph pcg = parallel.getCallGraph();
+    Assert.assertEquals(scg.getNumberOfNodes(), pcg.getNumberOfNodes());
+    Assert.assertEquals(CallGraphTestUtil.edges(scg), CallGraphTestUtil.edges(pcg));
+    Assert.assertEquals(CallGraphTestUtil.pointsTo(sequential.getPointerAnalysis()), CallGraphTestUtil.pointsTo(parallel
+        .getPointerAnalysis()));
+  }
+}
@@ -0,0 +1,286 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.cha;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.wala.classLoader.ClassLoaderFactoryImpl;
+import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.classLoader.IField;
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.classLoader.JarFileModule;
+import com.ibm.wala.classLoader.Module;
+import com.ibm.wala.classLoader.ModuleEntry;
+import com.ibm.wala.classLoader.ModuleSnapshotCache;
+import com.ibm.wala.classLoader.SnapshotModule;
+import com.ibm.wala.core.tests.callGraph.CallGraphTestUtil;
+import com.ibm.wala.core.tests.util.TestConstants;
+import com.ibm.wala.core.tests.util.WalaTestCase;
+import com.ibm.wala.ipa.callgraph.AnalysisScope;
+import com.ibm.wala.ipa.cha.ClassHierarchy;
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import com.ibm.wala.types.ClassLoaderReference;
+import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.collections.HashSetFactory;
+import com.ibm.wala.util.io.FileUtil;
+
+/**
+ * Tests for {@link ModuleSnapshotCache}
+ */
+public class ModuleSnapshotTest extends WalaTestCase {
+
+  public static void main(String[] args) {
+    justThisTest(ModuleSnapshotTest.class);
+  }
+
+  private static File makeCacheDirectory() throws IOException {
+    File dir = File.createTempFile("snapshots", "");
+    dir.delete();
+    dir.deleteOnExit();
+    return dir;
+  }
+
+  private static Map<String, byte[]> contents(Module M) throws IOException {
+    Map<String, byte[]> result = HashMapFactory.make();
+    for (Iterator<? extends ModuleEntry> it = M.getEntries(); it.hasNext();) {
+      ModuleEntry entry = it.next();
+      result.put(entry.getName(), FileUtil.readBytes(entry.getInputStream()));
+    }
+    return result;
+  }
+
+  private static int countClassFiles(Module M) {
+    int result = 0;
+    for (Iterator<? extends ModuleEntry> it = M.getEntries(); it.hasNext();) {
+      if (it.next().isClassFile()) {
+        result++;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * a snapshot holds the same class files and resources as its jar, and is reused once built
+   */
+  @Test
+  public void testSnapshotContents() throws IOException {
+    AnalysisScope scope = CallGraphTestUtil.makeJ2SEAnalysisScope(TestConstants.WALA_TESTDATA,
+        CallGraphTestUtil.REGRESSION_EXCLUSIONS);
+    File dir = makeCacheDirectory();
+    try {
+      for (Module M : scope.getModules(ClassLoaderReference.Application)) {
+        if (M instanceof JarFileModule) {
+          Module S = new ModuleSnapshotCache(dir).snapshot(M);
+          Assert.assertTrue(S instanceof SnapshotModule);
+          Map<String, byte[]> expected = contents(M);
+          Map<String, byte[]> actual = contents(S);
+          Assert.assertEquals(expected.keySet(), actual.keySet());
+          for (String name : expected.keySet()) {
+            Assert.assertTrue(name, Arrays.equals(expected.get(name), actual.get(name)));
+          }
+          Assert.assertEquals(countClassFiles(M), countClassFiles(S));
+          Assert.assertTrue(countClassFiles(S) < expected.size());
+          for (Iterator<? extends ModuleEntry> it = S.getEntries(); it.hasNext();) {
+            ModuleEntry entry = it.next();
+            Assert.assertEquals(entry.toString(), entry.isClassFile(), ((SnapshotModule) S).getClassHeader(entry) != null);
+          }
+
+          // a second cache over the same directory maps the existing snapshot
+          SnapshotModule again = (SnapshotModule) new ModuleSnapshotCache(dir).snapshot(M);
+          Assert.assertEquals(((SnapshotModule) S).getFile(), again.getFile());
+          Assert.assertEquals(ModuleSnapshotCache.hash(new File(((JarFileModule) M).getAbsolutePath())), again.getHash());
+        }
+      }
+    } finally {
+      FileUtil.deleteContents(dir.getAbsolutePath());
+      dir.delete();
+    }
+  }
+
+  /**
+   * the application classes loaded from snapshots are the classes loaded from the jars
+   */
+  @Test
+  public void testSnapshotHierarchy() throws IOException, ClassHierarchyException {
+    AnalysisScope scope = CallGraphTestUtil.makeJ2SEAnalysisScope(TestConstants.WALA_TESTDATA,
+        CallGraphTestUtil.REGRESSION_EXCLUSIONS);
+    File dir = makeCacheDirectory();
+    try {
+      ClassHierarchy plain = ClassHierarchy.make(scope);
+      ClassLoaderFactoryImpl factory = new ClassLoaderFactoryImpl(scope.getExclusions());
+      factory.setSnapshotCache(new ModuleSnapshotCache(dir));
+      ClassHierarchy snapshot = ClassHierarchy.make(scope, factory);
+
+      Assert.assertTrue(dir.list().length > 0);
+      Assert.assertEquals(plain.getNumberOfClasses(), snapshot.getNumberOfClasses());
+      for (IClass klass : plain) {
+        IClass other = snapshot.lookupClass(klass.getReference());
+        Assert.assertNotNull(klass.toString(), other);
+        Assert.assertEquals(klass.getModifiers(), other.getModifiers());
+        Assert.assertEquals(names(klass.getSuperclass()), names(other.getSuperclass()));
+        Assert.assertEquals(names(klass.getDirectInterfaces()), names(other.getDirectInterfaces()));
+        Assert.assertEquals(describeFields(klass), describeFields(other));
+        Assert.assertEquals(describeMethods(klass), describeMethods(other));
+      }
+    } finally {
+      FileUtil.deleteContents(dir.getAbsolutePath());
+      dir.delete();
+    }
+  }
+
+  /**
+   * a snapshot file left behind in an older format is replaced
+   */
+  @Test
+  public void testStaleSnapshot() throws IOException {
+    AnalysisScope scope = CallGraphTestUtil.makeJ2SEAnalysisScope(TestConstants.WALA_TESTDATA,
+        CallGraphTestUtil.REGRESSION_EXCLUSIONS);
+    File dir = makeCacheDirectory();
+    try {
+      Assert.assertTrue(dir.mkdirs());
+      for (Module M : scope.getModules(ClassLoaderReference.Application)) {
+        if (M instanceof JarFileModule) {
+          String hash = ModuleSnapshotCache.hash(new File(((JarFileModule) M).getAbsolutePath()));
+          DataOutputStream out = new DataOutputStream(new FileOutputStream(new File(dir, hash + ".snapshot")));
+          try {
+            out.writeInt(SnapshotModule.MAGIC);
+            out.writeInt(SnapshotModule.VERSION - 1);
+            out.writeInt(0);
+          } finally {
+            out.close();
+          }
+          Module S = new ModuleSnapshotCache(dir).snapshot(M);
+          Assert.assertTrue(S instanceof SnapshotModule);
+          Assert.assertEquals(hash, ((SnapshotModule) S).getHash());
+          Assert.assertEquals(contents(M).keySet(), contents(S).keySet());
+        }
+      }
+    } finally {
+      FileUtil.deleteContents(dir.getAbsolutePath());
+      dir.delete();
+    }
+  }
+
+  private static String names(IClass klass) {
+    return klass == null ? null : klass.getName().toString();
+  }
+
+  private static Set<String> names(Collection<? extends IClass> classes) {
+    Set<String> result = HashSetFactory.make();
+    for (IClass klass : classes) {
+      result.add(names(klass));
+    }
+    return result;
+  }
+
+  private static Set<String> describeFields(IClass klass) {
+    Set<String> result = HashSetFactory.make();
+    for (IField f : klass.getAllFields()) {
+      result.add(f.getReference() + " " + f.isStatic() + " " + f.isFinal() + " " + f.isPrivate() + " " + f.getAnnotations());
+    }
+    return result;
+  }
+
+  private static Set<String> describeMethods(IClass klass) {
+    Set<String> result = HashSetFactory.make();
+    for (IMethod m : klass.getDeclaredMethods()) {
+      result.add(m.getSignature() + " " + m.isStatic() + " " + m.isAbstract() + " " + m.isPublic() + " " + m.isSynchronized());
+    }
+    return result;
+  }
+
+  /**
+   * write a jar holding one resource, a.txt, with the given contents and modification time
+   */
+  private static void makeJar(File f, String contents, long modified) throws IOException {
+    JarOutputStream out = new JarOutputStream(new FileOutputStream(f));
+    try {
+      JarEntry entry = new JarEntry("a.txt");
+      entry.setTime(0);
+      out.putNextEntry(entry);
+      out.write(contents.getBytes("UTF-8"));
+      out.closeEntry();
+    } finally {
+      out.close();
+    }
+    Assert.assertTrue(f.setLastModified(modified));
+  }
+
+  /**
+   * snapshot the jar and close it, so that it can be rewritten
+   */
+  private static SnapshotModule snapshot(File dir, File jar) throws IOException {
+    JarFile J = new JarFile(jar);
+    try {
+      Module S = new ModuleSnapshotCache(dir).snapshot(new JarFileModule(J));
+      Assert.assertTrue(S instanceof SnapshotModule);
+      return (SnapshotModule) S;
+    } finally {
+      J.close();
+    }
+  }
+
+  private static String snapshotHash(File dir, File jar) throws IOException {
+    return snapshot(dir, jar).getHash();
+  }
+
+  /**
+   * a jar is hashed again, and snapshotted again, once its size or modification time changes
+   */
+  @Test
+  public void testChangedJar() throws IOException {
+    File dir = makeCacheDirectory();
+    File jar = File.createTempFile("snapshot", ".jar");
+    try {
+      // old enough to be stamped
+      long modified = System.currentTimeMillis() - 60 * 60 * 1000;
+      makeJar(jar, "x", modified);
+      String first = snapshotHash(dir, jar);
+      Assert.assertEquals(ModuleSnapshotCache.hash(jar), first);
+      Assert.assertEquals(first, snapshotHash(dir, jar));
+      long length = jar.length();
+
+      // same size, new modification time
+      makeJar(jar, "y", modified + 1000);
+      Assert.assertEquals(length, jar.length());
+      String second = snapshotHash(dir, jar);
+      Assert.assertFalse(first.equals(second));
+      Assert.assertEquals(ModuleSnapshotCache.hash(jar), second);
+
+      // new size, same modification time
+      makeJar(jar, "a longer resource", modified + 1000);
+      String third = snapshotHash(dir, jar);
+      Assert.assertEquals(ModuleSnapshotCache.hash(jar), third);
+
+      // the resource is carried through the snapshot
+      Module S = snapshot(dir, jar);
+      Assert.assertEquals("a longer resource", new String(contents(S).get("a.txt"), "UTF-8"));
+    } finally {
+      jar.delete();
+      FileUtil.deleteContents(dir.getAbsolutePath());
+      dir.delete();
+    }
+  }
+}
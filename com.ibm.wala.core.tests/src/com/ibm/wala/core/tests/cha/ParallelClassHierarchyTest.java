@@ -0,0 +1,64 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.cha;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.core.tests.callGraph.CallGraphTestUtil;
+import com.ibm.wala.core.tests.util.TestConstants;
+import com.ibm.wala.core.tests.util.WalaTestCase;
+import com.ibm.wala.ipa.callgraph.AnalysisScope;
+import com.ibm.wala.ipa.cha.ClassHierarchy;
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.collections.HashSetFactory;
+
+/**
+ * Check that parsing class files with several threads yields the same class hierarchy as the sequential build.
+ */
+public class ParallelClassHierarchyTest extends WalaTestCase {
+
+  public static void main(String[] args) {
+    justThisTest(ParallelClassHierarchyTest.class);
+  }
+
+  /**
+   * Summarize a class hierarchy by printed class, mapped to its printed superclass and interfaces
+   */
+  private static Map<String, Set<String>> summarize(ClassHierarchy cha) {
+    Map<String, Set<String>> result = HashMapFactory.make();
+    for (IClass klass : cha) {
+      Set<String> supers = HashSetFactory.make();
+      supers.add("super " + klass.getSuperclass());
+      for (IClass i : klass.getDirectInterfaces()) {
+        supers.add(i.toString());
+      }
+      result.put(klass.toString(), supers);
+    }
+    return result;
+  }
+
+  @Test
+  public void testWalaTestdata() throws IOException, ClassHierarchyException {
+    AnalysisScope scope = CallGraphTestUtil.makeJ2SEAnalysisScope(TestConstants.WALA_TESTDATA,
+        CallGraphTestUtil.REGRESSION_EXCLUSIONS);
+    ClassHierarchy sequential = ClassHierarchy.make(scope);
+    ClassHierarchy parallel = ClassHierarchy.make(scope, 4);
+    Assert.assertEquals(sequential.getNumberOfClasses(), parallel.getNumberOfClasses());
+    Assert.assertEquals(summarize(sequential), summarize(parallel));
+  }
+}
@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.wala.core.tests.util.WalaTestCase;
+import com.ibm.wala.util.intset.BitVectorIntSet;
+import com.ibm.wala.util.intset.BitVectorRepository;
+
+/**
+ * Tests {@link BitVectorRepository}.
+ */
+public class BitVectorRepositoryTest extends WalaTestCase {
+
+  public static void main(String[] args) {
+    justThisTest(BitVectorRepositoryTest.class);
+  }
+
+  /**
+   * @return a vector with the elements base, base + stride, ... below limit
+   */
+  private static BitVectorIntSet make(int base, int stride, int limit) {
+    BitVectorIntSet result = new BitVectorIntSet();
+    for (int i = base; i < limit; i += stride) {
+      result.add(i);
+    }
+    return result;
+  }
+
+  @Test
+  public void testSameContents() {
+    BitVectorIntSet a = make(7, 3, 500);
+    BitVectorIntSet b = make(7, 3, 500);
+    // leave trailing zero words in b
+    b.add(100000);
+    b.remove(100000);
+    BitVectorIntSet shared = BitVectorRepository.findOrCreateSharedSubset(a);
+    Assert.assertNotSame(a, shared);
+    Assert.assertTrue(shared.sameValue(a));
+    Assert.assertSame(shared, BitVectorRepository.findOrCreateSharedSubset(b));
+  }
+
+  @Test
+  public void testSubset() {
+    BitVectorIntSet a = make(11, 5, 1000);
+    BitVectorIntSet shared = BitVectorRepository.findOrCreateSharedSubset(a);
+    BitVectorIntSet b = make(11, 5, 1000);
+    b.add(1);
+    b.add(2);
+    Assert.assertSame(shared, BitVectorRepository.findOrCreateSharedSubset(b));
+  }
+
+  /**
+   * many threads sharing the same vectors must all see the same representatives
+   */
+  @Test
+  public void testConcurrentSharing() throws InterruptedException {
+    final int nThreads = 8;
+    final int nVectors = 500;
+    final BitVectorIntSet[][] results = new BitVectorIntSet[nThreads][nVectors];
+    Thread[] threads = new Thread[nThreads];
+    for (int t = 0; t < nThreads; t++) {
+      final int me = t;
+      threads[t] = new Thread() {
+        @Override
+        public void run() {
+          for (int i = 0; i < nVectors; i++) {
+            results[me][i] = BitVectorRepository.findOrCreateSharedSubset(make(20000 + i, 1 + i % 7, 30000 + i));
+          }
+        }
+      };
+      threads[t].start();
+    }
+    for (Thread t : threads) {
+      t.join();
+    }
+    for (int t = 1; t < nThreads; t++) {
+      for (int i = 0; i < nVectors; i++) {
+        Assert.assertSame(results[0][i], results[t][i]);
+      }
+    }
+  }
+}
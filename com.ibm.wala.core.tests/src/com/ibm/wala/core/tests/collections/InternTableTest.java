@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.wala.core.tests.util.WalaTestCase;
+import com.ibm.wala.util.collections.InternTable;
+import com.ibm.wala.util.strings.Atom;
+
+/**
+ * Tests {@link InternTable} and the dictionaries built on it.
+ */
+public class InternTableTest extends WalaTestCase {
+
+  public static void main(String[] args) {
+    justThisTest(InternTableTest.class);
+  }
+
+  private static void checkCanonical(InternTable<String, Object> table) {
+    Object first = new Object();
+    Assert.assertSame(first, table.intern("a", first));
+    Assert.assertSame(first, table.intern("a", new Object()));
+    Assert.assertSame(first, table.get("a"));
+    Assert.assertNull(table.get("b"));
+  }
+
+  @Test
+  public void testStrong() {
+    checkCanonical(InternTable.<String, Object> make(false));
+  }
+
+  @Test
+  public void testWeak() {
+    checkCanonical(InternTable.<String, Object> make(true));
+  }
+
+  /**
+   * many threads creating the same atoms must all see the same canonical objects
+   */
+  @Test
+  public void testConcurrentAtoms() throws InterruptedException {
+    final int nThreads = 8;
+    final int nAtoms = 1000;
+    final Atom[][] results = new Atom[nThreads][nAtoms];
+    Thread[] threads = new Thread[nThreads];
+    for (int t = 0; t < nThreads; t++) {
+      final int me = t;
+      threads[t] = new Thread() {
+        @Override
+        public void run() {
+          for (int i = 0; i < nAtoms; i++) {
+            results[me][i] = Atom.findOrCreateAsciiAtom("InternTableTest" + i);
+          }
+        }
+      };
+      threads[t].start();
+    }
+    for (Thread t : threads) {
+      t.join();
+    }
+    for (int t = 1; t < nThreads; t++) {
+      for (int i = 0; i < nAtoms; i++) {
+        Assert.assertSame(results[0][i], results[t][i]);
+      }
+    }
+  }
+}
@@ -0,0 +1,160 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.collections;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.wala.core.tests.util.WalaTestCase;
+import com.ibm.wala.util.intset.BitVectorIntSet;
+import com.ibm.wala.util.intset.IntIterator;
+import com.ibm.wala.util.intset.IntSet;
+import com.ibm.wala.util.intset.MutableIntSet;
+import com.ibm.wala.util.intset.RoaringMutableIntSet;
+import com.ibm.wala.util.intset.RoaringMutableIntSetFactory;
+
+/**
+ * Tests {@link RoaringMutableIntSet} against {@link BitVectorIntSet}, on sets with array, bitmap and run chunks.
+ */
+public class RoaringMutableIntSetTest extends WalaTestCase {
+
+  public static void main(String[] args) {
+    justThisTest(RoaringMutableIntSetTest.class);
+  }
+
+  private static final RoaringMutableIntSetFactory factory = new RoaringMutableIntSetFactory();
+
+  /**
+   * add the same random elements to both sets: a few spread out ones, a dense block, and some intervals
+   */
+  private static void fill(Random r, MutableIntSet expected, RoaringMutableIntSet actual) {
+    int base = r.nextInt(4) << 16;
+    int sparse = r.nextInt(200);
+    int dense = r.nextBoolean() ? r.nextInt(10000) : 0;
+    for (int i = 0; i < sparse; i++) {
+      int x = r.nextInt(1 << 20);
+      Assert.assertEquals(expected.add(x), actual.add(x));
+    }
+    for (int i = 0; i < dense; i++) {
+      int x = base + r.nextInt(1 << 16);
+      Assert.assertEquals(expected.add(x), actual.add(x));
+    }
+    if (r.nextInt(4) == 0) {
+      int start = r.nextInt(1 << 18);
+      int length = r.nextInt(1 << 17);
+      for (int x = start; x < start + length; x++) {
+        expected.add(x);
+        actual.add(x);
+      }
+    }
+  }
+
+  private static void assertSame(IntSet expected, RoaringMutableIntSet actual) {
+    Assert.assertEquals(expected.size(), actual.size());
+    Assert.assertEquals(expected.isEmpty() ? -1 : expected.max(), actual.max());
+    IntIterator e = expected.intIterator();
+    IntIterator a = actual.intIterator();
+    while (e.hasNext()) {
+      Assert.assertTrue(a.hasNext());
+      Assert.assertEquals(e.next(), a.next());
+    }
+    Assert.assertFalse(a.hasNext());
+  }
+
+  @Test
+  public void testRandomOperations() {
+    Random r = new Random(42);
+    for (int round = 0; round < 100; round++) {
+      BitVectorIntSet ea = new BitVectorIntSet();
+      BitVectorIntSet eb = new BitVectorIntSet();
+      RoaringMutableIntSet a = factory.make();
+      RoaringMutableIntSet b = factory.make();
+      fill(r, ea, a);
+      fill(r, eb, b);
+      if (r.nextBoolean()) {
+        a.runOptimize();
+      }
+      if (r.nextBoolean()) {
+        // make them overlap
+        for (IntIterator it = ea.intIterator(); it.hasNext();) {
+          int x = it.next();
+          if (r.nextBoolean()) {
+            eb.add(x);
+            b.add(x);
+          }
+        }
+      }
+      assertSame(ea, a);
+      assertSame(eb, b);
+
+      for (int i = 0; i < 1000; i++) {
+        int x = r.nextInt(1 << 20);
+        Assert.assertEquals(ea.contains(x), a.contains(x));
+      }
+      Assert.assertEquals(ea.containsAny(eb), a.containsAny(b));
+      Assert.assertEquals(ea.isSubset(eb), a.isSubset(b));
+      Assert.assertTrue(a.isSubset(a.union(b)));
+      Assert.assertTrue(a.sameValue(factory.makeCopy(a)));
+      Assert.assertTrue(a.sameValue(ea));
+
+      assertSame(ea.intersection(eb), a.intersection(b));
+      assertSame(ea.union(eb), a.union(b));
+      BitVectorIntSet ed = new BitVectorIntSet(ea);
+      ed.removeAll(eb);
+      assertSame(ed, RoaringMutableIntSet.diff(a, b));
+      // the same, through the generic paths
+      assertSame(ea.intersection(eb), a.intersection(eb));
+      assertSame(ea.union(eb), a.union(eb));
+      Assert.assertEquals(ea.containsAny(eb), a.containsAny(eb));
+
+      BitVectorIntSet filter = new BitVectorIntSet();
+      RoaringMutableIntSet roaringFilter = factory.make();
+      fill(r, filter, roaringFilter);
+      RoaringMutableIntSet c = factory.makeCopy(a);
+      BitVectorIntSet ec = new BitVectorIntSet(ea);
+      Assert.assertEquals(ec.addAllInIntersection(eb, filter), c.addAllInIntersection(b, roaringFilter));
+      assertSame(ec, c);
+
+      c.intersectWith(roaringFilter);
+      ec.intersectWith(filter);
+      assertSame(ec, c);
+
+      Assert.assertEquals(ea.addAll(eb), a.addAll(b));
+      assertSame(ea, a);
+      Assert.assertFalse(a.addAll(b));
+
+      for (IntIterator it = eb.intIterator(); it.hasNext();) {
+        int x = it.next();
+        if (r.nextInt(3) != 0) {
+          Assert.assertEquals(ea.remove(x), a.remove(x));
+        }
+      }
+      assertSame(ea, a);
+    }
+  }
+
+  @Test
+  public void testFullChunk() {
+    RoaringMutableIntSet a = factory.make();
+    for (int x = 1 << 16; x < 2 << 16; x++) {
+      a.add(x);
+    }
+    Assert.assertEquals(1 << 16, a.size());
+    Assert.assertEquals((2 << 16) - 1, a.max());
+    Assert.assertTrue(a.remove(70000));
+    Assert.assertFalse(a.contains(70000));
+    Assert.assertEquals((1 << 16) - 1, a.size());
+    Assert.assertTrue(a.add(70000));
+    Assert.assertTrue(factory.make(new int[] { 65536, 70000, 131071 }).isSubset(a));
+  }
+}
@@ -37,9 +37,14 @@
  */
 package com.ibm.wala.core.tests.demandpa;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.junit.AfterClass;
 import org.junit.Assert;
@@ -47,7 +52,9 @@ import org.junit.Assert;
 import com.ibm.wala.classLoader.IClass;
 import com.ibm.wala.classLoader.NewSiteReference;
 import com.ibm.wala.core.tests.callGraph.CallGraphTestUtil;
+import com.ibm.wala.demandpa.alg.DemandQueryCache;
 import com.ibm.wala.demandpa.alg.DemandRefinementPointsTo;
+import com.ibm.wala.demandpa.alg.DemandRefinementPointsTo.PointsToResult;
 import com.ibm.wala.demandpa.alg.refinepolicy.NeverRefineCGPolicy;
 import com.ibm.wala.demandpa.alg.refinepolicy.OnlyArraysPolicy;
 import com.ibm.wala.demandpa.alg.refinepolicy.SinglePassRefinementPolicy;
@@ -78,7 +85,11 @@ import com.ibm.wala.types.ClassLoaderReference;
 import com.ibm.wala.types.Descriptor;
 import com.ibm.wala.types.TypeReference;
 import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.Predicate;
+import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.collections.HashSetFactory;
 import com.ibm.wala.util.collections.Iterator2Iterable;
+import com.ibm.wala.util.collections.Pair;
 import com.ibm.wala.util.debug.Assertions;
 import com.ibm.wala.util.intset.IntSet;
 import com.ibm.wala.util.strings.Atom;
@@ -223,6 +234,89 @@ public abstract class AbstractPtrTest {
     return pointsTo;
   }
 
+  /**
+   * answer queries for all locals of the application methods of mainClass as one batch on several threads, and check the answers
+   * against those of the same batch answered on one thread by a fresh analysis
+   */
+  protected void doBatchPointsToTest(String mainClass) throws ClassHierarchyException, IllegalArgumentException, CancelException,
+      IOException {
+    final DemandRefinementPointsTo dmp = makeDemandPointerAnalysis(mainClass);
+    List<PointerKey> pks = getApplicationLocals(dmp);
+    Map<PointerKey, Pair<PointsToResult, Collection<InstanceKey>>> batch = dmp.getPointsTo(pks, Predicate.<InstanceKey> falsePred(),
+        4, null);
+    Assert.assertEquals(pks.size(), batch.size());
+
+    // the two analyses have their own call graphs, so match up their answers by name
+    final DemandRefinementPointsTo fresh = makeDemandPointerAnalysis(mainClass);
+    Map<String, Pair<PointsToResult, Collection<InstanceKey>>> expected = HashMapFactory.make();
+    for (Map.Entry<PointerKey, Pair<PointsToResult, Collection<InstanceKey>>> e : fresh.getPointsTo(getApplicationLocals(fresh),
+        Predicate.<InstanceKey> falsePred(), 1, null).entrySet()) {
+      expected.put(e.getKey().toString(), e.getValue());
+    }
+    for (PointerKey pk : pks) {
+      Pair<PointsToResult, Collection<InstanceKey>> e = expected.get(pk.toString());
+      Pair<PointsToResult, Collection<InstanceKey>> actual = batch.get(pk);
+      Assert.assertEquals(pk.toString(), e.fst, actual.fst);
+      Assert.assertEquals(pk.toString(), toStrings(e.snd), toStrings(actual.snd));
+      // a later query for the same variable is answered from the passes the batch ran
+      Assert.assertEquals(pk.toString(), actual, dmp.getPointsTo(pk, Predicate.<InstanceKey> falsePred()));
+    }
+  }
+
+  /**
+   * answer queries for all locals of the application methods of mainClass with a query cache, and check that a fresh analysis
+   * answers them all from the saved cache, with the same answers
+   */
+  protected void doQueryCacheTest(String mainClass) throws ClassHierarchyException, IllegalArgumentException, CancelException,
+      IOException {
+    File f = File.createTempFile("wala", ".dqc");
+    try {
+      final DemandRefinementPointsTo dmp = makeDemandPointerAnalysis(mainClass);
+      DemandQueryCache cache = DemandQueryCache.load(f, mainClass);
+      dmp.setQueryCache(cache);
+      Map<String, Set<String>> expected = HashMapFactory.make();
+      for (PointerKey pk : getApplicationLocals(dmp)) {
+        expected.put(pk.toString(), toStrings(dmp.getPointsTo(pk, Predicate.<InstanceKey> falsePred()).snd));
+      }
+      Assert.assertEquals(0, cache.getHits());
+      cache.save(f);
+
+      final DemandRefinementPointsTo fresh = makeDemandPointerAnalysis(mainClass);
+      cache = DemandQueryCache.load(f, mainClass);
+      Assert.assertEquals(expected.size(), cache.size());
+      fresh.setQueryCache(cache);
+      for (PointerKey pk : getApplicationLocals(fresh)) {
+        Assert.assertEquals(pk.toString(), expected.get(pk.toString()), toStrings(fresh.getPointsTo(pk,
+            Predicate.<InstanceKey> falsePred()).snd));
+      }
+      Assert.assertEquals(expected.size(), cache.getHits());
+      Assert.assertEquals(0, DemandQueryCache.load(f, "another configuration").size());
+    } finally {
+      f.delete();
+    }
+  }
+
+  private static List<PointerKey> getApplicationLocals(DemandRefinementPointsTo dmp) {
+    List<PointerKey> result = new ArrayList<PointerKey>();
+    for (CGNode n : dmp.getBaseCallGraph()) {
+      IR ir = n.getIR();
+      if (ir != null && n.getMethod().getDeclaringClass().getClassLoader().getReference().equals(ClassLoaderReference.Application)) {
+        for (int vn = 1; vn <= ir.getSymbolTable().getMaxValueNumber(); vn++) {
+          result.add(dmp.getHeapModel().getPointerKeyForLocal(n, vn));
+        }
+      }
+    }
+    return result;
+  }
+
+  private static Set<String> toStrings(Collection<?> c) {
+    Set<String> result = HashSetFactory.make();
+    for (Object o : c) {
+      result.add(o.toString());
+    }
+    return result;
+  }
+
   protected DemandRefinementPointsTo makeDemandPointerAnalysis(String mainClass) throws ClassHierarchyException,
       IllegalArgumentException, CancelException, IOException {
     AnalysisScope scope = findOrCreateAnalysisScope();
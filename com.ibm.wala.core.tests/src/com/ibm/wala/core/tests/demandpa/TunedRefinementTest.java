@@ -137,6 +137,16 @@ public class TunedRefinementTest extends AbstractPtrTest {
     doPointsToSizeTest(TestInfo.TEST_LINKED_LIST, 1);
   }
 
+  @Test
+  public void testBatchQueries() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+    doBatchPointsToTest(TestInfo.TEST_HASH_SET);
+  }
+
+  @Test
+  public void testQueryCache() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+    doQueryCacheTest(TestInfo.TEST_HASH_SET);
+  }
+
   @Override
   protected StateMachineFactory<IFlowLabel> getStateMachineFactory() {
     return new ContextSensitiveStateMachine.Factory();
@@ -0,0 +1,160 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.ir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.core.tests.callGraph.CallGraphTestUtil;
+import com.ibm.wala.core.tests.util.WalaTestCase;
+import com.ibm.wala.ipa.callgraph.AnalysisOptions;
+import com.ibm.wala.ipa.callgraph.AnalysisScope;
+import com.ibm.wala.ipa.callgraph.impl.Everywhere;
+import com.ibm.wala.ipa.cha.ClassHierarchy;
+import com.ibm.wala.ssa.CompactIR;
+import com.ibm.wala.ssa.DefaultIRFactory;
+import com.ibm.wala.ssa.IR;
+import com.ibm.wala.ssa.IRSpillStore;
+import com.ibm.wala.ssa.PackedInstructions;
+import com.ibm.wala.ssa.SSACache;
+import com.ibm.wala.ssa.SSACache.EvictionPolicy;
+import com.ibm.wala.ssa.SSAInstruction;
+import com.ibm.wala.ssa.SSAOptions;
+import com.ibm.wala.types.ClassLoaderReference;
+import com.ibm.wala.types.TypeReference;
+import com.ibm.wala.util.config.AnalysisScopeReader;
+import com.ibm.wala.util.io.FileProvider;
+
+/**
+ * Tests for {@link CompactIR} and {@link IRSpillStore}
+ */
+public class CompactIRTest extends WalaTestCase {
+
+  private static final SSAOptions options = new AnalysisOptions().getSSAOptions();
+
+  private static final String[] classes = { "Ljava/lang/String", "Ljava/lang/Character", "Ljava/util/HashMap",
+      "Ljava/util/TreeMap", "Ljava/util/regex/Pattern" };
+
+  private static List<IMethod> methods;
+
+  public static void main(String[] args) {
+    justThisTest(CompactIRTest.class);
+  }
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    AnalysisScope scope = AnalysisScopeReader.makePrimordialScope((new FileProvider())
+        .getFile(CallGraphTestUtil.REGRESSION_EXCLUSIONS));
+    ClassHierarchy cha = ClassHierarchy.make(scope);
+    methods = new ArrayList<IMethod>();
+    for (String name : classes) {
+      IClass klass = cha.lookupClass(TypeReference.findOrCreate(ClassLoaderReference.Primordial, name));
+      Assert.assertNotNull(name, klass);
+      for (IMethod m : klass.getDeclaredMethods()) {
+        if (!m.isAbstract() && !m.isNative()) {
+          methods.add(m);
+        }
+      }
+    }
+  }
+
+  /**
+   * decoding an encoded IR must give back the same IR
+   */
+  @Test
+  public void testRoundTrip() {
+    DefaultIRFactory factory = new DefaultIRFactory();
+    for (IMethod m : methods) {
+      IR ir = factory.makeIR(m, Everywhere.EVERYWHERE, options);
+      byte[] record = CompactIR.encode(ir);
+      Assert.assertNotNull(m.toString(), record);
+      IR decoded = CompactIR.decode(m, options, ByteBuffer.wrap(record));
+      Assert.assertEquals(ir.toString(), decoded.toString());
+      Assert.assertEquals(ir.getSymbolTable().getMaxValueNumber(), decoded.getSymbolTable().getMaxValueNumber());
+      assertSameInstructions(ir, CompactIR.decodeInstructions(m, ByteBuffer.wrap(record)));
+    }
+  }
+
+  private static void assertSameInstructions(IR ir, PackedInstructions packed) {
+    SSAInstruction[] instructions = ir.getInstructions();
+    Assert.assertEquals(instructions.length, packed.size());
+    for (int i = 0; i < instructions.length; i++) {
+      SSAInstruction view = packed.get(i);
+      if (instructions[i] == null) {
+        Assert.assertNull(view);
+      } else {
+        Assert.assertEquals(instructions[i].toString(ir.getSymbolTable()), view.toString(ir.getSymbolTable()));
+      }
+    }
+  }
+
+  /**
+   * a cache with a small budget must rehydrate spilled IRs, rather than build them again
+   */
+  @Test
+  public void testOffHeapSpill() throws IOException {
+    IRSpillStore store = IRSpillStore.makeOffHeap(64 * 1024);
+    try {
+      checkSpill(store);
+    } finally {
+      store.close();
+    }
+  }
+
+  @Test
+  public void testMappedSpill() throws IOException {
+    File f = File.createTempFile("wala", ".spill");
+    try {
+      IRSpillStore store = IRSpillStore.makeMapped(f, 64 * 1024);
+      try {
+        checkSpill(store);
+      } finally {
+        store.close();
+      }
+    } finally {
+      f.delete();
+    }
+  }
+
+  private static void checkSpill(IRSpillStore store) {
+    DefaultIRFactory factory = new DefaultIRFactory();
+    SSACache cache = new SSACache(factory, 1000, EvictionPolicy.LRU);
+    cache.setSpillStore(store);
+    for (IMethod m : methods) {
+      cache.findOrCreateIR(m, Everywhere.EVERYWHERE, options);
+    }
+    Assert.assertTrue(cache.getIRStatistics().getEvictions() > 0);
+    Assert.assertTrue(store.size() > 0);
+    for (IMethod m : methods) {
+      IR ir = cache.findOrCreateIR(m, Everywhere.EVERYWHERE, options);
+      Assert.assertEquals(factory.makeIR(m, Everywhere.EVERYWHERE, options).toString(), ir.toString());
+    }
+    Assert.assertTrue(store.getRehydrationCount() > 0);
+    // spilled IRs give their instructions without being rebuilt or rehydrated
+    long rehydrations = store.getRehydrationCount();
+    long misses = cache.getIRStatistics().getMisses();
+    for (IMethod m : methods) {
+      assertSameInstructions(factory.makeIR(m, Everywhere.EVERYWHERE, options),
+          cache.findOrCreatePackedInstructions(m, Everywhere.EVERYWHERE, options));
+    }
+    Assert.assertEquals(rehydrations, store.getRehydrationCount());
+    Assert.assertEquals(misses, cache.getIRStatistics().getMisses());
+  }
+}
@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.ir;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.core.tests.callGraph.CallGraphTestUtil;
+import com.ibm.wala.core.tests.util.WalaTestCase;
+import com.ibm.wala.ipa.callgraph.AnalysisOptions;
+import com.ibm.wala.ipa.callgraph.AnalysisScope;
+import com.ibm.wala.ipa.callgraph.impl.Everywhere;
+import com.ibm.wala.ipa.cha.ClassHierarchy;
+import com.ibm.wala.ssa.DefaultIRFactory;
+import com.ibm.wala.ssa.IR;
+import com.ibm.wala.ssa.PackedInstructions;
+import com.ibm.wala.ssa.SSAInstruction;
+import com.ibm.wala.ssa.SSAInvokeInstruction;
+import com.ibm.wala.ssa.SSAOptions;
+import com.ibm.wala.types.ClassLoaderReference;
+import com.ibm.wala.types.TypeReference;
+import com.ibm.wala.util.config.AnalysisScopeReader;
+import com.ibm.wala.util.io.FileProvider;
+
+/**
+ * Tests for {@link PackedInstructions}
+ */
+public class PackedInstructionsTest extends WalaTestCase {
+
+  private static final SSAOptions options = new AnalysisOptions().getSSAOptions();
+
+  private static final String[] classes = { "Ljava/lang/String", "Ljava/lang/Character", "Ljava/util/HashMap",
+      "Ljava/util/TreeMap", "Ljava/util/regex/Pattern" };
+
+  private static List<IR> irs;
+
+  public static void main(String[] args) {
+    justThisTest(PackedInstructionsTest.class);
+  }
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    AnalysisScope scope = AnalysisScopeReader.makePrimordialScope((new FileProvider())
+        .getFile(CallGraphTestUtil.REGRESSION_EXCLUSIONS));
+    ClassHierarchy cha = ClassHierarchy.make(scope);
+    DefaultIRFactory factory = new DefaultIRFactory();
+    irs = new ArrayList<IR>();
+    for (String name : classes) {
+      IClass klass = cha.lookupClass(TypeReference.findOrCreate(ClassLoaderReference.Primordial, name));
+      Assert.assertNotNull(name, klass);
+      for (IMethod m : klass.getDeclaredMethods()) {
+        if (!m.isAbstract() && !m.isNative()) {
+          irs.add(factory.makeIR(m, Everywhere.EVERYWHERE, options));
+        }
+      }
+    }
+  }
+
+  /**
+   * the views of packed instructions must print, and use and define values, like the instructions they were packed from
+   */
+  @Test
+  public void testViews() {
+    for (IR ir : irs) {
+      SSAInstruction[] instructions = ir.getInstructions();
+      PackedInstructions packed = PackedInstructions.make(ir);
+      Assert.assertNotNull(ir.getMethod().toString(), packed);
+      Assert.assertEquals(instructions.length, packed.size());
+      for (int i = 0; i < instructions.length; i++) {
+        SSAInstruction s = instructions[i];
+        SSAInstruction view = packed.get(i);
+        Assert.assertEquals(s != null, packed.hasInstruction(i));
+        if (s == null) {
+          Assert.assertNull(view);
+          continue;
+        }
+        Assert.assertEquals(s, view);
+        Assert.assertEquals(s.getClass(), view.getClass());
+        Assert.assertEquals(s.toString(ir.getSymbolTable()), view.toString(ir.getSymbolTable()));
+        Assert.assertEquals(s.isPEI(), view.isPEI());
+        Assert.assertEquals(s.getNumberOfDefs(), packed.getNumberOfDefs(i));
+        Assert.assertEquals(s.getNumberOfUses(), packed.getNumberOfUses(i));
+        for (int j = 0; j < s.getNumberOfDefs(); j++) {
+          Assert.assertEquals(s.getDef(j), packed.getDef(i, j));
+          Assert.assertEquals(s.getDef(j), view.getDef(j));
+        }
+        for (int j = 0; j < s.getNumberOfUses(); j++) {
+          Assert.assertEquals(s.getUse(j), packed.getUse(i, j));
+          Assert.assertEquals(s.getUse(j), view.getUse(j));
+        }
+      }
+    }
+  }
+
+  /**
+   * visitors must see the same instructions in packed form
+   */
+  @Test
+  public void testVisitor() {
+    for (IR ir : irs) {
+      final List<String> expected = new ArrayList<String>();
+      final List<String> actual = new ArrayList<String>();
+      ir.visitNormalInstructions(new SSAInstruction.Visitor() {
+        @Override
+        public void visitInvoke(SSAInvokeInstruction instruction) {
+          expected.add(instruction.getCallSite().toString());
+        }
+      });
+      PackedInstructions.make(ir).visitAll(new SSAInstruction.Visitor() {
+        @Override
+        public void visitInvoke(SSAInvokeInstruction instruction) {
+          actual.add(instruction.getCallSite().toString());
+        }
+      });
+      Assert.assertEquals(expected, actual);
+    }
+  }
+}
@@ -0,0 +1,135 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.ir;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.core.tests.callGraph.CallGraphTestUtil;
+import com.ibm.wala.core.tests.util.WalaTestCase;
+import com.ibm.wala.ipa.callgraph.AnalysisOptions;
+import com.ibm.wala.ipa.callgraph.AnalysisScope;
+import com.ibm.wala.ipa.callgraph.impl.Everywhere;
+import com.ibm.wala.ipa.cha.ClassHierarchy;
+import com.ibm.wala.ssa.DefUse;
+import com.ibm.wala.ssa.DefaultIRFactory;
+import com.ibm.wala.ssa.IR;
+import com.ibm.wala.ssa.SSACache;
+import com.ibm.wala.ssa.SSACache.EvictionPolicy;
+import com.ibm.wala.ssa.SSAOptions;
+import com.ibm.wala.types.TypeReference;
+import com.ibm.wala.util.config.AnalysisScopeReader;
+import com.ibm.wala.util.io.FileProvider;
+
+/**
+ * Tests for the concurrent, bounded {@link SSACache}
+ */
+public class SSACacheTest extends WalaTestCase {
+
+  private static final SSAOptions options = new AnalysisOptions().getSSAOptions();
+
+  private static List<IMethod> methods;
+
+  public static void main(String[] args) {
+    justThisTest(SSACacheTest.class);
+  }
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    AnalysisScope scope = AnalysisScopeReader.makePrimordialScope((new FileProvider())
+        .getFile(CallGraphTestUtil.REGRESSION_EXCLUSIONS));
+    ClassHierarchy cha = ClassHierarchy.make(scope);
+    IClass string = cha.lookupClass(TypeReference.JavaLangString);
+    methods = new ArrayList<IMethod>();
+    for (IMethod m : string.getDeclaredMethods()) {
+      if (!m.isAbstract() && !m.isNative()) {
+        methods.add(m);
+      }
+    }
+  }
+
+  /**
+   * threads asking for the same IRs concurrently must all get the same objects
+   */
+  @Test
+  public void testConcurrentIRs() throws InterruptedException {
+    final SSACache cache = new SSACache(new DefaultIRFactory());
+    final int nThreads = 8;
+    final IR[][] irs = new IR[nThreads][methods.size()];
+    final DefUse[][] dus = new DefUse[nThreads][methods.size()];
+    Thread[] threads = new Thread[nThreads];
+    for (int t = 0; t < nThreads; t++) {
+      final int me = t;
+      threads[t] = new Thread() {
+        @Override
+        public void run() {
+          for (int i = 0; i < methods.size(); i++) {
+            // start at different methods, so that some IRs really are built in parallel
+            int j = (i + me * 7) % methods.size();
+            irs[me][j] = cache.findOrCreateIR(methods.get(j), Everywhere.EVERYWHERE, options);
+            dus[me][j] = cache.findOrCreateDU(methods.get(j), Everywhere.EVERYWHERE, options);
+          }
+        }
+      };
+      threads[t].start();
+    }
+    for (Thread t : threads) {
+      t.join();
+    }
+    for (int t = 0; t < nThreads; t++) {
+      for (int i = 0; i < methods.size(); i++) {
+        Assert.assertNotNull(irs[t][i]);
+        Assert.assertSame(irs[0][i], irs[t][i]);
+        Assert.assertSame(dus[0][i], dus[t][i]);
+      }
+    }
+    Assert.assertEquals(0, cache.getIRStatistics().getEvictions());
+    Assert.assertTrue(cache.getIRStatistics().getHits() > 0);
+  }
+
+  /**
+   * the cache never holds more than its budget
+   */
+  @Test
+  public void testBudget() {
+    SSACache cache = new SSACache(new DefaultIRFactory(), 200, EvictionPolicy.LRU);
+    for (IMethod m : methods) {
+      cache.findOrCreateIR(m, Everywhere.EVERYWHERE, options);
+      Assert.assertTrue(cache.getIRStatistics().getWeight() <= 200);
+    }
+    Assert.assertTrue(cache.getIRStatistics().getEvictions() > 0);
+    Assert.assertEquals(methods.size(), cache.getIRStatistics().getMisses());
+
+    cache.setBudget(0);
+    Assert.assertEquals(0, cache.getIRStatistics().getWeight());
+  }
+
+  /**
+   * with LFU eviction, a frequently used IR survives a scan through many others
+   */
+  @Test
+  public void testLFU() {
+    SSACache cache = new SSACache(new DefaultIRFactory(), 400, EvictionPolicy.LFU);
+    IMethod hot = methods.get(0);
+    IR ir = cache.findOrCreateIR(hot, Everywhere.EVERYWHERE, options);
+    for (IMethod m : methods) {
+      Assert.assertSame(ir, cache.findOrCreateIR(hot, Everywhere.EVERYWHERE, options));
+      cache.findOrCreateIR(m, Everywhere.EVERYWHERE, options);
+    }
+    Assert.assertTrue(cache.getIRStatistics().getEvictions() > 0);
+  }
+}
@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.shrike;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.wala.classLoader.Module;
+import com.ibm.wala.classLoader.ModuleEntry;
+import com.ibm.wala.core.tests.callGraph.CallGraphTestUtil;
+import com.ibm.wala.core.tests.util.WalaTestCase;
+import com.ibm.wala.ipa.callgraph.AnalysisScope;
+import com.ibm.wala.shrikeCT.ClassConstants;
+import com.ibm.wala.shrikeCT.ClassReader;
+import com.ibm.wala.shrikeCT.ClassWriter;
+import com.ibm.wala.shrikeCT.CodeReader;
+import com.ibm.wala.shrikeCT.ConstantPoolParser;
+import com.ibm.wala.shrikeCT.InvalidClassFileException;
+import com.ibm.wala.types.ClassLoaderReference;
+import com.ibm.wala.util.config.AnalysisScopeReader;
+import com.ibm.wala.util.io.FileProvider;
+import com.ibm.wala.util.io.FileUtil;
+
+/**
+ * Check that reading a class file in place from a direct {@link ByteBuffer} gives the same results as reading it from an array.
+ */
+public class ClassReaderBufferTest extends WalaTestCase {
+
+  public static void main(String[] args) {
+    justThisTest(ClassReaderBufferTest.class);
+  }
+
+  private static final int MAX_CLASSES = 1000;
+
+  private static void assertSameClass(String name, ClassReader expected, ClassReader actual) throws InvalidClassFileException {
+    Assert.assertEquals(name, expected.getName(), actual.getName());
+    Assert.assertEquals(name, expected.getSuperName(), actual.getSuperName());
+    Assert.assertTrue(name, Arrays.equals(expected.getInterfaceNames(), actual.getInterfaceNames()));
+
+    ConstantPoolParser ecp = expected.getCP();
+    ConstantPoolParser acp = actual.getCP();
+    Assert.assertEquals(name, ecp.getItemCount(), acp.getItemCount());
+    for (int i = 1; i < ecp.getItemCount(); i++) {
+      Assert.assertEquals(name, ecp.getItemType(i), acp.getItemType(i));
+      if (ecp.getItemType(i) == ClassConstants.CONSTANT_Utf8) {
+        Assert.assertEquals(name, ecp.getCPUtf8(i), acp.getCPUtf8(i));
+      }
+    }
+
+    Assert.assertEquals(name, expected.getFieldCount(), actual.getFieldCount());
+    for (int f = 0; f < expected.getFieldCount(); f++) {
+      Assert.assertEquals(name, expected.getFieldName(f), actual.getFieldName(f));
+      Assert.assertEquals(name, expected.getFieldType(f), actual.getFieldType(f));
+    }
+
+    Assert.assertEquals(name, expected.getMethodCount(), actual.getMethodCount());
+    ClassReader.AttrIterator eattrs = new ClassReader.AttrIterator();
+    ClassReader.AttrIterator aattrs = new ClassReader.AttrIterator();
+    for (int m = 0; m < expected.getMethodCount(); m++) {
+      Assert.assertEquals(name, expected.getMethodName(m), actual.getMethodName(m));
+      Assert.assertEquals(name, expected.getMethodType(m), actual.getMethodType(m));
+      expected.initMethodAttributeIterator(m, eattrs);
+      actual.initMethodAttributeIterator(m, aattrs);
+      for (; eattrs.isValid(); eattrs.advance(), aattrs.advance()) {
+        Assert.assertEquals(name, eattrs.getName(), aattrs.getName());
+        if (eattrs.getName().equals("Code")) {
+          Assert.assertTrue(name, Arrays.equals(new CodeReader(eattrs).getBytecode(), new CodeReader(aattrs).getBytecode()));
+        }
+      }
+      Assert.assertFalse(name, aattrs.isValid());
+    }
+
+    Assert.assertTrue(name, Arrays.equals(expected.getBytes(), actual.getBytes()));
+  }
+
+  /**
+   * read primordial classes both ways, and copy each buffer-backed class with its constant pool
+   */
+  @Test
+  public void testDirectBuffers() throws IOException, InvalidClassFileException {
+    AnalysisScope scope = AnalysisScopeReader.makePrimordialScope((new FileProvider())
+        .getFile(CallGraphTestUtil.REGRESSION_EXCLUSIONS));
+    int count = 0;
+    for (Module M : scope.getModules(ClassLoaderReference.Primordial)) {
+      for (Iterator<? extends ModuleEntry> it = M.getEntries(); it.hasNext() && count < MAX_CLASSES;) {
+        ModuleEntry entry = it.next();
+        if (entry.isClassFile()) {
+          byte[] bytes = FileUtil.readBytes(entry.getInputStream());
+          ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length + 8);
+          // put the class somewhere other than the start of the buffer
+          direct.position(8);
+          direct.put(bytes);
+          direct.position(8);
+          ClassReader actual = new ClassReader(direct);
+          assertSameClass(entry.getName(), new ClassReader(bytes), actual);
+
+          ClassWriter w = new ClassWriter();
+          w.setRawCP(actual.getCP(), false);
+          w.setName(actual.getName());
+          w.setSuperName(actual.getSuperName());
+          Assert.assertEquals(entry.getName(), actual.getName(), new ClassReader(w.makeBytes()).getName());
+          count++;
+        }
+      }
+    }
+    Assert.assertTrue(count > 0);
+  }
+}
@@ -15,9 +15,12 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Map;
 
 import org.junit.AfterClass;
 import org.junit.Assert;
@@ -35,9 +38,15 @@ import com.ibm.wala.ipa.callgraph.CallGraphBuilder;
 import com.ibm.wala.ipa.callgraph.Entrypoint;
 import com.ibm.wala.ipa.callgraph.impl.PartialCallGraph;
 import com.ibm.wala.ipa.callgraph.impl.Util;
+import com.ibm.wala.ipa.callgraph.propagation.InstanceKey;
+import com.ibm.wala.ipa.callgraph.propagation.PointerAnalysis;
+import com.ibm.wala.ipa.callgraph.propagation.PointerKey;
 import com.ibm.wala.ipa.cha.ClassHierarchy;
 import com.ibm.wala.ipa.cha.ClassHierarchyException;
 import com.ibm.wala.ipa.cha.IClassHierarchy;
+import com.ibm.wala.ipa.modref.ModRef;
+import com.ibm.wala.ipa.modref.ModRefSummaries;
+import com.ibm.wala.ipa.slicer.BatchSliceResult;
 import com.ibm.wala.ipa.slicer.MethodEntryStatement;
 import com.ibm.wala.ipa.slicer.NormalStatement;
 import com.ibm.wala.ipa.slicer.SDG;
@@ -63,6 +72,7 @@ import com.ibm.wala.util.debug.Assertions;
 import com.ibm.wala.util.graph.GraphIntegrity;
 import com.ibm.wala.util.graph.GraphIntegrity.UnsoundGraphException;
 import com.ibm.wala.util.intset.IntSet;
+import com.ibm.wala.util.intset.OrdinalSet;
 import com.ibm.wala.util.strings.Atom;
 
 public class SlicerTest {
@@ -692,6 +702,113 @@ public class SlicerTest {
     GraphIntegrity.check(sdg);
   }
 
+  /**
+   * an SDG built eagerly on several threads, and under a PDG budget, or under a statement budget, must give the same slice as one
+   * built lazily
+   */
+  @Test
+  public void testParallelSDG() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+    AnalysisScope scope = findOrCreateAnalysisScope();
+    IClassHierarchy cha = findOrCreateCHA(scope);
+    Iterable<Entrypoint> entrypoints = com.ibm.wala.ipa.callgraph.impl.Util.makeMainEntrypoints(scope, cha,
+        TestConstants.SLICE1_MAIN);
+    AnalysisOptions options = CallGraphTestUtil.makeAnalysisOptions(scope, entrypoints);
+
+    CallGraphBuilder builder = Util.makeZeroOneCFABuilder(options, new AnalysisCache(), cha, scope);
+    CallGraph cg = builder.makeCallGraph(options, null);
+
+    CGNode main = findMainMethod(cg);
+    Statement s = findCallTo(main, "println");
+    Collection<Statement> expected = Slicer.computeBackwardSlice(s, cg, builder.getPointerAnalysis(), DataDependenceOptions.FULL,
+        ControlDependenceOptions.FULL);
+
+    SDG sdg = new SDG(cg, builder.getPointerAnalysis(), DataDependenceOptions.FULL, ControlDependenceOptions.FULL);
+    sdg.setMaxNumberOfPDGs(8);
+    sdg.computePDGs(4, null);
+    Collection<Statement> slice = Slicer.computeBackwardSlice(sdg, s);
+    Assert.assertEquals(new HashSet<Statement>(expected), new HashSet<Statement>(slice));
+
+    SDG small = new SDG(cg, builder.getPointerAnalysis(), DataDependenceOptions.FULL, ControlDependenceOptions.FULL);
+    small.setMaxNumberOfPDGStatements(200);
+    slice = Slicer.computeBackwardSlice(small, s);
+    Assert.assertEquals(new HashSet<Statement>(expected), new HashSet<Statement>(slice));
+  }
+
+  /**
+   * slicing from a batch of statements at once must give each statement the slice it gets on its own
+   */
+  @Test
+  public void testBatchSlices() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+    AnalysisScope scope = findOrCreateAnalysisScope();
+    IClassHierarchy cha = findOrCreateCHA(scope);
+    Iterable<Entrypoint> entrypoints = com.ibm.wala.ipa.callgraph.impl.Util.makeMainEntrypoints(scope, cha,
+        TestConstants.SLICE1_MAIN);
+    AnalysisOptions options = CallGraphTestUtil.makeAnalysisOptions(scope, entrypoints);
+
+    CallGraphBuilder builder = Util.makeZeroOneCFABuilder(options, new AnalysisCache(), cha, scope);
+    CallGraph cg = builder.makeCallGraph(options, null);
+
+    CGNode main = findMainMethod(cg);
+    // each seed is sliced again on its own below, so keep the SDG and the batch small
+    SDG sdg = new SDG(cg, builder.getPointerAnalysis(), DataDependenceOptions.NO_HEAP, ControlDependenceOptions.FULL);
+    Collection<Statement> seeds = new ArrayList<Statement>();
+    SSAInstruction[] instructions = main.getIR().getInstructions();
+    for (int i = 0; i < instructions.length && seeds.size() < 3; i++) {
+      if (instructions[i] instanceof SSAAbstractInvokeInstruction) {
+        seeds.add(new NormalStatement(main, i));
+      }
+    }
+    Assert.assertTrue(seeds.size() > 1);
+
+    BatchSliceResult backward = Slicer.computeBackwardSliceOfEach(sdg, seeds);
+    BatchSliceResult forward = Slicer.computeForwardSliceOfEach(sdg, seeds);
+    for (Statement s : seeds) {
+      Assert.assertEquals(new HashSet<Statement>(Slicer.computeBackwardSlice(sdg, s)), backward.getSlice(s));
+      Assert.assertEquals(new HashSet<Statement>(Slicer.computeForwardSlice(sdg, s)), forward.getSlice(s));
+    }
+  }
+
+  /**
+   * mod-ref summaries computed on several threads must match {@link ModRef}, rescan only what they are told to, and give the same
+   * slice as an SDG that computes its own, on one thread or several
+   */
+  @Test
+  public void testModRefSummaries() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+    AnalysisScope scope = findOrCreateAnalysisScope();
+    IClassHierarchy cha = findOrCreateCHA(scope);
+    Iterable<Entrypoint> entrypoints = com.ibm.wala.ipa.callgraph.impl.Util.makeMainEntrypoints(scope, cha,
+        TestConstants.SLICE1_MAIN);
+    AnalysisOptions options = CallGraphTestUtil.makeAnalysisOptions(scope, entrypoints);
+
+    CallGraphBuilder builder = Util.makeZeroOneCFABuilder(options, new AnalysisCache(), cha, scope);
+    CallGraph cg = builder.makeCallGraph(options, null);
+    PointerAnalysis<InstanceKey> pa = builder.getPointerAnalysis();
+
+    ModRef modRef = ModRef.make();
+    ModRefSummaries summaries = new ModRefSummaries(cg, pa, modRef, null);
+    Assert.assertEquals(cg.getNumberOfNodes(), summaries.compute(4, null));
+    Map<CGNode, OrdinalSet<PointerKey>> mod = modRef.computeMod(cg, pa);
+    Map<CGNode, OrdinalSet<PointerKey>> ref = modRef.computeRef(cg, pa);
+    for (CGNode n : cg) {
+      Assert.assertEquals(OrdinalSet.toCollection(mod.get(n)), OrdinalSet.toCollection(summaries.getMod().get(n)));
+      Assert.assertEquals(OrdinalSet.toCollection(ref.get(n)), OrdinalSet.toCollection(summaries.getRef().get(n)));
+    }
+
+    CGNode main = findMainMethod(cg);
+    Assert.assertEquals(0, summaries.compute(4, null));
+    summaries.invalidate(main);
+    Assert.assertEquals(1, summaries.compute(1, null));
+    Assert.assertEquals(OrdinalSet.toCollection(mod.get(main)), OrdinalSet.toCollection(summaries.getMod().get(main)));
+
+    Statement s = findCallTo(main, "println");
+    Collection<Statement> expected = Slicer.computeBackwardSlice(new SDG(cg, pa, DataDependenceOptions.FULL,
+        ControlDependenceOptions.FULL), s);
+    SDG sdg = new SDG(summaries, DataDependenceOptions.FULL, ControlDependenceOptions.FULL);
+    Assert.assertEquals(new HashSet<Statement>(expected), new HashSet<Statement>(Slicer.computeBackwardSlice(sdg, s)));
+    sdg = new SDG(cg, pa, modRef, DataDependenceOptions.FULL, ControlDependenceOptions.FULL, null, 4);
+    Assert.assertEquals(new HashSet<Statement>(expected), new HashSet<Statement>(Slicer.computeBackwardSlice(sdg, s)));
+  }
+
   public static int countAllocations(Collection<Statement> slice) {
     int count = 0;
     for (Statement s : slice) {
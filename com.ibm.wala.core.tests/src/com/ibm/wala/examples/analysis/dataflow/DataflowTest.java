@@ -208,4 +208,21 @@ public class DataflowTest extends WalaTestCase {
       }
     }
   }
+
+  @Test
+  public void testContextSensitiveParallel() throws IllegalArgumentException, CancelException {
+    Iterable<Entrypoint> entrypoints = com.ibm.wala.ipa.callgraph.impl.Util.makeMainEntrypoints(scope, cha,
+        "Ldataflow/StaticDataflow");
+    AnalysisOptions options = CallGraphTestUtil.makeAnalysisOptions(scope, entrypoints);
+
+    CallGraphBuilder builder = Util.makeZeroOneCFABuilder(options, new AnalysisCache(), cha, scope);
+    CallGraph cg = builder.makeCallGraph(options, null);
+    ContextSensitiveReachingDefs reachingDefs = new ContextSensitiveReachingDefs(cg, new AnalysisCache());
+    TabulationResult<BasicBlockInContext<IExplodedBasicBlock>, CGNode, Pair<CGNode, Integer>> sequential = reachingDefs.analyze();
+    TabulationResult<BasicBlockInContext<IExplodedBasicBlock>, CGNode, Pair<CGNode, Integer>> parallel = reachingDefs.analyze(4);
+    Assert.assertEquals(sequential.getSupergraphNodesReached(), parallel.getSupergraphNodesReached());
+    for (BasicBlockInContext<IExplodedBasicBlock> bb : reachingDefs.getSupergraph()) {
+      Assert.assertTrue(bb.toString(), sequential.getResult(bb).sameValue(parallel.getResult(bb)));
+    }
+  }
 }
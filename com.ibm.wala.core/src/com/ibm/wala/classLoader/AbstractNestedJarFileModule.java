@@ -36,7 +36,7 @@ public abstract class AbstractNestedJarFileModule implements Module {
   
   /**
    * For efficiency, we cache the byte[] holding each ZipEntry's contents; this will help avoid multiple unzipping TODO: use a soft
-   * reference?
+   * reference? The cache is only published once it is complete, so that class files can be read from several threads.
    */
   private HashMap<String, byte[]> cache = null;
 
@@ -52,11 +52,11 @@ public abstract class AbstractNestedJarFileModule implements Module {
     return new ByteArrayInputStream(b);
   }
 
-  private void populateCache() {
+  private synchronized void populateCache() {
     if (cache != null) {
       return;
     }
-    cache = HashMapFactory.make();
+    HashMap<String, byte[]> cache = HashMapFactory.make();
      try {
       final JarInputStream stream = new JarInputStream(getNestedContents());
       for (ZipEntry z = stream.getNextEntry(); z != null; z = stream.getNextEntry()) {
@@ -86,7 +86,7 @@ public abstract class AbstractNestedJarFileModule implements Module {
         }
       });
     }
-
+    this.cache = cache;
   }
 
   protected long getEntrySize(String name) {
@@ -12,6 +12,10 @@
 package com.ibm.wala.classLoader;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 import com.ibm.wala.shrikeCT.InvalidClassFileException;
 import com.ibm.wala.util.shrike.ShrikeClassReaderHandle;
@@ -20,7 +24,13 @@ import com.ibm.wala.util.strings.ImmutableByteArray;
 /**
  * A module which is a wrapper around a .class file
  */
-public class ClassFileModule extends FileModule {
+public class ClassFileModule extends FileModule implements MappedModuleEntry {
+
+  /**
+   * class files at least this big are memory-mapped; smaller ones are read onto the heap, since each mapping costs at least a page
+   * and an entry in the process's (limited) table of mappings
+   */
+  private static final int MAP_THRESHOLD = 16 * 1024;
 
   private final String className;
 
@@ -31,6 +41,31 @@ public class ClassFileModule extends FileModule {
     className = name.toString();
   }
 
+  @Override
+  public ByteBuffer getByteBuffer() throws IOException {
+    RandomAccessFile f = new RandomAccessFile(getFile(), "r");
+    try {
+      FileChannel channel = f.getChannel();
+      long size = channel.size();
+      if (size > Integer.MAX_VALUE) {
+        throw new IOException("class file too large: " + getFile());
+      }
+      if (size >= MAP_THRESHOLD) {
+        // the mapping stays valid after the channel is closed
+        return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+      }
+      ByteBuffer result = ByteBuffer.allocate((int) size);
+      while (result.hasRemaining()) {
+        if (channel.read(result) < 0) {
+          throw new IOException("unexpected end of file: " + getFile());
+        }
+      }
+      result.flip();
+      return result;
+    } finally {
+      f.close();
+    }
+  }
 
   @Override
   public String toString() {
@@ -13,6 +13,7 @@ package com.ibm.wala.classLoader;
 import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.util.HashMap;
+import java.util.List;
 
 import com.ibm.wala.ipa.callgraph.AnalysisScope;
 import com.ibm.wala.ipa.cha.IClassHierarchy;
@@ -38,6 +39,16 @@ public class ClassLoaderFactoryImpl implements ClassLoaderFactory {
    */
   final private HashMap<ClassLoaderReference, IClassLoader> map = HashMapFactory.make(3);
 
+  /**
+   * number of threads each {@link ClassLoaderImpl} uses to parse its class files
+   */
+  private int numberOfThreads = 1;
+
+  /**
+   * if non-null, jar files are loaded from snapshots kept in this cache
+   */
+  private ModuleSnapshotCache snapshots = null;
+
   /**
    * @param exclusions
    *          A set of classes that class loaders should pretend don't exist.
@@ -46,6 +57,35 @@ public class ClassLoaderFactoryImpl implements ClassLoaderFactory {
     this.exclusions = exclusions;
   }
 
+  /**
+   * Make the {@link ClassLoaderImpl}s created by this factory parse class files with the given number of threads. The loaded
+   * classes are the same for any number of threads.
+   * 
+   * @throws IllegalArgumentException if numberOfThreads is less than 1
+   */
+  public void setNumberOfThreads(int numberOfThreads) {
+    if (numberOfThreads < 1) {
+      throw new IllegalArgumentException("invalid number of threads: " + numberOfThreads);
+    }
+    this.numberOfThreads = numberOfThreads;
+  }
+
+  public int getNumberOfThreads() {
+    return numberOfThreads;
+  }
+
+  /**
+   * Make the class loaders created by this factory read jar files through snapshots in the given cache, which avoids
+   * decompressing unchanged jars on every run. Passing null turns snapshots off.
+   */
+  public void setSnapshotCache(ModuleSnapshotCache snapshots) {
+    this.snapshots = snapshots;
+  }
+
+  public ModuleSnapshotCache getSnapshotCache() {
+    return snapshots;
+  }
+
   /**
    * Return a class loader corresponding to a given class loader identifier.
    * Create one if necessary.
@@ -112,7 +152,14 @@ public class ClassLoaderFactoryImpl implements ClassLoaderFactory {
           cl = new ClassLoaderImpl(classLoaderReference, scope.getArrayClassLoader(), parent, exclusions, cha);
         }
       }
-    cl.init(scope.getModules(classLoaderReference));
+    if (cl instanceof ClassLoaderImpl) {
+      ((ClassLoaderImpl) cl).setNumberOfThreads(numberOfThreads);
+    }
+    List<Module> modules = scope.getModules(classLoaderReference);
+    if (snapshots != null) {
+      modules = snapshots.snapshot(modules);
+    }
+    cl.init(modules);
     return cl;
   }
 
@@ -19,6 +19,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -29,12 +30,16 @@ import java.util.TreeSet;
 import java.util.jar.JarEntry;
 import java.util.jar.JarInputStream;
 
+import com.ibm.wala.classLoader.SnapshotModule.ClassHeader;
 import com.ibm.wala.ipa.cha.IClassHierarchy;
 import com.ibm.wala.shrikeCT.ClassReader;
 import com.ibm.wala.shrikeCT.InvalidClassFileException;
 import com.ibm.wala.ssa.SSAInstructionFactory;
 import com.ibm.wala.types.ClassLoaderReference;
 import com.ibm.wala.types.TypeName;
+import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.ParallelUtil;
+import com.ibm.wala.util.ParallelUtil.IntAction;
 import com.ibm.wala.util.collections.HashCodeComparator;
 import com.ibm.wala.util.collections.HashMapFactory;
 import com.ibm.wala.util.collections.HashSetFactory;
@@ -91,6 +96,11 @@ public class ClassLoaderImpl implements IClassLoader {
    */
   private final ArrayClassLoader arrayClassLoader;
 
+  /**
+   * number of threads used to parse class files in {@link #init(List)}; 1 means everything is done on the calling thread
+   */
+  private int numberOfThreads = 1;
+
   /**
    * @param loader class loader reference identifying this loader
    * @param parent parent loader for delegation
@@ -245,8 +255,14 @@ public class ClassLoaderImpl implements IClassLoader {
 
   /**
    * Set up the set of classes loaded by this object.
+   * 
+   * If {@link #numberOfThreads} is greater than one, the class files are first parsed in parallel. The checks for excluded,
+   * duplicate and invalid classes, and the insertion into {@link #loadedClasses}, always happen on the calling thread in the
+   * order of the given entries, so the resulting set of classes and warnings does not depend on the number of threads.
    */
-  private void loadAllClasses(Collection<ModuleEntry> moduleEntries, Map<String, Object> fileContents) {
+  private void loadAllClasses(Collection<ModuleEntry> moduleEntries, Map<String, Object> fileContents) throws IOException {
+    List<ModuleEntry> entries = new ArrayList<ModuleEntry>(moduleEntries.size());
+    List<TypeName> names = new ArrayList<TypeName>(moduleEntries.size());
     for (Iterator<ModuleEntry> it = moduleEntries.iterator(); it.hasNext();) {
       ModuleEntry entry = it.next();
       if (!entry.isClassFile()) {
@@ -265,48 +281,99 @@ public class ClassLoaderImpl implements IClassLoader {
         }
         continue;
       }
+      entries.add(entry);
+      names.add(TypeName.string2TypeName("L" + className));
+    }
 
-      ShrikeClassReaderHandle entryReader = new ShrikeClassReaderHandle(entry);
+    ShrikeClass[] parsed = null;
+    if (numberOfThreads > 1 && entries.size() > 1) {
+      parsed = parseAllClasses(entries, names, fileContents);
+    }
 
-      className = "L" + className;
+    for (int i = 0; i < entries.size(); i++) {
+      TypeName T = names.get(i);
+      String className = T.toString();
       if (DEBUG_LEVEL > 0) {
         System.err.println("Load class " + className);
       }
-      try {
-        TypeName T = TypeName.string2TypeName(className);
-        if (loadedClasses.get(T) != null) {
-          Warnings.add(MultipleImplementationsWarning.create(className));
-        } else if (parent != null && parent.lookupClass(T) != null) {
-          Warnings.add(MultipleImplementationsWarning.create(className));
-        } else {
-          // try to read from memory
-          ShrikeClassReaderHandle reader = entryReader;
-          if (fileContents != null) {
-            final Object contents = fileContents.get(entry.getName());
-            if (contents != null) {
-              // reader that uses the in-memory bytes
-              reader = new ByteArrayReaderHandle(entry, (byte[]) contents);
-            }
-          }
-          ShrikeClass tmpKlass = new ShrikeClass(reader, this, cha);
-          if (tmpKlass.getReference().getName().equals(T)) {
-            // always used the reader based on the entry after this point,
-            // so we can null out and re-read class file contents
-            loadedClasses.put(T, new ShrikeClass(entryReader, this, cha));
-            if (DEBUG_LEVEL > 1) {
-              System.err.println("put " + T + " ");
-            }
-          } else {
-            Warnings.add(InvalidClassFile.create(className));
+      if (loadedClasses.get(T) != null) {
+        Warnings.add(MultipleImplementationsWarning.create(className));
+      } else if (parent != null && parent.lookupClass(T) != null) {
+        Warnings.add(MultipleImplementationsWarning.create(className));
+      } else {
+        ShrikeClass klass = parsed != null ? parsed[i] : parseClass(entries.get(i), T, fileContents);
+        if (klass != null) {
+          loadedClasses.put(T, klass);
+          if (DEBUG_LEVEL > 1) {
+            System.err.println("put " + T + " ");
           }
+        } else {
+          Warnings.add(InvalidClassFile.create(className));
         }
-      } catch (InvalidClassFileException e) {
-        if (DEBUG_LEVEL > 0) {
-          System.err.println("Ignoring class " + className + " due to InvalidClassFileException");
+      }
+    }
+  }
+
+  /**
+   * Read the class defined by a module entry
+   * 
+   * @param T the name the class is expected to have
+   * @return the class, or null if the class file is invalid or does not define T
+   */
+  private ShrikeClass parseClass(ModuleEntry entry, TypeName T, Map<String, Object> fileContents) {
+    ShrikeClassReaderHandle entryReader = new ShrikeClassReaderHandle(entry);
+    try {
+      if (entry.getContainer() instanceof SnapshotModule) {
+        // the snapshot already knows the class header; the class file is read only if needed later
+        ClassHeader header = ((SnapshotModule) entry.getContainer()).getClassHeader(entry);
+        if (header != null) {
+          ShrikeClass klass = new ShrikeClass(entryReader, header, this, cha);
+          return klass.getReference().getName().equals(T) ? klass : null;
         }
-        Warnings.add(InvalidClassFile.create(className));
       }
+      // try to read from memory
+      ShrikeClassReaderHandle reader = entryReader;
+      if (fileContents != null) {
+        final Object contents = fileContents.get(entry.getName());
+        if (contents != null) {
+          // reader that uses the in-memory bytes
+          reader = new ByteArrayReaderHandle(entry, (byte[]) contents);
+        }
+      }
+      ShrikeClass tmpKlass = new ShrikeClass(reader, this, cha);
+      if (!tmpKlass.getReference().getName().equals(T)) {
+        return null;
+      }
+      // always used the reader based on the entry after this point,
+      // so we can null out and re-read class file contents
+      return reader == entryReader ? tmpKlass : new ShrikeClass(entryReader, this, cha);
+    } catch (InvalidClassFileException e) {
+      if (DEBUG_LEVEL > 0) {
+        System.err.println("Ignoring class " + T + " due to InvalidClassFileException");
+      }
+      return null;
+    }
+  }
+
+  /**
+   * Read the classes defined by the given module entries using {@link #numberOfThreads} threads.
+   * 
+   * @return the results of {@link #parseClass(ModuleEntry, TypeName, Map)}, indexed like entries
+   */
+  private ShrikeClass[] parseAllClasses(final List<ModuleEntry> entries, final List<TypeName> names,
+      final Map<String, Object> fileContents) throws IOException {
+    final ShrikeClass[] result = new ShrikeClass[entries.size()];
+    try {
+      ParallelUtil.forEachIndex(result.length, numberOfThreads, new IntAction<RuntimeException>() {
+        @Override
+        public void apply(int i) {
+          result[i] = parseClass(entries.get(i), names.get(i), fileContents);
+        }
+      }, null);
+    } catch (CancelException e) {
+      throw new IOException("interrupted while reading classes for " + this, e);
     }
+    return result;
   }
 
   @SuppressWarnings("unused")
@@ -477,6 +544,21 @@ public class ClassLoaderImpl implements IClassLoader {
     }
   }
 
+  /**
+   * @param numberOfThreads number of threads to use for parsing class files in {@link #init(List)}
+   * @throws IllegalArgumentException if numberOfThreads is less than 1
+   */
+  public void setNumberOfThreads(int numberOfThreads) {
+    if (numberOfThreads < 1) {
+      throw new IllegalArgumentException("invalid number of threads: " + numberOfThreads);
+    }
+    this.numberOfThreads = numberOfThreads;
+  }
+
+  public int getNumberOfThreads() {
+    return numberOfThreads;
+  }
+
   /**
    * Initialize internal data structures
    * 
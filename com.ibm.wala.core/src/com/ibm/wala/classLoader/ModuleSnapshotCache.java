@@ -0,0 +1,240 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.classLoader;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.ibm.wala.util.collections.HashMapFactory;
+
+/**
+ * A directory of {@link SnapshotModule}s, keyed by the content hash of the modules they were made from.
+ *
+ * {@link #snapshot(Module)} replaces a jar file module by a snapshot of its class files, building the snapshot the first time a
+ * given jar is seen. Since the key is a hash of the jar contents, a snapshot is reused exactly as long as the jar is unchanged,
+ * wherever it lives; a modified jar gets a fresh snapshot. Snapshot files from an older format {@link SnapshotModule#VERSION} are
+ * rebuilt.
+ *
+ * Hashing a large jar costs about as much as reading it, so the hash of each jar is also kept in a stamp file, with the size and
+ * modification time of the jar when it was hashed; the jar is hashed again only when either has changed.
+ *
+ * Only jar files made up of class files and resources are snapshotted; jars with nested modules or source files, and all other
+ * kinds of modules, are used as they are.
+ */
+public class ModuleSnapshotCache {
+
+  private static final String SUFFIX = ".snapshot";
+
+  private static final String STAMP_SUFFIX = ".stamp";
+
+  /**
+   * jars modified less than this many milliseconds before they were hashed are not stamped, since file systems may record
+   * modification times this coarsely, and a later change to the jar might not show in its modification time
+   */
+  private static final long MODIFICATION_TIME_RESOLUTION = 2000;
+
+  private final File directory;
+
+  /**
+   * snapshots already opened by this cache, by hash
+   */
+  private final Map<String, SnapshotModule> opened = HashMapFactory.make();
+
+  /**
+   * @param directory where to keep snapshot files; created if necessary
+   */
+  public ModuleSnapshotCache(File directory) {
+    if (directory == null) {
+      throw new IllegalArgumentException("null directory");
+    }
+    this.directory = directory;
+  }
+
+  public File getDirectory() {
+    return directory;
+  }
+
+  /**
+   * @return the modules, with every module that can be snapshotted replaced by its snapshot
+   */
+  public List<Module> snapshot(List<Module> modules) throws IOException {
+    if (modules == null) {
+      throw new IllegalArgumentException("null modules");
+    }
+    List<Module> result = new ArrayList<Module>(modules.size());
+    for (Module M : modules) {
+      result.add(snapshot(M));
+    }
+    return result;
+  }
+
+  /**
+   * @return a snapshot of M, or M itself if it cannot be snapshotted
+   */
+  public synchronized Module snapshot(Module M) throws IOException {
+    if (!(M instanceof JarFileModule) || !canSnapshot(M)) {
+      return M;
+    }
+    File jar = new File(((JarFileModule) M).getAbsolutePath());
+    String hash = stampedHash(jar);
+    SnapshotModule result = opened.get(hash);
+    if (result != null) {
+      return result;
+    }
+    File file = new File(directory, hash + SUFFIX);
+    if (file.exists()) {
+      result = SnapshotModule.load(file, hash);
+    }
+    if (result == null) {
+      if (!directory.isDirectory() && !directory.mkdirs()) {
+        throw new IOException("could not create snapshot directory " + directory);
+      }
+      // write to a temporary file first, so that concurrent processes never map a partial snapshot
+      File tmp = File.createTempFile(hash, SUFFIX, directory);
+      try {
+        SnapshotModule.write(M, hash, tmp);
+        if (!tmp.renameTo(file)) {
+          // another process may have won the race, in which case use its snapshot; otherwise the file is a stale snapshot from
+          // an older format, and renameTo does not replace an existing file on all platforms
+          result = file.exists() ? SnapshotModule.load(file, hash) : null;
+          if (result == null) {
+            file.delete();
+            tmp.renameTo(file);
+          }
+        }
+      } finally {
+        tmp.delete();
+      }
+      if (result == null && file.exists()) {
+        result = SnapshotModule.load(file, hash);
+      }
+      if (result == null) {
+        // e.g. a module too big to map; analyze the original instead
+        return M;
+      }
+    }
+    opened.put(hash, result);
+    return result;
+  }
+
+  /**
+   * @return the hash of jar, from its stamp file if the jar has not changed since it was stamped
+   */
+  private String stampedHash(File jar) throws IOException {
+    String path = jar.getAbsolutePath();
+    File stamp = new File(directory, hash(path) + STAMP_SUFFIX);
+    long length = jar.length();
+    long modified = jar.lastModified();
+    if (stamp.exists()) {
+      DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(stamp)));
+      try {
+        if (in.readUTF().equals(path) && in.readLong() == length && in.readLong() == modified) {
+          return in.readUTF();
+        }
+      } catch (IOException e) {
+        // a truncated or otherwise unreadable stamp; hash the jar again
+      } finally {
+        in.close();
+      }
+    }
+    long start = System.currentTimeMillis();
+    String result = hash(jar);
+    if (modified + MODIFICATION_TIME_RESOLUTION < start && jar.length() == length && jar.lastModified() == modified) {
+      if (!directory.isDirectory() && !directory.mkdirs()) {
+        throw new IOException("could not create snapshot directory " + directory);
+      }
+      File tmp = File.createTempFile(stamp.getName(), null, directory);
+      try {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+        try {
+          out.writeUTF(path);
+          out.writeLong(length);
+          out.writeLong(modified);
+          out.writeUTF(result);
+        } finally {
+          out.close();
+        }
+        if (!tmp.renameTo(stamp)) {
+          // renameTo does not replace an existing file on all platforms
+          stamp.delete();
+          tmp.renameTo(stamp);
+        }
+      } finally {
+        tmp.delete();
+      }
+    }
+    return result;
+  }
+
+  private static boolean canSnapshot(Module M) {
+    for (Iterator<? extends ModuleEntry> it = M.getEntries(); it.hasNext();) {
+      ModuleEntry entry = it.next();
+      if (entry.isModuleFile() || entry.isSourceFile()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return a hex string of the SHA-1 hash of the contents of f
+   */
+  public static String hash(File f) throws IOException {
+    MessageDigest digest = makeDigest();
+    InputStream s = new FileInputStream(f);
+    try {
+      byte[] buffer = new byte[64 * 1024];
+      for (int n = s.read(buffer); n != -1; n = s.read(buffer)) {
+        digest.update(buffer, 0, n);
+      }
+    } finally {
+      s.close();
+    }
+    return toHex(digest.digest());
+  }
+
+  /**
+   * @return a hex string of the SHA-1 hash of the UTF-8 encoding of s
+   */
+  private static String hash(String s) throws IOException {
+    return toHex(makeDigest().digest(s.getBytes("UTF-8")));
+  }
+
+  private static MessageDigest makeDigest() throws IOException {
+    try {
+      return MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IOException(e);
+    }
+  }
+
+  private static String toHex(byte[] bytes) {
+    StringBuilder result = new StringBuilder();
+    for (byte b : bytes) {
+      result.append(Character.forDigit((b >> 4) & 0xf, 16));
+      result.append(Character.forDigit(b & 0xf, 16));
+    }
+    return result.toString();
+  }
+}
@@ -51,15 +51,33 @@ public final class ShrikeCTMethod extends ShrikeBTMethod implements IBytecodeMet
    */
   private int modifiers = -1;
 
+  /**
+   * the name and type of this method, if known without reading the class file; null otherwise
+   */
+  private final String name;
+
+  private final String signature;
+
   private final IClassHierarchy cha;
 
   public ShrikeCTMethod(IClass klass, int index) {
+    this(klass, index, null, null, -1);
+  }
+
+  /**
+   * Make a method whose name, type and modifiers are already known, e.g. from a {@link SnapshotModule.ClassHeader}, so that
+   * they need not be read from the class file.
+   */
+  public ShrikeCTMethod(IClass klass, int index, String name, String signature, int modifiers) {
 
     super(klass);
     if (klass == null) {
       throw new IllegalArgumentException("klass is null");
     }
     this.shrikeMethodIndex = index;
+    this.name = name;
+    this.signature = signature;
+    this.modifiers = modifiers;
     this.cha = klass.getClassHierarchy();
   }
 
@@ -75,12 +93,18 @@ public final class ShrikeCTMethod extends ShrikeBTMethod implements IBytecodeMet
 
   @Override
   protected String getMethodName() throws InvalidClassFileException {
+    if (name != null) {
+      return name;
+    }
     ClassReader reader = getClassReader();
     return reader.getMethodName(shrikeMethodIndex);
   }
 
   @Override
   protected String getMethodSignature() throws InvalidClassFileException {
+    if (signature != null) {
+      return signature;
+    }
     ClassReader reader = getClassReader();
     return reader.getMethodType(shrikeMethodIndex);
   }
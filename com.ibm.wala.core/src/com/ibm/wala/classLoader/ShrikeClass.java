@@ -15,6 +15,7 @@ import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 
+import com.ibm.wala.classLoader.SnapshotModule.ClassHeader;
 import com.ibm.wala.ipa.cha.IClassHierarchy;
 import com.ibm.wala.shrikeBT.Constants;
 import com.ibm.wala.shrikeCT.AnnotationsReader;
@@ -47,6 +48,11 @@ public final class ShrikeClass extends JVMClass<IClassLoader> {
    */
   private final ShrikeClassReaderHandle reader;
 
+  /**
+   * the header recorded for this class in a snapshot, or null if this class was read from the class file alone
+   */
+  private final ClassHeader header;
+
   /**
    * @throws IllegalArgumentException
    *           if reader is null
@@ -57,6 +63,7 @@ public final class ShrikeClass extends JVMClass<IClassLoader> {
       throw new IllegalArgumentException("reader is null");
     }
     this.reader = reader;
+    this.header = null;
     computeTypeReference();
     this.hashCode = 2161 * getReference().hashCode();
     // as long as the reader is around, pull more data out
@@ -67,6 +74,66 @@ public final class ShrikeClass extends JVMClass<IClassLoader> {
     computeFields();
   }
 
+  /**
+   * Make a class from the header recorded for it in a snapshot. The class file itself is read only when something beyond the
+   * header is needed, such as the bytecodes of a method or the annotations of the class.
+   * 
+   * @throws IllegalArgumentException
+   *           if reader or header is null
+   */
+  public ShrikeClass(ShrikeClassReaderHandle reader, ClassHeader header, IClassLoader loader, IClassHierarchy cha)
+      throws InvalidClassFileException {
+    super(loader, cha);
+    if (reader == null) {
+      throw new IllegalArgumentException("reader is null");
+    }
+    if (header == null) {
+      throw new IllegalArgumentException("header is null");
+    }
+    this.reader = reader;
+    this.header = header;
+    ImmutableByteArray name = ImmutableByteArray.make("L" + header.getName());
+    typeReference = TypeReference.findOrCreate(getClassLoader().getReference(), TypeName.findOrCreate(name));
+    this.hashCode = 2161 * getReference().hashCode();
+    if (header.getSuperName() != null) {
+      superName = ImmutableByteArray.make("L" + header.getSuperName());
+    }
+    modifiers = header.getAccessFlags();
+    String[] s = header.getInterfaceNames();
+    interfaceNames = new ImmutableByteArray[s.length];
+    for (int i = 0; i < interfaceNames.length; i++) {
+      interfaceNames[i] = ImmutableByteArray.make("L" + s[i]);
+    }
+    if (header.hasFieldAnnotations()) {
+      computeFields();
+    } else {
+      computeFieldsFromHeader();
+    }
+  }
+
+  /**
+   * Compute the fields declared by this class from its snapshot header, for a class whose fields carry no annotations
+   */
+  private void computeFieldsFromHeader() {
+    int fieldCount = header.getFieldCount();
+    List<FieldImpl> instanceList = new ArrayList<FieldImpl>(fieldCount);
+    List<FieldImpl> staticList = new ArrayList<FieldImpl>(fieldCount);
+    for (int i = 0; i < fieldCount; i++) {
+      int accessFlags = header.getFieldAccessFlags(i);
+      Atom name = Atom.findOrCreateUnicodeAtom(header.getFieldName(i));
+      ImmutableByteArray b = ImmutableByteArray.make(header.getFieldType(i));
+      if ((accessFlags & ClassConstants.ACC_STATIC) == 0) {
+        addFieldToList(instanceList, name, b, accessFlags, null);
+      } else {
+        addFieldToList(staticList, name, b, accessFlags, null);
+      }
+    }
+    instanceFields = new IField[instanceList.size()];
+    populateFieldArrayFromList(instanceList, instanceFields);
+    staticFields = new IField[staticList.size()];
+    populateFieldArrayFromList(staticList, staticFields);
+  }
+
   /**
    * Compute the fields declared by this class
    * 
@@ -154,10 +221,11 @@ public final class ShrikeClass extends JVMClass<IClassLoader> {
    */
   @Override
   protected ShrikeCTMethod[] computeDeclaredMethods() throws InvalidClassFileException {
-    int methodCount = reader.get().getMethodCount();
+    int methodCount = header != null ? header.getMethodCount() : reader.get().getMethodCount();
     ShrikeCTMethod[] result = new ShrikeCTMethod[methodCount];
     for (int i = 0; i < methodCount; i++) {
-      ShrikeCTMethod m = new ShrikeCTMethod(this, i);
+      ShrikeCTMethod m = header != null ? new ShrikeCTMethod(this, i, header.getMethodName(i), header.getMethodType(i),
+          header.getMethodAccessFlags(i)) : new ShrikeCTMethod(this, i);
       if (DEBUG) {
         System.err.println(("Register method " + m + " for class " + this));
       }
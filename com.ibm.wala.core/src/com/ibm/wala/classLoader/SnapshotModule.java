@@ -0,0 +1,588 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.classLoader;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import com.ibm.wala.shrikeCT.ClassReader;
+import com.ibm.wala.shrikeCT.InvalidClassFileException;
+import com.ibm.wala.util.io.FileSuffixes;
+import com.ibm.wala.util.io.FileUtil;
+
+/**
+ * A module backed by a snapshot file, which holds the uncompressed class files and resources of some other module.
+ *
+ * The snapshot file is memory-mapped, and the entry bytes are read straight out of the mapping, so opening a snapshot costs little
+ * more than reading its table of contents. Snapshots are created and looked up by {@link ModuleSnapshotCache}.
+ *
+ * Each class file is parsed once, when the snapshot is written, and its {@link ClassHeader} is kept in the table of contents, so
+ * that a class loader can build the class hierarchy from a snapshot without parsing the class files again.
+ *
+ * The file format is: the magic number {@link #MAGIC}, the format {@link #VERSION}, the offset of the table of contents, and the
+ * content hash of the original module; then the entry bytes; then the table of contents, which is the number of entries followed
+ * by the name, offset and length of each entry, and the class header of each valid class file.
+ */
+public class SnapshotModule implements Module {
+
+  public static final int MAGIC = 0x57414c41;
+
+  /**
+   * the snapshot format version; bump this whenever the format changes, so that old snapshots are rebuilt
+   */
+  public static final int VERSION = 3;
+
+  private final File file;
+
+  private final String hash;
+
+  private final List<Entry> entries;
+
+  private final ByteBuffer contents;
+
+  private SnapshotModule(File file, String hash, List<Entry> entries, ByteBuffer contents) {
+    this.file = file;
+    this.hash = hash;
+    this.entries = entries;
+    this.contents = contents;
+  }
+
+  /**
+   * Map an existing snapshot file.
+   *
+   * @param expectedHash if non-null, the content hash the snapshot must have been made from
+   * @return the snapshot, or null if the file is not a complete snapshot of the current version and expected hash
+   */
+  public static SnapshotModule load(File file, String expectedHash) throws IOException {
+    if (file == null) {
+      throw new IllegalArgumentException("null file");
+    }
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      FileChannel channel = raf.getChannel();
+      long size = channel.size();
+      if (size < 12 || size > Integer.MAX_VALUE) {
+        return null;
+      }
+      MappedByteBuffer contents = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+      DataInputStream in = new DataInputStream(new ByteBufferInputStream(contents.duplicate()));
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        return null;
+      }
+      int toc = in.readInt();
+      String hash = in.readUTF();
+      if (toc <= 0 || toc >= size || (expectedHash != null && !expectedHash.equals(hash))) {
+        return null;
+      }
+      ByteBuffer b = contents.duplicate();
+      b.position(toc);
+      in = new DataInputStream(new ByteBufferInputStream(b));
+      int count = in.readInt();
+      List<Entry> entries = new ArrayList<Entry>(count);
+      SnapshotModule result = new SnapshotModule(file, hash, entries, contents);
+      for (int i = 0; i < count; i++) {
+        String name = in.readUTF();
+        int offset = in.readInt();
+        int length = in.readInt();
+        if (offset < 0 || length < 0 || offset + length > toc) {
+          return null;
+        }
+        ClassHeader header = in.readBoolean() ? ClassHeader.read(in) : null;
+        entries.add(result.new Entry(name, offset, length, header));
+      }
+      return result;
+    } catch (EOFException e) {
+      // truncated snapshot
+      return null;
+    } finally {
+      // the mapping stays valid after the channel is closed
+      raf.close();
+    }
+  }
+
+  /**
+   * Write a snapshot of the class files and resources in a module. The module must not hold source files or nested modules.
+   *
+   * @param hash the content hash of M, to be recorded in the snapshot
+   */
+  public static void write(Module M, String hash, File file) throws IOException {
+    if (M == null) {
+      throw new IllegalArgumentException("null M");
+    }
+    if (hash == null) {
+      throw new IllegalArgumentException("null hash");
+    }
+    List<String> names = new ArrayList<String>();
+    List<Integer> lengths = new ArrayList<Integer>();
+    List<ClassHeader> headers = new ArrayList<ClassHeader>();
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      // placeholder for the offset of the table of contents; an unpatched snapshot is rejected by load()
+      out.writeInt(0);
+      out.writeUTF(hash);
+      int start = out.size();
+      for (Iterator<? extends ModuleEntry> it = M.getEntries(); it.hasNext();) {
+        ModuleEntry entry = it.next();
+        if (entry.isModuleFile() || entry.isSourceFile()) {
+          throw new IllegalArgumentException("cannot snapshot " + entry);
+        }
+        InputStream s = entry.getInputStream();
+        byte[] b;
+        try {
+          b = FileUtil.readBytes(s);
+        } finally {
+          s.close();
+        }
+        names.add(entry.getName());
+        lengths.add(b.length);
+        headers.add(entry.isClassFile() ? ClassHeader.make(b) : null);
+        out.write(b);
+      }
+      int toc = out.size();
+      int offset = start;
+      out.writeInt(names.size());
+      for (int i = 0; i < names.size(); i++) {
+        out.writeUTF(names.get(i));
+        out.writeInt(offset);
+        out.writeInt(lengths.get(i));
+        offset += lengths.get(i);
+        out.writeBoolean(headers.get(i) != null);
+        if (headers.get(i) != null) {
+          headers.get(i).write(out);
+        }
+      }
+      out.close();
+      out = null;
+      RandomAccessFile raf = new RandomAccessFile(file, "rw");
+      try {
+        raf.seek(8);
+        raf.writeInt(toc);
+      } finally {
+        raf.close();
+      }
+    } finally {
+      if (out != null) {
+        out.close();
+      }
+    }
+  }
+
+  /**
+   * @return the content hash of the module this snapshot was made from
+   */
+  public String getHash() {
+    return hash;
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  @Override
+  public Iterator<ModuleEntry> getEntries() {
+    return Collections.<ModuleEntry> unmodifiableList(entries).iterator();
+  }
+
+  /**
+   * @return the header recorded for a class file entry of this snapshot, or null if entry is not a valid class file of this
+   *         snapshot
+   */
+  public ClassHeader getClassHeader(ModuleEntry entry) {
+    if (entry instanceof Entry && ((Entry) entry).getContainer() == this) {
+      return ((Entry) entry).header;
+    }
+    return null;
+  }
+
+  @Override
+  public String toString() {
+    return "SnapshotModule:" + file;
+  }
+
+  @Override
+  public int hashCode() {
+    return file.hashCode();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj)
+      return true;
+    if (obj == null)
+      return false;
+    if (getClass() != obj.getClass())
+      return false;
+    return file.equals(((SnapshotModule) obj).file);
+  }
+
+  /**
+   * A class file or resource in a snapshot
+   */
+  private class Entry implements MappedModuleEntry {
+
+    private final String name;
+
+    private final int offset;
+
+    private final int length;
+
+    private final ClassHeader header;
+
+    Entry(String name, int offset, int length, ClassHeader header) {
+      this.name = name;
+      this.offset = offset;
+      this.length = length;
+      this.header = header;
+    }
+
+    @Override
+    public String getName() {
+      return name;
+    }
+
+    @Override
+    public boolean isClassFile() {
+      return FileSuffixes.isClassFile(name);
+    }
+
+    @Override
+    public boolean isSourceFile() {
+      return false;
+    }
+
+    /**
+     * @return a stream reading the entry bytes directly from the mapped snapshot
+     */
+    @Override
+    public InputStream getInputStream() {
+      return new ByteBufferInputStream(getByteBuffer());
+    }
+
+    /**
+     * @return a view of the entry bytes in the mapped snapshot
+     */
+    @Override
+    public ByteBuffer getByteBuffer() {
+      ByteBuffer b = contents.duplicate();
+      b.position(offset);
+      b.limit(offset + length);
+      return b.slice();
+    }
+
+    @Override
+    public boolean isModuleFile() {
+      return false;
+    }
+
+    @Override
+    public Module asModule() {
+      return null;
+    }
+
+    @Override
+    public String getClassName() {
+      return FileSuffixes.stripSuffix(name);
+    }
+
+    @Override
+    public SnapshotModule getContainer() {
+      return SnapshotModule.this;
+    }
+
+    @Override
+    public int hashCode() {
+      return name.hashCode() * 5059 + file.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj)
+        return true;
+      if (obj == null)
+        return false;
+      if (getClass() != obj.getClass())
+        return false;
+      Entry other = (Entry) obj;
+      return name.equals(other.name) && getContainer().equals(other.getContainer());
+    }
+
+    @Override
+    public String toString() {
+      return file + ":" + name;
+    }
+  }
+
+  /**
+   * What the class hierarchy needs to know about a class file: its name, its superclass and interfaces, and the signatures and
+   * modifiers of its members. The accessors mirror those of {@link ClassReader}.
+   */
+  public static final class ClassHeader {
+
+    private final String name;
+
+    /**
+     * null for java.lang.Object
+     */
+    private final String superName;
+
+    private final int accessFlags;
+
+    private final String[] interfaceNames;
+
+    private final String[] fieldNames;
+
+    private final String[] fieldTypes;
+
+    private final int[] fieldAccessFlags;
+
+    /**
+     * does any field carry annotations? Field annotations are not recorded, so such fields must be read from the class file.
+     */
+    private final boolean fieldAnnotations;
+
+    private final String[] methodNames;
+
+    private final String[] methodTypes;
+
+    private final int[] methodAccessFlags;
+
+    private ClassHeader(String name, String superName, int accessFlags, String[] interfaceNames, String[] fieldNames,
+        String[] fieldTypes, int[] fieldAccessFlags, boolean fieldAnnotations, String[] methodNames, String[] methodTypes,
+        int[] methodAccessFlags) {
+      this.name = name;
+      this.superName = superName;
+      this.accessFlags = accessFlags;
+      this.interfaceNames = interfaceNames;
+      this.fieldNames = fieldNames;
+      this.fieldTypes = fieldTypes;
+      this.fieldAccessFlags = fieldAccessFlags;
+      this.fieldAnnotations = fieldAnnotations;
+      this.methodNames = methodNames;
+      this.methodTypes = methodTypes;
+      this.methodAccessFlags = methodAccessFlags;
+    }
+
+    /**
+     * @return the header of a class file, or null if the class file is invalid
+     */
+    static ClassHeader make(byte[] bytes) {
+      try {
+        ClassReader cr = new ClassReader(bytes);
+        int fieldCount = cr.getFieldCount();
+        String[] fieldNames = new String[fieldCount];
+        String[] fieldTypes = new String[fieldCount];
+        int[] fieldAccessFlags = new int[fieldCount];
+        boolean fieldAnnotations = false;
+        ClassReader.AttrIterator attrs = new ClassReader.AttrIterator();
+        for (int i = 0; i < fieldCount; i++) {
+          fieldNames[i] = cr.getFieldName(i);
+          fieldTypes[i] = cr.getFieldType(i);
+          fieldAccessFlags[i] = cr.getFieldAccessFlags(i);
+          for (cr.initFieldAttributeIterator(i, attrs); attrs.isValid(); attrs.advance()) {
+            String attr = attrs.getName();
+            if (attr.equals("RuntimeVisibleAnnotations") || attr.equals("RuntimeInvisibleAnnotations")) {
+              fieldAnnotations = true;
+            }
+          }
+        }
+        int methodCount = cr.getMethodCount();
+        String[] methodNames = new String[methodCount];
+        String[] methodTypes = new String[methodCount];
+        int[] methodAccessFlags = new int[methodCount];
+        for (int i = 0; i < methodCount; i++) {
+          methodNames[i] = cr.getMethodName(i);
+          methodTypes[i] = cr.getMethodType(i);
+          methodAccessFlags[i] = cr.getMethodAccessFlags(i);
+        }
+        return new ClassHeader(cr.getName(), cr.getSuperName(), cr.getAccessFlags(), cr.getInterfaceNames(), fieldNames,
+            fieldTypes, fieldAccessFlags, fieldAnnotations, methodNames, methodTypes, methodAccessFlags);
+      } catch (InvalidClassFileException e) {
+        // the class loader will reject the class file itself
+        return null;
+      }
+    }
+
+    void write(DataOutputStream out) throws IOException {
+      out.writeUTF(name);
+      out.writeUTF(superName == null ? "" : superName);
+      out.writeInt(accessFlags);
+      writeStrings(out, interfaceNames);
+      out.writeInt(fieldNames.length);
+      for (int i = 0; i < fieldNames.length; i++) {
+        out.writeUTF(fieldNames[i]);
+        out.writeUTF(fieldTypes[i]);
+        out.writeInt(fieldAccessFlags[i]);
+      }
+      out.writeBoolean(fieldAnnotations);
+      out.writeInt(methodNames.length);
+      for (int i = 0; i < methodNames.length; i++) {
+        out.writeUTF(methodNames[i]);
+        out.writeUTF(methodTypes[i]);
+        out.writeInt(methodAccessFlags[i]);
+      }
+    }
+
+    static ClassHeader read(DataInputStream in) throws IOException {
+      String name = in.readUTF();
+      String superName = in.readUTF();
+      int accessFlags = in.readInt();
+      String[] interfaceNames = readStrings(in);
+      int fieldCount = in.readInt();
+      String[] fieldNames = new String[fieldCount];
+      String[] fieldTypes = new String[fieldCount];
+      int[] fieldAccessFlags = new int[fieldCount];
+      for (int i = 0; i < fieldCount; i++) {
+        fieldNames[i] = in.readUTF();
+        fieldTypes[i] = in.readUTF();
+        fieldAccessFlags[i] = in.readInt();
+      }
+      boolean fieldAnnotations = in.readBoolean();
+      int methodCount = in.readInt();
+      String[] methodNames = new String[methodCount];
+      String[] methodTypes = new String[methodCount];
+      int[] methodAccessFlags = new int[methodCount];
+      for (int i = 0; i < methodCount; i++) {
+        methodNames[i] = in.readUTF();
+        methodTypes[i] = in.readUTF();
+        methodAccessFlags[i] = in.readInt();
+      }
+      return new ClassHeader(name, superName.length() == 0 ? null : superName, accessFlags, interfaceNames, fieldNames, fieldTypes,
+          fieldAccessFlags, fieldAnnotations, methodNames, methodTypes, methodAccessFlags);
+    }
+
+    private static void writeStrings(DataOutputStream out, String[] strings) throws IOException {
+      out.writeInt(strings.length);
+      for (String s : strings) {
+        out.writeUTF(s);
+      }
+    }
+
+    private static String[] readStrings(DataInputStream in) throws IOException {
+      String[] result = new String[in.readInt()];
+      for (int i = 0; i < result.length; i++) {
+        result[i] = in.readUTF();
+      }
+      return result;
+    }
+
+    /**
+     * @return the name of the class, in JVM format, e.g. java/lang/Object
+     */
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * @return the name of the superclass, in JVM format, or null for java.lang.Object
+     */
+    public String getSuperName() {
+      return superName;
+    }
+
+    public int getAccessFlags() {
+      return accessFlags;
+    }
+
+    public String[] getInterfaceNames() {
+      return interfaceNames.clone();
+    }
+
+    public int getFieldCount() {
+      return fieldNames.length;
+    }
+
+    public String getFieldName(int f) {
+      return fieldNames[f];
+    }
+
+    public String getFieldType(int f) {
+      return fieldTypes[f];
+    }
+
+    public int getFieldAccessFlags(int f) {
+      return fieldAccessFlags[f];
+    }
+
+    /**
+     * @return true iff some field of the class carries annotations, which the header does not record
+     */
+    public boolean hasFieldAnnotations() {
+      return fieldAnnotations;
+    }
+
+    public int getMethodCount() {
+      return methodNames.length;
+    }
+
+    public String getMethodName(int m) {
+      return methodNames[m];
+    }
+
+    public String getMethodType(int m) {
+      return methodTypes[m];
+    }
+
+    public int getMethodAccessFlags(int m) {
+      return methodAccessFlags[m];
+    }
+  }
+
+  /**
+   * An input stream over the remaining bytes of a buffer
+   */
+  private static class ByteBufferInputStream extends InputStream {
+
+    private final ByteBuffer buffer;
+
+    ByteBufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+      return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (len == 0) {
+        return 0;
+      }
+      if (!buffer.hasRemaining()) {
+        return -1;
+      }
+      int n = Math.min(len, buffer.remaining());
+      buffer.get(b, off, n);
+      return n;
+    }
+
+    @Override
+    public int available() {
+      return buffer.remaining();
+    }
+  }
+}
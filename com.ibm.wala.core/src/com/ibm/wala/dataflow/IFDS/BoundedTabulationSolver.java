@@ -46,6 +46,14 @@ public class BoundedTabulationSolver<T, P, F> extends TabulationSolver<T, P, F>
     }
     return false;
   }
+
+  /**
+   * The path edges that fit within the bound depend on the order in which they are processed, so tabulate sequentially.
+   */
+  @Override
+  protected boolean canTabulateInParallel() {
+    return false;
+  }
   
   public int getNumSteps() {
     return numSteps;
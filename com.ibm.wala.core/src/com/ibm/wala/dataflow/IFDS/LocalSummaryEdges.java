@@ -23,6 +23,8 @@ import com.ibm.wala.util.math.LongUtil;
 
 /**
  * A set of summary edges for a particular procedure.
+ *
+ * Safe for concurrent use; as with {@link LocalPathEdges}, returned sets may be live views.
  */
 public class LocalSummaryEdges {
 
@@ -70,7 +72,7 @@ public class LocalSummaryEdges {
    * @param d1 source dataflow fact
    * @param d2 target dataflow fact
    */
-  public void insertSummaryEdge(int s_p, int x, int d1, int d2) {
+  public synchronized void insertSummaryEdge(int s_p, int x, int d1, int d2) {
     int n = getIndexForEntryExitPair(s_p, x);
     IBinaryNaturalRelation R = summaries.get(n);
     if (R == null) {
@@ -92,7 +94,7 @@ public class LocalSummaryEdges {
    * @param d1 source dataflow fact
    * @param d2 target dataflow fact
    */
-  public boolean contains(int s_p, int x, int d1, int d2) {
+  public synchronized boolean contains(int s_p, int x, int d1, int d2) {
     int n = getIndexForEntryExitPair(s_p, x);
     IBinaryNaturalRelation R = summaries.get(n);
     if (R == null) {
@@ -108,7 +110,7 @@ public class LocalSummaryEdges {
    * @param d1 source dataflow fact
    * @return set of d2 s.t. d1->d2 recorded as a summary edge for (s_p,x), or null if none
    */
-  public IntSet getSummaryEdges(int s_p, int x, int d1) {
+  public synchronized IntSet getSummaryEdges(int s_p, int x, int d1) {
     int n = getIndexForEntryExitPair(s_p, x);
     IBinaryNaturalRelation R = summaries.get(n);
     if (R == null) {
@@ -126,7 +128,7 @@ public class LocalSummaryEdges {
    * @param d2 target dataflow fact
    * @return set of d1 s.t. d1->d2 recorded as a summary edge for (s_p,x), or null if none
    */
-  public IntSet getInvertedSummaryEdgesForTarget(int s_p, int x, int d2) {
+  public synchronized IntSet getInvertedSummaryEdgesForTarget(int s_p, int x, int d2) {
     int n = getIndexForEntryExitPair(s_p, x);
     IBinaryNaturalRelation R = summaries.get(n);
     if (R == null) {
@@ -11,10 +11,11 @@
 package com.ibm.wala.dataflow.IFDS;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.ibm.wala.util.MonitorUtil.IProgressMonitor;
-import com.ibm.wala.util.collections.HashSetFactory;
 import com.ibm.wala.util.collections.Pair;
 import com.ibm.wala.util.debug.Assertions;
 import com.ibm.wala.util.intset.IntIterator;
@@ -34,7 +35,7 @@ public class PartiallyBalancedTabulationSolver<T, P, F> extends TabulationSolver
     return new PartiallyBalancedTabulationSolver<T, P, F>(p, monitor);
   }
 
-  private final Collection<Pair<T,Integer>> unbalancedSeeds = HashSetFactory.make();
+  private final Collection<Pair<T,Integer>> unbalancedSeeds = Collections.newSetFromMap(new ConcurrentHashMap<Pair<T,Integer>, Boolean>());
 
   protected PartiallyBalancedTabulationSolver(PartiallyBalancedTabulationProblem<T, P, F> p, IProgressMonitor monitor) {
     super(p, monitor);
@@ -10,22 +10,28 @@
  *******************************************************************************/
 package com.ibm.wala.dataflow.IFDS;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import com.ibm.wala.cfg.IBasicBlock;
 import com.ibm.wala.util.CancelException;
 import com.ibm.wala.util.CancelRuntimeException;
 import com.ibm.wala.util.MonitorUtil;
 import com.ibm.wala.util.MonitorUtil.IProgressMonitor;
+import com.ibm.wala.util.ParallelUtil;
+import com.ibm.wala.util.ParallelUtil.IntAction;
 import com.ibm.wala.util.collections.HashMapFactory;
 import com.ibm.wala.util.collections.HashSetFactory;
 import com.ibm.wala.util.collections.Heap;
@@ -50,6 +56,7 @@ import com.ibm.wala.util.ref.ReferenceCleanser;
  * <li>to support exceptional control flow ... there may be several return sites for each call site.
  * <li>it supports an optional merge operator, useful for non-IFDS problems and widening.
  * <li>it stores summary edges at each callee instead of at each call site.
+ * <li>it can process path edges with several threads; see {@link #setNumberOfThreads(int)}.
  * </ul>
  * <p>
  * 
@@ -94,6 +101,11 @@ public class TabulationSolver<T, P, F> {
    */
   private static int wipeCount = WIPE_SOFT_CACHE_INTERVAL;
 
+  /**
+   * In parallel tabulation, the most path edges a thread takes from the worklist at once
+   */
+  private final static int MAX_PARALLEL_BATCH = 64;
+
   /**
    * The supergraph which induces this dataflow problem
    */
@@ -115,7 +127,7 @@ public class TabulationSolver<T, P, F> {
    * Logically, this represents a set of edges (s_p,d_i) -> (n, d_j). The data structure is chosen to attempt to save space over
    * representing each edge explicitly.
    */
-  final private Map<T, LocalPathEdges> pathEdges = HashMapFactory.make();
+  final private ConcurrentMap<T, LocalPathEdges> pathEdges = new ConcurrentHashMap<T, LocalPathEdges>();
 
   /**
    * A map from Object (entry node in supergraph) -> CallFlowEdges.
@@ -123,23 +135,23 @@ public class TabulationSolver<T, P, F> {
    * Logically, this represents a set of edges (c,d_i) -> (s_p, d_j). The data structure is chosen to attempt to save space over
    * representing each edge explicitly.
    */
-  final private Map<T, CallFlowEdges> callFlowEdges = HashMapFactory.make();
+  final private ConcurrentMap<T, CallFlowEdges> callFlowEdges = new ConcurrentHashMap<T, CallFlowEdges>();
 
   /**
    * A map from Object (procedure) -> LocalSummaryEdges.
    * 
    */
-  final protected Map<P, LocalSummaryEdges> summaryEdges = HashMapFactory.make();
+  final protected ConcurrentMap<P, LocalSummaryEdges> summaryEdges = new ConcurrentHashMap<P, LocalSummaryEdges>();
 
   /**
-   * the set of all {@link PathEdge}s that were used as seeds during the tabulation, grouped by procedure.
+   * the set of all {@link PathEdge}s that were used as seeds during the tabulation, grouped by procedure. Guarded by itself.
    */
   private final Map<P, Set<PathEdge<T>>> seeds = HashMapFactory.make();
 
   /**
    * All seeds, stored redundantly for quick access.
    */
-  private final Set<PathEdge<T>> allSeeds = HashSetFactory.make();
+  private final Set<PathEdge<T>> allSeeds = Collections.newSetFromMap(new ConcurrentHashMap<PathEdge<T>, Boolean>());
 
   /**
    * The worklist
@@ -152,18 +164,55 @@ public class TabulationSolver<T, P, F> {
   protected final IProgressMonitor progressMonitor;
 
   /**
-   * the path edge currently being processed in the main loop of {@link #forwardTabulateSLRPs()}; <code>null</code> if
-   * {@link #forwardTabulateSLRPs()} is not currently running. Note that if we are applying a summary edge in
-   * {@link #processExit(PathEdge)}, curPathEdge is modified to be the path edge terminating at the call node in the caller, to
-   * match the behavior in {@link #processCall(PathEdge)}.
+   * The state of the tabulation on one thread
    */
-  private PathEdge<T> curPathEdge;
+  private static final class Cursor<T> {
+    /**
+     * the path edge currently being processed in the main loop of {@link TabulationSolver#forwardTabulateSLRPs()};
+     * <code>null</code> if {@link TabulationSolver#forwardTabulateSLRPs()} is not currently running. Note that if we are applying
+     * a summary edge in {@link TabulationSolver#processExit(PathEdge)}, pathEdge is modified to be the path edge terminating at
+     * the call node in the caller, to match the behavior in {@link TabulationSolver#processCall(PathEdge)}.
+     */
+    PathEdge<T> pathEdge;
+
+    /**
+     * the summary edge currently being applied in {@link TabulationSolver#processCall(PathEdge)} or
+     * {@link TabulationSolver#processExit(PathEdge)}, or <code>null</code> if summary edges are not currently being processed.
+     */
+    PathEdge<T> summaryEdge;
+
+    /**
+     * in parallel tabulation, the path edges this thread discovered that are not yet on the worklist
+     */
+    List<PathEdge<T>> discovered;
+  }
+
+  private final ThreadLocal<Cursor<T>> cursors = new ThreadLocal<Cursor<T>>() {
+    @Override
+    protected Cursor<T> initialValue() {
+      return new Cursor<T>();
+    }
+  };
+
+  /**
+   * number of threads that process path edges
+   */
+  private int numberOfThreads = 1;
+
+  /**
+   * is a parallel tabulation running?
+   */
+  private volatile boolean tabulatingInParallel = false;
+
+  /**
+   * in parallel tabulation, the number of threads processing a batch of path edges. Guarded by the worklist.
+   */
+  private int busyThreads;
 
   /**
-   * the summary edge currently being applied in {@link #processCall(PathEdge)} or {@link #processExit(PathEdge)}, or
-   * <code>null</code> if summary edges are not currently being processed.
+   * set to stop a parallel tabulation, when one of its threads fails. Guarded by the worklist.
    */
-  private PathEdge<T> curSummaryEdge;
+  private boolean aborted;
 
   /**
    * @param p a description of the dataflow problem to solve
@@ -194,6 +243,32 @@ public class TabulationSolver<T, P, F> {
     return new TabulationSolver<T, P, F>(p, null);
   }
 
+  public int getNumberOfThreads() {
+    return numberOfThreads;
+  }
+
+  /**
+   * With more than one thread, the flow functions and the supergraph of the problem are used concurrently, and must be safe for
+   * that. Problems with a merge function are tabulated on one thread anyway; see {@link #canTabulateInParallel()}.
+   * 
+   * @param numberOfThreads number of threads that process path edges
+   * @throws IllegalArgumentException if numberOfThreads < 1
+   */
+  public void setNumberOfThreads(int numberOfThreads) {
+    if (numberOfThreads < 1) {
+      throw new IllegalArgumentException("invalid number of threads: " + numberOfThreads);
+    }
+    this.numberOfThreads = numberOfThreads;
+  }
+
+  /**
+   * Can path edges be processed in parallel? Not if the problem has a merge function, since the result of merging depends on the
+   * order in which path edges are processed. Subclasses that depend on that order in other ways should return false.
+   */
+  protected boolean canTabulateInParallel() {
+    return problem.getMergeFunction() == null;
+  }
+
   /**
    * Solve the dataflow problem.
    * 
@@ -230,8 +305,10 @@ public class TabulationSolver<T, P, F> {
    * Restart tabulation from a particular path edge. Use with care.
    */
   public void addSeed(PathEdge<T> seed) {
-    Set<PathEdge<T>> s = MapUtil.findOrCreateSet(seeds, supergraph.getProcOf(seed.entry));
-    s.add(seed);
+    synchronized (seeds) {
+      Set<PathEdge<T>> s = MapUtil.findOrCreateSet(seeds, supergraph.getProcOf(seed.entry));
+      s.add(seed);
+    }
     allSeeds.add(seed);
     propagate(seed.entry, seed.d1, seed.target, seed.d2);
   }
@@ -242,10 +319,15 @@ public class TabulationSolver<T, P, F> {
    * @throws CancelException
    */
   private void forwardTabulateSLRPs() throws CancelException {
-    assert curPathEdge == null : "curPathEdge should not be non-null here";
+    assert getCurPathEdge() == null : "curPathEdge should not be non-null here";
     if (worklist == null) {
       worklist = makeWorklist();
     }
+    if (numberOfThreads > 1 && canTabulateInParallel()) {
+      tabulateInParallel();
+      return;
+    }
+    Cursor<T> cursor = cursor();
     while (worklist.size() > 0) {
       MonitorUtil.throwExceptionIfCanceled(progressMonitor);
       if (verbose) {
@@ -256,38 +338,155 @@ public class TabulationSolver<T, P, F> {
       }
 
       final PathEdge<T> edge = popFromWorkList();
-      if (DEBUG_LEVEL > 0) {
-        System.err.println("TABULATE " + edge);
-      }
-      curPathEdge = edge;
-      int j = merge(edge.entry, edge.d1, edge.target, edge.d2);
-      if (j == -1 && DEBUG_LEVEL > 0) {
-        System.err.println("merge -1: DROPPING");
+      tabulate(cursor, edge);
+    }
+    cursor.pathEdge = null;
+  }
+
+  /**
+   * Process a path edge taken from the worklist
+   */
+  private void tabulate(Cursor<T> cursor, final PathEdge<T> edge) {
+    if (DEBUG_LEVEL > 0) {
+      System.err.println("TABULATE " + edge);
+    }
+    cursor.pathEdge = edge;
+    int j = merge(edge.entry, edge.d1, edge.target, edge.d2);
+    if (j == -1 && DEBUG_LEVEL > 0) {
+      System.err.println("merge -1: DROPPING");
+    }
+    if (j != -1) {
+      if (j != edge.d2) {
+        // this means that we don't want to push the edge. instead,
+        // we'll push the merged fact. a little tricky, but i think should
+        // work.
+        if (DEBUG_LEVEL > 0) {
+          System.err.println("propagating merged fact " + j);
+        }
+        propagate(edge.entry, edge.d1, edge.target, j);
+      } else {
+        if (supergraph.isCall(edge.target)) {
+          // [13]
+          processCall(edge);
+        } else if (supergraph.isExit(edge.target)) {
+          // [21]
+          processExit(edge);
+        } else {
+          // [33]
+          processNormal(edge);
+        }
       }
-      if (j != -1) {
-        if (j != edge.d2) {
-          // this means that we don't want to push the edge. instead,
-          // we'll push the merged fact. a little tricky, but i think should
-          // work.
-          if (DEBUG_LEVEL > 0) {
-            System.err.println("propagating merged fact " + j);
+    }
+  }
+
+  /**
+   * Run the main loop of {@link #forwardTabulateSLRPs()} on {@link #getNumberOfThreads()} threads, until the worklist is empty and
+   * no thread is processing path edges.
+   * 
+   * Each thread takes a batch of path edges from the worklist, and hands the path edges it discovers back when it is done with
+   * the batch, so the worklist is locked once per batch rather than once per edge. Path, summary and call flow edges are kept in
+   * thread-safe structures, and a thread always records an edge before it looks for the edges that combine with it: a call flow
+   * edge before the summary edges of the callee, and a summary edge before the call flow edges into the callee. So when two
+   * threads discover edges that combine at the same time, at least one of them sees the other's edge. Without a merge function,
+   * the path edges found are the least solution of the problem whatever order they are processed in, so the result is the same
+   * as the sequential one.
+   */
+  private void tabulateInParallel() throws CancelException {
+    busyThreads = 0;
+    aborted = false;
+    tabulatingInParallel = true;
+    try {
+      ParallelUtil.forEachIndex(numberOfThreads, numberOfThreads, new IntAction<CancelException>() {
+        @Override
+        public void apply(int i) throws CancelException {
+          Cursor<T> cursor = cursor();
+          cursor.discovered = new ArrayList<PathEdge<T>>();
+          boolean done = false;
+          try {
+            tabulateBatches(cursor);
+            done = true;
+          } finally {
+            if (!done) {
+              abort();
+            }
+            cursor.discovered = null;
+            cursor.pathEdge = null;
           }
-          propagate(edge.entry, edge.d1, edge.target, j);
-        } else {
-          if (supergraph.isCall(edge.target)) {
-            // [13]
-            processCall(edge);
-          } else if (supergraph.isExit(edge.target)) {
-            // [21]
-            processExit(edge);
-          } else {
-            // [33]
-            processNormal(edge);
+        }
+      }, null);
+    } finally {
+      abort();
+      tabulatingInParallel = false;
+    }
+  }
+
+  /**
+   * The loop run by each thread of a parallel tabulation
+   */
+  private void tabulateBatches(Cursor<T> cursor) throws CancelException {
+    List<PathEdge<T>> batch = new ArrayList<PathEdge<T>>(MAX_PARALLEL_BATCH);
+    while (true) {
+      synchronized (worklist) {
+        if (!batch.isEmpty()) {
+          for (PathEdge<T> edge : cursor.discovered) {
+            worklist.insert(edge);
+          }
+          cursor.discovered.clear();
+          batch.clear();
+          busyThreads--;
+          worklist.notifyAll();
+        }
+        while (worklist.size() == 0 && busyThreads > 0 && !aborted) {
+          try {
+            worklist.wait();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancelException(e);
           }
         }
+        if (worklist.size() == 0 || aborted) {
+          return;
+        }
+        if (verbose) {
+          performVerboseAction();
+        }
+        if (PERIODIC_WIPE_SOFT_CACHES) {
+          tendToSoftCaches();
+        }
+        // leave some edges for the other threads when the worklist is short
+        int n = Math.max(1, Math.min(MAX_PARALLEL_BATCH, worklist.size() / numberOfThreads));
+        for (int i = 0; i < n; i++) {
+          batch.add(popFromWorkList());
+        }
+        busyThreads++;
+      }
+      MonitorUtil.throwExceptionIfCanceled(progressMonitor);
+      for (PathEdge<T> edge : batch) {
+        tabulate(cursor, edge);
       }
     }
-    curPathEdge = null;
+  }
+
+  private void abort() {
+    synchronized (worklist) {
+      aborted = true;
+      worklist.notifyAll();
+    }
+  }
+
+  private Cursor<T> cursor() {
+    return cursors.get();
+  }
+
+  /**
+   * In parallel tabulation, other threads may add to the sets held by {@link LocalPathEdges}, {@link LocalSummaryEdges} and
+   * {@link CallFlowEdges} while we iterate over them, so we iterate over copies. Call this while holding the monitor of the
+   * structure s came from.
+   * 
+   * @return s, or a copy of s in parallel tabulation
+   */
+  private IntSet snapshot(IntSet s) {
+    return s == null || !tabulatingInParallel ? s : MutableSparseIntSet.make(s);
   }
 
   /**
@@ -368,24 +567,31 @@ public class TabulationSolver<T, P, F> {
     if (!summaries.contains(s_p_n, x, edge.d1, edge.d2)) {
       summaries.insertSummaryEdge(s_p_n, x, edge.d1, edge.d2);
     }
-    assert curSummaryEdge == null : "curSummaryEdge should be null here";
-    curSummaryEdge = edge;
+    Cursor<T> cursor = cursor();
+    assert cursor.summaryEdge == null : "curSummaryEdge should be null here";
+    cursor.summaryEdge = edge;
 
     final CallFlowEdges callFlow = findOrCreateCallFlowEdges(edge.entry);
 
     // [22] for each c /in callers(p)
-    IntSet callFlowSourceNodes = callFlow.getCallFlowSourceNodes(edge.d1);
+    IntSet callFlowSourceNodes;
+    synchronized (callFlow) {
+      callFlowSourceNodes = snapshot(callFlow.getCallFlowSourceNodes(edge.d1));
+    }
     if (callFlowSourceNodes != null) {
       for (IntIterator it = callFlowSourceNodes.intIterator(); it.hasNext();) {
         // [23] for each d4 s.t. <c,d4> -> <s_p,d1> occurred earlier
         int globalC = it.next();
-        final IntSet D4 = callFlow.getCallFlowSources(globalC, edge.d1);
+        final IntSet D4;
+        synchronized (callFlow) {
+          D4 = snapshot(callFlow.getCallFlowSources(globalC, edge.d1));
+        }
 
         // [23] for each d5 s.t. <e_p,d2> -> <returnSite(c),d5> ...
         propagateToReturnSites(edge, supergraph.getNode(globalC), D4);
       }
     }
-    curSummaryEdge = null;
+    cursor.summaryEdge = null;
   }
 
   /**
@@ -479,6 +685,7 @@ public class TabulationSolver<T, P, F> {
    */
   private void propToReturnSite(final T c, final T[] entries, final T retSite, final int d4, final IntSet D5) {
     if (D5 != null) {
+      final Cursor<T> cursor = cursor();
       D5.foreach(new IntSetAction() {
         @Override
         public void act(final int d5) {
@@ -504,7 +711,7 @@ public class TabulationSolver<T, P, F> {
                 @Override
                 public void act(int d3) {
                   // set curPathEdge to be consistent with its setting in processCall() when applying a summary edge
-                  curPathEdge = PathEdge.createPathEdge(s_p, d3, c, d4);
+                  cursor.pathEdge = PathEdge.createPathEdge(s_p, d3, c, d4);
                   propagate(s_p, d3, retSite, d5);
                 }
               });
@@ -527,7 +734,9 @@ public class TabulationSolver<T, P, F> {
     if (lp == null) {
       return null;
     }
-    return lp.getInverse(number, d2);
+    synchronized (lp) {
+      return snapshot(lp.getInverse(number, d2));
+    }
   }
 
   /**
@@ -641,7 +850,7 @@ public class TabulationSolver<T, P, F> {
       System.err.println(" reached: " + reached);
     }
     if (reached != null) {
-      final LocalSummaryEdges summaries = summaryEdges.get(supergraph.getProcOf(calleeEntry));
+      final Cursor<T> cursor = cursor();
       final CallFlowEdges callFlow = findOrCreateCallFlowEdges(calleeEntry);
       final int s_p_num = supergraph.getLocalBlockNumber(calleeEntry);
 
@@ -655,10 +864,12 @@ public class TabulationSolver<T, P, F> {
           // call flow
           callFlow.addCallEdge(callNodeNum, edge.d2, d1);
           // handle summary edges now as well. this is different from the PoPL
-          // 95 paper.
+          // 95 paper. we only look them up after recording the call flow edge, so that
+          // in parallel tabulation, a summary edge recorded concurrently is not missed.
+          P p = supergraph.getProcOf(calleeEntry);
+          LocalSummaryEdges summaries = summaryEdges.get(p);
           if (summaries != null) {
             // for each exit from the callee
-            P p = supergraph.getProcOf(calleeEntry);
             T[] exits = supergraph.getExitsForProcedure(p);
             for (int e = 0; e < exits.length; e++) {
               final T exit = exits[e];
@@ -668,7 +879,10 @@ public class TabulationSolver<T, P, F> {
               int x_num = supergraph.getLocalBlockNumber(exit);
               // reachedBySummary := {d2} s.t. <callee,d1> -> <exit,d2>
               // was recorded as a summary edge
-              IntSet reachedBySummary = summaries.getSummaryEdges(s_p_num, x_num, d1);
+              IntSet reachedBySummary;
+              synchronized (summaries) {
+                reachedBySummary = snapshot(summaries.getSummaryEdges(s_p_num, x_num, d1));
+              }
               if (reachedBySummary != null) {
                 for (final T returnSite : returnSitesForCallee) {
                   // if "exit" is a valid exit from the callee to the return
@@ -678,8 +892,8 @@ public class TabulationSolver<T, P, F> {
                     reachedBySummary.foreach(new IntSetAction() {
                       @Override
                       public void act(int d2) {
-                        assert curSummaryEdge == null : "curSummaryEdge should be null here";
-                        curSummaryEdge = PathEdge.createPathEdge(calleeEntry, d1, exit, d2);
+                        assert cursor.summaryEdge == null : "curSummaryEdge should be null here";
+                        cursor.summaryEdge = PathEdge.createPathEdge(calleeEntry, d1, exit, d2);
                         if (retf instanceof IBinaryReturnFlowFunction) {
                           final IntSet D5 = computeBinaryFlow(edge.d2, d2, (IBinaryReturnFlowFunction) retf);
                           if (D5 != null) {
@@ -701,7 +915,7 @@ public class TabulationSolver<T, P, F> {
                             });
                           }
                         }
-                        curSummaryEdge = null;
+                        cursor.summaryEdge = null;
                       }
                     });
                   }
@@ -795,15 +1009,20 @@ public class TabulationSolver<T, P, F> {
 
     assert j >= 0;
 
-    if (!pLocal.contains(i, number, j)) {
+    boolean added = false;
+    synchronized (pLocal) {
+      if (!pLocal.contains(i, number, j)) {
+        pLocal.addPathEdge(i, number, j);
+        added = true;
+      }
+    }
+    if (added) {
       if (DEBUG_LEVEL > 0) {
         System.err.println("propagate " + s_p + "  " + i + " " + number + " " + j);
       }
-      pLocal.addPathEdge(i, number, j);
       addToWorkList(s_p, i, n, j);
-      return true;
     }
-    return false;
+    return added;
   }
 
   public LocalPathEdges getLocalPathEdges(T s_p) {
@@ -841,10 +1060,18 @@ public class TabulationSolver<T, P, F> {
   }
 
   protected void addToWorkList(T s_p, int i, T n, int j) {
+    PathEdge<T> edge = PathEdge.createPathEdge(s_p, i, n, j);
+    if (tabulatingInParallel) {
+      List<PathEdge<T>> discovered = cursor().discovered;
+      if (discovered != null) {
+        discovered.add(edge);
+        return;
+      }
+    }
     if (worklist == null) {
       worklist = makeWorklist();
     }
-    worklist.insert(PathEdge.createPathEdge(s_p, i, n, j));
+    worklist.insert(edge);
     if (DEBUG_LEVEL >= 3) {
       System.err.println("WORKLIST: " + worklist);
     }
@@ -853,8 +1080,11 @@ public class TabulationSolver<T, P, F> {
   protected LocalPathEdges findOrCreateLocalPathEdges(T s_p) {
     LocalPathEdges result = pathEdges.get(s_p);
     if (result == null) {
-      result = makeLocalPathEdges();
-      pathEdges.put(s_p, result);
+      LocalPathEdges fresh = makeLocalPathEdges();
+      result = pathEdges.putIfAbsent(s_p, fresh);
+      if (result == null) {
+        result = fresh;
+      }
     }
     return result;
   }
@@ -866,8 +1096,11 @@ public class TabulationSolver<T, P, F> {
   protected LocalSummaryEdges findOrCreateLocalSummaryEdges(P proc) {
     LocalSummaryEdges result = summaryEdges.get(proc);
     if (result == null) {
-      result = new LocalSummaryEdges();
-      summaryEdges.put(proc, result);
+      LocalSummaryEdges fresh = new LocalSummaryEdges();
+      result = summaryEdges.putIfAbsent(proc, fresh);
+      if (result == null) {
+        result = fresh;
+      }
     }
     return result;
   }
@@ -875,8 +1108,11 @@ public class TabulationSolver<T, P, F> {
   protected CallFlowEdges findOrCreateCallFlowEdges(T s_p) {
     CallFlowEdges result = callFlowEdges.get(s_p);
     if (result == null) {
-      result = new CallFlowEdges();
-      callFlowEdges.put(s_p, result);
+      CallFlowEdges fresh = new CallFlowEdges();
+      result = callFlowEdges.putIfAbsent(s_p, fresh);
+      if (result == null) {
+        result = fresh;
+      }
     }
     return result;
   }
@@ -1058,10 +1294,10 @@ public class TabulationSolver<T, P, F> {
   }
 
   protected PathEdge<T> getCurPathEdge() {
-    return curPathEdge;
+    return cursor().pathEdge;
   }
 
   protected PathEdge<T> getCurSummaryEdge() {
-    return curSummaryEdge;
+    return cursor().summaryEdge;
   }
 }
@@ -0,0 +1,559 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.demandpa.alg;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.ibm.wala.demandpa.alg.DemandRefinementPointsTo.PointsToResult;
+import com.ibm.wala.demandpa.alg.DemandRefinementPointsTo.RefinementHistory;
+import com.ibm.wala.demandpa.flowgraph.AbstractFlowLabelVisitor;
+import com.ibm.wala.demandpa.flowgraph.IFlowGraph;
+import com.ibm.wala.demandpa.flowgraph.NewLabel;
+import com.ibm.wala.ipa.callgraph.CGNode;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.callgraph.propagation.HeapModel;
+import com.ibm.wala.ipa.callgraph.propagation.InstanceKey;
+import com.ibm.wala.ipa.callgraph.propagation.LocalPointerKey;
+import com.ibm.wala.ipa.callgraph.propagation.PointerKey;
+import com.ibm.wala.ssa.IR;
+import com.ibm.wala.ssa.SSAArrayReferenceInstruction;
+import com.ibm.wala.ssa.SSAFieldAccessInstruction;
+import com.ibm.wala.ssa.SSAInstruction;
+import com.ibm.wala.util.Predicate;
+import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.collections.HashSetFactory;
+import com.ibm.wala.util.collections.Pair;
+
+/**
+ * Answers to {@link DemandRefinementPointsTo} points-to queries, kept across runs of an analysis of code that changes between
+ * runs.
+ *
+ * For each queried variable, the cache keeps the points-to set computed on each refinement pass and the refinement policy's
+ * decisions, so that a later query for the variable is answered without traversing the flow graph, under any predicate its passes
+ * cover. An entry also records what the query depended on: a digest of each method whose variables it traversed, and a digest of
+ * the methods accessing each field those methods access. The digest of a method covers its IR and the methods that call it or
+ * that it calls, so an entry is dropped when a traversed method changes, when it gains or loses callers or callees, or when a field
+ * it accesses gains or loses accessors. Changes that only alter which accessors of a field the
+ * {@link com.ibm.wala.demandpa.util.MemoryAccessMap} considers are not noticed.
+ *
+ * Methods, instance keys and pointer keys are recorded by name, as with
+ * {@link com.ibm.wala.ipa.callgraph.impl.CallGraphArchive}: a cached instance key is matched to an allocation in the flow graph of
+ * the current run by its printed form. The cache cannot tell analysis settings apart, such as the heap model or the refinement
+ * policy; the caller names the settings when making a cache, and a file saved under other settings loads empty.
+ *
+ * The cache is safe for concurrent use, as by {@link DemandRefinementPointsTo#getPointsTo(Collection, Predicate, int,
+ * com.ibm.wala.util.MonitorUtil.IProgressMonitor)}.
+ */
+public class DemandQueryCache {
+
+  private final static int MAGIC = 0x57445143;
+
+  private final static int VERSION = 1;
+
+  /**
+   * name of the pseudo-field for the contents of arrays
+   */
+  private final static String ARRAY_CONTENTS = "[]";
+
+  /**
+   * the cached refinement passes of one query, with instance keys by name, and what they depend on
+   */
+  private static final class Entry {
+    final RefinementHistory<String> history;
+
+    /**
+     * digest of each traversed method, by name
+     */
+    final Map<String, String> methods;
+
+    /**
+     * digest of the accessors of each field accessed by the traversed methods, by name
+     */
+    final Map<String, String> fields;
+
+    Entry(RefinementHistory<String> history, Map<String, String> methods, Map<String, String> fields) {
+      this.history = history;
+      this.methods = methods;
+      this.fields = fields;
+    }
+  }
+
+  /**
+   * digests of the methods and fields of one call graph, computed as needed
+   */
+  private static final class Digests {
+    final CallGraph cg;
+
+    /**
+     * the nodes of cg, by name
+     */
+    final Map<String, CGNode> nodes = HashMapFactory.make();
+
+    /**
+     * the names of the nodes accessing each field, by name
+     */
+    final Map<String, SortedSet<String>> accessors = HashMapFactory.make();
+
+    final ConcurrentMap<CGNode, String> methodDigests = new ConcurrentHashMap<CGNode, String>();
+
+    final ConcurrentMap<String, String> fieldDigests = new ConcurrentHashMap<String, String>();
+
+    Digests(CallGraph cg) {
+      this.cg = cg;
+      for (CGNode n : cg) {
+        String name = name(n);
+        nodes.put(name, n);
+        for (String f : accessedFields(n)) {
+          SortedSet<String> s = accessors.get(f);
+          if (s == null) {
+            s = new TreeSet<String>();
+            accessors.put(f, s);
+          }
+          s.add(name);
+        }
+      }
+    }
+
+    String getMethodDigest(CGNode n) {
+      String result = methodDigests.get(n);
+      if (result == null) {
+        MessageDigest digest = newDigest();
+        update(digest, name(n));
+        IR ir = n.getIR();
+        if (ir != null) {
+          for (SSAInstruction s : ir.getInstructions()) {
+            update(digest, s == null ? "" : s.toString(ir.getSymbolTable()));
+          }
+        }
+        update(digest, "callers");
+        for (String name : names(cg.getPredNodes(n))) {
+          update(digest, name);
+        }
+        update(digest, "callees");
+        for (String name : names(cg.getSuccNodes(n))) {
+          update(digest, name);
+        }
+        result = toHex(digest.digest());
+        methodDigests.put(n, result);
+      }
+      return result;
+    }
+
+    String getFieldDigest(String field) {
+      String result = fieldDigests.get(field);
+      if (result == null) {
+        MessageDigest digest = newDigest();
+        update(digest, field);
+        SortedSet<String> s = accessors.get(field);
+        if (s != null) {
+          for (String name : s) {
+            update(digest, name);
+          }
+        }
+        result = toHex(digest.digest());
+        fieldDigests.put(field, result);
+      }
+      return result;
+    }
+  }
+
+  private final String configuration;
+
+  /**
+   * entries by the name of the queried variable
+   */
+  private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+  private Digests digests;
+
+  private int hits;
+
+  private int misses;
+
+  /**
+   * @param configuration a description of the analysis settings the cached answers are computed under
+   */
+  public DemandQueryCache(String configuration) {
+    if (configuration == null) {
+      throw new IllegalArgumentException("null configuration");
+    }
+    this.configuration = configuration;
+  }
+
+  public String getConfiguration() {
+    return configuration;
+  }
+
+  /**
+   * Load a cache saved by {@link #save(File)}.
+   *
+   * @return the cache in f, or an empty cache if f does not exist, is empty, or was saved by another version or under another
+   *         configuration
+   * @throws IOException if f cannot be read or is not a cache
+   */
+  public static DemandQueryCache load(File f, String configuration) throws IOException {
+    if (f == null) {
+      throw new IllegalArgumentException("null f");
+    }
+    DemandQueryCache result = new DemandQueryCache(configuration);
+    if (!f.exists() || f.length() == 0) {
+      return result;
+    }
+    DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)));
+    try {
+      if (in.readInt() != MAGIC) {
+        throw new IOException("not a demand query cache: " + f);
+      }
+      if (in.readInt() != VERSION || !in.readUTF().equals(configuration)) {
+        return result;
+      }
+      for (int i = in.readInt(); i > 0; i--) {
+        String pk = in.readUTF();
+        RefinementHistory<String> history = new RefinementHistory<String>(in.readInt());
+        for (int j = in.readInt(); j > 0; j--) {
+          int size = in.readInt();
+          if (size < 0) {
+            history.p2Sets.add(null);
+          } else {
+            Collection<String> p2Set = new ArrayList<String>(size);
+            for (int k = 0; k < size; k++) {
+              p2Set.add(in.readUTF());
+            }
+            history.p2Sets.add(p2Set);
+          }
+        }
+        for (int j = in.readInt(); j > 0; j--) {
+          history.morePasses.add(in.readBoolean());
+        }
+        result.entries.put(pk, new Entry(history, readMap(in), readMap(in)));
+      }
+    } finally {
+      in.close();
+    }
+    return result;
+  }
+
+  /**
+   * Save the cache to f. The cache is written to a temporary file first, so that f is never left partly written.
+   */
+  public void save(File f) throws IOException {
+    if (f == null) {
+      throw new IllegalArgumentException("null f");
+    }
+    File tmp = File.createTempFile(f.getName(), ".tmp", f.getAbsoluteFile().getParentFile());
+    try {
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+      try {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeUTF(configuration);
+        // take a copy, since other threads may add entries meanwhile
+        Map<String, Entry> copy = new TreeMap<String, Entry>(entries);
+        out.writeInt(copy.size());
+        for (Map.Entry<String, Entry> e : copy.entrySet()) {
+          out.writeUTF(e.getKey());
+          RefinementHistory<String> history = e.getValue().history;
+          out.writeInt(history.numPasses);
+          out.writeInt(history.p2Sets.size());
+          for (Collection<String> p2Set : history.p2Sets) {
+            if (p2Set == null) {
+              out.writeInt(-1);
+            } else {
+              out.writeInt(p2Set.size());
+              for (String ik : p2Set) {
+                out.writeUTF(ik);
+              }
+            }
+          }
+          out.writeInt(history.morePasses.size());
+          for (boolean b : history.morePasses) {
+            out.writeBoolean(b);
+          }
+          writeMap(out, e.getValue().methods);
+          writeMap(out, e.getValue().fields);
+        }
+      } finally {
+        out.close();
+      }
+      if (f.exists() && !f.delete()) {
+        throw new IOException("could not replace " + f);
+      }
+      if (!tmp.renameTo(f)) {
+        throw new IOException("could not create " + f);
+      }
+    } finally {
+      tmp.delete();
+    }
+  }
+
+  /**
+   * @return the number of queried variables with cached answers
+   */
+  public int size() {
+    return entries.size();
+  }
+
+  /**
+   * @return the number of queries answered from the cache
+   */
+  public synchronized int getHits() {
+    return hits;
+  }
+
+  /**
+   * @return the number of queries the cache could not answer
+   */
+  public synchronized int getMisses() {
+    return misses;
+  }
+
+  public void clear() {
+    entries.clear();
+  }
+
+  /**
+   * @return the answer to a query for pk aiming to satisfy ikeyPred, or null if the cache cannot give it
+   */
+  Pair<PointsToResult, Collection<InstanceKey>> replay(DemandRefinementPointsTo dmp, LocalPointerKey pk,
+      Predicate<InstanceKey> ikeyPred) {
+    Pair<PointsToResult, Collection<InstanceKey>> result = null;
+    String name = pk.toString();
+    Entry entry = entries.get(name);
+    if (entry != null) {
+      Digests d = getDigests(dmp.getBaseCallGraph());
+      if (isValid(entry, d)) {
+        RefinementHistory<InstanceKey> history = resolve(entry, d, dmp.g, dmp.getHeapModel());
+        if (history != null) {
+          result = history.replay(ikeyPred);
+        }
+      } else {
+        entries.remove(name, entry);
+      }
+    }
+    synchronized (this) {
+      if (result == null) {
+        misses++;
+      } else {
+        hits++;
+      }
+    }
+    if (result != null && result.snd == null) {
+      result = Pair.<PointsToResult, Collection<InstanceKey>> make(result.fst, Collections.<InstanceKey> emptySet());
+    }
+    return result;
+  }
+
+  /**
+   * record the refinement passes run for a query for pk, which traversed variables of the given methods
+   */
+  void record(DemandRefinementPointsTo dmp, LocalPointerKey pk, RefinementHistory<InstanceKeyAndState> history,
+      Set<CGNode> traversed) {
+    RefinementHistory<String> names = new RefinementHistory<String>(history.numPasses);
+    for (Collection<InstanceKeyAndState> p2Set : history.p2Sets) {
+      if (p2Set == null) {
+        names.p2Sets.add(null);
+      } else {
+        Set<InstanceKey> iks = HashSetFactory.make();
+        Set<String> p2SetNames = new TreeSet<String>();
+        for (InstanceKeyAndState ikAndState : p2Set) {
+          if (iks.add(ikAndState.getInstanceKey())) {
+            p2SetNames.add(ikAndState.getInstanceKey().toString());
+          }
+        }
+        if (p2SetNames.size() != iks.size()) {
+          // distinct instance keys print the same, and could not be told apart when replayed
+          return;
+        }
+        names.p2Sets.add(new ArrayList<String>(p2SetNames));
+      }
+    }
+    names.morePasses.addAll(history.morePasses);
+    Digests d = getDigests(dmp.getBaseCallGraph());
+    Map<String, String> methods = new TreeMap<String, String>();
+    Map<String, String> fields = new TreeMap<String, String>();
+    for (CGNode n : traversed) {
+      methods.put(name(n), d.getMethodDigest(n));
+      for (String f : accessedFields(n)) {
+        fields.put(f, d.getFieldDigest(f));
+      }
+    }
+    entries.put(pk.toString(), new Entry(names, methods, fields));
+  }
+
+  private synchronized Digests getDigests(CallGraph cg) {
+    if (digests == null || digests.cg != cg) {
+      digests = new Digests(cg);
+    }
+    return digests;
+  }
+
+  private static boolean isValid(Entry entry, Digests d) {
+    for (Map.Entry<String, String> m : entry.methods.entrySet()) {
+      CGNode n = d.nodes.get(m.getKey());
+      if (n == null || !d.getMethodDigest(n).equals(m.getValue())) {
+        return false;
+      }
+    }
+    for (Map.Entry<String, String> f : entry.fields.entrySet()) {
+      if (!d.getFieldDigest(f.getKey()).equals(f.getValue())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return the history of entry with the instance keys of the current run in place of their names, or null if some name has no
+   *         instance key among the allocations in the traversed methods
+   */
+  private static RefinementHistory<InstanceKey> resolve(Entry entry, Digests d, IFlowGraph g,
+      HeapModel heapModel) {
+    final Map<String, InstanceKey> instanceKeys = HashMapFactory.make();
+    AbstractFlowLabelVisitor v = new AbstractFlowLabelVisitor() {
+      @Override
+      public void visitNew(NewLabel label, Object dst) {
+        instanceKeys.put(dst.toString(), (InstanceKey) dst);
+      }
+    };
+    for (String m : entry.methods.keySet()) {
+      CGNode n = d.nodes.get(m);
+      IR ir = n.getIR();
+      if (ir != null && g.hasSubgraphForNode(n)) {
+        List<PointerKey> pks = new ArrayList<PointerKey>();
+        for (int vn = 1; vn <= ir.getSymbolTable().getMaxValueNumber(); vn++) {
+          pks.add(heapModel.getPointerKeyForLocal(n, vn));
+        }
+        // exceptions thrown by the method are allocated into its exceptional return value
+        pks.add(heapModel.getPointerKeyForExceptionalReturnValue(n));
+        for (PointerKey pk : pks) {
+          if (g.containsNode(pk)) {
+            g.visitSuccs(pk, v);
+          }
+        }
+      }
+    }
+    RefinementHistory<InstanceKey> result = new RefinementHistory<InstanceKey>(entry.history.numPasses);
+    for (Collection<String> p2Set : entry.history.p2Sets) {
+      if (p2Set == null) {
+        result.p2Sets.add(null);
+      } else {
+        Set<InstanceKey> iks = HashSetFactory.make(p2Set.size());
+        for (String name : p2Set) {
+          InstanceKey ik = instanceKeys.get(name);
+          if (ik == null) {
+            return null;
+          }
+          iks.add(ik);
+        }
+        result.p2Sets.add(iks);
+      }
+    }
+    result.morePasses.addAll(entry.history.morePasses);
+    return result;
+  }
+
+  /**
+   * @return a name for n that is the same in every run
+   */
+  private static String name(CGNode n) {
+    return n.getMethod().getSignature() + " " + n.getContext();
+  }
+
+  private static SortedSet<String> names(Iterator<CGNode> nodes) {
+    SortedSet<String> result = new TreeSet<String>();
+    while (nodes.hasNext()) {
+      result.add(name(nodes.next()));
+    }
+    return result;
+  }
+
+  /**
+   * @return the names of the fields, static or not, read or written by n, with arrays counting as one field
+   */
+  private static Set<String> accessedFields(CGNode n) {
+    Set<String> result = HashSetFactory.make();
+    IR ir = n.getIR();
+    if (ir != null) {
+      for (SSAInstruction s : ir.getInstructions()) {
+        if (s instanceof SSAFieldAccessInstruction) {
+          result.add(((SSAFieldAccessInstruction) s).getDeclaredField().getSignature());
+        } else if (s instanceof SSAArrayReferenceInstruction && ((SSAArrayReferenceInstruction) s).getElementType().isReferenceType()) {
+          result.add(ARRAY_CONTENTS);
+        }
+      }
+    }
+    return result;
+  }
+
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static void update(MessageDigest digest, String s) {
+    try {
+      digest.update(s.getBytes("UTF-8"));
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+    digest.update((byte) 0);
+  }
+
+  private static String toHex(byte[] bytes) {
+    StringBuilder result = new StringBuilder();
+    for (byte b : bytes) {
+      result.append(Character.forDigit((b >> 4) & 0xf, 16));
+      result.append(Character.forDigit(b & 0xf, 16));
+    }
+    return result.toString();
+  }
+
+  private static Map<String, String> readMap(DataInputStream in) throws IOException {
+    Map<String, String> result = new TreeMap<String, String>();
+    for (int i = in.readInt(); i > 0; i--) {
+      result.put(in.readUTF(), in.readUTF());
+    }
+    return result;
+  }
+
+  private static void writeMap(DataOutputStream out, Map<String, String> m) throws IOException {
+    out.writeInt(m.size());
+    for (Map.Entry<String, String> e : m.entrySet()) {
+      out.writeUTF(e.getKey());
+      out.writeUTF(e.getValue());
+    }
+  }
+}
@@ -37,14 +37,19 @@
  */
 package com.ibm.wala.demandpa.alg;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import com.ibm.wala.analysis.reflection.InstanceKeyWithNode;
 import com.ibm.wala.classLoader.CallSiteReference;
@@ -88,6 +93,7 @@ import com.ibm.wala.demandpa.util.PointerParamValueNumIterator;
 import com.ibm.wala.ipa.callgraph.AnalysisOptions;
 import com.ibm.wala.ipa.callgraph.CGNode;
 import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.callgraph.MethodTargetSelector;
 import com.ibm.wala.ipa.callgraph.propagation.AbstractLocalPointerKey;
 import com.ibm.wala.ipa.callgraph.propagation.FilteredPointerKey;
 import com.ibm.wala.ipa.callgraph.propagation.FilteredPointerKey.MultipleClassesFilter;
@@ -113,6 +119,10 @@ import com.ibm.wala.ssa.SSAArrayStoreInstruction;
 import com.ibm.wala.ssa.SSAInstruction;
 import com.ibm.wala.ssa.SSANewInstruction;
 import com.ibm.wala.ssa.SSAPutInstruction;
+import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.MonitorUtil.IProgressMonitor;
+import com.ibm.wala.util.ParallelUtil;
+import com.ibm.wala.util.ParallelUtil.IntAction;
 import com.ibm.wala.util.Predicate;
 import com.ibm.wala.util.collections.ArraySet;
 import com.ibm.wala.util.collections.ArraySetMultiMap;
@@ -167,15 +177,48 @@ public class DemandRefinementPointsTo extends AbstractDemandPointsTo {
     return refinementPolicy;
   }
 
+  /**
+   * the refinement passes run for each variable queried so far, shared by all copies made to answer queries concurrently
+   */
+  private final ConcurrentMap<PointerKeyAndState, RefinementHistory<InstanceKeyAndState>> refinementHistories;
+
+  /**
+   * has the flow graph been built for the whole call graph? Until it has, the answer to a query depends on the parts of the flow
+   * graph earlier queries built, so refinement histories are neither recorded nor replayed.
+   */
+  private final AtomicBoolean flowGraphComplete;
+
+  private volatile DemandQueryCache queryCache;
+
+  /**
+   * the methods whose variables the current query has traversed, if they are being recorded for the query cache
+   */
+  private Set<CGNode> traversedNodes;
+
   private DemandRefinementPointsTo(CallGraph cg, ThisFilteringHeapModel model, MemoryAccessMap fam, IClassHierarchy cha,
       AnalysisOptions options, StateMachineFactory<IFlowLabel> stateMachineFactory, IFlowGraph flowGraph) {
     super(cg, model, fam, cha, options);
     this.stateMachineFactory = stateMachineFactory;
     g = flowGraph;
     this.refinementPolicyFactory = new SinglePassRefinementPolicy.Factory(new NeverRefineFieldsPolicy(), new NeverRefineCGPolicy());
+    this.refinementHistories = new ConcurrentHashMap<PointerKeyAndState, RefinementHistory<InstanceKeyAndState>>();
+    this.flowGraphComplete = new AtomicBoolean();
     sanityCheckCG();
   }
 
+  /**
+   * a copy of prototype with its own per-query state, to answer queries on another thread
+   */
+  private DemandRefinementPointsTo(DemandRefinementPointsTo prototype) {
+    super(prototype.cg, prototype.heapModel, prototype.mam, prototype.cha, prototype.options);
+    this.stateMachineFactory = prototype.stateMachineFactory;
+    this.refinementPolicyFactory = prototype.refinementPolicyFactory;
+    g = prototype.g;
+    this.refinementHistories = prototype.refinementHistories;
+    this.flowGraphComplete = prototype.flowGraphComplete;
+    this.queryCache = prototype.queryCache;
+  }
+
   private void sanityCheckCG() {
     if (PARANOID) {
       for (CGNode callee : cg) {
@@ -253,6 +296,13 @@ public class DemandRefinementPointsTo extends AbstractDemandPointsTo {
    */
   public Pair<PointsToResult, Collection<InstanceKey>> getPointsTo(PointerKey pk, Predicate<InstanceKey> ikeyPred)
       throws IllegalArgumentException {
+    DemandQueryCache cache = queryCache;
+    if (cache != null && pk instanceof LocalPointerKey) {
+      Pair<PointsToResult, Collection<InstanceKey>> cached = cache.replay(this, (LocalPointerKey) pk, ikeyPred);
+      if (cached != null) {
+        return cached;
+      }
+    }
     Pair<PointsToResult, Collection<InstanceKeyAndState>> p = getPointsToWithStates(pk, ikeyPred);
     final Collection<InstanceKeyAndState> p2SetWithStates = p.snd;
     Collection<InstanceKey> finalP2Set = p2SetWithStates != null ? removeStates(p2SetWithStates) : Collections.<InstanceKey>emptySet();
@@ -313,10 +363,92 @@ public class DemandRefinementPointsTo extends AbstractDemandPointsTo {
         new DemandPointerFlowGraph(cg, thisFilteringHeapModel, mam, cha));
   }
 
+  /**
+   * The points-to sets computed on each refinement pass of a query, and the refinement policy's answer after each pass as to
+   * whether to refine further.
+   * 
+   * Since the passes of a query depend only on the queried variable and on the state machine and refinement policy factories, a
+   * history recorded for one query can be replayed to answer another query for the same variable, even under a different predicate,
+   * as long as the replay does not need a pass that was never run.
+   * 
+   * @param <T> the type of the points-to set elements
+   */
+  static final class RefinementHistory<T> {
+
+    /**
+     * the points-to set computed on each pass run, or null for passes that ran out of budget
+     */
+    final List<Collection<T>> p2Sets = new ArrayList<Collection<T>>();
+
+    /**
+     * for each pass after which the refinement policy was asked for another pass, its answer
+     */
+    final List<Boolean> morePasses = new ArrayList<Boolean>();
+
+    final int numPasses;
+
+    RefinementHistory(int numPasses) {
+      this.numPasses = numPasses;
+    }
+
+    /**
+     * @return the result of a query aiming to satisfy pred, or null if answering it needs passes this history does not cover
+     */
+    Pair<PointsToResult, Collection<T>> replay(Predicate<T> pred) {
+      Collection<T> lastP2Set = null;
+      int passNum = 0;
+      for (; passNum < numPasses; passNum++) {
+        if (passNum >= p2Sets.size()) {
+          return null;
+        }
+        Collection<T> curP2Set = p2Sets.get(passNum);
+        if (curP2Set != null) {
+          if (lastP2Set == null || lastP2Set.size() > curP2Set.size()) {
+            lastP2Set = curP2Set;
+          }
+          if (curP2Set.isEmpty() || Util.forAll(curP2Set, pred)) {
+            return Pair.make(PointsToResult.SUCCESS, lastP2Set);
+          }
+        }
+        if (passNum >= morePasses.size()) {
+          return null;
+        }
+        if (!morePasses.get(passNum)) {
+          break;
+        }
+      }
+      PointsToResult result = null;
+      if (passNum == numPasses) {
+        // we ran all the passes without succeeding and
+        // without the refinement policy giving up
+        result = PointsToResult.BUDGETEXCEEDED;
+      } else {
+        if (lastP2Set != null) {
+          result = PointsToResult.NOMOREREFINE;
+        } else {
+          // we stopped before the maximum number of passes, but we never
+          // actually finished a pass, so we count this as BUDGETEXCEEDED
+          result = PointsToResult.BUDGETEXCEEDED;
+        }
+      }
+      return Pair.make(result, lastP2Set);
+    }
+  }
+
   private Pair<PointsToResult, Collection<InstanceKeyAndState>> outerRefinementLoop(PointerKeyAndState queried,
       Predicate<InstanceKey> ikeyPred) {
+    boolean memoize = flowGraphComplete.get();
+    RefinementHistory<InstanceKeyAndState> history = memoize ? refinementHistories.get(queried) : null;
+    if (history != null) {
+      Pair<PointsToResult, Collection<InstanceKeyAndState>> p = history.replay(withStates(ikeyPred));
+      if (p != null) {
+        return p;
+      }
+    }
+    history = new RefinementHistory<InstanceKeyAndState>(refinementPolicy.getNumPasses());
+    DemandQueryCache cache = queryCache;
+    traversedNodes = cache != null ? HashSetFactory.<CGNode> make() : null;
     Collection<InstanceKeyAndState> lastP2Set = null;
-    boolean succeeded = false;
     int numPasses = refinementPolicy.getNumPasses();
     int passNum = 0;
     for (; passNum < numPasses; passNum++) {
@@ -324,7 +456,6 @@ public class DemandRefinementPointsTo extends AbstractDemandPointsTo {
       setTraversalBudget(refinementPolicy.getBudgetForPass(passNum));
       Collection<InstanceKeyAndState> curP2Set = null;
       PointsToComputer computer = null;
-      boolean completedPassInBudget = false;
       try {
         while (true) {
           try {
@@ -336,7 +467,6 @@ public class DemandRefinementPointsTo extends AbstractDemandPointsTo {
               System.err.println("traversed " + getNumNodesTraversed() + " nodes");
               System.err.println("POINTS-TO SET " + curP2Set);
             }
-            completedPassInBudget = true;
             break;
           } catch (StatesMergedException e) {
             if (DEBUG) {
@@ -347,6 +477,7 @@ public class DemandRefinementPointsTo extends AbstractDemandPointsTo {
       } catch (BudgetExceededException e) {
 
       }
+      history.p2Sets.add(curP2Set == null ? null : Collections.unmodifiableCollection(curP2Set));
       if (curP2Set != null) {
         if (lastP2Set == null) {
           lastP2Set = curP2Set;
@@ -360,38 +491,27 @@ public class DemandRefinementPointsTo extends AbstractDemandPointsTo {
         }
         if (curP2Set.isEmpty() || passesPred(curP2Set, ikeyPred)) {
           // we did it!
-          // if (curP2Set.isEmpty()) {
-          // System.err.println("EMPTY PTO SET");
-          // }
-          succeeded = true;
           break;
-        } else if (completedPassInBudget) {
         }
       }
       // if we get here, means either budget for pass was exceeded,
       // or points-to set wasn't good enough
       // so, start new pass, if more refinement to do
-      if (!refinementPolicy.nextPass()) {
+      boolean morePasses = refinementPolicy.nextPass();
+      history.morePasses.add(morePasses);
+      if (!morePasses) {
         break;
       }
     }
-    PointsToResult result = null;
-    if (succeeded) {
-      result = PointsToResult.SUCCESS;
-    } else if (passNum == numPasses) {
-      // we ran all the passes without succeeding and
-      // without the refinement policy giving up
-      result = PointsToResult.BUDGETEXCEEDED;
-    } else {
-      if (lastP2Set != null) {
-        result = PointsToResult.NOMOREREFINE;
-      } else {
-        // we stopped before the maximum number of passes, but we never
-        // actually finished a pass, so we count this as BUDGETEXCEEDED
-        result = PointsToResult.BUDGETEXCEEDED;
-      }
+    if (memoize) {
+      // the passes run here extend those of any history recorded before, so keep this one
+      refinementHistories.put(queried, history);
+    }
+    if (cache != null) {
+      cache.record(this, (LocalPointerKey) queried.getPointerKey(), history, traversedNodes);
+      traversedNodes = null;
     }
-    return Pair.make(result, lastP2Set);
+    return history.replay(withStates(ikeyPred));
   }
 
   /**
@@ -501,16 +621,24 @@ public class DemandRefinementPointsTo extends AbstractDemandPointsTo {
   /**
    * do all instance keys in p2set pass ikeyPred?
    */
-  private boolean passesPred(Collection<InstanceKeyAndState> curP2Set, final Predicate<InstanceKey> ikeyPred) {
-    return Util.forAll(curP2Set, new Predicate<InstanceKeyAndState>() {
+  private static boolean passesPred(Collection<InstanceKeyAndState> curP2Set, final Predicate<InstanceKey> ikeyPred) {
+    return Util.forAll(curP2Set, withStates(ikeyPred));
+  }
+
+  /**
+   * @return a predicate that holds for an instance key and state whenever ikeyPred holds for the instance key
+   */
+  private static Predicate<InstanceKeyAndState> withStates(final Predicate<InstanceKey> ikeyPred) {
+    return new Predicate<InstanceKeyAndState>() {
 
       @Override
       public boolean test(InstanceKeyAndState t) {
         return ikeyPred.test(t.getInstanceKey());
       }
-    });
+    };
   }
 
+
   /**
    * @return the points-to set of <code>pk</code>, or <code>null</code> if the points-to set can't be computed in the allocated
    *         budget
@@ -528,6 +656,68 @@ public class DemandRefinementPointsTo extends AbstractDemandPointsTo {
     return getPointsToWithStates(pk, Predicate.<InstanceKey> falsePred()).snd;
   }
 
+  /**
+   * compute points-to sets for many pointer keys at once, answering the queries concurrently
+   * 
+   * Each thread answers queries with its own refinement policy, state machine and traversal budget, exactly as
+   * {@link #getPointsTo(PointerKey, Predicate)} would. Before the queries start, the flow graph is built for the whole call graph,
+   * so that the threads only read it; answers may then be more complete than those of queries made on a partly built flow graph.
+   * From then on, the refinement passes run for each queried variable are remembered, so a variable queried again, here or later,
+   * is answered from its earlier passes as far as they go.
+   * 
+   * @param pks the pointer keys, each of which must be a {@link LocalPointerKey}
+   * @param ikeyPred the desired predicate that each instance key in each points-to set should ideally satisfy
+   * @param numberOfThreads how many threads to answer queries on
+   * @return for each pointer key, the result {@link #getPointsTo(PointerKey, Predicate)} gives for it on the whole flow graph
+   * @throws CancelException if the monitor is canceled
+   */
+  public Map<PointerKey, Pair<PointsToResult, Collection<InstanceKey>>> getPointsTo(Collection<? extends PointerKey> pks,
+      final Predicate<InstanceKey> ikeyPred, int numberOfThreads, IProgressMonitor monitor) throws CancelException {
+    if (pks == null) {
+      throw new IllegalArgumentException("null pks");
+    }
+    if (numberOfThreads < 1) {
+      throw new IllegalArgumentException("invalid numberOfThreads: " + numberOfThreads);
+    }
+    for (PointerKey pk : pks) {
+      if (!(pk instanceof com.ibm.wala.ipa.callgraph.propagation.LocalPointerKey)) {
+        throw new IllegalArgumentException("only locals for now");
+      }
+    }
+    completeFlowGraph();
+    final List<PointerKey> queries = new ArrayList<PointerKey>(new LinkedHashSet<PointerKey>(pks));
+    final ConcurrentMap<PointerKey, Pair<PointsToResult, Collection<InstanceKey>>> result = new ConcurrentHashMap<PointerKey, Pair<PointsToResult, Collection<InstanceKey>>>();
+    // each thread answers its queries with its own copy of the refinement state
+    final ThreadLocal<DemandRefinementPointsTo> copies = new ThreadLocal<DemandRefinementPointsTo>() {
+      @Override
+      protected DemandRefinementPointsTo initialValue() {
+        return new DemandRefinementPointsTo(DemandRefinementPointsTo.this);
+      }
+    };
+    ParallelUtil.forEachIndex(queries.size(), numberOfThreads, new IntAction<RuntimeException>() {
+      @Override
+      public void apply(int i) {
+        PointerKey pk = queries.get(i);
+        result.put(pk, copies.get().getPointsTo(pk, ikeyPred));
+      }
+    }, monitor);
+    return result;
+  }
+
+  /**
+   * build the flow graph for the whole call graph, so that the answer to a query no longer depends on earlier queries
+   */
+  private void completeFlowGraph() {
+    if (!flowGraphComplete.get()) {
+      for (CGNode n : cg) {
+        if (n.getIR() != null) {
+          g.addSubgraphForNode(n);
+        }
+      }
+      flowGraphComplete.set(true);
+    }
+  }
+
   /**
    * get all the pointer keys that some instance key can flow to
    * 
@@ -958,6 +1148,15 @@ public class DemandRefinementPointsTo extends AbstractDemandPointsTo {
       return vals;
     }
 
+    /**
+     * record the method of a traversed variable, if the query cache needs to know
+     */
+    protected void noteTraversed(PointerKey pk) {
+      if (traversedNodes != null && pk instanceof AbstractLocalPointerKey) {
+        traversedNodes.add(((AbstractLocalPointerKey) pk).getNode());
+      }
+    }
+
     protected void compute() {
       final CGNode node = ((LocalPointerKey) queriedPkAndState.getPointerKey()).getNode();
       if (hasNullIR(node)) {
@@ -1121,7 +1320,7 @@ public class DemandRefinementPointsTo extends AbstractDemandPointsTo {
       OrdinalSet<InstanceKeyAndState> p2set = makeOrdinalSet(find(pkToP2Set, receiverAndState));
       for (InstanceKeyAndState ikAndState : p2set) {
         InstanceKey ik = ikAndState.getInstanceKey();
-        IMethod targetMethod = options.getMethodTargetSelector().getCalleeTarget(caller, call, ik.getConcreteType());
+        IMethod targetMethod = getCalleeTarget(caller, call, ik);
         if (targetMethod == null) {
           // NOTE: target method can be null because we don't
           // always have type filters
@@ -1225,6 +1424,7 @@ public class DemandRefinementPointsTo extends AbstractDemandPointsTo {
         final PointerKeyAndState curPkAndState = initWorklist.iterator().next();
         initWorklist.remove(curPkAndState);
         final PointerKey curPk = curPkAndState.getPointerKey();
+        noteTraversed(curPk);
         final State curState = curPkAndState.getState();
         if (DEBUG)
           System.err.println("init " + curPkAndState);
@@ -1492,6 +1692,7 @@ public class DemandRefinementPointsTo extends AbstractDemandPointsTo {
         final PointerKeyAndState curPkAndState = pointsToWorklist.iterator().next();
         pointsToWorklist.remove(curPkAndState);
         final PointerKey curPk = curPkAndState.getPointerKey();
+        noteTraversed(curPk);
         final State curState = curPkAndState.getState();
         if (DEBUG) {
           System.err.println("points-to " + curPkAndState);
@@ -1739,6 +1940,7 @@ public class DemandRefinementPointsTo extends AbstractDemandPointsTo {
         final PointerKeyAndState curPkAndState = trackedPointsToWorklist.iterator().next();
         trackedPointsToWorklist.remove(curPkAndState);
         final PointerKey curPk = curPkAndState.getPointerKey();
+        noteTraversed(curPk);
         final State curState = curPkAndState.getState();
         if (DEBUG)
           System.err.println("tracked points-to " + curPkAndState);
@@ -1999,6 +2201,16 @@ public class DemandRefinementPointsTo extends AbstractDemandPointsTo {
     }
   }
 
+  /**
+   * method target selectors cache their lookups in the class hierarchy, so concurrent queries take turns
+   */
+  private IMethod getCalleeTarget(CGNode caller, CallSiteReference call, InstanceKey receiver) {
+    MethodTargetSelector selector = options.getMethodTargetSelector();
+    synchronized (selector) {
+      return selector.getCalleeTarget(caller, call, receiver.getConcreteType());
+    }
+  }
+
   private SSAAbstractInvokeInstruction[] getCallInstrs(CGNode node, CallSiteReference site) {
     return node.getIR().getCalls(site);
   }
@@ -2024,8 +2236,26 @@ public class DemandRefinementPointsTo extends AbstractDemandPointsTo {
     return stateMachineFactory;
   }
 
+  public DemandQueryCache getQueryCache() {
+    return queryCache;
+  }
+
+  /**
+   * Answer points-to queries from, and record their answers in, a cache that can outlive this analysis. Since cached answers must
+   * not depend on the order queries are made in, the flow graph is first built for the whole call graph.
+   * 
+   * @param queryCache the cache, or null to stop using one
+   */
+  public void setQueryCache(DemandQueryCache queryCache) {
+    if (queryCache != null) {
+      completeFlowGraph();
+    }
+    this.queryCache = queryCache;
+  }
+
   public void setStateMachineFactory(StateMachineFactory<IFlowLabel> stateMachineFactory) {
     this.stateMachineFactory = stateMachineFactory;
+    refinementHistories.clear();
   }
 
   public RefinementPolicyFactory getRefinementPolicyFactory() {
@@ -2034,6 +2264,7 @@ public class DemandRefinementPointsTo extends AbstractDemandPointsTo {
 
   public void setRefinementPolicyFactory(RefinementPolicyFactory refinementPolicyFactory) {
     this.refinementPolicyFactory = refinementPolicyFactory;
+    refinementHistories.clear();
   }
 
   /**
@@ -2085,7 +2316,7 @@ public class DemandRefinementPointsTo extends AbstractDemandPointsTo {
           OrdinalSet<InstanceKeyAndState> thisPToSet = getPToSetFromComputer(ptoComputer, thisArgAndState);
           for (InstanceKeyAndState ikAndState : thisPToSet) {
             InstanceKey ik = ikAndState.getInstanceKey();
-            IMethod targetMethod = options.getMethodTargetSelector().getCalleeTarget(caller, call, ik.getConcreteType());
+            IMethod targetMethod = getCalleeTarget(caller, call, ik);
             if (targetMethod == null) {
               // NOTE: target method can be null because we don't
               // always have type filters
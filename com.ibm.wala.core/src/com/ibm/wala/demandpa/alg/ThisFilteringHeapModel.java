@@ -32,6 +32,9 @@ import com.ibm.wala.util.debug.Assertions;
  * a {@link HeapModel} that delegates to another except for pointer keys representing <code>this</code> parameters of methods, for
  * which it returns a {@link FilteredPointerKey} for the type of the parameter
  * 
+ * Calls are synchronized, since heap models may create keys lazily and {@link DemandRefinementPointsTo} may answer queries on
+ * several threads.
+ * 
  * @see {@link DemandRefinementPointsTo}
  * @author manu
  * 
@@ -43,57 +46,57 @@ class ThisFilteringHeapModel implements HeapModel {
   private final IClassHierarchy cha;
 
   @Override
-  public IClassHierarchy getClassHierarchy() {
+  public synchronized IClassHierarchy getClassHierarchy() {
     return delegate.getClassHierarchy();
   }
 
   @Override
-  public FilteredPointerKey getFilteredPointerKeyForLocal(CGNode node, int valueNumber, TypeFilter filter) {
+  public synchronized FilteredPointerKey getFilteredPointerKeyForLocal(CGNode node, int valueNumber, TypeFilter filter) {
     return delegate.getFilteredPointerKeyForLocal(node, valueNumber, filter);
   }
 
   @Override
-  public InstanceKey getInstanceKeyForAllocation(CGNode node, NewSiteReference allocation) {
+  public synchronized InstanceKey getInstanceKeyForAllocation(CGNode node, NewSiteReference allocation) {
     return delegate.getInstanceKeyForAllocation(node, allocation);
   }
 
   @Override
-  public InstanceKey getInstanceKeyForMetadataObject(Object obj, TypeReference objType) {
+  public synchronized InstanceKey getInstanceKeyForMetadataObject(Object obj, TypeReference objType) {
     return delegate.getInstanceKeyForMetadataObject(obj, objType);
   }
 
   @Override
-  public InstanceKey getInstanceKeyForConstant(TypeReference type, Object S) {
+  public synchronized InstanceKey getInstanceKeyForConstant(TypeReference type, Object S) {
     return delegate.getInstanceKeyForConstant(type, S);
   }
 
   @Override
-  public InstanceKey getInstanceKeyForMultiNewArray(CGNode node, NewSiteReference allocation, int dim) {
+  public synchronized InstanceKey getInstanceKeyForMultiNewArray(CGNode node, NewSiteReference allocation, int dim) {
     return delegate.getInstanceKeyForMultiNewArray(node, allocation, dim);
   }
 
   @Override
-  public InstanceKey getInstanceKeyForPEI(CGNode node, ProgramCounter instr, TypeReference type) {
+  public synchronized InstanceKey getInstanceKeyForPEI(CGNode node, ProgramCounter instr, TypeReference type) {
     return delegate.getInstanceKeyForPEI(node, instr, type);
   }
 
   @Override
-  public PointerKey getPointerKeyForArrayContents(InstanceKey I) {
+  public synchronized PointerKey getPointerKeyForArrayContents(InstanceKey I) {
     return delegate.getPointerKeyForArrayContents(I);
   }
 
   @Override
-  public PointerKey getPointerKeyForExceptionalReturnValue(CGNode node) {
+  public synchronized PointerKey getPointerKeyForExceptionalReturnValue(CGNode node) {
     return delegate.getPointerKeyForExceptionalReturnValue(node);
   }
 
   @Override
-  public PointerKey getPointerKeyForInstanceField(InstanceKey I, IField field) {
+  public synchronized PointerKey getPointerKeyForInstanceField(InstanceKey I, IField field) {
     return delegate.getPointerKeyForInstanceField(I, field);
   }
 
   @Override
-  public PointerKey getPointerKeyForLocal(CGNode node, int valueNumber) {
+  public synchronized PointerKey getPointerKeyForLocal(CGNode node, int valueNumber) {
     if (!node.getMethod().isStatic() && valueNumber == 1) {
       return delegate.getFilteredPointerKeyForLocal(node, valueNumber, getFilter(node));
     } else {
@@ -131,17 +134,17 @@ class ThisFilteringHeapModel implements HeapModel {
   }
 
   @Override
-  public PointerKey getPointerKeyForReturnValue(CGNode node) {
+  public synchronized PointerKey getPointerKeyForReturnValue(CGNode node) {
     return delegate.getPointerKeyForReturnValue(node);
   }
 
   @Override
-  public PointerKey getPointerKeyForStaticField(IField f) {
+  public synchronized PointerKey getPointerKeyForStaticField(IField f) {
     return delegate.getPointerKeyForStaticField(f);
   }
 
   @Override
-  public Iterator<PointerKey> iteratePointerKeys() {
+  public synchronized Iterator<PointerKey> iteratePointerKeys() {
     return delegate.iteratePointerKeys();
   }
 
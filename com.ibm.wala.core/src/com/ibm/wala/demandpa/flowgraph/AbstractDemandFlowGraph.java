@@ -355,7 +355,7 @@ public abstract class AbstractDemandFlowGraph extends AbstractFlowGraph {
   final Map<CGNode, Set<CallerSiteContext>> callerCache = HashMapFactory.make();
 
   @Override
-  public Set<CallerSiteContext> getPotentialCallers(PointerKey formalPk) {
+  public synchronized Set<CallerSiteContext> getPotentialCallers(PointerKey formalPk) {
     CGNode callee = null;
     if (formalPk instanceof LocalPointerKey) {
       callee = ((LocalPointerKey) formalPk).getNode();
@@ -13,6 +13,7 @@ package com.ibm.wala.ipa.callgraph;
 import com.ibm.wala.analysis.reflection.ReflectionContextInterpreter;
 import com.ibm.wala.analysis.reflection.ReflectionContextSelector;
 import com.ibm.wala.ipa.callgraph.impl.ExplicitCallGraph;
+import com.ibm.wala.ipa.callgraph.impl.IRPrefetcher;
 import com.ibm.wala.ipa.callgraph.propagation.ReflectionHandler;
 import com.ibm.wala.ssa.SSAOptions;
 
@@ -191,6 +192,37 @@ public class AnalysisOptions {
    */
   private long maxNumberOfNodes = -1;
 
+  /**
+   * How many threads should the pointer analysis solver use to evaluate simple (assignment and type filter) constraints? A value of
+   * <code>1</code>, the default, gives the classic sequential solver. Larger values give the same fixed point, but evaluate batches
+   * of independent constraints concurrently.
+   */
+  private int numberOfSolverThreads = 1;
+
+  /**
+   * Should the pointer analysis solver collapse cycles of assignments while solving? The points-to sets are the same either way.
+   */
+  private boolean cycleElimination = false;
+
+  /**
+   * Should assignments and filters in the pointer analysis propagate only the instances added to their right-hand side since it was
+   * last propagated? The points-to sets are the same either way.
+   */
+  private boolean differencePropagation = false;
+
+  /**
+   * How many threads should build the IRs of the methods reachable by class hierarchy analysis before a call graph is built? A value
+   * of <code>0</code>, the default, builds each IR only when call graph construction first needs it. See {@link IRPrefetcher}.
+   */
+  private int numberOfIRPrefetchThreads = 0;
+
+  /**
+   * Should the pointer analysis keep the extra bookkeeping that
+   * {@link com.ibm.wala.ipa.callgraph.propagation.PropagationCallGraphBuilder#updateCallGraph} needs? Off by default, since it costs
+   * time and space on every build.
+   */
+  private boolean incrementalUpdates = false;
+
   // SJF: I'm not sure these factories and caches belong here.
   // TODO: figure out how to clean this up.
 
@@ -229,6 +261,86 @@ public class AnalysisOptions {
     this.maxNumberOfNodes = maxNumberOfNodes;
   }
 
+  /**
+   * @return the number of threads the pointer analysis solver uses to evaluate simple constraints
+   */
+  public int getNumberOfSolverThreads() {
+    return numberOfSolverThreads;
+  }
+
+  /**
+   * @param numberOfSolverThreads the number of threads the pointer analysis solver uses to evaluate simple constraints; must be at
+   *          least 1
+   */
+  public void setNumberOfSolverThreads(int numberOfSolverThreads) {
+    if (numberOfSolverThreads < 1) {
+      throw new IllegalArgumentException("invalid number of solver threads: " + numberOfSolverThreads);
+    }
+    this.numberOfSolverThreads = numberOfSolverThreads;
+  }
+
+  /**
+   * @return true iff the pointer analysis solver collapses cycles of assignments while solving
+   */
+  public boolean getCycleElimination() {
+    return cycleElimination;
+  }
+
+  /**
+   * @param cycleElimination should the pointer analysis solver collapse cycles of assignments, and unify other variables known to
+   *          have equal points-to sets, while solving?
+   */
+  public void setCycleElimination(boolean cycleElimination) {
+    this.cycleElimination = cycleElimination;
+  }
+
+  /**
+   * @return true iff assignments and filters in the pointer analysis propagate only the instances added since they were last
+   *         propagated
+   */
+  public boolean getDifferencePropagation() {
+    return differencePropagation;
+  }
+
+  /**
+   * @param differencePropagation should assignments and filters in the pointer analysis propagate only the instances added since
+   *          they were last propagated?
+   */
+  public void setDifferencePropagation(boolean differencePropagation) {
+    this.differencePropagation = differencePropagation;
+  }
+
+  /**
+   * @return the number of threads that build IRs before a call graph is built, or 0 if IRs are built lazily
+   */
+  public int getNumberOfIRPrefetchThreads() {
+    return numberOfIRPrefetchThreads;
+  }
+
+  /**
+   * @param numberOfIRPrefetchThreads the number of threads that build IRs before a call graph is built, or 0 to build IRs lazily
+   */
+  public void setNumberOfIRPrefetchThreads(int numberOfIRPrefetchThreads) {
+    if (numberOfIRPrefetchThreads < 0) {
+      throw new IllegalArgumentException("invalid number of IR prefetch threads: " + numberOfIRPrefetchThreads);
+    }
+    this.numberOfIRPrefetchThreads = numberOfIRPrefetchThreads;
+  }
+
+  /**
+   * @return true iff call graphs built with these options can be updated after classes change
+   */
+  public boolean getIncrementalUpdates() {
+    return incrementalUpdates;
+  }
+
+  /**
+   * @param incrementalUpdates should call graphs built with these options keep what they need to be updated after classes change?
+   */
+  public void setIncrementalUpdates(boolean incrementalUpdates) {
+    this.incrementalUpdates = incrementalUpdates;
+  }
+
 
   /**
    * @return Policy that determines methods called at call sites.
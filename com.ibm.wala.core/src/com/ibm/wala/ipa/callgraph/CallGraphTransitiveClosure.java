@@ -14,14 +14,14 @@ import java.util.Collection;
 import java.util.Iterator;
 import java.util.Map;
 
-import com.ibm.wala.dataflow.graph.BitVectorSolver;
-import com.ibm.wala.fixpoint.BitVectorVariable;
-import com.ibm.wala.ipa.modref.GenReach;
 import com.ibm.wala.util.CancelException;
 import com.ibm.wala.util.CancelRuntimeException;
 import com.ibm.wala.util.collections.HashMapFactory;
 import com.ibm.wala.util.functions.Function;
-import com.ibm.wala.util.graph.impl.GraphInverter;
+import com.ibm.wala.util.graph.CondensedReachability;
+import com.ibm.wala.util.intset.IntSet;
+import com.ibm.wala.util.intset.MutableMapping;
+import com.ibm.wala.util.intset.MutableSparseIntSet;
 import com.ibm.wala.util.intset.OrdinalSet;
 
 /**
@@ -40,16 +40,43 @@ public class CallGraphTransitiveClosure {
    * @return a map from each node to the analysis result for the node and its transitive callees
    */
   public static <T> Map<CGNode, OrdinalSet<T>> transitiveClosure(CallGraph cg, Map<CGNode, Collection<T>> nodeResults) {
+    return transitiveClosure(cg, nodeResults, 1);
+  }
+
+  /**
+   * Compute the transitive closure of an analysis result over all callees, using up to the given number of threads. The call graph
+   * is condensed to its strongly connected components, and results are shared between callers that add nothing to a callee's.
+   * 
+   * @see CondensedReachability
+   */
+  public static <T> Map<CGNode, OrdinalSet<T>> transitiveClosure(CallGraph cg, Map<CGNode, Collection<T>> nodeResults,
+      int numberOfThreads) {
+    if (nodeResults == null) {
+      throw new IllegalArgumentException("null nodeResults");
+    }
+    final MutableMapping<T> values = MutableMapping.make();
+    final Map<CGNode, IntSet> gen = HashMapFactory.make();
+    for (Map.Entry<CGNode, Collection<T>> e : nodeResults.entrySet()) {
+      if (e.getValue() != null && !e.getValue().isEmpty()) {
+        MutableSparseIntSet s = MutableSparseIntSet.makeEmpty();
+        for (T x : e.getValue()) {
+          s.add(values.add(x));
+        }
+        gen.put(e.getKey(), s);
+      }
+    }
     try {
-      // invert the call graph, to compute the bottom-up result
-      GenReach<CGNode, T> gr = new GenReach<CGNode, T>(GraphInverter.invert(cg), nodeResults);
-      BitVectorSolver<CGNode> solver = new BitVectorSolver<CGNode>(gr);
-      solver.solve(null);
+      CondensedReachability<CGNode> closure = new CondensedReachability<CGNode>(cg, new Function<CGNode, IntSet>() {
+        @Override
+        public IntSet apply(CGNode n) {
+          return gen.get(n);
+        }
+      });
+      closure.solve(numberOfThreads, null);
       Map<CGNode, OrdinalSet<T>> result = HashMapFactory.make();
       for (Iterator<? extends CGNode> it = cg.iterator(); it.hasNext();) {
         CGNode n = it.next();
-        BitVectorVariable bv = solver.getOut(n);
-        result.put(n, new OrdinalSet<T>(bv.getValue(), gr.getLatticeValues()));
+        result.put(n, new OrdinalSet<T>(closure.getReachableSet(n), values));
       }
       return result;
     } catch (CancelException e) {
@@ -126,6 +126,16 @@ public abstract class AbstractRootMethod extends SyntheticMethod {
     return nextLocal++;
   }
 
+  /**
+   * Remove all statements, locals and constants added so far, so that the method can be populated again from scratch.
+   */
+  public void clearStatements() {
+    statements.clear();
+    constant2ValueNumber.clear();
+    nextLocal = 2;
+    cache.invalidate(this, Everywhere.EVERYWHERE);
+  }
+
   /**
    * @return the invoke instructions added by this operation
    * @throws IllegalArgumentException if site is null
@@ -30,8 +30,6 @@ import com.ibm.wala.util.CancelException;
 import com.ibm.wala.util.collections.HashMapFactory;
 import com.ibm.wala.util.collections.HashSetFactory;
 import com.ibm.wala.util.collections.NonNullSingletonIterator;
-import com.ibm.wala.util.debug.Assertions;
-import com.ibm.wala.util.debug.UnimplementedError;
 import com.ibm.wala.util.graph.AbstractNumberedGraph;
 import com.ibm.wala.util.graph.NumberedNodeManager;
 import com.ibm.wala.util.graph.impl.DelegatingNumberedNodeManager;
@@ -250,9 +248,33 @@ public abstract class BasicCallGraph<T> extends AbstractNumberedGraph<CGNode> im
     return result.toString();
   }
 
+  /**
+   * Remove a node and all of its incident edges. The fake root and fake world clinit nodes cannot be removed.
+   *
+   * @throws IllegalArgumentException if N is not a node of this graph, or is one of the fake nodes
+   */
   @Override
-  public void removeNodeAndEdges(CGNode N) throws UnimplementedError {
-    Assertions.UNREACHABLE();
+  public void removeNodeAndEdges(CGNode N) throws IllegalArgumentException {
+    if (N == null) {
+      throw new IllegalArgumentException("N is null");
+    }
+    if (N.equals(fakeRoot) || N.equals(fakeWorldClinit)) {
+      throw new IllegalArgumentException("cannot remove " + N);
+    }
+    if (!containsNode(N)) {
+      throw new IllegalArgumentException("node not in call graph " + N);
+    }
+    getEdgeManager().removeAllIncidentEdges(N);
+    nodes.remove(new Key(N.getMethod(), N.getContext()));
+    Set<CGNode> s = mr2Nodes.get(N.getMethod().getReference());
+    if (s != null) {
+      s.remove(N);
+      if (s.isEmpty()) {
+        mr2Nodes.remove(N.getMethod().getReference());
+      }
+    }
+    entrypointNodes.remove(N);
+    nodeManager.removeNode(N);
   }
 
   /**
@@ -0,0 +1,911 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.ipa.callgraph.impl;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.ibm.wala.classLoader.CallSiteReference;
+import com.ibm.wala.ipa.callgraph.CGNode;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.callgraph.propagation.InstanceKey;
+import com.ibm.wala.ipa.callgraph.propagation.PointerAnalysis;
+import com.ibm.wala.ipa.callgraph.propagation.PointerKey;
+import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.collections.HashSetFactory;
+import com.ibm.wala.util.intset.MutableSparseIntSet;
+
+/**
+ * A call graph and, optionally, a pointer analysis, saved in a compact binary file that can be queried without loading it.
+ *
+ * {@link #write(CallGraph, PointerAnalysis, OutputStream)} streams the archive out in a single pass over the nodes and pointer
+ * keys. Nodes keep their numbers from the call graph. Methods, contexts, declared call targets, instance keys and pointer keys are
+ * recorded by name: the {@link com.ibm.wala.classLoader.IMethod#getSignature() signature} of methods, and the printed form of
+ * everything else. Keys with the same printed form are merged. Names are sorted and front-coded in a string table; node numbers
+ * and instance key numbers are delta-coded as variable-length integers.
+ *
+ * {@link #open(File)} maps an archive into memory. Queries read the records they need straight from the mapping, so the heap
+ * holds nothing of the archive but a few offsets, and an archive can be read by many threads at once.
+ */
+public class CallGraphArchive {
+
+  private final static int MAGIC = 0x57434741;
+
+  private final static int VERSION = 1;
+
+  /**
+   * number of strings in each front-coded block of the string table
+   */
+  private final static int BLOCK_SIZE = 16;
+
+  /**
+   * size of the memory mappings an archive is read through
+   */
+  private final static int SEGMENT_BITS = 30;
+
+  /**
+   * size of the trailer: the offset of the footer, and the magic number
+   */
+  private final static int TRAILER_SIZE = 12;
+
+  private final RandomAccessFile file;
+
+  private final MappedByteBuffer[] segments;
+
+  private final int stringCount;
+
+  /**
+   * offset of the table of string block offsets
+   */
+  private final long stringBlocks;
+
+  private final int nodeSlots;
+
+  /**
+   * offset of the table of node record offsets
+   */
+  private final long nodeOffsets;
+
+  private final int nodeCount;
+
+  /**
+   * offset of the (method, node) pairs, sorted by method
+   */
+  private final long methodIndex;
+
+  private final int fakeRoot;
+
+  private final int entrypointCount;
+
+  private final long entrypoints;
+
+  private final int instanceKeyCount;
+
+  /**
+   * offset of the string number of each instance key
+   */
+  private final long instanceKeys;
+
+  private final int pointerKeyCount;
+
+  /**
+   * offset of the (pointer key, record offset) pairs, sorted by pointer key
+   */
+  private final long pointerKeys;
+
+  private CallGraphArchive(RandomAccessFile file) throws IOException {
+    this.file = file;
+    long length = file.length();
+    int n = (int) ((length + (1L << SEGMENT_BITS) - 1) >>> SEGMENT_BITS);
+    segments = new MappedByteBuffer[n];
+    for (int i = 0; i < n; i++) {
+      long start = (long) i << SEGMENT_BITS;
+      segments[i] = file.getChannel().map(FileChannel.MapMode.READ_ONLY, start, Math.min(1L << SEGMENT_BITS, length - start));
+    }
+    if (length < 8 + TRAILER_SIZE || getInt(0) != MAGIC || getInt(length - 4) != MAGIC) {
+      throw new IOException("not a call graph archive");
+    }
+    if (getInt(4) != VERSION) {
+      throw new IOException("unsupported call graph archive version " + getInt(4));
+    }
+    long p = getLong(length - TRAILER_SIZE);
+    stringCount = getInt(p);
+    stringBlocks = p + 4;
+    p = stringBlocks + 8L * blockCount(stringCount);
+    nodeSlots = getInt(p);
+    nodeOffsets = p + 4;
+    p = nodeOffsets + 8L * nodeSlots;
+    nodeCount = getInt(p);
+    methodIndex = p + 4;
+    p = methodIndex + 8L * nodeCount;
+    fakeRoot = getInt(p);
+    entrypointCount = getInt(p + 4);
+    entrypoints = p + 8;
+    p = entrypoints + 4L * entrypointCount;
+    instanceKeyCount = getInt(p);
+    instanceKeys = p + 4;
+    p = instanceKeys + 4L * instanceKeyCount;
+    pointerKeyCount = getInt(p);
+    pointerKeys = p + 4;
+  }
+
+  /**
+   * Write an archive of a call graph and a pointer analysis.
+   *
+   * @param pa the pointer analysis to include, or null for none
+   * @param out the stream to write to; it is flushed but not closed
+   */
+  public static void write(CallGraph cg, PointerAnalysis<? extends InstanceKey> pa, OutputStream out) throws IOException {
+    if (cg == null) {
+      throw new IllegalArgumentException("null cg");
+    }
+    if (out == null) {
+      throw new IllegalArgumentException("null out");
+    }
+    new Writer(cg, pa, new Output(out)).write();
+  }
+
+  public static void write(CallGraph cg, PointerAnalysis<? extends InstanceKey> pa, File f) throws IOException {
+    if (f == null) {
+      throw new IllegalArgumentException("null f");
+    }
+    OutputStream out = new FileOutputStream(f);
+    try {
+      write(cg, pa, out);
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Map an archive into memory. Close it when done.
+   *
+   * @throws IOException if f cannot be read or is not an archive
+   */
+  public static CallGraphArchive open(File f) throws IOException {
+    if (f == null) {
+      throw new IllegalArgumentException("null f");
+    }
+    RandomAccessFile file = new RandomAccessFile(f, "r");
+    try {
+      return new CallGraphArchive(file);
+    } catch (IOException e) {
+      file.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Close the archive file. The mappings are released once they are garbage collected.
+   */
+  public void close() throws IOException {
+    file.close();
+  }
+
+  /**
+   * @return the number of nodes in the call graph
+   */
+  public int getNumberOfNodes() {
+    return nodeCount;
+  }
+
+  /**
+   * @return the largest node number in the call graph
+   */
+  public int getMaxNumber() {
+    return nodeSlots - 1;
+  }
+
+  public boolean containsNode(int n) {
+    return n >= 0 && n < nodeSlots && getLong(nodeOffsets + 8L * n) >= 0;
+  }
+
+  /**
+   * @return the signature of the method of node n
+   */
+  public String getMethod(int n) {
+    Input in = node(n);
+    return getString(in.readNat());
+  }
+
+  /**
+   * @return the printed form of the context of node n
+   */
+  public String getContext(int n) {
+    Input in = node(n);
+    in.readNat();
+    return getString(in.readNat());
+  }
+
+  /**
+   * @return the numbers of the nodes for the method with the given signature, in ascending order
+   */
+  public int[] getNodes(String methodSignature) {
+    int m = lookupString(methodSignature);
+    if (m < 0) {
+      return new int[0];
+    }
+    int low = 0;
+    int high = nodeCount;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (getInt(methodIndex + 8L * mid) < m) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    int end = low;
+    while (end < nodeCount && getInt(methodIndex + 8L * end) == m) {
+      end++;
+    }
+    int[] result = new int[end - low];
+    for (int i = low; i < end; i++) {
+      result[i - low] = getInt(methodIndex + 8L * i + 4);
+    }
+    return result;
+  }
+
+  /**
+   * @return the number of the fake root node, or -1 if the call graph has none
+   */
+  public int getFakeRootNode() {
+    return fakeRoot;
+  }
+
+  public int[] getEntrypointNodes() {
+    int[] result = new int[entrypointCount];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = getInt(entrypoints + 4L * i);
+    }
+    return result;
+  }
+
+  /**
+   * @return the program counters of the call sites of node n, in ascending order
+   */
+  public int[] getCallSites(int n) {
+    Input in = node(n);
+    in.readNat();
+    in.readNat();
+    int[] result = new int[in.readNat()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = in.readNat();
+      in.readNat();
+      in.skipList();
+    }
+    return result;
+  }
+
+  /**
+   * @return the signature of the declared target of the call site at pc in node n, or null if there is no such call site
+   */
+  public String getDeclaredTarget(int n, int pc) {
+    Input in = site(n, pc);
+    return in == null ? null : getString(in.readNat());
+  }
+
+  /**
+   * @return the numbers of the nodes the call site at pc in node n may call, in ascending order
+   */
+  public int[] getPossibleTargets(int n, int pc) {
+    Input in = site(n, pc);
+    if (in == null) {
+      return new int[0];
+    }
+    in.readNat();
+    return in.readList();
+  }
+
+  /**
+   * @return the numbers of the nodes that node n may call, in ascending order
+   */
+  public int[] getSuccNodes(int n) {
+    Input in = node(n);
+    in.readNat();
+    in.readNat();
+    MutableSparseIntSet result = MutableSparseIntSet.makeEmpty();
+    for (int sites = in.readNat(); sites > 0; sites--) {
+      in.readNat();
+      in.readNat();
+      for (int t : in.readList()) {
+        result.add(t);
+      }
+    }
+    return result.toIntArray();
+  }
+
+  /**
+   * @return the numbers of the nodes that may call node n, in ascending order
+   */
+  public int[] getPredNodes(int n) {
+    Input in = node(n);
+    in.readNat();
+    in.readNat();
+    for (int sites = in.readNat(); sites > 0; sites--) {
+      in.readNat();
+      in.readNat();
+      in.skipList();
+    }
+    return in.readList();
+  }
+
+  /**
+   * @return the number of instance keys; instance keys are numbered in the order of their printed forms
+   */
+  public int getNumberOfInstanceKeys() {
+    return instanceKeyCount;
+  }
+
+  /**
+   * @return the printed form of instance key i
+   */
+  public String getInstanceKey(int i) {
+    if (i < 0 || i >= instanceKeyCount) {
+      throw new IllegalArgumentException("invalid instance key number " + i);
+    }
+    return getString(getInt(instanceKeys + 4L * i));
+  }
+
+  /**
+   * @return the number of the instance key with the given printed form, or -1 if there is none
+   */
+  public int lookupInstanceKey(String name) {
+    int s = lookupString(name);
+    return s < 0 ? -1 : search(instanceKeys, 4, instanceKeyCount, s);
+  }
+
+  /**
+   * @return the number of pointer keys; pointer keys are numbered in the order of their printed forms
+   */
+  public int getNumberOfPointerKeys() {
+    return pointerKeyCount;
+  }
+
+  /**
+   * @return the printed form of pointer key i
+   */
+  public String getPointerKey(int i) {
+    if (i < 0 || i >= pointerKeyCount) {
+      throw new IllegalArgumentException("invalid pointer key number " + i);
+    }
+    return getString(getInt(pointerKeys + 12L * i));
+  }
+
+  /**
+   * @return the number of the pointer key with the given printed form, or -1 if there is none
+   */
+  public int lookupPointerKey(String name) {
+    int s = lookupString(name);
+    return s < 0 ? -1 : search(pointerKeys, 12, pointerKeyCount, s);
+  }
+
+  /**
+   * @return the numbers of the instance keys pointer key i may point to, in ascending order
+   */
+  public int[] getPointsToSet(int i) {
+    if (i < 0 || i >= pointerKeyCount) {
+      throw new IllegalArgumentException("invalid pointer key number " + i);
+    }
+    return new Input(getLong(pointerKeys + 12L * i + 4)).readList();
+  }
+
+  @Override
+  public String toString() {
+    return "CallGraphArchive: " + nodeCount + " nodes, " + pointerKeyCount + " pointer keys, " + instanceKeyCount
+        + " instance keys";
+  }
+
+  /*
+   * reading
+   */
+
+  private byte get(long position) {
+    return segments[(int) (position >>> SEGMENT_BITS)].get((int) (position & ((1L << SEGMENT_BITS) - 1)));
+  }
+
+  private int getInt(long position) {
+    int result = 0;
+    for (int i = 0; i < 4; i++) {
+      result = (result << 8) | (get(position + i) & 0xff);
+    }
+    return result;
+  }
+
+  private long getLong(long position) {
+    return ((long) getInt(position) << 32) | (getInt(position + 4) & 0xffffffffL);
+  }
+
+  private static int blockCount(int strings) {
+    return (strings + BLOCK_SIZE - 1) / BLOCK_SIZE;
+  }
+
+  /**
+   * @return an input positioned at the record of node n
+   */
+  private Input node(int n) {
+    if (!containsNode(n)) {
+      throw new IllegalArgumentException("no node " + n);
+    }
+    return new Input(getLong(nodeOffsets + 8L * n));
+  }
+
+  /**
+   * @return an input positioned at the declared target of the call site at pc in node n, or null if there is none
+   */
+  private Input site(int n, int pc) {
+    Input in = node(n);
+    in.readNat();
+    in.readNat();
+    for (int sites = in.readNat(); sites > 0; sites--) {
+      if (in.readNat() == pc) {
+        return in;
+      }
+      in.readNat();
+      in.skipList();
+    }
+    return null;
+  }
+
+  /**
+   * binary search a table of entries that start with a string number
+   *
+   * @return the index of the entry for string s, or -1 if there is none
+   */
+  private int search(long table, int entrySize, int count, int s) {
+    int low = 0;
+    int high = count - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int x = getInt(table + (long) entrySize * mid);
+      if (x < s) {
+        low = mid + 1;
+      } else if (x > s) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -1;
+  }
+
+  private String getString(int s) {
+    if (s < 0 || s >= stringCount) {
+      throw new IllegalArgumentException("invalid string number " + s);
+    }
+    Input in = new Input(getLong(stringBlocks + 8L * (s / BLOCK_SIZE)));
+    String result = in.readString(null);
+    for (int i = s % BLOCK_SIZE; i > 0; i--) {
+      result = in.readString(result);
+    }
+    return result;
+  }
+
+  /**
+   * @return the number of string s, or -1 if it is not in the string table
+   */
+  private int lookupString(String s) {
+    if (s == null) {
+      throw new IllegalArgumentException("null s");
+    }
+    // find the last block whose first string is not greater than s
+    int low = 0;
+    int high = blockCount(stringCount) - 1;
+    int block = -1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int c = getString(mid * BLOCK_SIZE).compareTo(s);
+      if (c == 0) {
+        return mid * BLOCK_SIZE;
+      } else if (c < 0) {
+        block = mid;
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+    if (block < 0) {
+      return -1;
+    }
+    Input in = new Input(getLong(stringBlocks + 8L * block));
+    String x = in.readString(null);
+    for (int i = block * BLOCK_SIZE + 1; i < Math.min(stringCount, (block + 1) * BLOCK_SIZE); i++) {
+      x = in.readString(x);
+      int c = x.compareTo(s);
+      if (c == 0) {
+        return i;
+      } else if (c > 0) {
+        return -1;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * reads variable-length integers from a position in the archive
+   */
+  private class Input {
+
+    private long position;
+
+    Input(long position) {
+      this.position = position;
+    }
+
+    int readNat() {
+      int result = 0;
+      for (int shift = 0;; shift += 7) {
+        byte b = get(position++);
+        result |= (b & 0x7f) << shift;
+        if (b >= 0) {
+          return result;
+        }
+      }
+    }
+
+    /**
+     * read a sorted list of natural numbers, written as its size, its first element, and the gaps between its elements
+     */
+    int[] readList() {
+      int[] result = new int[readNat()];
+      int x = 0;
+      for (int i = 0; i < result.length; i++) {
+        x += readNat();
+        result[i] = x;
+      }
+      return result;
+    }
+
+    void skipList() {
+      for (int n = readNat(); n > 0; n--) {
+        readNat();
+      }
+    }
+
+    /**
+     * read a front-coded string
+     *
+     * @param previous the previous string of its block, or null for the first one
+     */
+    String readString(String previous) {
+      int prefix = readNat();
+      char[] chars = new char[prefix + readNat()];
+      if (prefix > 0) {
+        previous.getChars(0, prefix, chars, 0);
+      }
+      for (int i = prefix; i < chars.length; i++) {
+        chars[i] = (char) readNat();
+      }
+      return new String(chars);
+    }
+  }
+
+  /*
+   * writing
+   */
+
+  /**
+   * writes variable-length and fixed-size integers to a stream, counting its position
+   */
+  private static class Output {
+
+    private final OutputStream out;
+
+    private long position;
+
+    Output(OutputStream out) {
+      this.out = new BufferedOutputStream(out);
+    }
+
+    void writeNat(int x) throws IOException {
+      while ((x & ~0x7f) != 0) {
+        out.write((x & 0x7f) | 0x80);
+        x >>>= 7;
+        position++;
+      }
+      out.write(x);
+      position++;
+    }
+
+    void writeList(int[] sorted) throws IOException {
+      writeNat(sorted.length);
+      int previous = 0;
+      for (int x : sorted) {
+        writeNat(x - previous);
+        previous = x;
+      }
+    }
+
+    void writeInt(int x) throws IOException {
+      out.write(x >>> 24);
+      out.write(x >>> 16);
+      out.write(x >>> 8);
+      out.write(x);
+      position += 4;
+    }
+
+    void writeLong(long x) throws IOException {
+      writeInt((int) (x >>> 32));
+      writeInt((int) x);
+    }
+
+    void writeString(String s, String previous) throws IOException {
+      int prefix = 0;
+      if (previous != null) {
+        int max = Math.min(s.length(), previous.length());
+        while (prefix < max && s.charAt(prefix) == previous.charAt(prefix)) {
+          prefix++;
+        }
+      }
+      writeNat(prefix);
+      writeNat(s.length() - prefix);
+      for (int i = prefix; i < s.length(); i++) {
+        writeNat(s.charAt(i));
+      }
+    }
+
+    void flush() throws IOException {
+      out.flush();
+    }
+  }
+
+  private static class Writer {
+
+    private final CallGraph cg;
+
+    private final PointerAnalysis<? extends InstanceKey> pa;
+
+    private final Output out;
+
+    /**
+     * number of each string, in sorted order
+     */
+    private final Map<String, Integer> strings = HashMapFactory.make();
+
+    /**
+     * number of each instance key, in the order of their printed forms
+     */
+    private final Map<InstanceKey, Integer> instanceKeyNumbers = HashMapFactory.make();
+
+    Writer(CallGraph cg, PointerAnalysis<? extends InstanceKey> pa, Output out) {
+      this.cg = cg;
+      this.pa = pa;
+      this.out = out;
+    }
+
+    void write() throws IOException {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+
+      long[] blocks = writeStrings();
+      int[] instanceKeyStrings = numberInstanceKeys();
+
+      long[] nodeOffsets = new long[cg.getMaxNumber() + 1];
+      Arrays.fill(nodeOffsets, -1);
+      List<long[]> methods = new ArrayList<long[]>();
+      for (CGNode n : cg) {
+        nodeOffsets[cg.getNumber(n)] = out.position;
+        writeNode(n);
+        methods.add(new long[] { strings.get(n.getMethod().getSignature()), cg.getNumber(n) });
+      }
+
+      List<long[]> pointerKeys = writePointsTo();
+
+      long footer = out.position;
+      out.writeInt(strings.size());
+      for (long b : blocks) {
+        out.writeLong(b);
+      }
+      out.writeInt(nodeOffsets.length);
+      for (long o : nodeOffsets) {
+        out.writeLong(o);
+      }
+      sortPairs(methods);
+      out.writeInt(methods.size());
+      for (long[] m : methods) {
+        out.writeInt((int) m[0]);
+        out.writeInt((int) m[1]);
+      }
+      out.writeInt(cg.getFakeRootNode() == null ? -1 : cg.getNumber(cg.getFakeRootNode()));
+      int[] entrypoints = numbers(cg.getEntrypointNodes());
+      out.writeInt(entrypoints.length);
+      for (int e : entrypoints) {
+        out.writeInt(e);
+      }
+      out.writeInt(instanceKeyStrings.length);
+      for (int s : instanceKeyStrings) {
+        out.writeInt(s);
+      }
+      out.writeInt(pointerKeys.size());
+      for (long[] pk : pointerKeys) {
+        out.writeInt((int) pk[0]);
+        out.writeLong(pk[1]);
+      }
+      out.writeLong(footer);
+      out.writeInt(MAGIC);
+      out.flush();
+    }
+
+    /**
+     * gather, sort, number and write all names
+     *
+     * @return the offset of each block of the string table
+     */
+    private long[] writeStrings() throws IOException {
+      Set<String> names = HashSetFactory.make();
+      for (CGNode n : cg) {
+        names.add(n.getMethod().getSignature());
+        names.add(String.valueOf(n.getContext()));
+        for (Iterator<CallSiteReference> sites = n.iterateCallSites(); sites.hasNext();) {
+          names.add(sites.next().getDeclaredTarget().getSignature());
+        }
+      }
+      if (pa != null) {
+        for (InstanceKey ik : pa.getInstanceKeys()) {
+          names.add(ik.toString());
+        }
+        for (PointerKey pk : pa.getPointerKeys()) {
+          names.add(pk.toString());
+          for (InstanceKey ik : pa.getPointsToSet(pk)) {
+            names.add(ik.toString());
+          }
+        }
+      }
+      String[] sorted = names.toArray(new String[names.size()]);
+      Arrays.sort(sorted);
+      long[] blocks = new long[blockCount(sorted.length)];
+      for (int i = 0; i < sorted.length; i++) {
+        strings.put(sorted[i], i);
+        if (i % BLOCK_SIZE == 0) {
+          blocks[i / BLOCK_SIZE] = out.position;
+          out.writeString(sorted[i], null);
+        } else {
+          out.writeString(sorted[i], sorted[i - 1]);
+        }
+      }
+      return blocks;
+    }
+
+    /**
+     * number the instance keys in the order of their printed forms
+     *
+     * @return the string number of each instance key number
+     */
+    private int[] numberInstanceKeys() {
+      if (pa == null) {
+        return new int[0];
+      }
+      Set<InstanceKey> keys = HashSetFactory.make();
+      keys.addAll(pa.getInstanceKeys());
+      for (PointerKey pk : pa.getPointerKeys()) {
+        for (InstanceKey ik : pa.getPointsToSet(pk)) {
+          keys.add(ik);
+        }
+      }
+      MutableSparseIntSet names = MutableSparseIntSet.makeEmpty();
+      for (InstanceKey ik : keys) {
+        names.add(strings.get(ik.toString()));
+      }
+      int[] result = names.toIntArray();
+      for (InstanceKey ik : keys) {
+        instanceKeyNumbers.put(ik, Arrays.binarySearch(result, strings.get(ik.toString())));
+      }
+      return result;
+    }
+
+    private void writeNode(CGNode n) throws IOException {
+      out.writeNat(strings.get(n.getMethod().getSignature()));
+      out.writeNat(strings.get(String.valueOf(n.getContext())));
+      List<CallSiteReference> sites = new ArrayList<CallSiteReference>();
+      for (Iterator<CallSiteReference> it = n.iterateCallSites(); it.hasNext();) {
+        sites.add(it.next());
+      }
+      CallSiteReference[] sorted = sites.toArray(new CallSiteReference[sites.size()]);
+      int[] pcs = new int[sorted.length];
+      for (int i = 0; i < sorted.length; i++) {
+        pcs[i] = sorted[i].getProgramCounter();
+      }
+      out.writeNat(sorted.length);
+      for (int i : order(pcs)) {
+        out.writeNat(pcs[i]);
+        out.writeNat(strings.get(sorted[i].getDeclaredTarget().getSignature()));
+        out.writeList(numbers(cg.getPossibleTargets(n, sorted[i])));
+      }
+      List<CGNode> preds = new ArrayList<CGNode>();
+      for (Iterator<CGNode> it = cg.getPredNodes(n); it.hasNext();) {
+        preds.add(it.next());
+      }
+      out.writeList(numbers(preds));
+    }
+
+    /**
+     * write the points-to set of each pointer key, merging those with the same printed form
+     *
+     * @return the string number and record offset of each pointer key, in sorted order
+     */
+    private List<long[]> writePointsTo() throws IOException {
+      List<long[]> result = new ArrayList<long[]>();
+      if (pa == null) {
+        return result;
+      }
+      List<long[]> keys = new ArrayList<long[]>();
+      List<PointerKey> byIndex = new ArrayList<PointerKey>();
+      for (PointerKey pk : pa.getPointerKeys()) {
+        keys.add(new long[] { strings.get(pk.toString()), byIndex.size() });
+        byIndex.add(pk);
+      }
+      sortPairs(keys);
+      for (int i = 0; i < keys.size();) {
+        int s = (int) keys.get(i)[0];
+        MutableSparseIntSet pts = MutableSparseIntSet.makeEmpty();
+        for (; i < keys.size() && keys.get(i)[0] == s; i++) {
+          for (InstanceKey ik : pa.getPointsToSet(byIndex.get((int) keys.get(i)[1]))) {
+            pts.add(instanceKeyNumbers.get(ik));
+          }
+        }
+        long offset = out.position;
+        out.writeList(pts.toIntArray());
+        result.add(new long[] { s, offset });
+      }
+      return result;
+    }
+
+    private int[] numbers(Collection<CGNode> nodes) {
+      int[] result = new int[nodes.size()];
+      int i = 0;
+      for (CGNode n : nodes) {
+        result[i++] = cg.getNumber(n);
+      }
+      Arrays.sort(result);
+      return result;
+    }
+
+    /**
+     * @return the indices of xs, in ascending order of the elements of xs
+     */
+    private static int[] order(int[] xs) {
+      long[] keyed = new long[xs.length];
+      for (int i = 0; i < xs.length; i++) {
+        keyed[i] = ((long) xs[i] << 32) | i;
+      }
+      Arrays.sort(keyed);
+      int[] result = new int[xs.length];
+      for (int i = 0; i < xs.length; i++) {
+        result[i] = (int) keyed[i];
+      }
+      return result;
+    }
+
+    private static void sortPairs(List<long[]> pairs) {
+      long[] keyed = new long[pairs.size()];
+      for (int i = 0; i < keyed.length; i++) {
+        keyed[i] = (pairs.get(i)[0] << 32) | pairs.get(i)[1];
+      }
+      Arrays.sort(keyed);
+      for (int i = 0; i < keyed.length; i++) {
+        pairs.set(i, new long[] { keyed[i] >>> 32, keyed[i] & 0xffffffffL });
+      }
+    }
+  }
+}
@@ -0,0 +1,354 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.ipa.callgraph.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.ibm.wala.classLoader.CallSiteReference;
+import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.classLoader.NewSiteReference;
+import com.ibm.wala.ipa.callgraph.AnalysisCache;
+import com.ibm.wala.ipa.callgraph.Entrypoint;
+import com.ibm.wala.ipa.callgraph.MethodTargetSelector;
+import com.ibm.wala.ipa.cha.IClassHierarchy;
+import com.ibm.wala.ssa.IR;
+import com.ibm.wala.ssa.SSACache;
+import com.ibm.wala.ssa.SSAFieldAccessInstruction;
+import com.ibm.wala.ssa.SSAGetInstruction;
+import com.ibm.wala.ssa.SSAInstruction;
+import com.ibm.wala.ssa.SSAOptions;
+import com.ibm.wala.types.FieldReference;
+import com.ibm.wala.types.MethodReference;
+import com.ibm.wala.types.TypeReference;
+import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.MonitorUtil;
+import com.ibm.wala.util.MonitorUtil.IProgressMonitor;
+import com.ibm.wala.util.ParallelUtil;
+import com.ibm.wala.util.ParallelUtil.IntAction;
+import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.collections.HashSetFactory;
+
+/**
+ * Fills an {@link AnalysisCache} with the {@link IR}s and {@link com.ibm.wala.ssa.DefUse}s of the methods that a call graph built
+ * from some entrypoints is likely to reach, building them with several threads before call graph construction asks for them one at
+ * a time.
+ *
+ * The methods are found by rapid type analysis, as in {@link com.ibm.wala.ipa.callgraph.propagation.rta.BasicRTABuilder}, but
+ * without building a call graph: a virtual call reaches the implementations of its target in the classes allocated by the methods
+ * found so far, and a method's class initializers are reached when its class is allocated or its static members are used. Since
+ * the virtual machine creates some objects itself, the types of static fields read and of the results of native methods count as
+ * allocated too.
+ *
+ * The methods are discovered breadth first: the IRs of each wave are built in parallel, and the calling thread then scans them for
+ * the methods of the next wave. So the {@link MethodTargetSelector}, if any, is only consulted on the calling thread, and the set
+ * of methods visited does not depend on the number of threads. The worker threads do use the class hierarchy: building a
+ * {@link com.ibm.wala.cfg.ShrikeCFG} looks up caught exception types and asks which are subclasses of which. The
+ * {@link com.ibm.wala.ipa.cha.ClassHierarchy} supports these lookups on several threads once it is built; other
+ * {@link IClassHierarchy} implementations must do the same for lookupClass and isSubclassOf to be used here with more than one
+ * thread.
+ *
+ * Only the IRs of methods whose IR does not depend on the context are cached, in the {@link Everywhere} context, which is where the
+ * call graph builders look for them.
+ */
+public class IRPrefetcher {
+
+  /**
+   * classes whose instances code may get without allocating them
+   */
+  private static final TypeReference[] IMPLICITLY_ALLOCATED = { TypeReference.JavaLangString, TypeReference.JavaLangClass };
+
+  private final IClassHierarchy cha;
+
+  private final AnalysisCache cache;
+
+  private final SSAOptions options;
+
+  private final int numberOfThreads;
+
+  /**
+   * classes allocated by the methods visited so far
+   */
+  private final Set<IClass> allocated = HashSetFactory.make();
+
+  /**
+   * a virtual call site for each target of the virtual calls in the methods visited so far
+   */
+  private final Map<MethodReference, CallSiteReference> dispatched = HashMapFactory.make();
+
+  /**
+   * how to resolve calls, or null to use the class hierarchy
+   */
+  private MethodTargetSelector targetSelector;
+
+  /**
+   * stop after visiting this many methods; -1 for no limit
+   */
+  private int maxNumberOfMethods = -1;
+
+  /**
+   * @param numberOfThreads number of threads used to build IRs
+   * @throws IllegalArgumentException if numberOfThreads is less than 1
+   */
+  public IRPrefetcher(IClassHierarchy cha, AnalysisCache cache, SSAOptions options, int numberOfThreads) {
+    if (cha == null) {
+      throw new IllegalArgumentException("null cha");
+    }
+    if (cache == null) {
+      throw new IllegalArgumentException("null cache");
+    }
+    if (options == null) {
+      throw new IllegalArgumentException("null options");
+    }
+    if (numberOfThreads < 1) {
+      throw new IllegalArgumentException("invalid number of threads: " + numberOfThreads);
+    }
+    this.cha = cha;
+    this.cache = cache;
+    this.options = options;
+    this.numberOfThreads = numberOfThreads;
+  }
+
+  /**
+   * @param maxNumberOfMethods the maximal number of methods to visit, or -1 for no limit. Useful to keep the prefetched IRs within
+   *          the budget of the {@link SSACache}.
+   */
+  public void setMaxNumberOfMethods(int maxNumberOfMethods) {
+    this.maxNumberOfMethods = maxNumberOfMethods;
+  }
+
+  public int getMaxNumberOfMethods() {
+    return maxNumberOfMethods;
+  }
+
+  /**
+   * @param targetSelector how to resolve calls, as in the call graph builder the IRs are for, or null to use the class hierarchy.
+   *          The selector is asked for targets without a caller node. Synthetic targets, such as method summaries, are followed but
+   *          their IRs are not cached.
+   */
+  public void setMethodTargetSelector(MethodTargetSelector targetSelector) {
+    this.targetSelector = targetSelector;
+  }
+
+  /**
+   * Build the IRs of the methods reachable from the given entrypoints.
+   *
+   * @return the methods visited
+   */
+  public Set<IMethod> prefetch(Iterable<? extends Entrypoint> entrypoints, IProgressMonitor monitor) throws CancelException {
+    if (entrypoints == null) {
+      throw new IllegalArgumentException("null entrypoints");
+    }
+    allocated.clear();
+    dispatched.clear();
+    Set<IMethod> visited = HashSetFactory.make();
+    List<IMethod> wave = new ArrayList<IMethod>();
+    // constants and class literals allocate these without a new instruction
+    for (TypeReference t : IMPLICITLY_ALLOCATED) {
+      IClass klass = cha.lookupClass(t);
+      if (klass != null) {
+        allocated.add(klass);
+      }
+    }
+    for (Entrypoint e : entrypoints) {
+      visit(e.getMethod(), visited, wave);
+      visitClassInitializers(e.getMethod().getDeclaringClass(), visited, wave);
+    }
+    ExecutorService pool = numberOfThreads > 1 ? Executors.newFixedThreadPool(numberOfThreads) : null;
+    try {
+      while (!wave.isEmpty()) {
+        MonitorUtil.throwExceptionIfCanceled(monitor);
+        IR[] irs = build(pool, wave);
+        List<IMethod> next = new ArrayList<IMethod>();
+        for (IR ir : irs) {
+          if (ir != null) {
+            scan(ir, visited, next);
+          }
+        }
+        wave = next;
+      }
+    } finally {
+      if (pool != null) {
+        pool.shutdownNow();
+      }
+    }
+    return Collections.unmodifiableSet(visited);
+  }
+
+  /**
+   * Build the IRs of the given methods, using the pool if there is one.
+   *
+   * @return the IRs, indexed like methods; null for methods whose IR could not be built here
+   */
+  private IR[] build(ExecutorService pool, final List<IMethod> methods) throws CancelException {
+    final IR[] result = new IR[methods.size()];
+    ParallelUtil.forEachIndex(pool, numberOfThreads, result.length, 1, new IntAction<RuntimeException>() {
+      @Override
+      public void apply(int i) {
+        result[i] = build(methods.get(i));
+      }
+    }, null);
+    return result;
+  }
+
+  /**
+   * @return the IR of m, with its {@link com.ibm.wala.ssa.DefUse} cached too, or null if m has none
+   */
+  private IR build(IMethod m) {
+    SSACache ssaCache = cache.getSSACache();
+    try {
+      IR ir = ssaCache.findOrCreateIR(m, Everywhere.EVERYWHERE, options);
+      if (ir != null) {
+        ssaCache.findOrCreateDU(m, Everywhere.EVERYWHERE, options);
+      }
+      return ir;
+    } catch (RuntimeException e) {
+      // leave it to call graph construction to report the problem, if it ever reaches m
+      return null;
+    }
+  }
+
+  /**
+   * Add to next the unvisited methods that code in ir may call or cause to be initialized.
+   */
+  private void scan(IR ir, Set<IMethod> visited, List<IMethod> next) {
+    for (Iterator<NewSiteReference> it = ir.iterateNewSites(); it.hasNext();) {
+      allocate(it.next().getDeclaredType(), visited, next);
+    }
+    for (Iterator<CallSiteReference> it = ir.iterateCallSites(); it.hasNext();) {
+      CallSiteReference site = it.next();
+      if (site.isDispatch()) {
+        if (!dispatched.containsKey(site.getDeclaredTarget())) {
+          dispatched.put(site.getDeclaredTarget(), site);
+          // visiting a native target may allocate more classes
+          for (IClass klass : new ArrayList<IClass>(allocated)) {
+            visitTarget(klass, site, visited, next);
+          }
+        }
+      } else {
+        IMethod m = resolve(site, null);
+        if (m != null) {
+          visit(m, visited, next);
+          if (site.isStatic()) {
+            visitClassInitializers(m.getDeclaringClass(), visited, next);
+          }
+        }
+      }
+    }
+    for (SSAInstruction s : ir.getInstructions()) {
+      if (s instanceof SSAFieldAccessInstruction && ((SSAFieldAccessInstruction) s).isStatic()) {
+        FieldReference f = ((SSAFieldAccessInstruction) s).getDeclaredField();
+        visitClassInitializers(f.getDeclaringClass(), visited, next);
+        if (s instanceof SSAGetInstruction) {
+          // static fields such as System.out may be set by native code
+          allocate(f.getFieldType(), visited, next);
+        }
+      }
+    }
+  }
+
+  /**
+   * Note that code may allocate instances of type, and visit the methods this makes reachable.
+   */
+  private void allocate(TypeReference type, Set<IMethod> visited, List<IMethod> next) {
+    if (!type.isClassType()) {
+      return;
+    }
+    IClass klass = cha.lookupClass(type);
+    if (klass != null && !klass.isInterface() && !klass.isAbstract() && allocated.add(klass)) {
+      visitClassInitializers(klass, visited, next);
+      for (CallSiteReference site : dispatched.values()) {
+        visitTarget(klass, site, visited, next);
+      }
+    }
+  }
+
+  /**
+   * Visit the method a virtual call site dispatches to on an instance of klass, if any.
+   */
+  private void visitTarget(IClass klass, CallSiteReference site, Set<IMethod> visited, List<IMethod> next) {
+    IClass declaringClass = cha.lookupClass(site.getDeclaredTarget().getDeclaringClass());
+    if (declaringClass != null && cha.isAssignableFrom(declaringClass, klass)) {
+      IMethod m = resolve(site, klass);
+      if (m != null) {
+        visit(m, visited, next);
+      }
+    }
+  }
+
+  /**
+   * @param receiver the class of the receiver of a virtual call
+   * @return the method a call at site resolves to, or null if none
+   */
+  private IMethod resolve(CallSiteReference site, IClass receiver) {
+    if (targetSelector != null) {
+      return targetSelector.getCalleeTarget(null, site, receiver);
+    } else if (receiver != null) {
+      return cha.resolveMethod(receiver, site.getDeclaredTarget().getSelector());
+    } else {
+      return cha.resolveMethod(site.getDeclaredTarget());
+    }
+  }
+
+  private void visitClassInitializers(TypeReference type, Set<IMethod> visited, List<IMethod> next) {
+    IClass klass = cha.lookupClass(type);
+    if (klass != null) {
+      visitClassInitializers(klass, visited, next);
+    }
+  }
+
+  /**
+   * Visit the class initializers of klass and its superclasses.
+   */
+  private void visitClassInitializers(IClass klass, Set<IMethod> visited, List<IMethod> next) {
+    for (IClass c = klass; c != null; c = c.getSuperclass()) {
+      IMethod clinit = c.getClassInitializer();
+      if (clinit != null) {
+        visit(clinit, visited, next);
+      }
+    }
+  }
+
+  private void visit(IMethod m, Set<IMethod> visited, List<IMethod> next) {
+    if (maxNumberOfMethods >= 0 && visited.size() >= maxNumberOfMethods) {
+      return;
+    }
+    if (m.isNative()) {
+      // the result of a native method is allocated by the virtual machine
+      allocate(m.getReturnType(), visited, next);
+      return;
+    }
+    if (m.isAbstract() || !visited.add(m)) {
+      return;
+    }
+    if (cache.getIRFactory().contextIsIrrelevant(m)) {
+      next.add(m);
+    } else if (m.isSynthetic()) {
+      // summaries are cheap to build; follow them here without caching their IRs
+      IR ir;
+      try {
+        ir = cache.getIRFactory().makeIR(m, Everywhere.EVERYWHERE, options);
+      } catch (RuntimeException e) {
+        ir = null;
+      }
+      if (ir != null) {
+        scan(ir, visited, next);
+      }
+    }
+  }
+}
@@ -0,0 +1,704 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.ipa.callgraph.propagation;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.ibm.wala.classLoader.ArrayClass;
+import com.ibm.wala.classLoader.CallSiteReference;
+import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.classLoader.IField;
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.fixpoint.AbstractStatement;
+import com.ibm.wala.fixpoint.IVariable;
+import com.ibm.wala.fixpoint.UnaryStatement;
+import com.ibm.wala.ipa.callgraph.CGNode;
+import com.ibm.wala.ipa.callgraph.impl.ExplicitCallGraph;
+import com.ibm.wala.types.Selector;
+import com.ibm.wala.types.TypeReference;
+import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.collections.HashSetFactory;
+import com.ibm.wala.util.collections.MapUtil;
+import com.ibm.wala.util.collections.Pair;
+import com.ibm.wala.util.intset.BitVectorIntSet;
+import com.ibm.wala.util.intset.IntIterator;
+import com.ibm.wala.util.intset.IntSet;
+import com.ibm.wala.util.intset.IntSetUtil;
+import com.ibm.wala.util.intset.MutableIntSet;
+import com.ibm.wala.util.strings.Atom;
+
+/**
+ * The part of a solved {@link PropagationSystem} that a change to some classes may invalidate, as needed to update a call graph
+ * incrementally.
+ *
+ * The propagation solver only ever adds to points-to sets, so starting it from any set of values below the new least fixed point
+ * still reaches that fixed point. This class finds, for each points-to set, the instances it may lose once the code changes, so
+ * that the rest can be kept. It starts from the nodes of the changed methods, from the fields of the changed classes, from
+ * instances of the changed types and from call sites whose targets may resolve differently, and follows the old constraints
+ * forward from there, one instance at a time. A node is affected unless it stays reachable from the fake root over call edges that
+ * the change cannot remove; all instances that an affected node defines, or passes on to other nodes, may be lost in turn.
+ *
+ * Some nodes that stay must have their constraints built again: those with a call site whose targets may change, those that call
+ * an affected node, and those with a constraint that remembers the instances it has seen, such as a field access, whose input
+ * may lose instances.
+ *
+ * Constraints with side effects this class does not know about make every points-to set lose everything, and every node but the
+ * fake ones affected.
+ */
+final class AffectedRegion {
+
+  private final PropagationCallGraphBuilder builder;
+
+  /**
+   * the system before the change
+   */
+  private final PropagationSystem system;
+
+  private final ExplicitCallGraph cg;
+
+  /**
+   * the changed classes
+   */
+  private final Set<TypeReference> changedTypes = HashSetFactory.make();
+
+  /**
+   * the changed classes and their subtypes; instances of these types may now be filtered or dispatched differently
+   */
+  private final Set<TypeReference> affectedTypes = HashSetFactory.make();
+
+  /**
+   * selectors of the methods declared by changed classes, before or after the change
+   */
+  private final Set<Selector> changedSelectors = HashSetFactory.make();
+
+  /**
+   * names of the fields declared by changed classes
+   */
+  private final Set<Atom> changedFields = HashSetFactory.make();
+
+  /**
+   * for each points-to set, the indices of the instances it may lose
+   */
+  private final Map<PointsToSetVariable, MutableIntSet> lost = HashMapFactory.make();
+
+  /**
+   * if true, all points-to sets may lose everything
+   */
+  private boolean all = false;
+
+  /**
+   * nodes that may change or disappear
+   */
+  private final Set<CGNode> affectedNodes = HashSetFactory.make();
+
+  /**
+   * nodes that stay, but whose constraints must be built again
+   */
+  private final Set<CGNode> rebuiltNodes = HashSetFactory.make();
+
+  /**
+   * nodes that stay, with a constraint that remembers what it has seen and whose input may lose instances
+   */
+  private final Set<CGNode> statefulNodes = HashSetFactory.make();
+
+  /**
+   * statements storing constant instances into the fields or contents of the instances their input points to
+   */
+  private final List<AbstractStatement<?, ?>> instanceStores = new ArrayList<AbstractStatement<?, ?>>();
+
+  /**
+   * call sites whose targets may change
+   */
+  private final Set<Pair<CGNode, CallSiteReference>> dirtySites = HashSetFactory.make();
+
+  /**
+   * call sites dispatched on the points-to sets of their receivers, rather than resolved once on constant receivers
+   */
+  private final Set<Pair<CGNode, CallSiteReference>> dispatchedSites = HashSetFactory.make();
+
+  /**
+   * points-to sets whose lost instances have not all been followed yet, with the instances still to follow
+   */
+  private final Map<PointsToSetVariable, MutableIntSet> pending = HashMapFactory.make();
+
+  private final ArrayDeque<PointsToSetVariable> worklist = new ArrayDeque<PointsToSetVariable>();
+
+  /**
+   * for each node, the points-to sets of its locals, return value and exceptional return value
+   */
+  private final Map<CGNode, Set<PointsToSetVariable>> localVars = HashMapFactory.make();
+
+  /**
+   * for each node, the points-to sets of its formal parameters
+   */
+  private final Map<CGNode, Set<PointsToSetVariable>> formalVars = HashMapFactory.make();
+
+  /**
+   * for each node, the points-to sets of its return value and exceptional return value
+   */
+  private final Map<CGNode, Set<PointsToSetVariable>> returnVars = HashMapFactory.make();
+
+  /**
+   * for each instance, the points-to sets of its fields and array contents
+   */
+  private final Map<InstanceKey, Set<PointsToSetVariable>> fieldVars = HashMapFactory.make();
+
+  /**
+   * for each caller, all instances it may pass to its callees; computed on demand
+   */
+  private final Map<CGNode, MutableIntSet> passedValues = HashMapFactory.make();
+
+  AffectedRegion(PropagationCallGraphBuilder builder, Collection<IClass> changedClasses) {
+    this.builder = builder;
+    this.system = builder.getSystem();
+    this.cg = builder.getCallGraph();
+    for (IClass klass : changedClasses) {
+      changedTypes.add(klass.getReference());
+      for (IMethod m : klass.getDeclaredMethods()) {
+        changedSelectors.add(m.getSelector());
+      }
+      for (IField f : klass.getDeclaredInstanceFields()) {
+        changedFields.add(f.getName());
+      }
+      for (IField f : klass.getDeclaredStaticFields()) {
+        changedFields.add(f.getName());
+      }
+      affectedTypes.add(klass.getReference());
+      Collection<IClass> subtypes = klass.isInterface() ? builder.getClassHierarchy().getImplementors(klass.getReference())
+          : builder.getClassHierarchy().computeSubClasses(klass.getReference());
+      if (subtypes != null) {
+        for (IClass s : subtypes) {
+          affectedTypes.add(s.getReference());
+        }
+      }
+    }
+    for (CGNode n : cg) {
+      if (isChanged(n)) {
+        // the method may be gone from the changed class, so take its selector from the old node
+        changedSelectors.add(n.getMethod().getSelector());
+      }
+    }
+    indexVariables();
+    compute();
+    if (!all) {
+      findInstanceStores();
+    }
+    if (all) {
+      loseEverything();
+    }
+    findRebuiltNodes();
+  }
+
+  /**
+   * @return the points-to sets that may lose instances, except those of the affected nodes, which go away
+   */
+  Set<PointsToSetVariable> getLosingVariables() {
+    Set<PointsToSetVariable> result = HashSetFactory.make();
+    for (PointsToSetVariable v : lost.keySet()) {
+      PointerKey key = v.getPointerKey();
+      if (!(key instanceof AbstractLocalPointerKey && affectedNodes.contains(((AbstractLocalPointerKey) key).getNode()))) {
+        result.add(v);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return the instances the points-to set may lose, or null if none
+   */
+  IntSet getLostValues(PointsToSetVariable v) {
+    return lost.get(v);
+  }
+
+  /**
+   * @return the nodes that may change or disappear, which must be removed. The fake root and fake world clinit nodes are never
+   *         included.
+   */
+  Set<CGNode> getAffectedNodes() {
+    return Collections.unmodifiableSet(affectedNodes);
+  }
+
+  /**
+   * @return the nodes that stay, but whose constraints must be built again. The fake world clinit node is never included; its
+   *         calls to class initializers are made again from scratch.
+   */
+  Set<CGNode> getRebuiltNodes() {
+    return Collections.unmodifiableSet(rebuiltNodes);
+  }
+
+  /**
+   * @return the points-to sets of the locals, return value and exceptional return value of the node
+   */
+  Set<PointsToSetVariable> getLocalVariables(CGNode n) {
+    Set<PointsToSetVariable> result = localVars.get(n);
+    return result == null ? Collections.<PointsToSetVariable> emptySet() : result;
+  }
+
+  /**
+   * @return true iff the node is for a method of a changed class
+   */
+  boolean isChanged(CGNode n) {
+    return changedTypes.contains(n.getMethod().getDeclaringClass().getReference());
+  }
+
+  private void indexVariables() {
+    for (Iterator<?> it = system.getStatements(); it.hasNext();) {
+      AbstractStatement<?, ?> s = (AbstractStatement<?, ?>) it.next();
+      if (s.getOperator() instanceof SSAPropagationCallGraphBuilder.DispatchOperator) {
+        SSAPropagationCallGraphBuilder.DispatchOperator op = (SSAPropagationCallGraphBuilder.DispatchOperator) s.getOperator();
+        dispatchedSites.add(Pair.make(op.getNode(), op.getCallSite()));
+      } else if (s.getOperator() instanceof PropagationCallGraphBuilder.InstancePutFieldOperator
+          || s.getOperator() instanceof PropagationCallGraphBuilder.InstanceArrayStoreOperator) {
+        instanceStores.add(s);
+      }
+    }
+    BitVectorIntSet deadInstances = new BitVectorIntSet();
+    for (int i = 0; i <= system.instanceKeys.getMaximumIndex(); i++) {
+      InstanceKey ik = system.instanceKeys.getMappedObject(i);
+      if (ik != null && isAffectedType(ik.getConcreteType())) {
+        deadInstances.add(i);
+      }
+    }
+    for (Iterator<PointerKey> it = system.pointsToMap.iterateKeys(); it.hasNext();) {
+      PointerKey key = it.next();
+      if (system.pointsToMap.isImplicit(key)) {
+        continue;
+      }
+      PointsToSetVariable v = system.pointsToMap.getPointsToSet(key);
+      if (v == null) {
+        continue;
+      }
+      if (key instanceof AbstractLocalPointerKey) {
+        CGNode n = ((AbstractLocalPointerKey) key).getNode();
+        MapUtil.findOrCreateSet(localVars, n).add(v);
+        if (key instanceof LocalPointerKey && ((LocalPointerKey) key).isParameter()) {
+          MapUtil.findOrCreateSet(formalVars, n).add(v);
+        } else if (key instanceof ReturnValueKey) {
+          MapUtil.findOrCreateSet(returnVars, n).add(v);
+        }
+      } else if (key instanceof InstanceFieldPointerKey) {
+        InstanceKey ik = ((InstanceFieldPointerKey) key).getInstanceKey();
+        MapUtil.findOrCreateSet(fieldVars, ik).add(v);
+        if (isAffectedType(ik.getConcreteType())) {
+          markLost(v);
+        }
+        if (key instanceof InstanceFieldKey && isChangedField(((InstanceFieldKey) key).getField())) {
+          markLost(v);
+        }
+      } else if (key instanceof StaticFieldKey) {
+        if (isChangedField(((StaticFieldKey) key).getField())) {
+          markLost(v);
+        }
+      }
+      if (!deadInstances.isEmpty()) {
+        markLost(v, deadInstances);
+      }
+    }
+  }
+
+  /**
+   * Grow the region until it is closed: alternately follow the old constraints from the lost instances, and find the nodes that may
+   * no longer be reachable.
+   */
+  private void compute() {
+    for (CGNode n : cg) {
+      if (isChanged(n) && !isFakeNode(n)) {
+        markAffected(n);
+      }
+    }
+    // the class initializer calls are made again from scratch, so the fake world clinit node is rebuilt
+    CGNode fakeWorldClinit = cg.getFakeWorldClinitNode();
+    if (fakeWorldClinit != null) {
+      markAllLost(localVars.get(fakeWorldClinit));
+    }
+    // calls whose targets may resolve differently
+    for (CGNode n : cg) {
+      if (!affectedNodes.contains(n) && !n.equals(fakeWorldClinit)) {
+        for (Iterator<CallSiteReference> it = n.iterateCallSites(); it.hasNext();) {
+          CallSiteReference site = it.next();
+          if (mayResolveDifferently(n, site)) {
+            markDirty(n, site);
+          }
+        }
+      }
+    }
+    do {
+      propagate();
+      if (all) {
+        return;
+      }
+      for (CGNode n : findUnreachableNodes()) {
+        markAffected(n);
+      }
+    } while (!worklist.isEmpty());
+  }
+
+  /**
+   * follow the old constraints forward from the lost instances on the worklist
+   */
+  private void propagate() {
+    while (!worklist.isEmpty() && !all) {
+      PointsToSetVariable v = worklist.pop();
+      IntSet delta = pending.remove(v);
+      for (Iterator<AbstractStatement<?, ?>> it = system.statementsThatUse(v); it.hasNext();) {
+        AbstractStatement<?, ?> s = it.next();
+        IVariable<?> lhs = s.getLHS();
+        if (!(s.getOperator() instanceof AssignOperator || s.getOperator() instanceof PropagationCallGraphBuilder.FilterOperator)) {
+          markStateful(v);
+        }
+        if (lhs != null) {
+          if (s.getOperator() instanceof AssignOperator || s.getOperator() instanceof PropagationCallGraphBuilder.FilterOperator) {
+            // lhs holds a subset of what flows in, so it loses at most what v loses
+            markLost((PointsToSetVariable) lhs, delta);
+          } else {
+            markLost((PointsToSetVariable) lhs);
+          }
+        } else if (s.getOperator() instanceof UnarySideEffect) {
+          UnarySideEffect op = (UnarySideEffect) s.getOperator();
+          for (IntIterator bases = delta.intIterator(); bases.hasNext();) {
+            Set<PointsToSetVariable> fields = fieldVars.get(system.getInstanceKey(bases.next()));
+            if (fields != null) {
+              for (PointsToSetVariable f : fields) {
+                if (op.isLoadOperator()) {
+                  // v is the base of a load into the fixed set
+                  markLost(op.getFixedSet(), f.getValue());
+                } else {
+                  // v is the base of a store from the fixed set
+                  markLost(f, op.getFixedSet().getValue());
+                }
+              }
+            }
+          }
+        } else if (s.getOperator() instanceof PropagationCallGraphBuilder.InstancePutFieldOperator
+            || s.getOperator() instanceof PropagationCallGraphBuilder.InstanceArrayStoreOperator) {
+          // v is the base of a store of constant instances
+          for (IntIterator bases = delta.intIterator(); bases.hasNext();) {
+            markAllLost(fieldVars.get(system.getInstanceKey(bases.next())));
+          }
+        } else if (s.getOperator() instanceof SSAPropagationCallGraphBuilder.DispatchOperator) {
+          SSAPropagationCallGraphBuilder.DispatchOperator op = (SSAPropagationCallGraphBuilder.DispatchOperator) s.getOperator();
+          markDirty(op.getNode(), op.getCallSite());
+        } else {
+          all = true;
+        }
+      }
+    }
+  }
+
+  /**
+   * record that the node whose local v is has a constraint over v that remembers what it has seen
+   */
+  private void markStateful(PointsToSetVariable v) {
+    PointerKey key = v.getPointerKey();
+    if (key instanceof AbstractLocalPointerKey) {
+      statefulNodes.add(((AbstractLocalPointerKey) key).getNode());
+    } else {
+      // no node to build again
+      all = true;
+    }
+  }
+
+  /**
+   * A constant stored into the fields of the instances a variable points to leaves no statement behind that defines those fields;
+   * if the fields may lose instances, the node with the store must store them again.
+   */
+  private void findInstanceStores() {
+    MutableIntSet losing = IntSetUtil.make();
+    for (Map.Entry<InstanceKey, Set<PointsToSetVariable>> e : fieldVars.entrySet()) {
+      for (PointsToSetVariable f : e.getValue()) {
+        if (lost.containsKey(f)) {
+          losing.add(system.getInstanceIndex(e.getKey()));
+          break;
+        }
+      }
+    }
+    if (losing.isEmpty()) {
+      return;
+    }
+    for (AbstractStatement<?, ?> s : instanceStores) {
+      PointsToSetVariable base = (PointsToSetVariable) ((UnaryStatement<?>) s).getRightHandSide();
+      if (base.getValue() != null && base.getValue().containsAny(losing)) {
+        markStateful(base);
+      }
+    }
+  }
+
+  /**
+   * With constraints this class does not know about, every points-to set may lose everything, and every node is affected.
+   */
+  private void loseEverything() {
+    lost.clear();
+    for (Iterator<PointerKey> it = system.pointsToMap.iterateKeys(); it.hasNext();) {
+      PointerKey key = it.next();
+      if (!system.pointsToMap.isImplicit(key)) {
+        PointsToSetVariable v = system.pointsToMap.getPointsToSet(key);
+        if (v != null && v.getValue() != null && !v.getValue().isEmpty()) {
+          lost.put(v, IntSetUtil.makeMutableCopy(v.getValue()));
+        }
+      }
+    }
+    for (CGNode n : cg) {
+      if (!isFakeNode(n)) {
+        affectedNodes.add(n);
+      }
+    }
+  }
+
+  /**
+   * Find the nodes that stay, but must be built again: the callers of affected nodes, the nodes with call sites whose targets may
+   * change, and the nodes with a constraint that remembers what it has seen and may now see less.
+   */
+  private void findRebuiltNodes() {
+    for (CGNode n : affectedNodes) {
+      for (Iterator<CGNode> it = cg.getPredNodes(n); it.hasNext();) {
+        markRebuilt(it.next());
+      }
+    }
+    for (Pair<CGNode, CallSiteReference> site : dirtySites) {
+      markRebuilt(site.fst);
+    }
+    for (CGNode n : statefulNodes) {
+      markRebuilt(n);
+    }
+  }
+
+  private void markRebuilt(CGNode n) {
+    if (!affectedNodes.contains(n) && !n.equals(cg.getFakeWorldClinitNode())) {
+      rebuiltNodes.add(n);
+    }
+  }
+
+  /**
+   * @return the nodes that are neither affected nor reachable from the fake root over call edges that must remain after the change
+   */
+  private Collection<CGNode> findUnreachableNodes() {
+    CGNode fakeWorldClinit = cg.getFakeWorldClinitNode();
+    // for each class with a class initializer, the old targets of the call to it from the fake world clinit node
+    Map<IClass, Set<CGNode>> clinits = HashMapFactory.make();
+    if (fakeWorldClinit != null) {
+      for (Iterator<CGNode> it = cg.getSuccNodes(fakeWorldClinit); it.hasNext();) {
+        CGNode t = it.next();
+        MapUtil.findOrCreateSet(clinits, t.getMethod().getDeclaringClass()).add(t);
+      }
+    }
+    Set<IClass> initialized = HashSetFactory.make();
+    boolean clinitsReached = false;
+
+    Set<CGNode> reached = HashSetFactory.make();
+    ArrayDeque<CGNode> todo = new ArrayDeque<CGNode>();
+    reached.add(cg.getFakeRootNode());
+    todo.add(cg.getFakeRootNode());
+    while (!todo.isEmpty()) {
+      CGNode n = todo.pop();
+      List<CGNode> succ = new ArrayList<CGNode>();
+      if (n.equals(fakeWorldClinit)) {
+        clinitsReached = true;
+        for (IClass klass : initialized) {
+          addAll(succ, clinits.get(klass));
+        }
+      } else {
+        // a class initializer is called for sure if a node that stays needs its class, or a subclass, initialized
+        for (IClass klass : builder.getClassInitializations(n)) {
+          for (IClass c = klass; c != null && initialized.add(c); c = c.getSuperclass()) {
+            if (clinitsReached) {
+              addAll(succ, clinits.get(c));
+            }
+          }
+        }
+        for (Iterator<CallSiteReference> it = n.iterateCallSites(); it.hasNext();) {
+          CallSiteReference site = it.next();
+          if (!dirtySites.contains(Pair.make(n, site))) {
+            succ.addAll(cg.getPossibleTargets(n, site));
+          }
+        }
+      }
+      for (CGNode t : succ) {
+        if (!affectedNodes.contains(t) && reached.add(t)) {
+          todo.add(t);
+        }
+      }
+    }
+
+    List<CGNode> result = new ArrayList<CGNode>();
+    for (CGNode n : cg) {
+      if (!reached.contains(n) && !affectedNodes.contains(n) && !isFakeNode(n)) {
+        result.add(n);
+      }
+    }
+    return result;
+  }
+
+  private static void addAll(Collection<CGNode> result, Set<CGNode> nodes) {
+    if (nodes != null) {
+      result.addAll(nodes);
+    }
+  }
+
+  /**
+   * record that a node may change or disappear: everything it defines, and everything it passes on, may be lost
+   */
+  private void markAffected(CGNode n) {
+    if (!affectedNodes.add(n)) {
+      return;
+    }
+    // what it passes on through its locals follows from the constraints that use them
+    markAllLost(localVars.get(n));
+    for (Map.Entry<PointerKey, MutableIntSet> e : system.getUnconditionalWrites(n).entrySet()) {
+      if (!system.pointsToMap.isImplicit(e.getKey())) {
+        PointsToSetVariable v = system.pointsToMap.getPointsToSet(e.getKey());
+        if (v != null) {
+          markLost(v, e.getValue());
+        }
+      }
+    }
+  }
+
+  /**
+   * record that the targets of a call site may change: the formals of the old targets may lose what the caller passed, and the
+   * caller may lose what they returned
+   */
+  private void markDirty(CGNode caller, CallSiteReference site) {
+    if (!dirtySites.add(Pair.make(caller, site))) {
+      return;
+    }
+    for (CGNode t : cg.getPossibleTargets(caller, site)) {
+      Set<PointsToSetVariable> formals = formalVars.get(t);
+      if (formals != null) {
+        IntSet passed = getPassedValues(caller);
+        for (PointsToSetVariable f : formals) {
+          markLost(f, passed);
+        }
+      }
+      Set<PointsToSetVariable> returns = returnVars.get(t);
+      if (returns != null) {
+        for (PointsToSetVariable r : returns) {
+          for (Iterator<AbstractStatement<?, ?>> it = system.statementsThatUse(r); it.hasNext();) {
+            IVariable<?> lhs = it.next().getLHS();
+            if (lhs != null && isLocalOf((PointsToSetVariable) lhs, caller)) {
+              markLost((PointsToSetVariable) lhs, r.getValue());
+            }
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * @return all instances the node may pass to a callee: those in its locals, and the constants it passes directly
+   */
+  private IntSet getPassedValues(CGNode caller) {
+    MutableIntSet result = passedValues.get(caller);
+    if (result == null) {
+      result = IntSetUtil.make();
+      Set<PointsToSetVariable> locals = localVars.get(caller);
+      if (locals != null) {
+        for (PointsToSetVariable l : locals) {
+          if (l.getValue() != null) {
+            result.addAll(l.getValue());
+          }
+        }
+      }
+      for (MutableIntSet written : system.getUnconditionalWrites(caller).values()) {
+        result.addAll(written);
+      }
+      passedValues.put(caller, result);
+    }
+    return result;
+  }
+
+  private void markAllLost(Set<PointsToSetVariable> vars) {
+    if (vars != null) {
+      for (PointsToSetVariable v : vars) {
+        markLost(v);
+      }
+    }
+  }
+
+  /**
+   * record that the points-to set may lose everything
+   */
+  private void markLost(PointsToSetVariable v) {
+    markLost(v, v.getValue());
+  }
+
+  /**
+   * record that the points-to set may lose those of the given instances it holds
+   */
+  private void markLost(PointsToSetVariable v, IntSet instances) {
+    IntSet value = v.getValue();
+    if (value == null || instances == null) {
+      return;
+    }
+    MutableIntSet l = null;
+    MutableIntSet delta = null;
+    for (IntIterator it = value.intersection(instances).intIterator(); it.hasNext();) {
+      int i = it.next();
+      if (l == null) {
+        l = MapUtil.findOrCreateMutableIntSet(lost, v);
+      }
+      if (l.add(i)) {
+        if (delta == null) {
+          delta = pending.get(v);
+          if (delta == null) {
+            delta = IntSetUtil.make();
+            pending.put(v, delta);
+            worklist.push(v);
+          }
+        }
+        delta.add(i);
+      }
+    }
+  }
+
+  private static boolean isLocalOf(PointsToSetVariable v, CGNode n) {
+    PointerKey key = v.getPointerKey();
+    return key instanceof AbstractLocalPointerKey && ((AbstractLocalPointerKey) key).getNode().equals(n);
+  }
+
+  private boolean isFakeNode(CGNode n) {
+    return n.equals(cg.getFakeRootNode()) || n.equals(cg.getFakeWorldClinitNode());
+  }
+
+  private boolean isChangedField(IField f) {
+    return changedFields.contains(f.getName()) || changedTypes.contains(f.getDeclaringClass().getReference());
+  }
+
+  /**
+   * A call is resolved by looking up its declared target from the declaring class upwards, or from the class of the receiver for
+   * a dispatch. The latter is covered by the instances of affected types, unless the call was resolved once on constant receivers.
+   */
+  private boolean mayResolveDifferently(CGNode caller, CallSiteReference site) {
+    IClass declaringClass = builder.getClassHierarchy().lookupClass(site.getDeclaredTarget().getDeclaringClass());
+    if (declaringClass != null && isAffectedType(declaringClass)) {
+      return true;
+    }
+    return site.isDispatch() && changedSelectors.contains(site.getDeclaredTarget().getSelector())
+        && !dispatchedSites.contains(Pair.make(caller, site));
+  }
+
+  private boolean isAffectedType(IClass klass) {
+    if (klass == null) {
+      return false;
+    }
+    if (klass.isArrayClass()) {
+      IClass element = ((ArrayClass) klass).getInnermostElementClass();
+      return element != null && affectedTypes.contains(element.getReference());
+    }
+    return affectedTypes.contains(klass.getReference());
+  }
+}
@@ -12,6 +12,7 @@ package com.ibm.wala.ipa.callgraph.propagation;
 
 import com.ibm.wala.fixpoint.UnaryOperator;
 import com.ibm.wala.fixpoint.UnaryStatement;
+import com.ibm.wala.util.intset.IntSet;
 
 /**
  * Corresponds to: "is a superset of". Used for assignment.
@@ -21,7 +22,7 @@ import com.ibm.wala.fixpoint.UnaryStatement;
  * (Technically, it's a binary op, since it includes lhs as an implicit input; this allows it to compose with other ops that define
  * the same lhs, so long as they're all Assign ops)
  */
-class AssignOperator extends UnaryOperator<PointsToSetVariable> implements IPointerOperator {
+class AssignOperator extends UnaryOperator<PointsToSetVariable> implements IDifferenceOperator {
 
   @Override
   public UnaryStatement<PointsToSetVariable> makeEquation(PointsToSetVariable lhs, PointsToSetVariable rhs) {
@@ -44,6 +45,15 @@ class AssignOperator extends UnaryOperator<PointsToSetVariable> implements IPoin
     return changed ? CHANGED : NOT_CHANGED;
   }
 
+  @Override
+  public byte evaluateDifference(PointsToSetVariable lhs, PointsToSetVariable rhs, IntSet delta) {
+    if (PropagationCallGraphBuilder.DEBUG_ASSIGN) {
+      System.err.println("EVAL Assign " + lhs.getPointerKey() + " delta " + delta);
+    }
+    boolean changed = lhs.addAll(delta);
+    return changed ? CHANGED : NOT_CHANGED;
+  }
+
   @Override
   public String toString() {
     return "Assign";
@@ -31,6 +31,16 @@ public interface FilteredPointerKey extends PointerKey {
 
     boolean addInverseFiltered(PropagationSystem system, PointsToSetVariable L, PointsToSetVariable R);
 
+    /**
+     * As {@link #addFiltered(PropagationSystem, PointsToSetVariable, PointsToSetVariable)}, for just the instances in R
+     */
+    boolean addFiltered(PropagationSystem system, PointsToSetVariable L, IntSet R);
+
+    /**
+     * As {@link #addInverseFiltered(PropagationSystem, PointsToSetVariable, PointsToSetVariable)}, for just the instances in R
+     */
+    boolean addInverseFiltered(PropagationSystem system, PointsToSetVariable L, IntSet R);
+
     boolean isRootFilter();
     
   }
@@ -77,6 +87,18 @@ public interface FilteredPointerKey extends PointerKey {
       return (f == null) ? L.addAll(R) : L.addAll(IntSetUtil.diff(R.getValue(), f));
     }
 
+    @Override
+    public boolean addFiltered(PropagationSystem system, PointsToSetVariable L, IntSet R) {
+      IntSet f = system.getInstanceKeysForClass(concreteType);
+      return (f == null) ? false : L.addAllInIntersection(R, f);
+    }
+
+    @Override
+    public boolean addInverseFiltered(PropagationSystem system, PointsToSetVariable L, IntSet R) {
+      IntSet f = system.getInstanceKeysForClass(concreteType);
+      return (f == null) ? L.addAll(R) : L.addAll(IntSetUtil.diff(R, f));
+    }
+
     @Override
     public boolean isRootFilter() {
       return concreteType.equals(concreteType.getClassHierarchy().getRootClass());
@@ -153,6 +175,18 @@ public interface FilteredPointerKey extends PointerKey {
       return (f == null) ? L.addAll(R) : L.addAll(IntSetUtil.diff(R.getValue(), f));
     }
 
+    @Override
+    public boolean addFiltered(PropagationSystem system, PointsToSetVariable L, IntSet R) {
+      IntSet f = bits(system);
+      return (f == null) ? false : L.addAllInIntersection(R, f);
+    }
+
+    @Override
+    public boolean addInverseFiltered(PropagationSystem system, PointsToSetVariable L, IntSet R) {
+      IntSet f = bits(system);
+      return (f == null) ? L.addAll(R) : L.addAll(IntSetUtil.diff(R, f));
+    }
+
     @Override
     public boolean isRootFilter() {
       return concreteType.length == 1 && concreteType[0].getClassHierarchy().getRootClass().equals(concreteType[0]);
@@ -210,6 +244,28 @@ public interface FilteredPointerKey extends PointerKey {
       }
     }
 
+    @Override
+    public boolean addFiltered(PropagationSystem system, PointsToSetVariable L, IntSet R) {
+      int idx = system.findOrCreateIndexForInstanceKey(concreteType);
+      if (R.contains(idx) && !L.contains(idx)) {
+        L.add(idx);
+        return true;
+      }
+      return false;
+    }
+
+    @Override
+    public boolean addInverseFiltered(PropagationSystem system, PointsToSetVariable L, IntSet R) {
+      int idx = system.findOrCreateIndexForInstanceKey(concreteType);
+      if (!R.contains(idx) || L.contains(idx)) {
+        return L.addAll(R);
+      } else {
+        MutableIntSet copy = IntSetUtil.makeMutableCopy(R);
+        copy.remove(idx);
+        return L.addAll(copy);
+      }
+    }
+
     @Override
     public boolean isRootFilter() {
        return false;
@@ -272,24 +328,26 @@ public interface FilteredPointerKey extends PointerKey {
 
     @Override
     public boolean addFiltered(PropagationSystem system, PointsToSetVariable L, PointsToSetVariable R) {
-      if (R.getValue() == null) {
-        return false;
-      } else {
-        UpdateAction act = new UpdateAction(system, L, true);
-        R.getValue().foreach(act);
-        return act.result;
-      }
+      return (R.getValue() == null) ? false : addFiltered(system, L, R.getValue());
     }
 
     @Override
     public boolean addInverseFiltered(PropagationSystem system, PointsToSetVariable L, PointsToSetVariable R) {
-      if (R.getValue() == null) {
-        return false;
-      } else {
-        UpdateAction act = new UpdateAction(system, L, false);
-        R.getValue().foreach(act);
-        return act.result;
-      }
+      return (R.getValue() == null) ? false : addInverseFiltered(system, L, R.getValue());
+    }
+
+    @Override
+    public boolean addFiltered(PropagationSystem system, PointsToSetVariable L, IntSet R) {
+      UpdateAction act = new UpdateAction(system, L, true);
+      R.foreach(act);
+      return act.result;
+    }
+
+    @Override
+    public boolean addInverseFiltered(PropagationSystem system, PointsToSetVariable L, IntSet R) {
+      UpdateAction act = new UpdateAction(system, L, false);
+      R.foreach(act);
+      return act.result;
     }
 
     @Override
@@ -0,0 +1,29 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.ipa.callgraph.propagation;
+
+import com.ibm.wala.util.intset.IntSet;
+
+/**
+ * A unary pointer operator which treats each instance on its right-hand side independently, so that it may be evaluated on just
+ * the instances added to the right-hand side since it was last evaluated. See {@link PropagationSystem#setDifferencePropagation}.
+ */
+public interface IDifferenceOperator extends IPointerOperator {
+
+  /**
+   * Add to lhs the contribution of the instances in delta, which were added to rhs since it was last propagated.
+   *
+   * @param lhs the left-hand side, or null for a side effect
+   * @return a code as for {@link com.ibm.wala.fixpoint.UnaryOperator#evaluate}
+   */
+  byte evaluateDifference(PointsToSetVariable lhs, PointsToSetVariable rhs, IntSet delta);
+
+}
@@ -126,6 +126,18 @@ public class PointsToMap {
     pointsToSets.set(i, v);
   }
 
+  /**
+   * forget a pointer key, e.g. one of a node that was removed from the call graph
+   */
+  public void remove(PointerKey key) {
+    int i = pointerKeys.getMappedIndex(key);
+    if (i != -1) {
+      pointerKeys.deleteMappedObject(key);
+      pointsToSets.set(i, null);
+      transitiveRoots.clear(i);
+    }
+  }
+
   private int findOrCreateIndex(PointerKey key) {
     int result = pointerKeys.getMappedIndex(key);
     if (result == -1) {
@@ -18,8 +18,11 @@ import com.ibm.wala.ipa.cha.IClassHierarchy;
 import com.ibm.wala.ssa.IR;
 import com.ibm.wala.types.TypeReference;
 import com.ibm.wala.util.debug.Assertions;
+import com.ibm.wala.util.intset.IntIterator;
 import com.ibm.wala.util.intset.IntSet;
 import com.ibm.wala.util.intset.IntSetAction;
+import com.ibm.wala.util.intset.IntSetUtil;
+import com.ibm.wala.util.intset.MutableIntSet;
 import com.ibm.wala.util.intset.MutableMapping;
 import com.ibm.wala.util.intset.MutableSparseIntSet;
 
@@ -45,6 +48,21 @@ public class PointsToSetVariable extends IntSetVariable<PointsToSetVariable> {
 
   private PointerKey pointerKey;
 
+  /**
+   * should the instances added to this variable be recorded in {@link #delta}?
+   */
+  private boolean trackDelta = false;
+
+  /**
+   * the instances added since the delta was last taken, or null if there are none
+   */
+  private MutableIntSet delta;
+
+  /**
+   * if true, the delta is the whole value of this variable, and {@link #delta} is not used
+   */
+  private boolean deltaIsValue = false;
+
   public PointsToSetVariable(PointerKey key) {
     super();
     if (key == null) {
@@ -82,7 +100,11 @@ public class PointsToSetVariable extends IntSetVariable<PointsToSetVariable> {
       m.add(b);
       checkTypes(m);
     }
-    super.add(b);
+    if (trackDelta) {
+      addNew(b);
+    } else {
+      super.add(b);
+    }
     cryIfTooBig();
   }
 
@@ -91,11 +113,133 @@ public class PointsToSetVariable extends IntSetVariable<PointsToSetVariable> {
     if (PARANOID) {
       checkTypes(B);
     }
+    if (trackDelta) {
+      return addAllNew(B, null);
+    }
     boolean v = super.addAll(B);
     cryIfTooBig();
     return v;
   }
 
+  @Override
+  public boolean addAllInIntersection(PointsToSetVariable other, IntSet filter) {
+    if (trackDelta) {
+      return other.getValue() != null && addAllNew(other.getValue(), filter);
+    }
+    return super.addAllInIntersection(other, filter);
+  }
+
+  @Override
+  public boolean addAllInIntersection(IntSet other, IntSet filter) {
+    if (trackDelta) {
+      return addAllNew(other, filter);
+    }
+    return super.addAllInIntersection(other, filter);
+  }
+
+  /**
+   * Add an instance to the value in place, and record it in the delta if it is new.
+   * 
+   * @return true iff the value of this changes
+   */
+  private boolean addNew(int x) {
+    if (contains(x)) {
+      return false;
+    }
+    super.add(x);
+    if (!deltaIsValue) {
+      if (delta == null) {
+        delta = IntSetUtil.make();
+      }
+      delta.add(x);
+    }
+    return true;
+  }
+
+  /**
+   * Add the instances in B, restricted to filter unless it is null, to the value in place, recording just the new ones in the delta.
+   * 
+   * @return true iff the value of this changes
+   */
+  private boolean addAllNew(IntSet B, IntSet filter) {
+    if (getValue() == null && filter == null && delta == null) {
+      // everything is new: the value is the delta
+      if (!super.addAll(B)) {
+        return false;
+      }
+      deltaIsValue = true;
+      cryIfTooBig();
+      return true;
+    }
+    boolean changed = false;
+    for (IntIterator it = B.intIterator(); it.hasNext();) {
+      int x = it.next();
+      if (filter == null || filter.contains(x)) {
+        changed |= addNew(x);
+      }
+    }
+    if (changed) {
+      cryIfTooBig();
+    }
+    return changed;
+  }
+
+  /**
+   * Start or stop recording the instances added to this variable. When starting, the whole current value becomes the delta.
+   */
+  void setTrackDelta(boolean trackDelta) {
+    this.trackDelta = trackDelta;
+    if (trackDelta) {
+      resetDelta();
+    } else {
+      delta = null;
+      deltaIsValue = false;
+    }
+  }
+
+  /**
+   * @return the instances added since the delta was last taken or reset, or null if there are none; the delta is empty afterwards
+   */
+  IntSet takeDelta() {
+    IntSet result = delta;
+    if (deltaIsValue) {
+      // the value keeps growing, so hand out a copy
+      result = getValue() == null ? null : IntSetUtil.makeMutableCopy(getValue());
+      deltaIsValue = false;
+    }
+    delta = null;
+    return result;
+  }
+
+  /**
+   * Make the whole value of this variable the delta, so that it is propagated again, e.g. to constraints that did not see it
+   * before. The value is not copied unless the delta is taken.
+   */
+  void resetDelta() {
+    delta = null;
+    deltaIsValue = trackDelta && getValue() != null;
+  }
+
+  @Override
+  public void removeAll() {
+    super.removeAll();
+    delta = null;
+    deltaIsValue = false;
+  }
+
+  /**
+   * Remove some instances from the value, and from the delta: the constraint system no longer produces them.
+   */
+  void removeAll(IntSet instances) {
+    for (IntIterator it = instances.intIterator(); it.hasNext();) {
+      int x = it.next();
+      remove(x);
+      if (delta != null) {
+        delta.remove(x);
+      }
+    }
+  }
+
   /**
    * check that the types of all instance keys are assignable to declared type of pointer key
    */
@@ -143,6 +287,9 @@ public class PointsToSetVariable extends IntSetVariable<PointsToSetVariable> {
     if (PARANOID) {
       checkTypes(other.getValue());
     }
+    if (trackDelta) {
+      return other.getValue() != null && addAll(other.getValue());
+    }
     // TODO Auto-generated method stub
     boolean v = super.addAll(other);
     cryIfTooBig();
@@ -10,8 +10,12 @@
  *******************************************************************************/
 package com.ibm.wala.ipa.callgraph.propagation;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import com.ibm.wala.analysis.reflection.IllegalArgumentExceptionContext;
@@ -34,6 +38,7 @@ import com.ibm.wala.ipa.callgraph.ContextSelector;
 import com.ibm.wala.ipa.callgraph.Entrypoint;
 import com.ibm.wala.ipa.callgraph.impl.AbstractRootMethod;
 import com.ibm.wala.ipa.callgraph.impl.ExplicitCallGraph;
+import com.ibm.wala.ipa.callgraph.impl.IRPrefetcher;
 import com.ibm.wala.ipa.callgraph.propagation.rta.RTAContextInterpreter;
 import com.ibm.wala.ipa.cha.IClassHierarchy;
 import com.ibm.wala.ssa.SSAAbstractInvokeInstruction;
@@ -41,8 +46,12 @@ import com.ibm.wala.types.TypeReference;
 import com.ibm.wala.util.CancelException;
 import com.ibm.wala.util.CancelRuntimeException;
 import com.ibm.wala.util.MonitorUtil.IProgressMonitor;
+import com.ibm.wala.util.collections.HashMapFactory;
 import com.ibm.wala.util.collections.HashSetFactory;
+import com.ibm.wala.util.collections.Iterator2Collection;
+import com.ibm.wala.util.collections.MapUtil;
 import com.ibm.wala.util.debug.Assertions;
+import com.ibm.wala.util.intset.IntIterator;
 import com.ibm.wala.util.intset.IntSet;
 import com.ibm.wala.util.intset.IntSetAction;
 import com.ibm.wala.util.intset.IntSetUtil;
@@ -111,6 +120,11 @@ public abstract class PropagationCallGraphBuilder implements CallGraphBuilder {
    */
   private Set<CGNode> discoveredNodes = HashSetFactory.make();
 
+  /**
+   * for each node, the classes whose initialization was triggered while its constraints were added
+   */
+  private final Map<CGNode, Set<IClass>> classInitializations = HashMapFactory.make();
+
   /**
    * Set of calls (CallSiteReferences) that are created by entrypoints
    */
@@ -226,7 +240,11 @@ public abstract class PropagationCallGraphBuilder implements CallGraphBuilder {
     if (options == null) {
       throw new IllegalArgumentException("options is null");
     }
-    system = makeSystem(options);
+    initializeSystem(options);
+
+    if (options.getNumberOfIRPrefetchThreads() > 0) {
+      prefetchIRs(options, monitor);
+    }
 
     if (DEBUG_GENERAL) {
       System.err.println("Enter makeCallGraph!");
@@ -236,10 +254,6 @@ public abstract class PropagationCallGraphBuilder implements CallGraphBuilder {
       System.err.println("Initialized call graph");
     }
 
-    system.setMinEquationsForTopSort(options.getMinEquationsForTopSort());
-    system.setTopologicalGrowthFactor(options.getTopologicalGrowthFactor());
-    system.setMaxEvalBetweenTopo(options.getMaxEvalBetweenTopo());
-
     discoveredNodes = HashSetFactory.make();
     discoveredNodes.add(callGraph.getFakeRootNode());
 
@@ -268,6 +282,150 @@ public abstract class PropagationCallGraphBuilder implements CallGraphBuilder {
 /** END Custom change: throw exception on empty entry points. This is a severe issue that should not go undetected! */
     customInit();
 
+    solve(monitor);
+
+    return callGraph;
+  }
+
+  /**
+   * Bring the call graph and pointer analysis up to date after some classes changed, reusing the points-to sets and constraints that
+   * the change cannot affect. The call graph must have been built with {@link AnalysisOptions#setIncrementalUpdates(boolean)} set.
+   * 
+   * The class hierarchy, and the IRs the context interpreter produces, must already reflect the change. The {@link AffectedRegion}
+   * of the change is taken out of the solved constraint system: the nodes it affects are removed along with their constraints, the
+   * nodes whose constraints depend on what changed have them removed to be built again, and each points-to set loses the instances
+   * it may no longer hold. Then the statements defining those points-to sets, and the instances written directly into them by the
+   * nodes that stay, are applied again, and the solver picks up from there, building constraints for the new and rebuilt nodes
+   * only. The result is that of a build from scratch, except that affected nodes are replaced by new {@link CGNode} objects, that
+   * calls to class initializers may be made in a different order, and that types recorded by the context interpreter to model
+   * reflection are not forgotten.
+   * 
+   * Variables unified by {@link AnalysisOptions#setCycleElimination(boolean) cycle elimination} stay unified: with incremental
+   * updates on, only locals of one node are unified, and their points-to sets stay equal as long as the node does.
+   * 
+   * @param changedClasses the classes that were added, removed or modified since the call graph was last built or updated
+   * @return the updated call graph, which is the one built before
+   * @throws IllegalStateException if no call graph has been built yet, or it was built without incremental updates enabled
+   */
+  public CallGraph updateCallGraph(Collection<IClass> changedClasses, IProgressMonitor monitor) throws IllegalArgumentException,
+      CallGraphBuilderCancelException {
+    if (changedClasses == null) {
+      throw new IllegalArgumentException("changedClasses is null");
+    }
+    if (system == null) {
+      throw new IllegalStateException("no call graph to update");
+    }
+    if (!system.getIncrementalUpdates()) {
+      throw new IllegalStateException("call graph was built without incremental updates enabled");
+    }
+    AffectedRegion region = new AffectedRegion(this, changedClasses);
+    Set<CGNode> affected = region.getAffectedNodes();
+    Set<CGNode> rebuilt = region.getRebuiltNodes();
+    CGNode fakeWorldClinit = callGraph.getFakeWorldClinitNode();
+
+    // take the region out of the constraint system
+    for (CGNode n : affected) {
+      system.removeStatements(n, region.getLocalVariables(n), true);
+    }
+    for (CGNode n : rebuilt) {
+      system.removeStatements(n, region.getLocalVariables(n), false);
+    }
+    if (fakeWorldClinit != null) {
+      system.removeStatements(fakeWorldClinit, region.getLocalVariables(fakeWorldClinit), false);
+    }
+    system.removeLocals(affected);
+    Set<PointsToSetVariable> losing = region.getLosingVariables();
+    for (PointsToSetVariable v : losing) {
+      v.removeAll(region.getLostValues(v));
+    }
+
+    // and out of the call graph
+    for (CGNode n : affected) {
+      if (region.isChanged(n)) {
+        getAnalysisCache().invalidate(n.getMethod(), n.getContext());
+      }
+      classInitializations.remove(n);
+      alreadyVisited.remove(n);
+      callGraph.removeNodeAndEdges(n);
+    }
+    for (CGNode n : rebuilt) {
+      classInitializations.remove(n);
+      removeCallsFrom(n);
+      markChanged(n);
+    }
+    List<CGNode> kept = new ArrayList<CGNode>();
+    for (CGNode n : callGraph) {
+      if (!rebuilt.contains(n)) {
+        kept.add(n);
+      }
+    }
+
+    // the nodes that stay make their calls to class initializers again; rebuilt nodes do so as their constraints are added
+    clearClassInitializers();
+    for (CGNode n : kept) {
+      for (IClass klass : new ArrayList<IClass>(getClassInitializations(n))) {
+        processClassInitializer(n, klass);
+      }
+    }
+
+    // give back what the points-to sets lost but still get
+    for (CGNode n : kept) {
+      system.restoreUnconditionalWrites(n);
+    }
+    for (PointsToSetVariable v : losing) {
+      system.reevaluateStatementsThatDef(v);
+    }
+
+    solve(monitor);
+
+    return callGraph;
+  }
+
+  /**
+   * Remove the call edges out of a node whose constraints are built again, except the call from the fake root to the fake world
+   * clinit node, which the call graph makes itself.
+   */
+  private void removeCallsFrom(CGNode n) {
+    CGNode fakeWorldClinit = callGraph.getFakeWorldClinitNode();
+    if (n.equals(callGraph.getFakeRootNode()) && fakeWorldClinit != null) {
+      for (CGNode t : Iterator2Collection.toSet(callGraph.getSuccNodes(n))) {
+        if (!t.equals(fakeWorldClinit)) {
+          ((ExplicitCallGraph.ExplicitNode) n).removeTarget(t);
+          callGraph.getEdgeManager().removeEdge(n, t);
+        }
+      }
+    } else {
+      callGraph.getEdgeManager().removeOutgoingEdges(n);
+    }
+  }
+
+  private void initializeSystem(AnalysisOptions options) {
+    system = makeSystem(options);
+    system.setMinEquationsForTopSort(options.getMinEquationsForTopSort());
+    system.setTopologicalGrowthFactor(options.getTopologicalGrowthFactor());
+    system.setMaxEvalBetweenTopo(options.getMaxEvalBetweenTopo());
+    system.setNumberOfSolverThreads(options.getNumberOfSolverThreads());
+    system.setCycleElimination(options.getCycleElimination());
+    system.setDifferencePropagation(options.getDifferencePropagation());
+    system.setIncrementalUpdates(options.getIncrementalUpdates());
+  }
+
+  /**
+   * Build the IRs of the methods reachable from the entrypoints by class hierarchy analysis, in parallel, before the solver asks for
+   * them one at a time.
+   */
+  private void prefetchIRs(AnalysisOptions options, IProgressMonitor monitor) throws CallGraphBuilderCancelException {
+    IRPrefetcher prefetcher = new IRPrefetcher(cha, getAnalysisCache(), options.getSSAOptions(),
+        options.getNumberOfIRPrefetchThreads());
+    prefetcher.setMethodTargetSelector(options.getMethodTargetSelector());
+    try {
+      prefetcher.prefetch(options.getEntrypoints(), monitor);
+    } catch (CancelException e) {
+      throw CallGraphBuilderCancelException.createCallGraphBuilderCancelException(e, callGraph, system.extractPointerAnalysis(this));
+    }
+  }
+
+  private void solve(IProgressMonitor monitor) throws CallGraphBuilderCancelException {
     solver = makeSolver();
     try {
       solver.solve(monitor);
@@ -280,8 +438,6 @@ public abstract class PropagationCallGraphBuilder implements CallGraphBuilder {
           system.extractPointerAnalysis(this));
       throw c;
     }
-
-    return callGraph;
   }
 
   protected PropagationSystem makeSystem(AnalysisOptions options) {
@@ -337,7 +493,12 @@ public abstract class PropagationCallGraphBuilder implements CallGraphBuilder {
       discoveredNodes = HashSetFactory.make();
       while (it.hasNext()) {
         CGNode n = it.next();
-        result |= addConstraintsFromNode(n, monitor);
+        system.setConstraintSource(n);
+        try {
+          result |= addConstraintsFromNode(n, monitor);
+        } finally {
+          system.setConstraintSource(null);
+        }
       }
     }
     return result;
@@ -600,7 +761,7 @@ public abstract class PropagationCallGraphBuilder implements CallGraphBuilder {
    * TODO: these need to be canonicalized.
    * 
    */
-  public class FilterOperator extends UnaryOperator<PointsToSetVariable> implements IPointerOperator {
+  public class FilterOperator extends UnaryOperator<PointsToSetVariable> implements IDifferenceOperator {
 
     protected FilterOperator() {
     }
@@ -633,6 +794,16 @@ public abstract class PropagationCallGraphBuilder implements CallGraphBuilder {
       return changed ? CHANGED : NOT_CHANGED;
     }
 
+    @Override
+    public byte evaluateDifference(PointsToSetVariable lhs, PointsToSetVariable rhs, IntSet delta) {
+      FilteredPointerKey pk = (FilteredPointerKey) lhs.getPointerKey();
+      if (DEBUG_FILTER) {
+        System.err.println("EVAL Filter " + lhs.getPointerKey() + " delta " + delta);
+      }
+      boolean changed = pk.getTypeFilter().addFiltered(system, lhs, delta);
+      return changed ? CHANGED : NOT_CHANGED;
+    }
+
     /*
      * @see com.ibm.wala.ipa.callgraph.propagation.IPointerOperator#isComplex()
      */
@@ -781,6 +952,43 @@ public abstract class PropagationCallGraphBuilder implements CallGraphBuilder {
     return instanceKeyFactory.getInstanceKeyForMetadataObject(obj, objType);
   }
 
+  /**
+   * record that adding the constraints of node requires klass to be initialized
+   */
+  void recordClassInitialization(CGNode node, IClass klass) {
+    if (system.getIncrementalUpdates()) {
+      MapUtil.findOrCreateSet(classInitializations, node).add(klass);
+    }
+  }
+
+  /**
+   * @return the classes that adding the constraints of node required to be initialized
+   */
+  Set<IClass> getClassInitializations(CGNode node) {
+    Set<IClass> result = classInitializations.get(node);
+    return result == null ? Collections.<IClass> emptySet() : result;
+  }
+
+  /**
+   * Remove the calls to class initializers from the fake world clinit node, so that {@link #updateCallGraph(Collection,
+   * IProgressMonitor)} makes only those that are still needed.
+   */
+  protected void clearClassInitializers() {
+    CGNode fakeWorldClinit = callGraph.getFakeWorldClinitNode();
+    if (fakeWorldClinit != null) {
+      ((AbstractRootMethod) fakeWorldClinit.getMethod()).clearStatements();
+      callGraph.getEdgeManager().removeOutgoingEdges(fakeWorldClinit);
+    }
+  }
+
+  /**
+   * Make the call to the class initializer of klass, and those of its superclasses, that adding the constraints of node requires;
+   * {@link #updateCallGraph(Collection, IProgressMonitor)} uses this for the nodes whose constraints are not built again. This
+   * builder makes no such calls.
+   */
+  protected void processClassInitializer(CGNode node, IClass klass) {
+  }
+
   public boolean haveAlreadyVisited(CGNode node) {
     return alreadyVisited.contains(node);
   }
@@ -808,7 +1016,7 @@ public abstract class PropagationCallGraphBuilder implements CallGraphBuilder {
   /**
    * Binary op: <dummy>:= ArrayLoad( &lt;arrayref>) Side effect: Creates new equations.
    */
-  public final class ArrayLoadOperator extends UnarySideEffect implements IPointerOperator {
+  public final class ArrayLoadOperator extends UnarySideEffect implements IDifferenceOperator {
     protected final MutableIntSet priorInstances = rememberGetPutHistory ? IntSetUtil.make() : null;
 
     @Override
@@ -836,6 +1044,18 @@ public abstract class PropagationCallGraphBuilder implements CallGraphBuilder {
       if (rhs.size() == 0) {
         return NOT_CHANGED;
       }
+      return evaluate(rhs, rhs.getValue());
+    }
+
+    @Override
+    public byte evaluateDifference(PointsToSetVariable lhs, PointsToSetVariable rhs, IntSet delta) {
+      return evaluate(rhs, delta);
+    }
+
+    /**
+     * add the constraints for loading from the given instances of rhs
+     */
+    private byte evaluate(PointsToSetVariable rhs, IntSet instances) {
       final PointerKey object = rhs.getPointerKey();
 
       PointsToSetVariable def = getFixedSet();
@@ -865,10 +1085,10 @@ public abstract class PropagationCallGraphBuilder implements CallGraphBuilder {
         }
       };
       if (priorInstances != null) {
-        rhs.getValue().foreachExcluding(priorInstances, action);
-        priorInstances.addAll(rhs.getValue());
+        instances.foreachExcluding(priorInstances, action);
+        priorInstances.addAll(instances);
       } else {
-        rhs.getValue().foreach(action);
+        instances.foreach(action);
       }
       byte sideEffectMask = sideEffect.b ? (byte) SIDE_EFFECT_MASK : 0;
       return (byte) (NOT_CHANGED | sideEffectMask);
@@ -901,7 +1121,7 @@ public abstract class PropagationCallGraphBuilder implements CallGraphBuilder {
   /**
    * Binary op: <dummy>:= ArrayStore( &lt;arrayref>) Side effect: Creates new equations.
    */
-  public final class ArrayStoreOperator extends UnarySideEffect implements IPointerOperator {
+  public final class ArrayStoreOperator extends UnarySideEffect implements IDifferenceOperator {
     @Override
     public String toString() {
       return "ArrayStore";
@@ -924,12 +1144,24 @@ public abstract class PropagationCallGraphBuilder implements CallGraphBuilder {
       if (rhs.size() == 0) {
         return NOT_CHANGED;
       }
+      return evaluate(rhs, rhs.getValue());
+    }
+
+    @Override
+    public byte evaluateDifference(PointsToSetVariable lhs, PointsToSetVariable rhs, IntSet delta) {
+      return evaluate(rhs, delta);
+    }
+
+    /**
+     * add the constraints for storing into the given instances of rhs
+     */
+    private byte evaluate(PointsToSetVariable rhs, IntSet arrays) {
       PointerKey object = rhs.getPointerKey();
 
       PointsToSetVariable val = getFixedSet();
       PointerKey pVal = val.getPointerKey();
 
-      List<InstanceKey> instances = system.getInstances(rhs.getValue());
+      List<InstanceKey> instances = system.getInstances(arrays);
       boolean sideEffect = false;
       for (Iterator<InstanceKey> it = instances.iterator(); it.hasNext();) {
         InstanceKey I = it.next();
@@ -987,7 +1219,7 @@ public abstract class PropagationCallGraphBuilder implements CallGraphBuilder {
   /**
    * Binary op: <dummy>:= GetField( <ref>) Side effect: Creates new equations.
    */
-  public class GetFieldOperator extends UnarySideEffect implements IPointerOperator {
+  public class GetFieldOperator extends UnarySideEffect implements IDifferenceOperator {
     private final IField field;
 
     protected final MutableIntSet priorInstances = rememberGetPutHistory ? IntSetUtil.make() : null;
@@ -1015,11 +1247,23 @@ public abstract class PropagationCallGraphBuilder implements CallGraphBuilder {
       if (ref.size() == 0) {
         return NOT_CHANGED;
       }
+      return evaluate(ref, ref.getValue());
+    }
+
+    @Override
+    public byte evaluateDifference(PointsToSetVariable lhs, PointsToSetVariable rhs, IntSet delta) {
+      return evaluate(rhs, delta);
+    }
+
+    /**
+     * add the constraints for loading the field of the given instances of ref
+     */
+    private byte evaluate(PointsToSetVariable ref, IntSet instances) {
       final PointerKey object = ref.getPointerKey();
       PointsToSetVariable def = getFixedSet();
       final PointerKey dVal = def.getPointerKey();
 
-      IntSet value = filterInstances(ref.getValue());
+      IntSet value = filterInstances(instances);
       if (DEBUG_GET) {
         System.err.println("filtered value: " + value + " " + value.getClass());
         if (priorInstances != null) {
@@ -1097,7 +1341,7 @@ public abstract class PropagationCallGraphBuilder implements CallGraphBuilder {
   /**
    * Operator that represents a putfield
    */
-  public class PutFieldOperator extends UnarySideEffect implements IPointerOperator {
+  public class PutFieldOperator extends UnarySideEffect implements IDifferenceOperator {
     private final IField field;
 
     protected final MutableIntSet priorInstances = rememberGetPutHistory ? IntSetUtil.make() : null;
@@ -1132,12 +1376,23 @@ public abstract class PropagationCallGraphBuilder implements CallGraphBuilder {
       if (rhs.size() == 0) {
         return NOT_CHANGED;
       }
+      return evaluate(rhs, rhs.getValue());
+    }
+
+    @Override
+    public byte evaluateDifference(PointsToSetVariable lhs, PointsToSetVariable rhs, IntSet delta) {
+      return evaluate(rhs, delta);
+    }
+
+    /**
+     * add the constraints for storing into the field of the given instances of rhs
+     */
+    private byte evaluate(PointsToSetVariable rhs, IntSet instances) {
       final PointerKey object = rhs.getPointerKey();
 
       PointsToSetVariable val = getFixedSet();
       final PointerKey pVal = val.getPointerKey();
-      IntSet value = rhs.getValue();
-      value = filterInstances(value);
+      IntSet value = filterInstances(instances);
       final UnaryOperator<PointsToSetVariable> assign = getPutAssignmentOperator();
       if (assign == null) {
         Assertions.UNREACHABLE();
@@ -1218,7 +1473,7 @@ public abstract class PropagationCallGraphBuilder implements CallGraphBuilder {
   /**
    * Update the points-to-set for a field to include a particular instance key.
    */
-  public final class InstancePutFieldOperator extends UnaryOperator<PointsToSetVariable> implements IPointerOperator {
+  public final class InstancePutFieldOperator extends UnaryOperator<PointsToSetVariable> implements IDifferenceOperator {
     final private IField field;
 
     final private InstanceKey instance;
@@ -1244,7 +1499,18 @@ public abstract class PropagationCallGraphBuilder implements CallGraphBuilder {
       if (ref.size() == 0) {
         return NOT_CHANGED;
       }
-      IntSet value = ref.getValue();
+      return evaluate(ref.getValue());
+    }
+
+    @Override
+    public byte evaluateDifference(PointsToSetVariable dummyLHS, PointsToSetVariable var, IntSet delta) {
+      return evaluate(delta);
+    }
+
+    /**
+     * add the instance to the field of each of the given instances
+     */
+    private byte evaluate(IntSet value) {
       final MutableBoolean sideEffect = new MutableBoolean();
       IntSetAction action = new IntSetAction() {
         @Override
@@ -1295,7 +1561,7 @@ public abstract class PropagationCallGraphBuilder implements CallGraphBuilder {
   /**
    * Update the points-to-set for an array contents to include a particular instance key.
    */
-  public final class InstanceArrayStoreOperator extends UnaryOperator<PointsToSetVariable> implements IPointerOperator {
+  public final class InstanceArrayStoreOperator extends UnaryOperator<PointsToSetVariable> implements IDifferenceOperator {
     final private InstanceKey instance;
 
     protected final MutableIntSet priorInstances = rememberGetPutHistory ? IntSetUtil.make() : null;
@@ -1318,7 +1584,18 @@ public abstract class PropagationCallGraphBuilder implements CallGraphBuilder {
       if (arrayref.size() == 0) {
         return NOT_CHANGED;
       }
-      IntSet value = arrayref.getValue();
+      return evaluate(arrayref.getValue());
+    }
+
+    @Override
+    public byte evaluateDifference(PointsToSetVariable dummyLHS, PointsToSetVariable var, IntSet delta) {
+      return evaluate(delta);
+    }
+
+    /**
+     * add the instance to the contents of each of the given arrays
+     */
+    private byte evaluate(IntSet value) {
       final MutableBoolean sideEffect = new MutableBoolean();
       IntSetAction action = new IntSetAction() {
         @Override
@@ -1466,6 +1743,16 @@ public abstract class PropagationCallGraphBuilder implements CallGraphBuilder {
       }
       return changed ? CHANGED : NOT_CHANGED;
     }
+
+    @Override
+    public byte evaluateDifference(PointsToSetVariable lhs, PointsToSetVariable rhs, IntSet delta) {
+      FilteredPointerKey pk = (FilteredPointerKey) lhs.getPointerKey();
+      if (DEBUG_FILTER) {
+        System.err.println("EVAL InverseFilter " + lhs.getPointerKey() + " delta " + delta);
+      }
+      boolean changed = pk.getTypeFilter().addInverseFiltered(system, lhs, delta);
+      return changed ? CHANGED : NOT_CHANGED;
+    }
   }
 
   protected IPointsToSolver getSolver() {
@@ -1478,7 +1765,12 @@ public abstract class PropagationCallGraphBuilder implements CallGraphBuilder {
    * @throws CancelException 
    */
   public void addConstraintsFromChangedNode(CGNode node, IProgressMonitor monitor) throws CancelException {
-    unconditionallyAddConstraintsFromNode(node, monitor);
+    system.setConstraintSource(node);
+    try {
+      unconditionallyAddConstraintsFromNode(node, monitor);
+    } finally {
+      system.setConstraintSource(null);
+    }
   }
 
   protected abstract boolean unconditionallyAddConstraintsFromNode(CGNode node, IProgressMonitor monitor) throws CancelException;
@@ -10,15 +10,19 @@
  *******************************************************************************/
 package com.ibm.wala.ipa.callgraph.propagation;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import com.ibm.wala.classLoader.ArrayClass;
 import com.ibm.wala.classLoader.IClass;
@@ -26,15 +30,23 @@ import com.ibm.wala.fixedpoint.impl.DefaultFixedPointSolver;
 import com.ibm.wala.fixedpoint.impl.Worklist;
 import com.ibm.wala.fixpoint.AbstractOperator;
 import com.ibm.wala.fixpoint.AbstractStatement;
+import com.ibm.wala.fixpoint.IFixedPointStatement;
 import com.ibm.wala.fixpoint.IFixedPointSystem;
 import com.ibm.wala.fixpoint.IVariable;
 import com.ibm.wala.fixpoint.UnaryOperator;
 import com.ibm.wala.fixpoint.UnaryStatement;
+import com.ibm.wala.ipa.callgraph.CGNode;
 import com.ibm.wala.ipa.callgraph.CallGraph;
 import com.ibm.wala.ipa.callgraph.propagation.PropagationCallGraphBuilder.FilterOperator;
 import com.ibm.wala.ipa.cha.ClassHierarchyException;
 import com.ibm.wala.ipa.cha.ClassHierarchyWarning;
 import com.ibm.wala.types.TypeReference;
+import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.MonitorUtil;
+import com.ibm.wala.util.MonitorUtil.IProgressMonitor;
+import com.ibm.wala.util.ParallelUtil;
+import com.ibm.wala.util.ParallelUtil.IntAction;
+import com.ibm.wala.util.Predicate;
 import com.ibm.wala.util.collections.HashMapFactory;
 import com.ibm.wala.util.collections.HashSetFactory;
 import com.ibm.wala.util.collections.Iterator2Collection;
@@ -42,7 +54,11 @@ import com.ibm.wala.util.collections.MapUtil;
 import com.ibm.wala.util.debug.Assertions;
 import com.ibm.wala.util.debug.VerboseAction;
 import com.ibm.wala.util.graph.Graph;
+import com.ibm.wala.util.graph.GraphSlicer;
 import com.ibm.wala.util.graph.NumberedGraph;
+import com.ibm.wala.util.graph.impl.GraphInverter;
+import com.ibm.wala.util.graph.traverse.DFS;
+import com.ibm.wala.util.graph.traverse.SCCIterator;
 import com.ibm.wala.util.heapTrace.HeapTracer;
 import com.ibm.wala.util.intset.IntIterator;
 import com.ibm.wala.util.intset.IntSet;
@@ -55,6 +71,18 @@ import com.ibm.wala.util.warnings.Warnings;
 
 /**
  * System of constraints that define propagation for call graph construction
+ * 
+ * With {@link #setCycleElimination(boolean) cycle elimination} on, variables known to have equal points-to sets are unified in
+ * three ways. Cycles of assignments are found by searching the whole assignment graph for strongly connected components, from
+ * time to time as the system grows. Lazy cycle detection also searches from an assignment whenever evaluating it finds its two
+ * sides with equal sets; such assignments are only noted while statements are evaluated, possibly on several solver threads, and
+ * searched from before the work list is next ordered, as unification replaces statements. Finally, before the constraints of a
+ * node are solved, the builder may unify locals with provably equal sets by value numbering its phis: see
+ * {@link #collapse(Collection)}.
+ * 
+ * With {@link #setIncrementalUpdates(boolean) incremental updates} on as well, only plain locals of a single node are unified.
+ * The assignments between those all come from the node's own instructions, so they stay as long as the node does, and the
+ * statements of the node can still be told apart from those of its callers when the call graph is updated.
  */
 public class PropagationSystem extends DefaultFixedPointSolver<PointsToSetVariable> {
 
@@ -114,10 +142,83 @@ public class PropagationSystem extends DefaultFixedPointSolver<PointsToSetVariab
    */
   protected final CallGraph cg;
 
+  /**
+   * should the system record the writes each node makes directly? Only incremental updates need them.
+   */
+  private boolean incrementalUpdates = false;
+
+  /**
+   * the node whose constraints are being added, if any
+   */
+  private CGNode constraintSource;
+
+  /**
+   * for each node, the pointer keys that received instances directly on its behalf, with the indices of those instances.
+   * {@link AffectedRegion} needs these, since such writes leave no statement behind.
+   */
+  private final Map<CGNode, Map<PointerKey, MutableIntSet>> unconditionalWrites = HashMapFactory.make();
+
   private int verboseInterval = DEFAULT_VERBOSE_INTERVAL;
 
   private int periodicMaintainInterval = DEFAULT_PERIODIC_MAINTENANCE_INTERVAL;
 
+  /**
+   * number of threads used to evaluate simple constraints; 1 means the sequential solver from {@link DefaultFixedPointSolver}
+   */
+  private int numberOfSolverThreads = 1;
+
+  /**
+   * batches of simple statements smaller than this are not worth handing to the thread pool
+   */
+  private final static int MIN_PARALLEL_BATCH = 512;
+
+  /**
+   * number of statements a solver thread claims from a batch at a time
+   */
+  private final static int PARALLEL_CHUNK = 64;
+
+  /**
+   * should cycles of assignments be collapsed while solving? See {@link #collapseAssignmentCycles()}
+   */
+  private boolean cycleElimination = false;
+
+  /**
+   * cycles are searched for again once the assignments added since the last search exceed this fraction of all assignments
+   */
+  private final static double CYCLE_ELIMINATION_GROWTH_FACTOR = 0.1;
+
+  /**
+   * number of assignment statements added by {@link #newConstraint(PointerKey, UnaryOperator, PointerKey)}
+   */
+  private int nAssignments = 0;
+
+  /**
+   * number of assignment statements added since cycles were last searched for
+   */
+  private int nAssignmentsSinceCycleSearch = 0;
+
+  /**
+   * number of variables unified into others by cycle elimination
+   */
+  private int nCollapsedVariables = 0;
+
+  /**
+   * assignments whose two sides were found equal since the work list was last ordered, to search for cycles from; see
+   * {@link #noteEqualSides(AbstractStatement)}
+   */
+  private final List<AssignEquation> lazyCycleCandidates = new ArrayList<AssignEquation>();
+
+  /**
+   * assignments already noted by lazy cycle detection; each is searched from at most once
+   */
+  private final Set<AssignEquation> lazyCycleChecked = HashSetFactory.make();
+
+  /**
+   * should simple statements propagate only the instances added to their right-hand side since it was last propagated? See
+   * {@link #setDifferencePropagation(boolean)}
+   */
+  private boolean differencePropagation = false;
+
   public PropagationSystem(CallGraph cg, PointerKeyFactory pointerKeyFactory, InstanceKeyFactory instanceKeyFactory) {
     if (cg == null) {
       throw new IllegalArgumentException("null cg");
@@ -139,6 +240,145 @@ public class PropagationSystem extends DefaultFixedPointSolver<PointsToSetVariab
     return new PointerAnalysisImpl(builder, cg, pointsToMap, instanceKeys, pointerKeyFactory, instanceKeyFactory);
   }
 
+  /**
+   * @param incrementalUpdates should the system record what {@link AffectedRegion} needs to update the call graph incrementally?
+   */
+  void setIncrementalUpdates(boolean incrementalUpdates) {
+    this.incrementalUpdates = incrementalUpdates;
+  }
+
+  boolean getIncrementalUpdates() {
+    return incrementalUpdates;
+  }
+
+  /**
+   * record that the constraints added from now on come from the given node, or from no node in particular if node is null
+   * 
+   * @return the node the constraints came from before
+   */
+  CGNode setConstraintSource(CGNode node) {
+    CGNode result = constraintSource;
+    constraintSource = node;
+    return result;
+  }
+
+  /**
+   * @return the pointer keys that received instances directly on behalf of node, mapped to the indices of those instances
+   */
+  Map<PointerKey, MutableIntSet> getUnconditionalWrites(CGNode node) {
+    Map<PointerKey, MutableIntSet> result = unconditionalWrites.get(node);
+    return result == null ? Collections.<PointerKey, MutableIntSet> emptyMap() : result;
+  }
+
+  /**
+   * Remove the statements that belong to a node, before its constraints are added again or it disappears, and forget the instances
+   * written directly on its behalf. These are the statements over the variables of its locals, return value and exceptional return
+   * value, except for those passing values from another node into its parameters, or out of its return values to another node,
+   * which belong to the callers.
+   * 
+   * @param locals the variables of the locals, return value and exceptional return value of node
+   * @param calls should the statements of the calls to node be removed as well?
+   */
+  @SuppressWarnings("unchecked")
+  void removeStatements(CGNode node, Collection<PointsToSetVariable> locals, boolean calls) {
+    Set<AbstractStatement<?, ?>> statements = HashSetFactory.make();
+    for (PointsToSetVariable v : locals) {
+      for (Iterator<AbstractStatement<?, ?>> it = statementsThatUse(v); it.hasNext();) {
+        AbstractStatement<?, ?> s = it.next();
+        if (calls || !isCallOf(s, node)) {
+          statements.add(s);
+        }
+      }
+      for (Iterator<AbstractStatement<?, ?>> it = statementsThatDef(v); it.hasNext();) {
+        AbstractStatement<?, ?> s = it.next();
+        if (calls || !isCallOf(s, node)) {
+          statements.add(s);
+        }
+      }
+    }
+    for (AbstractStatement<?, ?> s : statements) {
+      if (s.getOperator() instanceof UnarySideEffect) {
+        UnarySideEffect op = (UnarySideEffect) s.getOperator();
+        Set<UnarySideEffect> registered = fixedSetMap.get(op.getFixedSet());
+        if (registered != null) {
+          registered.remove(op);
+        }
+      }
+      flowGraph.removeStatement((IFixedPointStatement<PointsToSetVariable>) s);
+    }
+    unconditionalWrites.remove(node);
+  }
+
+  /**
+   * Forget the pointer keys of the locals, return values and exceptional return values of nodes removed from the call graph, once
+   * their statements are gone.
+   */
+  void removeLocals(Set<CGNode> nodes) {
+    // locals unified by cycle elimination share a variable, which must be removed only once
+    Set<PointsToSetVariable> removed = HashSetFactory.make();
+    for (PointerKey key : Iterator2Collection.toSet(pointsToMap.iterateKeys())) {
+      if (key instanceof AbstractLocalPointerKey && nodes.contains(((AbstractLocalPointerKey) key).getNode())) {
+        if (!pointsToMap.isImplicit(key)) {
+          PointsToSetVariable v = pointsToMap.getPointsToSet(key);
+          if (v != null && v.getGraphNodeId() > -1 && !removed.contains(v) && flowGraph.getNumberOfStatementsThatDef(v) == 0
+              && flowGraph.getNumberOfStatementsThatUse(v) == 0) {
+            flowGraph.removeVariable(v);
+            removed.add(v);
+          }
+        }
+        pointsToMap.remove(key);
+      }
+    }
+  }
+
+  /**
+   * @return true iff s passes a value from another node into a parameter of node, or out of a return value of node to another node
+   */
+  private static boolean isCallOf(AbstractStatement<?, ?> s, CGNode node) {
+    if (!(s instanceof UnaryStatement<?>) || s.getLHS() == null) {
+      return false;
+    }
+    PointerKey lhs = ((PointsToSetVariable) s.getLHS()).getPointerKey();
+    PointerKey rhs = ((PointsToSetVariable) ((UnaryStatement<?>) s).getRightHandSide()).getPointerKey();
+    if (lhs instanceof LocalPointerKey && ((LocalPointerKey) lhs).isParameter() && isLocalOf(lhs, node)) {
+      return !isLocalOf(rhs, node);
+    }
+    if (rhs instanceof ReturnValueKey && isLocalOf(rhs, node)) {
+      return !isLocalOf(lhs, node);
+    }
+    return false;
+  }
+
+  private static boolean isLocalOf(PointerKey key, CGNode node) {
+    return key instanceof AbstractLocalPointerKey && ((AbstractLocalPointerKey) key).getNode().equals(node);
+  }
+
+  /**
+   * Write again the instances written directly on behalf of node, after they may have been removed from the points-to sets.
+   */
+  void restoreUnconditionalWrites(CGNode node) {
+    Map<PointerKey, MutableIntSet> writes = unconditionalWrites.get(node);
+    if (writes == null) {
+      return;
+    }
+    for (Map.Entry<PointerKey, MutableIntSet> e : writes.entrySet()) {
+      PointsToSetVariable v = pointsToMap.getPointsToSet(e.getKey());
+      if (v.addAll(e.getValue()) && v.getGraphNodeId() > -1) {
+        changedVariable(v);
+      }
+    }
+  }
+
+  /**
+   * Evaluate the statements that define v on the whole of their right-hand sides, to give back to v the instances it lost that
+   * they still produce.
+   */
+  void reevaluateStatementsThatDef(PointsToSetVariable v) {
+    for (AbstractStatement<?, ?> s : Iterator2Collection.toSet(statementsThatDef(v))) {
+      evaluateAndUpdate(s);
+    }
+  }
+
   protected void registerFixedSet(PointsToSetVariable p, UnarySideEffect s) {
     Set<UnarySideEffect> set = MapUtil.findOrCreateSet(fixedSetMap, p);
     set.add(s);
@@ -269,6 +509,7 @@ public class PropagationSystem extends DefaultFixedPointSolver<PointsToSetVariab
     PointsToSetVariable result = pointsToMap.getPointsToSet(key);
     if (result == null) {
       result = new PointsToSetVariable(key);
+      result.setTrackDelta(differencePropagation);
       pointsToMap.put(key, result);
     } else {
       // check that the filter for this variable remains unique
@@ -333,6 +574,10 @@ public class PropagationSystem extends DefaultFixedPointSolver<PointsToSetVariab
     }
     PointsToSetVariable L = findOrCreatePointsToSet(lhs);
     PointsToSetVariable R = findOrCreatePointsToSet(rhs);
+    if (L == R && op instanceof AssignOperator) {
+      // both sides were unified
+      return false;
+    }
     if (op instanceof FilterOperator) {
       // we do not want to revert the lhs to pre-transitive form;
       // we instead want to check in the outer loop of the pre-transitive
@@ -343,7 +588,12 @@ public class PropagationSystem extends DefaultFixedPointSolver<PointsToSetVariab
             + lhs.getClass());
       }
     }
-    return newStatement(L, op, R, true, true);
+    boolean result = newStatement(L, op, R, true, true);
+    if (result && op instanceof AssignOperator) {
+      nAssignments++;
+      nAssignmentsSinceCycleSearch++;
+    }
+    return result;
   }
 
   public boolean newConstraint(PointerKey lhs, AbstractOperator<PointsToSetVariable> op, PointerKey rhs) {
@@ -359,8 +609,6 @@ public class PropagationSystem extends DefaultFixedPointSolver<PointsToSetVariab
     if (DEBUG) {
       System.err.println("Add constraint A: " + lhs + " " + op + " " + rhs);
     }
-    assert !pointsToMap.isUnified(lhs);
-    assert !pointsToMap.isUnified(rhs);
     PointsToSetVariable L = findOrCreatePointsToSet(lhs);
     PointsToSetVariable R = findOrCreatePointsToSet(rhs);
     return newStatement(L, op, new PointsToSetVariable[] { R }, true, true);
@@ -382,9 +630,6 @@ public class PropagationSystem extends DefaultFixedPointSolver<PointsToSetVariab
     if (DEBUG) {
       System.err.println("Add constraint A: " + lhs + " " + op + " " + rhs1 + ", " + rhs2);
     }
-    assert !pointsToMap.isUnified(lhs);
-    assert !pointsToMap.isUnified(rhs1);
-    assert !pointsToMap.isUnified(rhs2);
     PointsToSetVariable L = findOrCreatePointsToSet(lhs);
     PointsToSetVariable R1 = findOrCreatePointsToSet(rhs1);
     PointsToSetVariable R2 = findOrCreatePointsToSet(rhs2);
@@ -419,6 +664,10 @@ public class PropagationSystem extends DefaultFixedPointSolver<PointsToSetVariab
     // This works since the solver is monotonic with TOP = {}
     PointsToSetVariable L = findOrCreatePointsToSet(lhs);
     int index = findOrCreateIndexForInstanceKey(value);
+    if (incrementalUpdates && constraintSource != null) {
+      Map<PointerKey, MutableIntSet> writes = MapUtil.findOrCreateMap(unconditionalWrites, constraintSource);
+      MapUtil.findOrCreateMutableIntSet(writes, lhs).add(index);
+    }
     if (L.contains(index)) {
       // a no-op
       return false;
@@ -569,7 +818,6 @@ public class PropagationSystem extends DefaultFixedPointSolver<PointsToSetVariab
     if (DEBUG) {
       System.err.println("add constraint D: " + op + " " + arg0);
     }
-    assert !pointsToMap.isUnified(arg0);
     PointsToSetVariable v1 = findOrCreatePointsToSet(arg0);
     newStatement(null, op, v1, true, true);
   }
@@ -583,7 +831,6 @@ public class PropagationSystem extends DefaultFixedPointSolver<PointsToSetVariab
     }
     PointsToSetVariable[] vs = new PointsToSetVariable[ arg0.length ];
     for(int i = 0; i < arg0.length; i++) {
-      assert !pointsToMap.isUnified(arg0[i]);
       vs[i] = findOrCreatePointsToSet(arg0[i]);
     }
     newStatement(null, op, vs, true, true);
@@ -593,8 +840,6 @@ public class PropagationSystem extends DefaultFixedPointSolver<PointsToSetVariab
     if (DEBUG) {
       System.err.println("add constraint D: " + op + " " + arg0);
     }
-    assert !pointsToMap.isUnified(arg0);
-    assert !pointsToMap.isUnified(arg1);
     PointsToSetVariable v1 = findOrCreatePointsToSet(arg0);
     PointsToSetVariable v2 = findOrCreatePointsToSet(arg1);
     newStatement(null, op, v1, v2, true, true);
@@ -727,6 +972,15 @@ public class PropagationSystem extends DefaultFixedPointSolver<PointsToSetVariab
    */
   public void revertToPreTransitive() {
     pointsToMap.revertToPreTransitive();
+    if (differencePropagation) {
+      // the emptied variables must get everything again from the roots
+      for (Iterator<PointerKey> it = pointsToMap.iterateKeys(); it.hasNext();) {
+        PointerKey key = it.next();
+        if (!pointsToMap.isImplicit(key) && !pointsToMap.isUnified(key)) {
+          pointsToMap.getPointsToSet(key).resetDelta();
+        }
+      }
+    }
   }
 
   public Iterator getTransitiveRoots() {
@@ -767,6 +1021,571 @@ public class PropagationSystem extends DefaultFixedPointSolver<PointsToSetVariab
     this.periodicMaintainInterval = periodicMaintainInteval;
   }
 
+  public int getNumberOfSolverThreads() {
+    return numberOfSolverThreads;
+  }
+
+  /**
+   * @param numberOfSolverThreads number of threads used to evaluate simple constraints
+   */
+  public void setNumberOfSolverThreads(int numberOfSolverThreads) {
+    if (numberOfSolverThreads < 1) {
+      throw new IllegalArgumentException("invalid number of solver threads: " + numberOfSolverThreads);
+    }
+    this.numberOfSolverThreads = numberOfSolverThreads;
+  }
+
+  /**
+   * @return true iff cycles of assignments are collapsed while solving
+   */
+  public boolean getCycleElimination() {
+    return cycleElimination;
+  }
+
+  /**
+   * @param cycleElimination should variables known to have equal points-to sets be unified while solving? See the class comment.
+   */
+  public void setCycleElimination(boolean cycleElimination) {
+    this.cycleElimination = cycleElimination;
+  }
+
+  /**
+   * @return the number of variables unified into others by cycle elimination
+   */
+  public int getNumberOfCollapsedVariables() {
+    return nCollapsedVariables;
+  }
+
+  /**
+   * @return true iff statements with an {@link IDifferenceOperator} propagate only the instances added to their right-hand side
+   *         since it was last propagated
+   */
+  public boolean getDifferencePropagation() {
+    return differencePropagation;
+  }
+
+  /**
+   * Should assignments, filters and the field and array access side effects (see {@link IDifferenceOperator}) propagate only the
+   * instances added to their right-hand side since it was last propagated, rather than the whole set?
+   * 
+   * Each variable then records the instances added to it since they were last propagated. When such a statement is taken from the
+   * work list, the delta of its right-hand side is taken once and pushed through all such statements that read the variable, which
+   * all have seen the rest of the set already: each statement is evaluated on its whole right-hand side when it is created. Other
+   * statements, such as dispatches, still read whole sets.
+   */
+  public void setDifferencePropagation(boolean differencePropagation) {
+    if (this.differencePropagation == differencePropagation) {
+      return;
+    }
+    this.differencePropagation = differencePropagation;
+    for (Iterator<PointerKey> it = pointsToMap.iterateKeys(); it.hasNext();) {
+      PointerKey key = it.next();
+      if (!pointsToMap.isImplicit(key) && !pointsToMap.isUnified(key)) {
+        pointsToMap.getPointsToSet(key).setTrackDelta(differencePropagation);
+      }
+    }
+  }
+
+  @Override
+  public boolean solve(IProgressMonitor monitor) throws CancelException {
+    if (numberOfSolverThreads > 1) {
+      return solveInParallel(monitor);
+    } else if (differencePropagation || cycleElimination) {
+      return solveSequentially(monitor);
+    } else {
+      return super.solve(monitor);
+    }
+  }
+
+  /**
+   * Solve the system on the calling thread, propagating differences if {@link #setDifferencePropagation(boolean) enabled}. Unlike
+   * the solver inherited from {@link DefaultFixedPointSolver}, this notes the assignments lazy cycle detection should search from.
+   * 
+   * @return true iff the evaluation of some equation caused a change in the value of some variable.
+   */
+  private boolean solveSequentially(IProgressMonitor monitor) throws CancelException {
+    if (isFirstSolve()) {
+      initForFirstSolve();
+    }
+    boolean globalChange = false;
+    List<AbstractStatement<?, ?>> statements = new ArrayList<AbstractStatement<?, ?>>();
+    while (!workList.isEmpty()) {
+      MonitorUtil.throwExceptionIfCanceled(monitor);
+      orderStatements();
+
+      AbstractStatement<?, ?> s = workList.takeStatement();
+      if (isDifferenceStatement(s)) {
+        PointsToSetVariable rhs = (PointsToSetVariable) ((UnaryStatement<?>) s).getRightHandSide();
+        IntSet delta = rhs.takeDelta();
+        if (delta != null) {
+          statements.clear();
+          collectDifferenceStatements(rhs, statements);
+          for (AbstractStatement<?, ?> t : statements) {
+            globalChange |= updateAfterEvaluation(t, evaluate(t, delta));
+          }
+        }
+      } else {
+        globalChange |= evaluateAndUpdate(s);
+      }
+    }
+    return globalChange;
+  }
+
+  /**
+   * A statement propagates differences if its operator is an {@link IDifferenceOperator} and difference propagation is on.
+   */
+  private boolean isDifferenceStatement(AbstractStatement<?, ?> s) {
+    return differencePropagation && s instanceof UnaryStatement<?> && ((UnaryStatement<?>) s).getRightHandSide() != null
+        && s.getOperator() instanceof IDifferenceOperator;
+  }
+
+  /**
+   * add to result the statements propagating differences from v
+   */
+  private void collectDifferenceStatements(PointsToSetVariable v, Collection<AbstractStatement<?, ?>> result) {
+    for (Iterator<AbstractStatement<?, ?>> it = statementsThatUse(v); it.hasNext();) {
+      AbstractStatement<?, ?> s = it.next();
+      if (isDifferenceStatement(s)) {
+        result.add(s);
+      }
+    }
+  }
+
+  /**
+   * @return the statements that use v; the flow graph holds them as raw types
+   */
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  Iterator<AbstractStatement<?, ?>> statementsThatUse(PointsToSetVariable v) {
+    return (Iterator) getStatementsThatUse(v);
+  }
+
+  /**
+   * @return the statements that define v; the flow graph holds them as raw types
+   */
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  private Iterator<AbstractStatement<?, ?>> statementsThatDef(PointsToSetVariable v) {
+    return (Iterator) getStatementsThatDef(v);
+  }
+
+  /**
+   * Evaluate a statement, on just the given instances of its right-hand side unless delta is null
+   */
+  private static byte evaluate(AbstractStatement<?, ?> s, IntSet delta) {
+    if (delta == null) {
+      return s.evaluate();
+    }
+    return ((IDifferenceOperator) s.getOperator()).evaluateDifference((PointsToSetVariable) s.getLHS(),
+        (PointsToSetVariable) ((UnaryStatement<?>) s).getRightHandSide(), delta);
+  }
+
+  /**
+   * A variable's delta is kept only until it has been pushed through the statements propagating its differences; if there are
+   * none, statements created later read the whole variable anyway.
+   */
+  @Override
+  public void changedVariable(PointsToSetVariable v) {
+    boolean consumed = false;
+    for (Iterator<AbstractStatement<?, ?>> it = statementsThatUse(v); it.hasNext();) {
+      AbstractStatement<?, ?> s = it.next();
+      consumed |= isDifferenceStatement(s);
+      addToWorkList(s);
+    }
+    if (differencePropagation && !consumed) {
+      v.takeDelta();
+    }
+  }
+
+  /**
+   * Solve the system, evaluating batches of simple statements concurrently.
+   * 
+   * Each round drains the work list. Simple statements (see {@link #isSimpleStatement(AbstractStatement)}) only read their right-hand
+   * side and add to their left-hand side, so they are handed to a pool of threads which lock the two variables involved in a fixed
+   * global order. All other statements may create new constraints or instance keys, so they are evaluated sequentially on the
+   * calling thread afterwards, as are all work list updates. Since all operators are monotone, the result is the same least fixed
+   * point computed by the sequential solver.
+   * 
+   * @return true iff the evaluation of some equation caused a change in the value of some variable.
+   */
+  private boolean solveInParallel(IProgressMonitor monitor) throws CancelException {
+    if (isFirstSolve()) {
+      initForFirstSolve();
+    }
+    boolean globalChange = false;
+    ExecutorService pool = Executors.newFixedThreadPool(numberOfSolverThreads);
+    try {
+      List<AbstractStatement<?, ?>> simple = new ArrayList<AbstractStatement<?, ?>>();
+      List<IntSet> simpleDeltas = new ArrayList<IntSet>();
+      List<AbstractStatement<?, ?>> complex = new ArrayList<AbstractStatement<?, ?>>();
+      List<IntSet> complexDeltas = new ArrayList<IntSet>();
+      Set<PointsToSetVariable> sources = new LinkedHashSet<PointsToSetVariable>();
+      List<AbstractStatement<?, ?>> statements = new ArrayList<AbstractStatement<?, ?>>();
+      while (!workList.isEmpty()) {
+        MonitorUtil.throwExceptionIfCanceled(monitor);
+        orderStatements();
+
+        simple.clear();
+        simpleDeltas.clear();
+        complex.clear();
+        complexDeltas.clear();
+        sources.clear();
+        while (!workList.isEmpty()) {
+          AbstractStatement<?, ?> s = workList.takeStatement();
+          if (isDifferenceStatement(s)) {
+            sources.add((PointsToSetVariable) ((UnaryStatement<?>) s).getRightHandSide());
+          } else if (isSimpleStatement(s)) {
+            simple.add(s);
+            simpleDeltas.add(null);
+          } else {
+            complex.add(s);
+            complexDeltas.add(null);
+          }
+        }
+        // take each delta once, for all the statements reading it
+        for (PointsToSetVariable v : sources) {
+          IntSet delta = v.takeDelta();
+          if (delta != null) {
+            statements.clear();
+            collectDifferenceStatements(v, statements);
+            for (AbstractStatement<?, ?> s : statements) {
+              if (isSimpleStatement(s)) {
+                simple.add(s);
+                simpleDeltas.add(delta);
+              } else {
+                complex.add(s);
+                complexDeltas.add(delta);
+              }
+            }
+          }
+        }
+
+        if (simple.size() < MIN_PARALLEL_BATCH) {
+          for (int i = 0; i < simple.size(); i++) {
+            globalChange |= updateAfterEvaluation(simple.get(i), evaluate(simple.get(i), simpleDeltas.get(i)));
+          }
+        } else {
+          globalChange |= evaluateInParallel(pool, simple, simpleDeltas);
+        }
+        for (int i = 0; i < complex.size(); i++) {
+          globalChange |= updateAfterEvaluation(complex.get(i), evaluate(complex.get(i), complexDeltas.get(i)));
+        }
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+    return globalChange;
+  }
+
+  /**
+   * Evaluate a batch of simple statements using the given pool, then update the work list sequentially. Each statement is
+   * evaluated on the corresponding delta, or on its whole right-hand side if that is null.
+   * 
+   * @return true iff some statement changed its left-hand side
+   */
+  private boolean evaluateInParallel(ExecutorService pool, List<AbstractStatement<?, ?>> batch, List<IntSet> batchDeltas)
+      throws CancelException {
+    final UnaryStatement<?>[] statements = batch.toArray(new UnaryStatement<?>[batch.size()]);
+    final IntSet[] deltas = batchDeltas.toArray(new IntSet[batchDeltas.size()]);
+    final byte[] codes = new byte[statements.length];
+    ParallelUtil.forEachIndex(pool, numberOfSolverThreads, statements.length, PARALLEL_CHUNK, new IntAction<RuntimeException>() {
+      @Override
+      public void apply(int i) {
+        codes[i] = evaluateLocked(statements[i], deltas[i]);
+      }
+    }, null);
+
+    boolean changed = false;
+    for (int i = 0; i < statements.length; i++) {
+      changed |= updateAfterEvaluation(statements[i], codes[i]);
+    }
+    return changed;
+  }
+
+  /**
+   * Evaluate a unary statement while holding the monitors of both its variables. Monitors are acquired in order of graph node id,
+   * so concurrent evaluations cannot deadlock.
+   */
+  private static byte evaluateLocked(UnaryStatement<?> s, IntSet delta) {
+    PointsToSetVariable lhs = (PointsToSetVariable) s.getLHS();
+    PointsToSetVariable rhs = (PointsToSetVariable) s.getRightHandSide();
+    if (lhs == rhs) {
+      synchronized (lhs) {
+        return evaluate(s, delta);
+      }
+    }
+    PointsToSetVariable first = lhs.getGraphNodeId() <= rhs.getGraphNodeId() ? lhs : rhs;
+    PointsToSetVariable second = first == lhs ? rhs : lhs;
+    synchronized (first) {
+      synchronized (second) {
+        return evaluate(s, delta);
+      }
+    }
+  }
+
+  /**
+   * Evaluate a statement on the calling thread and update the work list.
+   * 
+   * @return true iff the statement changed its left-hand side
+   */
+  private boolean evaluateAndUpdate(AbstractStatement<?, ?> s) {
+    return updateAfterEvaluation(s, s.evaluate());
+  }
+
+  @SuppressWarnings("unchecked")
+  private boolean updateAfterEvaluation(AbstractStatement<?, ?> s, byte code) {
+    if (verbose) {
+      incNumberOfEvaluations();
+    }
+    boolean changed = isChanged(code);
+    if (changed && s.getLHS() != null) {
+      changedVariable((PointsToSetVariable) s.getLHS());
+    } else if (!changed && cycleElimination && s instanceof AssignEquation) {
+      noteEqualSides((AssignEquation) s);
+    }
+    if (isFixed(code)) {
+      // every statement in this system is over points-to set variables
+      removeStatement((AbstractStatement<PointsToSetVariable, ?>) s);
+    }
+    return changed;
+  }
+
+  /**
+   * A statement is simple if evaluating it only reads its right-hand side and the per-class instance key sets, and only writes its
+   * left-hand side. Such statements may be evaluated concurrently. Filters that may create instance key numbers or walk class
+   * method tables are not simple.
+   */
+  private static boolean isSimpleStatement(AbstractStatement<?, ?> s) {
+    if (!(s instanceof UnaryStatement<?>) || s.getLHS() == null || ((UnaryStatement<?>) s).getRightHandSide() == null) {
+      return false;
+    }
+    Object op = s.getOperator();
+    if (op instanceof AssignOperator) {
+      return true;
+    }
+    if (op instanceof FilterOperator) {
+      PointerKey pk = ((PointsToSetVariable) s.getLHS()).getPointerKey();
+      if (pk instanceof FilteredPointerKey) {
+        FilteredPointerKey.TypeFilter filter = ((FilteredPointerKey) pk).getTypeFilter();
+        return filter instanceof FilteredPointerKey.SingleClassFilter || filter instanceof FilteredPointerKey.MultipleClassesFilter;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Before ordering the statements, collapse the cycles of assignments if enough assignments were added since the last search.
+   * Collapsing first and then ordering the remaining acyclic graph topologically is the scheme of wave propagation.
+   */
+  @Override
+  public void orderStatements() {
+    if (cycleElimination) {
+      if (nAssignmentsSinceCycleSearch > 0 && nAssignmentsSinceCycleSearch >= CYCLE_ELIMINATION_GROWTH_FACTOR * nAssignments) {
+        collapseAssignmentCycles();
+      } else if (!lazyCycleCandidates.isEmpty()) {
+        collapseLazyCycles();
+      }
+    }
+    super.orderStatements();
+  }
+
+  /**
+   * Lazy cycle detection: an assignment that leaves its left-hand side unchanged, with both sides holding the same set, may well be
+   * on a cycle, so note it to search from. Each assignment is noted at most once.
+   */
+  private void noteEqualSides(AssignEquation s) {
+    PointsToSetVariable lhs = s.getLHS();
+    PointsToSetVariable rhs = s.getRightHandSide();
+    if (lhs == rhs || lhs.getValue() == null || rhs.getValue() == null || lazyCycleChecked.contains(s)) {
+      return;
+    }
+    if (mayCollapse(lhs) && mayCollapse(rhs) && lhs.getValue().sameValue(rhs.getValue())) {
+      lazyCycleChecked.add(s);
+      lazyCycleCandidates.add(s);
+    }
+  }
+
+  /**
+   * Collapse the cycles through the assignments noted by lazy cycle detection: the cycle through lhs := rhs, if any, is made of the
+   * variables reachable from lhs that reach lhs, provided rhs is one of them.
+   */
+  private void collapseLazyCycles() {
+    Graph<PointsToSetVariable> assignments = getCollapsibleAssignmentGraph();
+    Graph<PointsToSetVariable> inverted = GraphInverter.invert(assignments);
+    Set<PointsToSetVariable> collapsed = HashSetFactory.make();
+    List<Collection<PointerKey>> cycles = new ArrayList<Collection<PointerKey>>();
+    for (AssignEquation s : lazyCycleCandidates) {
+      PointsToSetVariable lhs = s.getLHS();
+      PointsToSetVariable rhs = s.getRightHandSide();
+      if (collapsed.contains(lhs) || !isRepresentative(lhs) || !isRepresentative(rhs)) {
+        continue;
+      }
+      Set<PointsToSetVariable> reached = DFS.getReachableNodes(assignments, Collections.singleton(lhs));
+      if (reached.contains(rhs)) {
+        Set<PointsToSetVariable> cycle = DFS.getReachableNodes(inverted, Collections.singleton(lhs));
+        cycle.retainAll(reached);
+        collapsed.addAll(cycle);
+        cycles.add(getPointerKeys(cycle));
+      }
+    }
+    lazyCycleCandidates.clear();
+    collapse(cycles);
+  }
+
+  /**
+   * @return true iff v is still the variable of its pointer key, rather than one unified into another or removed
+   */
+  private boolean isRepresentative(PointsToSetVariable v) {
+    return !pointsToMap.isImplicit(v.getPointerKey()) && pointsToMap.getPointsToSet(v.getPointerKey()) == v;
+  }
+
+  private static Collection<PointerKey> getPointerKeys(Collection<PointsToSetVariable> variables) {
+    List<PointerKey> result = new ArrayList<PointerKey>(variables.size());
+    for (PointsToSetVariable v : variables) {
+      result.add(v.getPointerKey());
+    }
+    return result;
+  }
+
+  /**
+   * @return the graph of the assignments between variables that may be unified
+   */
+  private Graph<PointsToSetVariable> getCollapsibleAssignmentGraph() {
+    return GraphSlicer.prune(flowGraph.getAssignmentGraph(), new Predicate<PointsToSetVariable>() {
+      @Override
+      public boolean test(PointsToSetVariable v) {
+        return mayCollapse(v);
+      }
+    });
+  }
+
+  /**
+   * Unify the variables on each cycle of plain assignments.
+   * 
+   * Assignments are only removed while solving when the call graph is updated, and then only those of nodes that go away or whose
+   * instructions are visited again, so all variables on such a cycle have the same points-to set in the fixed point. Unifying them
+   * changes no result, but saves propagating every instance around the cycle.
+   */
+  private void collapseAssignmentCycles() {
+    nAssignmentsSinceCycleSearch = 0;
+    lazyCycleCandidates.clear();
+    List<Collection<PointerKey>> cycles = new ArrayList<Collection<PointerKey>>();
+    Graph<PointsToSetVariable> assignments = getCollapsibleAssignmentGraph();
+    for (SCCIterator<PointsToSetVariable> it = new SCCIterator<PointsToSetVariable>(assignments); it.hasNext();) {
+      Set<PointsToSetVariable> scc = it.next();
+      if (scc.size() > 1) {
+        cycles.add(getPointerKeys(scc));
+      }
+    }
+    collapse(cycles);
+  }
+
+  /**
+   * Unify each class of pointer keys whose points-to sets are known to be equal in the fixed point. A variable may only be unified
+   * if the type filter of its pointer key is settled, as the filter of the representative applies to the whole class, so other
+   * keys are left out: see {@link #mayCollapse(PointsToSetVariable)}. With incremental updates on, only the locals of one node are
+   * unified in each class; any subset of a class is a class as well.
+   * 
+   * Unification replaces statements, so those waiting on the work list are taken off and only the survivors put back, along with
+   * all statements that define or use a representative.
+   */
+  void collapse(Collection<? extends Collection<PointerKey>> classes) {
+    List<IntSet> sets = new ArrayList<IntSet>();
+    for (Collection<PointerKey> c : classes) {
+      MutableIntSet s = IntSetUtil.make();
+      CGNode node = null;
+      for (PointerKey key : c) {
+        if (pointsToMap.isImplicit(key)) {
+          continue;
+        }
+        PointsToSetVariable v = pointsToMap.getPointsToSet(key);
+        if (v == null || !mayCollapse(v)) {
+          continue;
+        }
+        if (incrementalUpdates) {
+          if (!(key instanceof LocalPointerKey)) {
+            continue;
+          }
+          if (node == null) {
+            node = ((LocalPointerKey) key).getNode();
+          } else if (!node.equals(((LocalPointerKey) key).getNode())) {
+            continue;
+          }
+        }
+        s.add(pointsToMap.getIndex(key));
+      }
+      if (s.size() > 1) {
+        sets.add(s);
+      }
+    }
+    if (sets.isEmpty()) {
+      return;
+    }
+
+    List<AbstractStatement<?, ?>> pending = new ArrayList<AbstractStatement<?, ?>>();
+    while (!workList.isEmpty()) {
+      pending.add(workList.takeStatement());
+    }
+    int nClasses = 0;
+    for (IntSet s : sets) {
+      MutableIntSet reps = IntSetUtil.make();
+      for (IntIterator it = s.intIterator(); it.hasNext();) {
+        reps.add(pointsToMap.getRepresentative(it.next()));
+      }
+      if (reps.size() < 2) {
+        continue;
+      }
+      unify(s);
+      nClasses++;
+      nCollapsedVariables += reps.size() - 1;
+      PointsToSetVariable rep = pointsToMap.getPointsToSet(s.intIterator().next());
+      changedVariable(rep);
+      for (Iterator<AbstractStatement<?, ?>> it = statementsThatDef(rep); it.hasNext();) {
+        addToWorkList(it.next());
+      }
+    }
+    for (AbstractStatement<?, ?> s : pending) {
+      if (!refersToUnifiedVariable(s)) {
+        addToWorkList(s);
+      }
+    }
+    if (DEBUG) {
+      System.err.println("collapsed " + nClasses + " classes; " + nCollapsedVariables + " variables unified in total");
+    }
+  }
+
+  /**
+   * @return true iff s refers to a variable that was unified into another; unification has replaced such statements
+   */
+  private boolean refersToUnifiedVariable(AbstractStatement<?, ?> s) {
+    if (s.getLHS() != null && isUnified(((PointsToSetVariable) s.getLHS()).getPointerKey())) {
+      return true;
+    }
+    if (s instanceof UnaryStatement<?>) {
+      PointsToSetVariable rhs = (PointsToSetVariable) ((UnaryStatement<?>) s).getRightHandSide();
+      return rhs != null && isUnified(rhs.getPointerKey());
+    }
+    for (IVariable<?> v : s.getRHS()) {
+      if (v != null && isUnified(((PointsToSetVariable) v).getPointerKey())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * A variable may be unified only if its pointer key has no type filter and will never get one. Filters are attached to formal
+   * parameters as call edges are discovered, so those are left alone. With incremental updates on, only locals are unified.
+   */
+  private boolean mayCollapse(PointsToSetVariable v) {
+    PointerKey key = v.getPointerKey();
+    if (key instanceof FilteredPointerKey) {
+      return false;
+    }
+    if (key instanceof LocalPointerKey) {
+      return !((LocalPointerKey) key).isParameter();
+    }
+    return !incrementalUpdates;
+  }
+
   /**
    * Unify the points-to-sets for the variables identified by the set s
    * 
@@ -787,6 +1606,13 @@ public class PropagationSystem extends DefaultFixedPointSolver<PointsToSetVariab
     // unify the variables
     pointsToMap.unify(s);
     int rep = pointsToMap.getRepresentative(s.intIterator().next());
+    if (differencePropagation) {
+      // the statements of all the variables will read the representative, but have not seen all of it
+      for (PointsToSetVariable v : cache) {
+        v.takeDelta();
+      }
+      pointsToMap.getPointsToSet(rep).resetDelta();
+    }
 
     // clean up the equations
     updateEquationsForUnification(cache, rep);
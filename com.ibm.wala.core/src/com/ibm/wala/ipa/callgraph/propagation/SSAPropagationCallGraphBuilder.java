@@ -17,6 +17,7 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import com.ibm.wala.analysis.reflection.CloneInterpreter;
@@ -74,7 +75,9 @@ import com.ibm.wala.util.CancelException;
 import com.ibm.wala.util.CancelRuntimeException;
 import com.ibm.wala.util.MonitorUtil;
 import com.ibm.wala.util.MonitorUtil.IProgressMonitor;
+import com.ibm.wala.util.collections.HashMapFactory;
 import com.ibm.wala.util.collections.HashSetFactory;
+import com.ibm.wala.util.collections.MapUtil;
 import com.ibm.wala.util.debug.Assertions;
 import com.ibm.wala.util.functions.VoidFunction;
 import com.ibm.wala.util.intset.IntIterator;
@@ -160,6 +163,12 @@ public abstract class SSAPropagationCallGraphBuilder extends PropagationCallGrap
     // this.usePreTransitiveSolver = options.usePreTransitiveSolver();
   }
 
+  @Override
+  protected void clearClassInitializers() {
+    super.clearClassInitializers();
+    clinitVisited.clear();
+  }
+
   public SSAContextInterpreter getCFAContextInterpreter() {
     return (SSAContextInterpreter) getContextInterpreter();
   }
@@ -230,10 +239,66 @@ public abstract class SSAPropagationCallGraphBuilder extends PropagationCallGrap
 
     DefUse du = getCFAContextInterpreter().getDU(node);
     addNodePassthruExceptionConstraints(node, ir, du);
+    if (system.getCycleElimination() && !(ir.getMethod() instanceof AbstractRootMethod)) {
+      // the fake root methods gain instructions as call graph construction goes on
+      unifyEquivalentPhis(node, ir, du);
+    }
     // conservatively assume something changed
     return true;
   }
 
+  /**
+   * Before the constraints of a node are solved, unify the phis of the node that must have equal points-to sets: those with the
+   * same operands, once each operand is replaced by the phi it was found equal to, and those with just one operand, which equal
+   * it. This is hash-based value numbering restricted to phis, the only locals whose constraints are all known once the
+   * instructions of the node have been visited; the others may also be defined by calls, field reads or casts, which keep gaining
+   * targets and instances while solving.
+   */
+  private void unifyEquivalentPhis(CGNode node, IR ir, DefUse du) {
+    SymbolTable symbolTable = ir.getSymbolTable();
+    Map<PointerKey, PointerKey> number = HashMapFactory.make();
+    Map<Set<Object>, PointerKey> numbered = HashMapFactory.make();
+    Map<PointerKey, Set<PointerKey>> classes = HashMapFactory.make();
+    for (Iterator<? extends SSAInstruction> it = ir.iteratePhis(); it.hasNext();) {
+      SSAPhiInstruction phi = (SSAPhiInstruction) it.next();
+      if (phi == null || hasNoInterestingUses(node, phi.getDef(), du)) {
+        continue;
+      }
+      // the operands as addPhiConstraints sees them
+      Set<Object> operands = HashSetFactory.make();
+      for (int i = 0; i < phi.getNumberOfUses(); i++) {
+        int use = phi.getUse(i);
+        if (use <= 0) {
+          continue;
+        }
+        if (contentsAreInvariant(symbolTable, du, use)) {
+          operands.addAll(Arrays.asList(getInvariantContents(symbolTable, du, node, use, this)));
+        } else {
+          PointerKey key = getPointerKeyForLocal(node, use);
+          operands.add(number.containsKey(key) ? number.get(key) : key);
+        }
+      }
+      if (operands.isEmpty()) {
+        continue;
+      }
+      PointerKey def = getPointerKeyForLocal(node, phi.getDef());
+      Object single = operands.size() == 1 ? operands.iterator().next() : null;
+      PointerKey leader = single instanceof PointerKey ? (PointerKey) single : numbered.get(operands);
+      if (leader == null) {
+        numbered.put(operands, def);
+      } else if (!leader.equals(def)) {
+        number.put(def, leader);
+        MapUtil.findOrCreateSet(classes, leader).add(def);
+      }
+    }
+    if (!classes.isEmpty()) {
+      for (Map.Entry<PointerKey, Set<PointerKey>> e : classes.entrySet()) {
+        e.getValue().add(e.getKey());
+      }
+      system.collapse(classes.values());
+    }
+  }
+
   /**
    * @return a visitor to examine instructions in the ir
    */
@@ -1405,47 +1470,57 @@ public abstract class SSAPropagationCallGraphBuilder extends PropagationCallGrap
     }
 
     /**
-     * TODO: lift most of this logic to PropagationCallGraphBuilder
-     * 
      * Add a call to the class initializer from the root method.
      */
     private void processClassInitializer(IClass klass) {
+      getBuilder().processClassInitializer(node, klass);
+    }
+  }
 
-      assert klass != null;
+  /**
+   * TODO: lift most of this logic to PropagationCallGraphBuilder
+   * 
+   * Add a call to the class initializer from the root method.
+   */
+  @Override
+  protected void processClassInitializer(CGNode node, IClass klass) {
 
-      if (!getBuilder().getOptions().getHandleStaticInit()) {
-        return;
-      }
+    assert klass != null;
 
-      if (getBuilder().clinitVisited.contains(klass)) {
-        return;
-      }
-      getBuilder().clinitVisited.add(klass);
+    if (!getOptions().getHandleStaticInit()) {
+      return;
+    }
 
-      if (klass.getClassInitializer() != null) {
-        if (DEBUG) {
-          System.err.println("process class initializer for " + klass);
-        }
+    recordClassInitialization(node, klass);
 
-        // add an invocation from the fake root method to the <clinit>
-        AbstractRootMethod fakeWorldClinitMethod = (AbstractRootMethod) callGraph.getFakeWorldClinitNode().getMethod();
-        MethodReference m = klass.getClassInitializer().getReference();
-        CallSiteReference site = CallSiteReference.make(1, m, IInvokeInstruction.Dispatch.STATIC);
-        IMethod targetMethod = getOptions().getMethodTargetSelector().getCalleeTarget(callGraph.getFakeRootNode(), site, null);
-        if (targetMethod != null) {
-          CGNode target = getTargetForCall(callGraph.getFakeRootNode(), site, null, null);
-          if (target != null && callGraph.getPredNodeCount(target) == 0) {
-            SSAAbstractInvokeInstruction s = fakeWorldClinitMethod.addInvocation(new int[0], site);
-            PointerKey uniqueCatch = getBuilder().getPointerKeyForExceptionalReturnValue(callGraph.getFakeRootNode());
-            getBuilder().processResolvedCall(callGraph.getFakeWorldClinitNode(), s, target, null, uniqueCatch);
-          }
+    if (clinitVisited.contains(klass)) {
+      return;
+    }
+    clinitVisited.add(klass);
+
+    if (klass.getClassInitializer() != null) {
+      if (DEBUG) {
+        System.err.println("process class initializer for " + klass);
+      }
+
+      // add an invocation from the fake root method to the <clinit>
+      AbstractRootMethod fakeWorldClinitMethod = (AbstractRootMethod) callGraph.getFakeWorldClinitNode().getMethod();
+      MethodReference m = klass.getClassInitializer().getReference();
+      CallSiteReference site = CallSiteReference.make(1, m, IInvokeInstruction.Dispatch.STATIC);
+      IMethod targetMethod = getOptions().getMethodTargetSelector().getCalleeTarget(callGraph.getFakeRootNode(), site, null);
+      if (targetMethod != null) {
+        CGNode target = getTargetForCall(callGraph.getFakeRootNode(), site, null, null);
+        if (target != null && callGraph.getPredNodeCount(target) == 0) {
+          SSAAbstractInvokeInstruction s = fakeWorldClinitMethod.addInvocation(new int[0], site);
+          PointerKey uniqueCatch = getPointerKeyForExceptionalReturnValue(callGraph.getFakeRootNode());
+          processResolvedCall(callGraph.getFakeWorldClinitNode(), s, target, null, uniqueCatch);
         }
       }
+    }
 
-      IClass sc = klass.getSuperclass();
-      if (sc != null) {
-        processClassInitializer(sc);
-      }
+    IClass sc = klass.getSuperclass();
+    if (sc != null) {
+      processClassInitializer(node, sc);
     }
   }
 
@@ -1531,8 +1606,14 @@ public abstract class SSAPropagationCallGraphBuilder extends PropagationCallGrap
         PointerKey formal = getTargetPointerKey(target, i);
         if (constParams != null && constParams[i] != null) {
           InstanceKey[] ik = constParams[i];
-          for (int j = 0; j < ik.length; j++) {
+          // these writes belong to the caller, also when the call is dispatched while solving
+          CGNode source = system.setConstraintSource(caller);
+          try {
+            for (int j = 0; j < ik.length; j++) {
               system.newConstraint(formal, ik[j]);
+            }
+          } finally {
+            system.setConstraintSource(source);
           }
         } else {
           if (instruction.getUse(i) < 0) {
@@ -1615,6 +1696,14 @@ public abstract class SSAPropagationCallGraphBuilder extends PropagationCallGrap
       }
     }
 
+    CGNode getNode() {
+      return node;
+    }
+
+    CallSiteReference getCallSite() {
+      return call.getCallSite();
+    }
+
 
 
     /*
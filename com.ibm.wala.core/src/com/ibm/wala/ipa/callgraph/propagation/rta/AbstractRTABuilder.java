@@ -10,6 +10,7 @@
  *******************************************************************************/
 package com.ibm.wala.ipa.callgraph.propagation.rta;
 
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
@@ -23,6 +24,7 @@ import com.ibm.wala.fixpoint.UnaryOperator;
 import com.ibm.wala.ipa.callgraph.AnalysisCache;
 import com.ibm.wala.ipa.callgraph.AnalysisOptions;
 import com.ibm.wala.ipa.callgraph.CGNode;
+import com.ibm.wala.ipa.callgraph.CallGraph;
 import com.ibm.wala.ipa.callgraph.ContextSelector;
 import com.ibm.wala.ipa.callgraph.impl.DefaultContextSelector;
 import com.ibm.wala.ipa.callgraph.impl.DelegatingContextSelector;
@@ -356,6 +358,14 @@ public abstract class AbstractRTABuilder extends PropagationCallGraphBuilder {
     }
   }
 
+  /**
+   * Not supported: RTA keeps sets of allocated classes and visited call sites of its own, which an update would have to roll back.
+   */
+  @Override
+  public CallGraph updateCallGraph(Collection<IClass> changedClasses, IProgressMonitor monitor) {
+    throw new UnsupportedOperationException("RTA call graphs cannot be updated incrementally");
+  }
+
   /**
    * @return set of IClasses determined to be allocated
    */
@@ -37,6 +37,9 @@ import com.ibm.wala.util.intset.MutableIntSet;
 
 /**
  * Interprocedural control-flow graph, constructed lazily.
+ * 
+ * The methods that may extend the graph are synchronized, so it may be queried from several threads, e.g. by a parallel
+ * {@link com.ibm.wala.dataflow.IFDS.TabulationSolver}.
  */
 public abstract class AbstractInterproceduralCFG<T extends ISSABasicBlock> implements NumberedGraph<BasicBlockInContext<T>> {
 
@@ -106,7 +109,7 @@ public abstract class AbstractInterproceduralCFG<T extends ISSABasicBlock> imple
    * Should be invoked when the underlying call graph has changed. This will cause certain successor and predecessor edges to be
    * recomputed. USE WITH EXTREME CARE.
    */
-  public void callGraphUpdated() {
+  public synchronized void callGraphUpdated() {
     cgNodesVisited = new BitVectorIntSet();
     cgNodesWithCallerEdges = new BitVectorIntSet();
     handledCalls = new BitVectorIntSet();
@@ -399,7 +402,7 @@ public abstract class AbstractInterproceduralCFG<T extends ISSABasicBlock> imple
    * @see com.ibm.wala.util.graph.NodeManager#iterateNodes()
    */
   @Override
-  public Iterator<BasicBlockInContext<T>> iterator() {
+  public synchronized Iterator<BasicBlockInContext<T>> iterator() {
     if (WARN_ON_EAGER_CONSTRUCTION) {
       System.err.println("WARNING: forcing full ICFG construction by calling iterator()");
     }
@@ -414,7 +417,7 @@ public abstract class AbstractInterproceduralCFG<T extends ISSABasicBlock> imple
    * @see com.ibm.wala.util.graph.NodeManager#getNumberOfNodes()
    */
   @Override
-  public int getNumberOfNodes() {
+  public synchronized int getNumberOfNodes() {
     if (WARN_ON_EAGER_CONSTRUCTION) {
       System.err.println("WARNING: forcing full ICFG construction by calling getNumberOfNodes()");
     }
@@ -557,7 +560,7 @@ public abstract class AbstractInterproceduralCFG<T extends ISSABasicBlock> imple
    * @see com.ibm.wala.util.graph.EdgeManager#getPredNodes(com.ibm.wala.util.graph.Node)
    */
   @Override
-  public Iterator<BasicBlockInContext<T>> getPredNodes(BasicBlockInContext<T> N) {
+  public synchronized Iterator<BasicBlockInContext<T>> getPredNodes(BasicBlockInContext<T> N) {
     initForPred(N);
     return g.getPredNodes(N);
   }
@@ -602,7 +605,7 @@ public abstract class AbstractInterproceduralCFG<T extends ISSABasicBlock> imple
    * @see com.ibm.wala.util.graph.EdgeManager#getPredNodeCount(com.ibm.wala.util.graph.Node)
    */
   @Override
-  public int getPredNodeCount(BasicBlockInContext<T> N) {
+  public synchronized int getPredNodeCount(BasicBlockInContext<T> N) {
     initForPred(N);
     return g.getPredNodeCount(N);
   }
@@ -611,7 +614,7 @@ public abstract class AbstractInterproceduralCFG<T extends ISSABasicBlock> imple
    * @see com.ibm.wala.util.graph.EdgeManager#getSuccNodes(com.ibm.wala.util.graph.Node)
    */
   @Override
-  public Iterator<BasicBlockInContext<T>> getSuccNodes(BasicBlockInContext<T> N) {
+  public synchronized Iterator<BasicBlockInContext<T>> getSuccNodes(BasicBlockInContext<T> N) {
     initForSucc(N);
     return g.getSuccNodes(N);
   }
@@ -620,7 +623,7 @@ public abstract class AbstractInterproceduralCFG<T extends ISSABasicBlock> imple
    * @see com.ibm.wala.util.graph.EdgeManager#getSuccNodeCount(com.ibm.wala.util.graph.Node)
    */
   @Override
-  public int getSuccNodeCount(BasicBlockInContext<T> N) {
+  public synchronized int getSuccNodeCount(BasicBlockInContext<T> N) {
     initForSucc(N);
     return g.getSuccNodeCount(N);
   }
@@ -647,7 +650,7 @@ public abstract class AbstractInterproceduralCFG<T extends ISSABasicBlock> imple
   }
 
   @Override
-  public String toString() {
+  public synchronized String toString() {
     return g.toString();
   }
 
@@ -655,7 +658,7 @@ public abstract class AbstractInterproceduralCFG<T extends ISSABasicBlock> imple
    * @see com.ibm.wala.util.graph.Graph#containsNode(com.ibm.wala.util.graph.Node)
    */
   @Override
-  public boolean containsNode(BasicBlockInContext<T> N) {
+  public synchronized boolean containsNode(BasicBlockInContext<T> N) {
     return g.containsNode(N);
   }
 
@@ -663,7 +666,7 @@ public abstract class AbstractInterproceduralCFG<T extends ISSABasicBlock> imple
    * @param B
    * @return true iff basic block B ends in a call instuction
    */
-  public boolean hasCall(BasicBlockInContext<T> B) {
+  public synchronized boolean hasCall(BasicBlockInContext<T> B) {
     addNodeForBasicBlockIfNeeded(B);
     return hasCallVector.get(getNumber(B));
   }
@@ -733,7 +736,7 @@ public abstract class AbstractInterproceduralCFG<T extends ISSABasicBlock> imple
   }
 
   @Override
-  public boolean hasEdge(BasicBlockInContext<T> src, BasicBlockInContext<T> dst) {
+  public synchronized boolean hasEdge(BasicBlockInContext<T> src, BasicBlockInContext<T> dst) {
     if (!addedSuccs.contains(getNumber(src))) {
       if (!src.getNode().equals(dst.getNode())) {
         if (src.getDelegate().isExitBlock()) {
@@ -765,18 +768,18 @@ public abstract class AbstractInterproceduralCFG<T extends ISSABasicBlock> imple
   }
 
   @Override
-  public int getNumber(BasicBlockInContext<T> N) {
+  public synchronized int getNumber(BasicBlockInContext<T> N) {
     addNodeForBasicBlockIfNeeded(N);
     return g.getNumber(N);
   }
 
   @Override
-  public BasicBlockInContext<T> getNode(int number) throws UnimplementedError {
+  public synchronized BasicBlockInContext<T> getNode(int number) throws UnimplementedError {
     return g.getNode(number);
   }
 
   @Override
-  public int getMaxNumber() {
+  public synchronized int getMaxNumber() {
     if (WARN_ON_EAGER_CONSTRUCTION) {
       System.err.println("WARNING: forcing full ICFG construction by calling getMaxNumber()");
     }
@@ -794,13 +797,13 @@ public abstract class AbstractInterproceduralCFG<T extends ISSABasicBlock> imple
   }
 
   @Override
-  public IntSet getSuccNodeNumbers(BasicBlockInContext<T> node) {
+  public synchronized IntSet getSuccNodeNumbers(BasicBlockInContext<T> node) {
     initForSucc(node);
     return g.getSuccNodeNumbers(node);
   }
 
   @Override
-  public IntSet getPredNodeNumbers(BasicBlockInContext<T> node) {
+  public synchronized IntSet getPredNodeNumbers(BasicBlockInContext<T> node) {
     initForPred(node);
     return g.getPredNodeNumbers(node);
   }
@@ -49,7 +49,7 @@ public class ExplodedInterproceduralCFG extends AbstractInterproceduralCFG<IExpl
    * @throws IllegalArgumentException if n == null
    */
   @Override
-  public ControlFlowGraph<SSAInstruction, IExplodedBasicBlock> getCFG(CGNode n) throws IllegalArgumentException {
+  public synchronized ControlFlowGraph<SSAInstruction, IExplodedBasicBlock> getCFG(CGNode n) throws IllegalArgumentException {
     if (n == null) {
       throw new IllegalArgumentException("n == null");
     }
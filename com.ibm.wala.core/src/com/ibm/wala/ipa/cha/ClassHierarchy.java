@@ -1210,6 +1210,21 @@ public class ClassHierarchy implements IClassHierarchy {
     return make(scope, new ClassLoaderFactoryImpl(scope.getExclusions()));
   }
 
+  /**
+   * @param numberOfThreads number of threads used to parse the class files in the scope. The resulting hierarchy is the same for
+   *          any number of threads; the classes are still added and linked in a deterministic order.
+   * @return a ClassHierarchy object representing the analysis scope
+   * @throws ClassHierarchyException
+   */
+  public static ClassHierarchy make(AnalysisScope scope, int numberOfThreads) throws ClassHierarchyException {
+    if (scope == null) {
+      throw new IllegalArgumentException("null scope");
+    }
+    ClassLoaderFactoryImpl factory = new ClassLoaderFactoryImpl(scope.getExclusions());
+    factory.setNumberOfThreads(numberOfThreads);
+    return make(scope, factory);
+  }
+
   /**
    * temporarily marking this internal to avoid infinite sleep with randomly chosen IProgressMonitor.
    */
@@ -1330,7 +1345,10 @@ public class ClassHierarchy implements IClassHierarchy {
   }
 
 /** BEGIN Custom change: remember unresolved classes */
-  private final Set<TypeReference> unresolved = HashSetFactory.make();
+  /**
+   * synchronized, since lookups may run on several threads, as in {@link com.ibm.wala.ipa.callgraph.impl.IRPrefetcher}
+   */
+  private final Set<TypeReference> unresolved = Collections.synchronizedSet(HashSetFactory.<TypeReference> make());
 
   @Override
   public final Set<TypeReference> getUnresolvedClasses() {
@@ -0,0 +1,184 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.ipa.modref;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.ibm.wala.ipa.callgraph.CGNode;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.callgraph.CallGraphTransitiveClosure;
+import com.ibm.wala.ipa.callgraph.propagation.InstanceKey;
+import com.ibm.wala.ipa.callgraph.propagation.PointerAnalysis;
+import com.ibm.wala.ipa.callgraph.propagation.PointerKey;
+import com.ibm.wala.ipa.slicer.HeapExclusions;
+import com.ibm.wala.ipa.slicer.ModRefCache;
+import com.ibm.wala.ipa.slicer.SDG;
+import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.MonitorUtil.IProgressMonitor;
+import com.ibm.wala.util.ParallelUtil;
+import com.ibm.wala.util.ParallelUtil.IntAction;
+import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.intset.OrdinalSet;
+
+/**
+ * The results of {@link ModRef#computeMod(CallGraph, PointerAnalysis, HeapExclusions)} and
+ * {@link ModRef#computeRef(CallGraph, PointerAnalysis, HeapExclusions)}, computed together and kept up to date as a call graph
+ * grows.
+ *
+ * Each node is scanned once, for both mod and ref, on several threads if asked. The scan goes through a {@link ModRefCache}, so
+ * that the per-instruction sets it computes on the way are there for the {@link SDG} and its heap reaching definitions to reuse.
+ * The local sets are then closed over the call graph bottom-up, one strongly connected component at a time, by
+ * {@link CallGraphTransitiveClosure}.
+ *
+ * Local sets are kept between calls to {@link #compute(int, IProgressMonitor)}, which only scans nodes it has not seen, and forgets
+ * nodes which have left the call graph; the closure is always recomputed. Nodes whose points-to sets may have changed must be
+ * passed to {@link #invalidate(CGNode)} to be scanned again.
+ */
+public class ModRefSummaries {
+
+  private final CallGraph cg;
+
+  private final PointerAnalysis<InstanceKey> pa;
+
+  private final ModRef modRef;
+
+  private final HeapExclusions heapExclude;
+
+  private final ModRefCache cache;
+
+  /**
+   * heap locations each scanned node may write, not including its callees
+   */
+  private final Map<CGNode, Collection<PointerKey>> localMod = HashMapFactory.make();
+
+  /**
+   * heap locations each scanned node may read, not including its callees
+   */
+  private final Map<CGNode, Collection<PointerKey>> localRef = HashMapFactory.make();
+
+  private Map<CGNode, OrdinalSet<PointerKey>> mod;
+
+  private Map<CGNode, OrdinalSet<PointerKey>> ref;
+
+  /**
+   * @param heapExclude heap locations to leave out of the results, or null
+   */
+  public ModRefSummaries(CallGraph cg, PointerAnalysis<InstanceKey> pa, ModRef modRef, HeapExclusions heapExclude) {
+    if (cg == null) {
+      throw new IllegalArgumentException("cg is null");
+    }
+    if (modRef == null) {
+      throw new IllegalArgumentException("modRef is null");
+    }
+    this.cg = cg;
+    this.pa = pa;
+    this.modRef = modRef;
+    this.heapExclude = heapExclude;
+    this.cache = new ModRefCache(modRef, pa);
+  }
+
+  /**
+   * Scan the nodes of the call graph not scanned yet, using the given number of threads, and close the results over the call graph.
+   *
+   * @return the number of nodes scanned
+   */
+  public int compute(int numberOfThreads, IProgressMonitor monitor) throws CancelException {
+    if (numberOfThreads < 1) {
+      throw new IllegalArgumentException("invalid numberOfThreads: " + numberOfThreads);
+    }
+    for (Iterator<CGNode> it = localMod.keySet().iterator(); it.hasNext();) {
+      CGNode n = it.next();
+      if (!cg.containsNode(n)) {
+        it.remove();
+        localRef.remove(n);
+        cache.invalidate(n);
+      }
+    }
+    final List<CGNode> nodes = new ArrayList<CGNode>();
+    for (CGNode n : cg) {
+      if (!localMod.containsKey(n)) {
+        nodes.add(n);
+      }
+    }
+    ParallelUtil.forEachIndex(nodes.size(), numberOfThreads, new IntAction<RuntimeException>() {
+      @Override
+      public void apply(int i) {
+        // the cache computes mod and ref together
+        cache.getNodeMod(nodes.get(i), null);
+      }
+    }, monitor);
+    for (CGNode n : nodes) {
+      localMod.put(n, cache.getNodeMod(n, heapExclude));
+      localRef.put(n, cache.getNodeRef(n, heapExclude));
+    }
+    mod = CallGraphTransitiveClosure.transitiveClosure(cg, localMod, numberOfThreads);
+    ref = CallGraphTransitiveClosure.transitiveClosure(cg, localRef, numberOfThreads);
+    return nodes.size();
+  }
+
+  /**
+   * Forget what is known about n, so that the next call to {@link #compute(int, IProgressMonitor)} scans it again.
+   */
+  public void invalidate(CGNode n) {
+    localMod.remove(n);
+    localRef.remove(n);
+    cache.invalidate(n);
+  }
+
+  /**
+   * @return for each node, the heap locations it may write, including its callees transitively
+   * @throws IllegalStateException if the summaries have not been computed
+   */
+  public Map<CGNode, OrdinalSet<PointerKey>> getMod() {
+    if (mod == null) {
+      throw new IllegalStateException("must call compute() first");
+    }
+    return mod;
+  }
+
+  /**
+   * @return for each node, the heap locations it may read, including its callees transitively
+   * @throws IllegalStateException if the summaries have not been computed
+   */
+  public Map<CGNode, OrdinalSet<PointerKey>> getRef() {
+    if (ref == null) {
+      throw new IllegalStateException("must call compute() first");
+    }
+    return ref;
+  }
+
+  /**
+   * @return the per-instruction mod and ref sets computed by the scans
+   */
+  public ModRefCache getCache() {
+    return cache;
+  }
+
+  public CallGraph getCallGraph() {
+    return cg;
+  }
+
+  public PointerAnalysis<InstanceKey> getPointerAnalysis() {
+    return pa;
+  }
+
+  public ModRef getModRef() {
+    return modRef;
+  }
+
+  public HeapExclusions getHeapExclusions() {
+    return heapExclude;
+  }
+}
@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * Copyright (c) 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.ipa.slicer;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.collections.HashSetFactory;
+import com.ibm.wala.util.intset.IntIterator;
+import com.ibm.wala.util.intset.IntSet;
+
+/**
+ * The slices of a batch of statements, as computed by {@link Slicer#sliceEach(SDG, Collection, boolean)}.
+ *
+ * Each slice is held as a compressed set of {@link SDG} statement numbers, and only turned into {@link Statement}s on request.
+ */
+public class BatchSliceResult {
+
+  private final SDG sdg;
+
+  private final List<Statement> seeds;
+
+  private final Map<Statement, IntSet> slices = HashMapFactory.make();
+
+  BatchSliceResult(SDG sdg, List<Statement> seeds, IntSet[] slices) {
+    this.sdg = sdg;
+    this.seeds = Collections.unmodifiableList(seeds);
+    for (int i = 0; i < slices.length; i++) {
+      this.slices.put(seeds.get(i), slices[i]);
+    }
+  }
+
+  /**
+   * @return the statements sliced from, in the order they were given
+   */
+  public List<Statement> getSeeds() {
+    return seeds;
+  }
+
+  /**
+   * @return the SDG numbers of the statements in the slice of seed
+   */
+  public IntSet getSliceNumbers(Statement seed) {
+    IntSet result = slices.get(seed);
+    if (result == null) {
+      throw new IllegalArgumentException("not a seed: " + seed);
+    }
+    return result;
+  }
+
+  /**
+   * @return the statements in the slice of seed
+   */
+  public Collection<Statement> getSlice(Statement seed) {
+    IntSet numbers = getSliceNumbers(seed);
+    Collection<Statement> result = HashSetFactory.make(numbers.size());
+    for (IntIterator it = numbers.intIterator(); it.hasNext();) {
+      result.add(sdg.getNode(it.next()));
+    }
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    StringBuffer result = new StringBuffer();
+    for (Statement s : seeds) {
+      result.append(s).append(" : ").append(slices.get(s).size()).append(" statements\n");
+    }
+    return result.toString();
+  }
+}
@@ -0,0 +1,284 @@
+/*******************************************************************************
+ * Copyright (c) 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.ipa.slicer;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.ibm.wala.dataflow.IFDS.IBinaryReturnFlowFunction;
+import com.ibm.wala.dataflow.IFDS.IFlowFunction;
+import com.ibm.wala.dataflow.IFDS.ISupergraph;
+import com.ibm.wala.dataflow.IFDS.IUnaryFlowFunction;
+import com.ibm.wala.ipa.slicer.Slicer.SliceProblem;
+import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.collections.Iterator2Collection;
+import com.ibm.wala.util.collections.MapUtil;
+import com.ibm.wala.util.collections.Pair;
+import com.ibm.wala.util.intset.BitVectorIntSet;
+import com.ibm.wala.util.intset.IntSet;
+
+/**
+ * Computes the slices of a batch of seeds together, by tabulating over the supergraph of a {@link SliceProblem} with sets of
+ * seed numbers in place of facts.
+ *
+ * The slicing flow functions only pass reachability on or kill it, the same way for every seed, so a tabulation with one fact per
+ * seed would find the same path edges for each seed it reaches them with. Here each path edge carries the set of those seeds
+ * instead, and is traversed once for all the seeds that reach it at the same time. Summary edges are shared the same way: the
+ * path edge from a callee entry to an exit, with its seeds, is the summary edge for all of them, so it is computed once rather
+ * than once per seed. As in {@link com.ibm.wala.dataflow.IFDS.PartiallyBalancedTabulationSolver}, a seed reaching the exit of
+ * a procedure it entered other than by a call, from the seed itself or by such a return, returns to every caller.
+ */
+class BatchSliceSolver {
+
+  private final SliceProblem problem;
+
+  private final ISupergraph<Statement, PDG> supergraph;
+
+  private final SliceFunctions functions;
+
+  /**
+   * for each entry of a procedure, the seeds that reach each statement of the procedure from there
+   */
+  private final Map<Statement, Map<Statement, BitVectorIntSet>> pathEdges = HashMapFactory.make();
+
+  /**
+   * the seeds that reached each path edge on the work list since it was last processed
+   */
+  private final Map<Pair<Statement, Statement>, BitVectorIntSet> pending = HashMapFactory.make();
+
+  private final Deque<Pair<Statement, Statement>> workList = new ArrayDeque<Pair<Statement, Statement>>();
+
+  /**
+   * for each entry of a procedure, for each call statement and the entry its path edge starts from, the seeds that entered the
+   * procedure there from that call
+   */
+  private final Map<Statement, Map<Pair<Statement, Statement>, BitVectorIntSet>> callFlow = HashMapFactory.make();
+
+  /**
+   * for each entry of a procedure, the seeds that reached it other than by a call, and so may return to any caller
+   */
+  private final Map<Statement, BitVectorIntSet> unbalanced = HashMapFactory.make();
+
+  BatchSliceSolver(SliceProblem problem) {
+    this.problem = problem;
+    this.supergraph = problem.getSupergraph();
+    this.functions = (SliceFunctions) problem.getFunctionMap();
+  }
+
+  /**
+   * @return for each statement reached, the numbers of the seeds whose slice contains it, seed i being seeds.get(i)
+   */
+  Map<Statement, BitVectorIntSet> solve(List<Statement> seeds) {
+    for (int i = 0; i < seeds.size(); i++) {
+      BitVectorIntSet seed = new BitVectorIntSet();
+      seed.add(i);
+      addSeed(seeds.get(i), seed);
+    }
+    while (!workList.isEmpty()) {
+      Pair<Statement, Statement> edge = workList.removeFirst();
+      BitVectorIntSet delta = pending.remove(edge);
+      Statement entry = edge.fst;
+      Statement n = edge.snd;
+      if (supergraph.isCall(n)) {
+        processCall(entry, n, delta);
+      } else if (supergraph.isExit(n)) {
+        processExit(entry, n, delta);
+      } else {
+        for (Iterator<? extends Statement> it = supergraph.getSuccNodes(n); it.hasNext();) {
+          Statement m = it.next();
+          if (flows(functions.getNormalFlowFunction(n, m))) {
+            propagate(entry, m, delta);
+          }
+        }
+      }
+    }
+
+    Map<Statement, BitVectorIntSet> result = HashMapFactory.make();
+    for (Map<Statement, BitVectorIntSet> edges : pathEdges.values()) {
+      for (Map.Entry<Statement, BitVectorIntSet> e : edges.entrySet()) {
+        BitVectorIntSet s = result.get(e.getKey());
+        if (s == null) {
+          result.put(e.getKey(), new BitVectorIntSet(e.getValue()));
+        } else {
+          s.addAll(e.getValue());
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * start slicing from n for the given seeds, which may return from its procedure to any caller
+   */
+  private void addSeed(Statement n, BitVectorIntSet seeds) {
+    Statement entry = problem.getFakeEntry(n);
+    BitVectorIntSet old = unbalanced.get(entry);
+    BitVectorIntSet added = new BitVectorIntSet(seeds);
+    if (old != null) {
+      added.removeAll(old);
+    } else {
+      unbalanced.put(entry, old = new BitVectorIntSet());
+    }
+    if (!added.isEmpty()) {
+      old.addAll(added);
+      // seeds that already reached an exit from this entry return from there now
+      for (Statement exit : supergraph.getExitsForProcedure(supergraph.getProcOf(entry))) {
+        BitVectorIntSet returned = MapUtil.findOrCreateMap(pathEdges, entry).get(exit);
+        if (returned != null) {
+          returnToAnyCaller(exit, returned.intersection(added));
+        }
+      }
+    }
+    propagate(entry, n, seeds);
+  }
+
+  private void processCall(Statement entry, Statement call, BitVectorIntSet delta) {
+    Collection<Statement> returnSites = Iterator2Collection.toSet(supergraph.getReturnSites(call, null));
+    boolean hasCallee = false;
+    for (Iterator<? extends Statement> it = supergraph.getCalledNodes(call); it.hasNext();) {
+      hasCallee = true;
+      Statement calleeEntry = it.next();
+      Collection<Statement> calleeReturnSites = Iterator2Collection.toSet(supergraph.getReturnSites(call,
+          supergraph.getProcOf(calleeEntry)));
+      returnSites.addAll(calleeReturnSites);
+      if (!entersCallee(call, calleeEntry, calleeReturnSites)) {
+        continue;
+      }
+      Map<Pair<Statement, Statement>, BitVectorIntSet> calls = MapUtil.findOrCreateMap(callFlow, calleeEntry);
+      Pair<Statement, Statement> caller = Pair.make(call, entry);
+      calls.put(caller, union(calls.get(caller), delta));
+      propagate(calleeEntry, calleeEntry, delta);
+      // apply the summary edges of the callee
+      Map<Statement, BitVectorIntSet> summaries = pathEdges.get(calleeEntry);
+      for (Statement exit : supergraph.getExitsForProcedure(supergraph.getProcOf(calleeEntry))) {
+        BitVectorIntSet returned = summaries.get(exit);
+        if (returned != null) {
+          returnToCall(entry, call, exit, calleeReturnSites, returned.intersection(delta));
+        }
+      }
+    }
+    // in backwards problems, a call may have normal successors as well
+    for (Iterator<Statement> it = supergraph.getNormalSuccessors(call); it.hasNext();) {
+      Statement m = it.next();
+      if (flows(functions.getNormalFlowFunction(call, m))) {
+        propagate(entry, m, delta);
+      }
+    }
+    for (Statement returnSite : returnSites) {
+      IUnaryFlowFunction f = hasCallee ? functions.getCallToReturnFlowFunction(call, returnSite) : functions
+          .getCallNoneToReturnFlowFunction(call, returnSite);
+      if (flows(f)) {
+        propagate(entry, returnSite, delta);
+      }
+    }
+  }
+
+  private boolean entersCallee(Statement call, Statement calleeEntry, Collection<Statement> returnSites) {
+    for (Statement returnSite : returnSites) {
+      if (flows(functions.getCallFlowFunction(call, calleeEntry, returnSite))) {
+        return true;
+      }
+    }
+    return flows(functions.getCallFlowFunction(call, calleeEntry, null));
+  }
+
+  private void processExit(Statement entry, Statement exit, BitVectorIntSet delta) {
+    Map<Pair<Statement, Statement>, BitVectorIntSet> calls = callFlow.get(entry);
+    if (calls != null) {
+      PDG proc = supergraph.getProcOf(exit);
+      for (Map.Entry<Pair<Statement, Statement>, BitVectorIntSet> e : calls.entrySet()) {
+        Statement call = e.getKey().fst;
+        returnToCall(e.getKey().snd, call, exit, Iterator2Collection.toSet(supergraph.getReturnSites(call, proc)), e.getValue()
+            .intersection(delta));
+      }
+    }
+    BitVectorIntSet u = unbalanced.get(entry);
+    if (u != null) {
+      returnToAnyCaller(exit, u.intersection(delta));
+    }
+  }
+
+  /**
+   * propagate the given seeds from an exit to the return sites of a call, whose path edge starts from callerEntry
+   */
+  private void returnToCall(Statement callerEntry, Statement call, Statement exit, Collection<Statement> returnSites,
+      BitVectorIntSet seeds) {
+    if (seeds.isEmpty()) {
+      return;
+    }
+    for (Statement returnSite : returnSites) {
+      if (supergraph.hasEdge(exit, returnSite) && flows(functions.getReturnFlowFunction(call, exit, returnSite))) {
+        propagate(callerEntry, returnSite, seeds);
+      }
+    }
+  }
+
+  /**
+   * propagate the given seeds, which reached an exit from an entry they reached other than by a call, to the return sites of all
+   * callers
+   */
+  private void returnToAnyCaller(Statement exit, BitVectorIntSet seeds) {
+    if (seeds.isEmpty()) {
+      return;
+    }
+    for (Iterator<? extends Statement> it = supergraph.getSuccNodes(exit); it.hasNext();) {
+      Statement returnSite = it.next();
+      if (flows(functions.getUnbalancedReturnFlowFunction(exit, returnSite))) {
+        addSeed(returnSite, seeds);
+      }
+    }
+  }
+
+  /**
+   * add the given seeds to those reaching n from entry, and put the path edge on the work list for those that are new
+   */
+  private void propagate(Statement entry, Statement n, BitVectorIntSet seeds) {
+    Map<Statement, BitVectorIntSet> edges = MapUtil.findOrCreateMap(pathEdges, entry);
+    BitVectorIntSet old = edges.get(n);
+    BitVectorIntSet added = new BitVectorIntSet(seeds);
+    if (old != null) {
+      added.removeAll(old);
+      if (added.isEmpty()) {
+        return;
+      }
+      old.addAll(added);
+    } else {
+      edges.put(n, new BitVectorIntSet(added));
+    }
+    Pair<Statement, Statement> edge = Pair.make(entry, n);
+    BitVectorIntSet waiting = pending.get(edge);
+    if (waiting == null) {
+      pending.put(edge, added);
+      workList.addLast(edge);
+    } else {
+      waiting.addAll(added);
+    }
+  }
+
+  private static BitVectorIntSet union(BitVectorIntSet a, BitVectorIntSet b) {
+    BitVectorIntSet result = a == null ? new BitVectorIntSet() : a;
+    result.addAll(b);
+    return result;
+  }
+
+  /**
+   * the slicing flow functions treat every fact alike, so whether they pass fact 0 on tells whether they pass any seed on
+   */
+  private static boolean flows(IFlowFunction f) {
+    IntSet targets = f instanceof IBinaryReturnFlowFunction ? ((IBinaryReturnFlowFunction) f).getTargets(0, 0)
+        : ((IUnaryFlowFunction) f).getTargets(0);
+    return targets != null && targets.contains(0);
+  }
+}
@@ -75,10 +75,20 @@ public class HeapReachingDefs {
   private final ModRef modRef;
 
   private final ExtendedHeapModel heapModel;
+
+  /**
+   * memoized mod and ref sets, or null to compute them afresh
+   */
+  private final ModRefCache modRefCache;
   
   public HeapReachingDefs(ModRef modRef, ExtendedHeapModel heapModel) {
+    this(modRef, heapModel, null);
+  }
+
+  public HeapReachingDefs(ModRef modRef, ExtendedHeapModel heapModel, ModRefCache modRefCache) {
     this.modRef = modRef;
     this.heapModel = heapModel;
+    this.modRefCache = modRefCache;
   }
 
   /**
@@ -311,7 +321,7 @@ public class HeapReachingDefs {
       switch (s.getKind()) {
       case NORMAL:
         NormalStatement n = (NormalStatement) s;
-        Collection<PointerKey> ref = modRef.getRef(node, h, pa, n.getInstruction(), exclusions);
+        Collection<PointerKey> ref = getRef(node, h, pa, n.getInstruction(), exclusions);
         if (!ref.isEmpty()) {
           ISSABasicBlock bb = cfg.getBlockForInstruction(n.getInstructionIndex());
           BitVectorVariable v = solver.getIn(bb);
@@ -420,11 +430,21 @@ public class HeapReachingDefs {
     return true;
   }
 
+  private Collection<PointerKey> getMod(CGNode n, ExtendedHeapModel h, PointerAnalysis<InstanceKey> pa, SSAInstruction s,
+      HeapExclusions exclusions) {
+    return modRefCache == null ? modRef.getMod(n, h, pa, s, exclusions) : modRefCache.getMod(n, s, exclusions);
+  }
+
+  private Collection<PointerKey> getRef(CGNode n, ExtendedHeapModel h, PointerAnalysis<InstanceKey> pa, SSAInstruction s,
+      HeapExclusions exclusions) {
+    return modRefCache == null ? modRef.getRef(n, h, pa, s, exclusions) : modRefCache.getRef(n, s, exclusions);
+  }
+
   private Collection<PointerKey> getMod(Statement s, CGNode n, ExtendedHeapModel h, PointerAnalysis<InstanceKey> pa, HeapExclusions exclusions) {
     switch (s.getKind()) {
     case NORMAL:
       NormalStatement ns = (NormalStatement) s;
-      return modRef.getMod(n, h, pa, ns.getInstruction(), exclusions);
+      return getMod(n, h, pa, ns.getInstruction(), exclusions);
     case HEAP_PARAM_CALLEE:
     case HEAP_RET_CALLER:
       HeapStatement hs = (HeapStatement) s;
@@ -608,7 +628,7 @@ public class HeapReachingDefs {
           }
           return heapReturnCaller.getRelated(domainIndex);
         } else {
-          Collection<PointerKey> gen = modRef.getMod(node, heapModel, pa, s, exclusions);
+          Collection<PointerKey> gen = getMod(node, heapModel, pa, s, exclusions);
           if (gen.isEmpty()) {
             return null;
           } else {
@@ -640,7 +660,7 @@ public class HeapReachingDefs {
       if (s == null) {
         return null;
       } else {
-        Collection<PointerKey> mod = modRef.getMod(node, heapModel, pa, s, exclusions);
+        Collection<PointerKey> mod = getMod(node, heapModel, pa, s, exclusions);
         if (mod.isEmpty()) {
           return null;
         } else {
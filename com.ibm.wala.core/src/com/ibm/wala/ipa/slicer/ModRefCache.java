@@ -0,0 +1,266 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.ipa.slicer;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.ibm.wala.ipa.callgraph.CGNode;
+import com.ibm.wala.ipa.callgraph.propagation.InstanceKey;
+import com.ibm.wala.ipa.callgraph.propagation.PointerAnalysis;
+import com.ibm.wala.ipa.callgraph.propagation.PointerKey;
+import com.ibm.wala.ipa.modref.ExtendedHeapModel;
+import com.ibm.wala.ipa.modref.ModRef;
+import com.ibm.wala.ipa.modref.ModRefSummaries;
+import com.ibm.wala.ssa.IR;
+import com.ibm.wala.ssa.SSAGetCaughtExceptionInstruction;
+import com.ibm.wala.ssa.SSAInstruction;
+import com.ibm.wala.ssa.SSAPhiInstruction;
+import com.ibm.wala.ssa.SSAPiInstruction;
+import com.ibm.wala.util.collections.HashSetFactory;
+import com.ibm.wala.util.intset.OrdinalSet;
+import com.ibm.wala.util.ref.CacheReference;
+
+/**
+ * Memoizes, per method, the heap locations each normal instruction may write and read, as computed by {@link ModRef}.
+ *
+ * {@link HeapReachingDefs} asks for the mod set of every statement of a method once per heap location it solves for, and a
+ * {@link PDG} solves for many locations; with a cache, each set is computed once per method, and survives the PDG it was computed
+ * for. Sets are computed without {@link HeapExclusions}, which are applied on each query.
+ *
+ * The cache also keeps the union of the sets of each method, which {@link ModRefSummaries} closes over the call graph, and the
+ * heap reaching definitions a {@link PDG} computes for each heap location, so that a PDG dropped by an {@link SDG} with a limit on
+ * its PDGs need not solve them again when it is rebuilt. Reaching definitions take about as much memory as the heap edges of the
+ * PDG, so they are only held by soft references: keeping them for good would defeat the point of dropping the PDG.
+ *
+ * The cache is safe for concurrent use. All queries to the pointer analysis and its heap model go through one lock, since these
+ * build instance keys and pointer keys on demand; the lock is held for one instruction at a time, and the rest of PDG
+ * construction, as well as the rest of summarizing a method, can run on several threads.
+ */
+public class ModRefCache {
+
+  /**
+   * the mod and ref sets of the normal instructions of a method, indexed by instruction index, and their unions
+   */
+  private static final class Summary {
+    final Set<PointerKey>[] mod;
+
+    final Set<PointerKey>[] ref;
+
+    Set<PointerKey> nodeMod;
+
+    Set<PointerKey> nodeRef;
+
+    /**
+     * for each heap location, a {@link CacheReference} to the {@link ReachingDefs} last computed for it
+     */
+    final ConcurrentMap<PointerKey, Object> reachingDefs = new ConcurrentHashMap<PointerKey, Object>();
+
+    Summary(int size) {
+      mod = makeSetArray(size);
+      ref = makeSetArray(size);
+    }
+  }
+
+  /**
+   * heap reaching definitions of a method for one heap location, and the statements they were computed over
+   */
+  private static final class ReachingDefs {
+    final Collection<Statement> statements;
+
+    final Map<Statement, OrdinalSet<Statement>> defs;
+
+    ReachingDefs(Collection<Statement> statements, Map<Statement, OrdinalSet<Statement>> defs) {
+      this.statements = statements;
+      this.defs = defs;
+    }
+  }
+
+  /**
+   * Java does not allow generic array creation, so confine the unchecked conversion here.
+   */
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  private static Set<PointerKey>[] makeSetArray(int size) {
+    return new Set[size];
+  }
+
+  private final ModRef modRef;
+
+  private final PointerAnalysis<InstanceKey> pa;
+
+  private final ExtendedHeapModel heapModel;
+
+  private final ConcurrentMap<CGNode, Summary> summaries = new ConcurrentHashMap<CGNode, Summary>();
+
+  /**
+   * guards the pointer analysis and the heap model
+   */
+  private final Object lock = new Object();
+
+  public ModRefCache(ModRef modRef, PointerAnalysis<InstanceKey> pa) {
+    if (modRef == null) {
+      throw new IllegalArgumentException("null modRef");
+    }
+    if (pa == null) {
+      throw new IllegalArgumentException("null pa");
+    }
+    this.modRef = modRef;
+    this.pa = pa;
+    this.heapModel = modRef.makeHeapModel(pa);
+  }
+
+  /**
+   * @return the heap locations s, an instruction of n, may write, less those excluded by hexcl
+   */
+  public Set<PointerKey> getMod(CGNode n, SSAInstruction s, HeapExclusions hexcl) {
+    if (s == null) {
+      throw new IllegalArgumentException("s is null");
+    }
+    Summary summary = isNormal(s) ? findOrCreate(n) : null;
+    Set<PointerKey> result;
+    if (summary == null || s.iindex >= summary.mod.length || summary.mod[s.iindex] == null) {
+      synchronized (lock) {
+        result = modRef.getMod(n, heapModel, pa, s, null);
+      }
+    } else {
+      result = summary.mod[s.iindex];
+    }
+    return filter(result, hexcl);
+  }
+
+  /**
+   * @return the heap locations s, an instruction of n, may read, less those excluded by hexcl
+   */
+  public Set<PointerKey> getRef(CGNode n, SSAInstruction s, HeapExclusions hexcl) {
+    if (s == null) {
+      throw new IllegalArgumentException("s is null");
+    }
+    Summary summary = isNormal(s) ? findOrCreate(n) : null;
+    Set<PointerKey> result;
+    if (summary == null || s.iindex >= summary.ref.length || summary.ref[s.iindex] == null) {
+      synchronized (lock) {
+        result = modRef.getRef(n, heapModel, pa, s, null);
+      }
+    } else {
+      result = summary.ref[s.iindex];
+    }
+    return filter(result, hexcl);
+  }
+
+  /**
+   * @return the heap locations the normal instructions of n may write, not including its callees, less those excluded by hexcl
+   */
+  public Set<PointerKey> getNodeMod(CGNode n, HeapExclusions hexcl) {
+    Summary summary = findOrCreate(n);
+    return summary == null ? Collections.<PointerKey> emptySet() : filter(summary.nodeMod, hexcl);
+  }
+
+  /**
+   * @return the heap locations the normal instructions of n may read, not including its callees, less those excluded by hexcl
+   */
+  public Set<PointerKey> getNodeRef(CGNode n, HeapExclusions hexcl) {
+    Summary summary = findOrCreate(n);
+    return summary == null ? Collections.<PointerKey> emptySet() : filter(summary.nodeRef, hexcl);
+  }
+
+  /**
+   * @return the heap reaching definitions of location pk in n last recorded by
+   *         {@link #putReachingDefs(CGNode, PointerKey, Collection, Map)} over the same statements, or null if there are none or
+   *         they have been dropped to free memory
+   */
+  public Map<Statement, OrdinalSet<Statement>> getReachingDefs(CGNode n, PointerKey pk, Collection<Statement> statements) {
+    Summary summary = summaries.get(n);
+    if (summary == null) {
+      return null;
+    }
+    ReachingDefs result = (ReachingDefs) CacheReference.get(summary.reachingDefs.get(pk));
+    return result != null && result.statements.equals(statements) ? result.defs : null;
+  }
+
+  /**
+   * Record the heap reaching definitions of location pk in n, computed over the given statements with the heap locations other
+   * than pk excluded. The statements must not change afterwards.
+   */
+  public void putReachingDefs(CGNode n, PointerKey pk, Collection<Statement> statements,
+      Map<Statement, OrdinalSet<Statement>> defs) {
+    Summary summary = findOrCreate(n);
+    if (summary != null) {
+      summary.reachingDefs.put(pk, CacheReference.make(new ReachingDefs(statements, defs)));
+    }
+  }
+
+  /**
+   * Forget the summary of n and its reaching definitions, e.g. because the points-to sets they were computed from have changed.
+   */
+  public void invalidate(CGNode n) {
+    summaries.remove(n);
+  }
+
+  /**
+   * @return the number of methods summarized so far
+   */
+  public int size() {
+    return summaries.size();
+  }
+
+  /**
+   * @return a set callers cannot modify: the cached set itself is never handed out
+   */
+  private static Set<PointerKey> filter(Set<PointerKey> s, HeapExclusions hexcl) {
+    return hexcl == null ? Collections.unmodifiableSet(s) : hexcl.filter(s);
+  }
+
+  /**
+   * phis, pis and catch instructions live outside the instruction array, and are not summarized
+   */
+  private static boolean isNormal(SSAInstruction s) {
+    return s.iindex >= 0
+        && !(s instanceof SSAPhiInstruction || s instanceof SSAPiInstruction || s instanceof SSAGetCaughtExceptionInstruction);
+  }
+
+  /**
+   * @return the summary of n, or null if n has no IR
+   */
+  private Summary findOrCreate(CGNode n) {
+    Summary result = summaries.get(n);
+    if (result == null) {
+      IR ir = n.getIR();
+      if (ir == null) {
+        return null;
+      }
+      SSAInstruction[] instructions = ir.getInstructions();
+      Summary s = new Summary(instructions.length);
+      Set<PointerKey> nodeMod = HashSetFactory.make();
+      Set<PointerKey> nodeRef = HashSetFactory.make();
+      for (int i = 0; i < instructions.length; i++) {
+        if (instructions[i] != null) {
+          synchronized (lock) {
+            s.mod[i] = modRef.getMod(n, heapModel, pa, instructions[i], null);
+            s.ref[i] = modRef.getRef(n, heapModel, pa, instructions[i], null);
+          }
+          nodeMod.addAll(s.mod[i]);
+          nodeRef.addAll(s.ref[i]);
+        }
+      }
+      s.nodeMod = nodeMod;
+      s.nodeRef = nodeRef;
+      result = summaries.putIfAbsent(n, s);
+      if (result == null) {
+        result = s;
+      }
+    }
+    return result;
+  }
+}
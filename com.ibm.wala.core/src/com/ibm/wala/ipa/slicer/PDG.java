@@ -122,8 +122,15 @@ public class PDG implements NumberedGraph<Statement> {
 
   private final boolean ignoreAllocHeapDefs;
 
+  private final ModRefCache modRefCache;
+
   private boolean isPopulated = false;
 
+  /**
+   * the number of statements created by {@link #populate()}, or 0 before then
+   */
+  private volatile int numberOfStatements = 0;
+
   /**
    * @param mod the set of heap locations which may be written (transitively) by this node. These are logically return values in the
    *          SDG.
@@ -145,6 +152,19 @@ public class PDG implements NumberedGraph<Statement> {
   public PDG(final CGNode node, PointerAnalysis<InstanceKey> pa, Map<CGNode, OrdinalSet<PointerKey>> mod,
       Map<CGNode, OrdinalSet<PointerKey>> ref, DataDependenceOptions dOptions, ControlDependenceOptions cOptions,
       HeapExclusions exclusions, CallGraph cg, ModRef modRef, boolean ignoreAllocHeapDefs) {
+    this(node, pa, mod, ref, dOptions, cOptions, exclusions, cg, modRef, ignoreAllocHeapDefs, null);
+  }
+
+  /**
+   * @param mod the set of heap locations which may be written (transitively) by this node. These are logically return values in the
+   *          SDG.
+   * @param ref the set of heap locations which may be read (transitively) by this node. These are logically parameters in the SDG.
+   * @param modRefCache memoized mod and ref sets of instructions, or null to compute them as needed
+   * @throws IllegalArgumentException if node is null
+   */
+  public PDG(final CGNode node, PointerAnalysis<InstanceKey> pa, Map<CGNode, OrdinalSet<PointerKey>> mod,
+      Map<CGNode, OrdinalSet<PointerKey>> ref, DataDependenceOptions dOptions, ControlDependenceOptions cOptions,
+      HeapExclusions exclusions, CallGraph cg, ModRef modRef, boolean ignoreAllocHeapDefs, ModRefCache modRefCache) {
 
     super();
     if (node == null) {
@@ -161,6 +181,7 @@ public class PDG implements NumberedGraph<Statement> {
     this.modRef = modRef;
     this.ref = ref;
     this.ignoreAllocHeapDefs = ignoreAllocHeapDefs;
+    this.modRefCache = modRefCache;
   }
 
   /**
@@ -168,7 +189,7 @@ public class PDG implements NumberedGraph<Statement> {
    * canonical representative for each instruction, we <bf>must</bf> ensure that we use the same IR object throughout
    * initialization!!
    */
-  private void populate() {
+  private synchronized void populate() {
     if (!isPopulated) {
       // ensure that we keep the single, canonical IR live throughout initialization, while the instructionIndices map
       // is live.
@@ -177,10 +198,19 @@ public class PDG implements NumberedGraph<Statement> {
 
       Map<SSAInstruction, Integer> instructionIndices = computeInstructionIndices(ir);
       createNodes(ref, cOptions, ir);
+      numberOfStatements = delegate.getNumberOfNodes();
       createScalarEdges(cOptions, ir, instructionIndices);
     }
   }
 
+  /**
+   * @return the number of statements in this PDG, or 0 if they have not been created yet; unlike {@link #getNumberOfNodes()}, this
+   *         does not create them
+   */
+  int getNumberOfStatementsCreated() {
+    return numberOfStatements;
+  }
+
   private void createScalarEdges(ControlDependenceOptions cOptions, IR ir, Map<SSAInstruction, Integer> instructionIndices) {
     createScalarDataDependenceEdges(ir, instructionIndices);
     createControlDependenceEdges(cOptions, ir, instructionIndices);
@@ -646,7 +676,7 @@ public class PDG implements NumberedGraph<Statement> {
   /**
    * Create heap data dependence edges in this PDG relevant to a particular {@link PointerKey}.
    */
-  private void createHeapDataDependenceEdges(final PointerKey pk) {
+  private synchronized void createHeapDataDependenceEdges(final PointerKey pk) {
 
     if (locationsHandled.contains(pk)) {
       return;
@@ -686,8 +716,15 @@ public class PDG implements NumberedGraph<Statement> {
     };
     Collection<Statement> relevantStatements = Iterator2Collection.toSet(new FilterIterator<Statement>(iterator(), f));
 
-    Map<Statement, OrdinalSet<Statement>> heapReachingDefs = new HeapReachingDefs(modRef, heapModel).computeReachingDefs(node, ir, pa, mod,
-        relevantStatements, new HeapExclusions(SetComplement.complement(new SingletonSet(t))), cg);
+    Map<Statement, OrdinalSet<Statement>> heapReachingDefs = modRefCache == null ? null : modRefCache.getReachingDefs(node, pk,
+        relevantStatements);
+    if (heapReachingDefs == null) {
+      heapReachingDefs = new HeapReachingDefs(modRef, heapModel, modRefCache).computeReachingDefs(node, ir, pa, mod,
+          relevantStatements, new HeapExclusions(SetComplement.complement(new SingletonSet(t))), cg);
+      if (modRefCache != null) {
+        modRefCache.putReachingDefs(node, pk, relevantStatements, heapReachingDefs);
+      }
+    }
 
     for (Statement st : heapReachingDefs.keySet()) {
       switch (st.getKind()) {
@@ -802,7 +839,7 @@ public class PDG implements NumberedGraph<Statement> {
     return ssaInstruction2Statement(node, s, instructionIndices, ir);
   }
 
-  public static synchronized Statement ssaInstruction2Statement(CGNode node, SSAInstruction s,
+  public static Statement ssaInstruction2Statement(CGNode node, SSAInstruction s,
       Map<SSAInstruction, Integer> instructionIndices, IR ir) {
     if (node == null) {
       throw new IllegalArgumentException("null node");
@@ -1103,12 +1140,27 @@ public class PDG implements NumberedGraph<Statement> {
     return delegate.getPredNodes(N);
   }
 
+  /**
+   * Compute all edges of this PDG now. Otherwise, heap data dependence edges are only computed for the locations of statements
+   * whose edges are asked for.
+   */
+  void computeAllEdges() {
+    populate();
+    if (!dOptions.isIgnoreHeap()) {
+      for (Statement s : Iterator2Collection.toList(iterator())) {
+        computeIncomingHeapDependencies(s);
+        computeOutgoingHeapDependencies(s);
+      }
+    }
+  }
+
   private void computeIncomingHeapDependencies(Statement N) {
     switch (N.getKind()) {
     case NORMAL:
       NormalStatement st = (NormalStatement) N;
       if (!(ignoreAllocHeapDefs && st.getInstruction() instanceof SSANewInstruction)) {
-        Collection<PointerKey> ref = modRef.getRef(node, heapModel, pa, st.getInstruction(), exclusions);
+        Collection<PointerKey> ref = modRefCache == null ? modRef.getRef(node, heapModel, pa, st.getInstruction(), exclusions)
+            : modRefCache.getRef(node, st.getInstruction(), exclusions);
         for (PointerKey pk : ref) {
           createHeapDataDependenceEdges(pk);
         }
@@ -1128,7 +1180,8 @@ public class PDG implements NumberedGraph<Statement> {
     case NORMAL:
       NormalStatement st = (NormalStatement) N;
       if (!(ignoreAllocHeapDefs && st.getInstruction() instanceof SSANewInstruction)) {
-        Collection<PointerKey> mod = modRef.getMod(node, heapModel, pa, st.getInstruction(), exclusions);
+        Collection<PointerKey> mod = modRefCache == null ? modRef.getMod(node, heapModel, pa, st.getInstruction(), exclusions)
+            : modRefCache.getMod(node, st.getInstruction(), exclusions);
         for (PointerKey pk : mod) {
           createHeapDataDependenceEdges(pk);
         }
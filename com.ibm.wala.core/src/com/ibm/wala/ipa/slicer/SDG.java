@@ -10,9 +10,12 @@
  *******************************************************************************/
 package com.ibm.wala.ipa.slicer;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import com.ibm.wala.classLoader.CallSiteReference;
@@ -23,6 +26,7 @@ import com.ibm.wala.ipa.callgraph.propagation.PointerAnalysis;
 import com.ibm.wala.ipa.callgraph.propagation.PointerKey;
 import com.ibm.wala.ipa.cha.IClassHierarchy;
 import com.ibm.wala.ipa.modref.ModRef;
+import com.ibm.wala.ipa.modref.ModRefSummaries;
 import com.ibm.wala.ipa.slicer.Slicer.ControlDependenceOptions;
 import com.ibm.wala.ipa.slicer.Slicer.DataDependenceOptions;
 import com.ibm.wala.ipa.slicer.Statement.Kind;
@@ -30,6 +34,11 @@ import com.ibm.wala.ssa.IR;
 import com.ibm.wala.ssa.SSAAbstractInvokeInstruction;
 import com.ibm.wala.types.MethodReference;
 import com.ibm.wala.types.TypeReference;
+import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.CancelRuntimeException;
+import com.ibm.wala.util.MonitorUtil.IProgressMonitor;
+import com.ibm.wala.util.ParallelUtil;
+import com.ibm.wala.util.ParallelUtil.IntAction;
 import com.ibm.wala.util.collections.CompoundIterator;
 import com.ibm.wala.util.collections.EmptyIterator;
 import com.ibm.wala.util.collections.HashMapFactory;
@@ -83,7 +92,29 @@ public class SDG extends AbstractNumberedGraph<Statement> implements ISDG {
   /**
    * keeps track of PDG for each call graph node
    */
-  private final Map<CGNode, PDG> pdgMap = HashMapFactory.make();
+  private final Map<CGNode, PDG> pdgMap = new LinkedHashMap<CGNode, PDG>(16, 0.75f, true) {
+    private static final long serialVersionUID = 2204347421937262487L;
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<CGNode, PDG> eldest) {
+      return maxNumberOfPDGs >= 0 && size() > maxNumberOfPDGs;
+    }
+  };
+
+  /**
+   * the most PDGs to keep at once, or -1 for no limit
+   */
+  private volatile int maxNumberOfPDGs = -1;
+
+  /**
+   * the most statements to keep in PDGs at once, or -1 for no limit
+   */
+  private volatile long maxNumberOfPDGStatements = -1;
+
+  /**
+   * mod-ref summaries shared by all PDGs, or null if the heap is ignored
+   */
+  private final ModRefCache modRefCache;
 
   /**
    * governs data dependence edges in the graph
@@ -133,18 +164,134 @@ public class SDG extends AbstractNumberedGraph<Statement> implements ISDG {
 
   public SDG(CallGraph cg, PointerAnalysis<InstanceKey> pa, ModRef modRef, DataDependenceOptions dOptions, ControlDependenceOptions cOptions,
       HeapExclusions heapExclude) throws IllegalArgumentException {
+    this(cg, pa, modRef, dOptions, cOptions, heapExclude, 1);
+  }
+
+  /**
+   * @param numberOfThreads the number of threads to compute the mod-ref summaries of the call graph on, unless the heap is ignored
+   */
+  public SDG(CallGraph cg, PointerAnalysis<InstanceKey> pa, ModRef modRef, DataDependenceOptions dOptions, ControlDependenceOptions cOptions,
+      HeapExclusions heapExclude, int numberOfThreads) throws IllegalArgumentException {
     super();
     if (dOptions == null) {
       throw new IllegalArgumentException("dOptions must not be null");
     }
+    if (numberOfThreads < 1) {
+      throw new IllegalArgumentException("invalid numberOfThreads: " + numberOfThreads);
+    }
     this.modRef = modRef;
     this.cg = cg;
     this.pa = pa;
-    this.mod = dOptions.isIgnoreHeap() ? null : modRef.computeMod(cg, pa, heapExclude);
-    this.ref = dOptions.isIgnoreHeap() ? null : modRef.computeRef(cg, pa, heapExclude);
     this.dOptions = dOptions;
     this.cOptions = cOptions;
     this.heapExclude = heapExclude;
+    if (dOptions.isIgnoreHeap()) {
+      this.mod = null;
+      this.ref = null;
+      this.modRefCache = null;
+    } else {
+      ModRefSummaries summaries = new ModRefSummaries(cg, pa, modRef, heapExclude);
+      try {
+        summaries.compute(numberOfThreads, null);
+      } catch (CancelException e) {
+        throw new CancelRuntimeException(e);
+      }
+      this.mod = summaries.getMod();
+      this.ref = summaries.getRef();
+      this.modRefCache = summaries.getCache();
+    }
+  }
+
+  /**
+   * Build an SDG over mod-ref summaries computed ahead of time, e.g. on several threads, or shared with other SDGs. The SDG takes
+   * the summaries as they are now; later calls to {@link ModRefSummaries#compute(int, IProgressMonitor)} do not affect it.
+   *
+   * @throws IllegalArgumentException if the summaries have not been computed
+   */
+  public SDG(ModRefSummaries summaries, DataDependenceOptions dOptions, ControlDependenceOptions cOptions) {
+    super();
+    if (summaries == null) {
+      throw new IllegalArgumentException("summaries must not be null");
+    }
+    if (dOptions == null) {
+      throw new IllegalArgumentException("dOptions must not be null");
+    }
+    this.modRef = summaries.getModRef();
+    this.cg = summaries.getCallGraph();
+    this.pa = summaries.getPointerAnalysis();
+    this.dOptions = dOptions;
+    this.cOptions = cOptions;
+    this.heapExclude = summaries.getHeapExclusions();
+    if (dOptions.isIgnoreHeap()) {
+      this.mod = null;
+      this.ref = null;
+      this.modRefCache = null;
+    } else {
+      try {
+        this.mod = summaries.getMod();
+        this.ref = summaries.getRef();
+      } catch (IllegalStateException e) {
+        throw new IllegalArgumentException("summaries have not been computed");
+      }
+      this.modRefCache = summaries.getCache();
+    }
+  }
+
+  /**
+   * Limit the number of PDGs this SDG holds on to. When the limit is exceeded, the least recently used PDGs are dropped, to be
+   * built again if needed.
+   *
+   * @param maxNumberOfPDGs the most PDGs to keep at once, or -1 for no limit
+   */
+  public void setMaxNumberOfPDGs(int maxNumberOfPDGs) {
+    if (maxNumberOfPDGs < -1) {
+      throw new IllegalArgumentException("invalid maxNumberOfPDGs: " + maxNumberOfPDGs);
+    }
+    this.maxNumberOfPDGs = maxNumberOfPDGs;
+  }
+
+  public int getMaxNumberOfPDGs() {
+    return maxNumberOfPDGs;
+  }
+
+  /**
+   * Limit the number of statements in the PDGs this SDG holds on to. PDGs vary in size by orders of magnitude, so this bounds the
+   * memory they take more closely than {@link #setMaxNumberOfPDGs(int)}. Whenever a PDG is built, the least recently used PDGs are
+   * dropped until those left, other than the new one, are within the limit; a PDG is counted once its statements are created.
+   *
+   * @param maxNumberOfPDGStatements the most statements to keep at once, or -1 for no limit
+   */
+  public void setMaxNumberOfPDGStatements(long maxNumberOfPDGStatements) {
+    if (maxNumberOfPDGStatements < -1) {
+      throw new IllegalArgumentException("invalid maxNumberOfPDGStatements: " + maxNumberOfPDGStatements);
+    }
+    this.maxNumberOfPDGStatements = maxNumberOfPDGStatements;
+  }
+
+  public long getMaxNumberOfPDGStatements() {
+    return maxNumberOfPDGStatements;
+  }
+
+  /**
+   * Build the PDGs of all call graph nodes now, with all their edges, rather than lazily as the SDG is traversed.
+   *
+   * PDGs are built on the given number of threads. If a limit was set by {@link #setMaxNumberOfPDGs(int)}, only as many PDGs as the
+   * limit allows are built, for the first nodes of the call graph, since any more would be dropped right away; the rest are built
+   * lazily, as usual. A limit set by {@link #setMaxNumberOfPDGStatements(long)} is enforced as the PDGs are built.
+   */
+  public void computePDGs(int numberOfThreads, IProgressMonitor monitor) throws CancelException {
+    if (numberOfThreads < 1) {
+      throw new IllegalArgumentException("invalid numberOfThreads: " + numberOfThreads);
+    }
+    List<CGNode> all = Iterator2Collection.toList(cg.iterator());
+    int max = maxNumberOfPDGs;
+    final List<CGNode> nodes = max >= 0 && max < all.size() ? all.subList(0, max) : all;
+    ParallelUtil.forEachIndex(nodes.size(), numberOfThreads, new IntAction<RuntimeException>() {
+      @Override
+      public void apply(int i) {
+        getPDG(nodes.get(i)).computeAllEdges();
+      }
+    }, monitor);
   }
 
   /**
@@ -170,8 +317,8 @@ public class SDG extends AbstractNumberedGraph<Statement> implements ISDG {
     if (!eagerComputed) {
       eagerComputed = true;
       computeAllPDGs();
-      for (PDG pdg : pdgMap.values()) {
-        addPDGStatementNodes(pdg.getCallGraphNode());
+      for (CGNode n : cg) {
+        addPDGStatementNodes(n);
       }
     }
   }
@@ -788,18 +935,42 @@ public class SDG extends AbstractNumberedGraph<Statement> implements ISDG {
     return nodeMgr;
   }
 
+  /**
+   * drop the least recently used PDGs other than keep until the rest are within {@link #maxNumberOfPDGStatements}
+   */
+  private void trimPDGs(PDG keep) {
+    long max = maxNumberOfPDGStatements;
+    if (max < 0) {
+      return;
+    }
+    long total = 0;
+    for (PDG pdg : pdgMap.values()) {
+      total += pdg.getNumberOfStatementsCreated();
+    }
+    for (Iterator<PDG> it = pdgMap.values().iterator(); total > max && it.hasNext();) {
+      PDG pdg = it.next();
+      if (pdg != keep) {
+        total -= pdg.getNumberOfStatementsCreated();
+        it.remove();
+      }
+    }
+  }
+
   @Override
   public PDG getPDG(CGNode node) {
-    PDG result = pdgMap.get(node);
-    if (result == null) {
-      result = new PDG(node, pa, mod, ref, dOptions, cOptions, heapExclude, cg, modRef);
-      pdgMap.put(node, result);
-      // Let's not eagerly add nodes, shall we?
-      // for (Iterator<? extends Statement> it = result.iterator(); it.hasNext();) {
-      // nodeMgr.addNode(it.next());
-      // }
-    }
-    return result;
+    synchronized (pdgMap) {
+      PDG result = pdgMap.get(node);
+      if (result == null) {
+        result = new PDG(node, pa, mod, ref, dOptions, cOptions, heapExclude, cg, modRef, false, modRefCache);
+        pdgMap.put(node, result);
+        trimPDGs(result);
+        // Let's not eagerly add nodes, shall we?
+        // for (Iterator<? extends Statement> it = result.iterator(); it.hasNext();) {
+        // nodeMgr.addNode(it.next());
+        // }
+      }
+      return result;
+    }
   }
 
   @Override
@@ -10,8 +10,12 @@
  *******************************************************************************/
 package com.ibm.wala.ipa.slicer;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 
 import com.ibm.wala.dataflow.IFDS.BackwardsSupergraph;
 import com.ibm.wala.dataflow.IFDS.IMergeFunction;
@@ -29,6 +33,9 @@ import com.ibm.wala.ipa.callgraph.propagation.PointerAnalysis;
 import com.ibm.wala.ipa.modref.ModRef;
 import com.ibm.wala.util.CancelException;
 import com.ibm.wala.util.collections.HashSetFactory;
+import com.ibm.wala.util.intset.BitVectorIntSet;
+import com.ibm.wala.util.intset.IntIterator;
+import com.ibm.wala.util.intset.RoaringMutableIntSet;
 
 /**
  * A demand-driven context-sensitive slicer.
@@ -173,6 +180,34 @@ public class Slicer {
     return computeSlice(sdg, ss, true);
   }
 
+  /**
+   * Compute the backward slice of each of a batch of statements over the passed-in SDG, in one pass
+   * 
+   * @see #sliceEach(SDG, Collection, boolean)
+   * @throws CancelException
+   */
+  public static BatchSliceResult computeBackwardSliceOfEach(SDG sdg, Collection<Statement> ss) throws IllegalArgumentException,
+      CancelException {
+    if (sdg == null) {
+      throw new IllegalArgumentException("sdg cannot be null");
+    }
+    return new Slicer().sliceEach(sdg, ss, true);
+  }
+
+  /**
+   * Compute the forward slice of each of a batch of statements over the passed-in SDG, in one pass
+   * 
+   * @see #sliceEach(SDG, Collection, boolean)
+   * @throws CancelException
+   */
+  public static BatchSliceResult computeForwardSliceOfEach(SDG sdg, Collection<Statement> ss) throws IllegalArgumentException,
+      CancelException {
+    if (sdg == null) {
+      throw new IllegalArgumentException("sdg cannot be null");
+    }
+    return new Slicer().sliceEach(sdg, ss, false);
+  }
+
   /**
    * @param ss a collection of statements of interest
    * @throws CancelException
@@ -213,6 +248,51 @@ public class Slicer {
     return slice;
   }
 
+  /**
+   * Slice from each of a batch of roots, in one pass.
+   * 
+   * The slicing flow functions never mix or distinguish facts, so instead of giving each root its own fact, the path edges carry
+   * the set of roots that reach them, and each edge is traversed once for all of those roots. Summary edges are computed once for
+   * all roots in the same way. See {@link BatchSliceSolver}.
+   * 
+   * @param sdg governing system dependence graph
+   * @param roots set of roots to slice from
+   * @param backward do backwards slices?
+   * @return the slice of each root
+   * @throws CancelException
+   */
+  public BatchSliceResult sliceEach(SDG sdg, Collection<Statement> roots, boolean backward) throws CancelException {
+    if (sdg == null) {
+      throw new IllegalArgumentException("sdg cannot be null");
+    }
+    if (roots == null) {
+      throw new IllegalArgumentException("roots cannot be null");
+    }
+    List<Statement> seeds = new ArrayList<Statement>(new LinkedHashSet<Statement>(roots));
+
+    Map<Statement, BitVectorIntSet> reached = new BatchSliceSolver(new SliceProblem(seeds, sdg, backward)).solve(seeds);
+
+    RoaringMutableIntSet[] slices = new RoaringMutableIntSet[seeds.size()];
+    for (int i = 0; i < slices.length; i++) {
+      slices[i] = new RoaringMutableIntSet();
+    }
+    for (Map.Entry<Statement, BitVectorIntSet> e : reached.entrySet()) {
+      int number = sdg.getNumber(e.getKey());
+      for (IntIterator it = e.getValue().intIterator(); it.hasNext();) {
+        slices[it.next()].add(number);
+      }
+    }
+    for (RoaringMutableIntSet slice : slices) {
+      slice.runOptimize();
+    }
+
+    if (VERBOSE) {
+      System.err.println("Slicer done.");
+    }
+
+    return new BatchSliceResult(sdg, seeds, slices);
+  }
+
   /**
    * Return an object which encapsulates the tabulation logic for the slice problem. Subclasses can override this method to
    * implement special semantics.
@@ -10,78 +10,162 @@
  *******************************************************************************/
 package com.ibm.wala.ssa;
 
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.ibm.wala.classLoader.IMethod;
 import com.ibm.wala.ipa.callgraph.Context;
-import com.ibm.wala.util.collections.HashMapFactory;
-import com.ibm.wala.util.collections.HashSetFactory;
-import com.ibm.wala.util.collections.MapUtil;
+import com.ibm.wala.ssa.SSACache.EvictionPolicy;
+import com.ibm.wala.util.ParallelUtil;
 import com.ibm.wala.util.collections.Pair;
-import com.ibm.wala.util.ref.CacheReference;
 
 /**
  * A cache for auxiliary information based on an SSA representation
- * 
- * A mapping from (IMethod,Context) -> SSAOptions -> SoftReference -> something
- * 
- * This doesn't work very well ... GCs don't do such a great job with SoftReferences ... revamp it.
+ *
+ * A mapping from (IMethod,Context) -> SSAOptions -> something
+ *
+ * The cache is safe for concurrent use. Lookups do not block, and values for different keys are computed in parallel; threads
+ * asking for a value that another thread is computing wait for that computation rather than repeating it. Only insertions and
+ * removals, which are cheap compared to computing values, are serialized.
+ *
+ * Each cached value has a weight, and the total weight is kept within a budget: when it is exceeded, entries are evicted
+ * according to the {@link EvictionPolicy} until the total is back under the budget, with some slack so that eviction does not
+ * run on every insertion.
  */
 class AuxiliaryCache {
 
   /**
-   * A mapping from IMethod -> SSAOptions -> SoftReference -> IR
+   * Creates a value to cache, and estimates its size
    */
-  private HashMap<Pair<IMethod, Context>, Map<SSAOptions, Object>> dictionary = HashMapFactory.make();
+  static abstract class Creator<T> {
+    /**
+     * @return the value to cache, or null if there is none
+     */
+    abstract T create();
+
+    /**
+     * @return the weight of value, which counts against the budget of the cache
+     */
+    abstract long weigh(T value);
+  }
 
   /**
-   * Help out the garbage collector: clear this cache when the number of items is > RESET_THRESHOLD
+   * Notified of the entries evicted to keep a cache within its budget
    */
-  final private static int RESET_THRESHOLD = 2000;
+  static abstract class EvictionListener {
+    abstract void evicted(IMethod m, Context c, SSAOptions options, Object value);
+  }
+
+  private static final class Entry {
+    final Object value;
+
+    final long weight;
+
+    volatile long lastUse;
+
+    final AtomicInteger uses = new AtomicInteger();
+
+    Entry(Object value, long weight, long now) {
+      this.value = value;
+      this.weight = weight;
+      this.lastUse = now;
+    }
+  }
 
   /**
-   * number of items cached here.
+   * a computation in progress, and the thread running it
    */
-  private int nItems = 0;
+  private static final class Pending extends FutureTask<Object> {
+    final Thread owner = Thread.currentThread();
+
+    Pending(Callable<Object> callable) {
+      super(callable);
+    }
+  }
 
   /**
-   * The existence of this is unfortunate.
+   * A mapping from (IMethod,Context) -> SSAOptions -> Entry
    */
-  public synchronized void wipe() {
-    dictionary = HashMapFactory.make();
-    nItems = 0;
+  private final ConcurrentMap<Pair<IMethod, Context>, ConcurrentMap<SSAOptions, Entry>> dictionary =
+      new ConcurrentHashMap<Pair<IMethod, Context>, ConcurrentMap<SSAOptions, Entry>>();
+
+  /**
+   * computations in progress, by (IMethod,Context,SSAOptions)
+   */
+  private final ConcurrentMap<Pair<Pair<IMethod, Context>, SSAOptions>, Pending> pending =
+      new ConcurrentHashMap<Pair<Pair<IMethod, Context>, SSAOptions>, Pending>();
+
+  /**
+   * logical time, for LRU eviction
+   */
+  private final AtomicLong clock = new AtomicLong();
+
+  /**
+   * total weight of the cached values
+   */
+  private final AtomicLong weight = new AtomicLong();
+
+  private final AtomicLong hits = new AtomicLong();
+
+  private final AtomicLong misses = new AtomicLong();
+
+  private final AtomicLong evictions = new AtomicLong();
+
+  private volatile long budget;
+
+  private volatile EvictionPolicy policy;
+
+  private volatile EvictionListener listener;
+
+  AuxiliaryCache(long budget, EvictionPolicy policy) {
+    this.budget = budget;
+    this.policy = policy;
+  }
+
+  void setBudget(long budget) {
+    this.budget = budget;
+    evictIfNecessary();
+  }
+
+  long getBudget() {
+    return budget;
+  }
+
+  void setEvictionPolicy(EvictionPolicy policy) {
+    this.policy = policy;
+  }
+
+  EvictionPolicy getEvictionPolicy() {
+    return policy;
   }
 
   /**
-   * clear out things from which no IR is reachable
+   * @param listener to be notified of evictions, or null. Listeners are called without holding any lock of this cache.
    */
-  private void reset() {
-    Map<Pair<IMethod, Context>, Map<SSAOptions, Object>> oldDictionary = dictionary;
-    dictionary = HashMapFactory.make();
-    nItems = 0;
-
-    for (Iterator<Map.Entry<Pair<IMethod, Context>, Map<SSAOptions, Object>>> it = oldDictionary.entrySet().iterator(); it
-        .hasNext();) {
-      Map.Entry<Pair<IMethod, Context>, Map<SSAOptions, Object>> e = it.next();
-      Map<SSAOptions, Object> m = e.getValue();
-      HashSet<Object> toRemove = HashSetFactory.make();
-      for (Iterator it2 = m.entrySet().iterator(); it2.hasNext();) {
-        Map.Entry e2 = (Map.Entry) it2.next();
-        Object key = e2.getKey();
-        Object val = e2.getValue();
-        if (CacheReference.get(val) == null) {
-          toRemove.add(key);
-        }
-      }
-      for (Iterator<Object> it2 = toRemove.iterator(); it2.hasNext();) {
-        m.remove(it2.next());
-      }
-      if (m.size() > 0) {
-        dictionary.put(e.getKey(), m);
-      }
+  void setEvictionListener(EvictionListener listener) {
+    this.listener = listener;
+  }
+
+  SSACache.Statistics getStatistics() {
+    return new SSACache.Statistics(hits.get(), misses.get(), evictions.get(), weight.get());
+  }
+
+  /**
+   * The existence of this is unfortunate.
+   */
+  public void wipe() {
+    for (Pair<IMethod, Context> p : dictionary.keySet()) {
+      removeAll(p);
     }
   }
 
@@ -90,41 +174,211 @@ class AuxiliaryCache {
    * @param options options governing ssa construction
    * @return the object cached for m, or null if none found
    */
-  public synchronized Object find(IMethod m, Context c, SSAOptions options) {
-    // methodMap: SSAOptions -> SoftReference
-    Pair<IMethod, Context> p = Pair.make(m, c);
-    Map methodMap = MapUtil.findOrCreateMap(dictionary, p);
-    Object ref = methodMap.get(options);
-    if (ref == null || CacheReference.get(ref) == null) {
+  public Object find(IMethod m, Context c, SSAOptions options) {
+    Entry e = lookup(Pair.make(m, c), options);
+    if (e == null) {
+      misses.incrementAndGet();
       return null;
+    }
+    hits.incrementAndGet();
+    touch(e);
+    return e.value;
+  }
+
+  private Entry lookup(Pair<IMethod, Context> p, SSAOptions options) {
+    Map<SSAOptions, Entry> methodMap = dictionary.get(p);
+    return methodMap == null ? null : methodMap.get(options);
+  }
+
+  /**
+   * @return the object cached for m, computing and caching it with creator if there is none
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T findOrCreate(IMethod m, Context c, SSAOptions options, final Creator<T> creator) {
+    Object result = find(m, c, options);
+    if (result != null) {
+      return (T) result;
+    }
+    final Pair<IMethod, Context> p = Pair.make(m, c);
+    final SSAOptions o = options;
+    Pair<Pair<IMethod, Context>, SSAOptions> key = Pair.make(p, options);
+    Pending task = new Pending(new Callable<Object>() {
+      @Override
+      public Object call() {
+        T value = creator.create();
+        if (value != null) {
+          cache(p, o, value, creator.weigh(value));
+        }
+        return value;
+      }
+    });
+    Pending running = pending.putIfAbsent(key, task);
+    if (running == null) {
+      // we won the race: compute here, unless a computation that finished in the meantime already cached a value
+      try {
+        Entry e = lookup(p, options);
+        if (e != null) {
+          return (T) e.value;
+        }
+        task.run();
+        return (T) get(task);
+      } finally {
+        pending.remove(key, task);
+      }
+    } else if (running.owner == Thread.currentThread()) {
+      // a reentrant request for a value this thread is already computing; don't wait for ourselves
+      return creator.create();
     } else {
-      return CacheReference.get(ref);
+      return (T) get(running);
+    }
+  }
+
+  private static Object get(Pending task) {
+    boolean interrupted = false;
+    try {
+      while (true) {
+        try {
+          return task.get();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+    } catch (ExecutionException e) {
+      throw ParallelUtil.unchecked(e.getCause());
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
     }
   }
 
   /**
    * cache new auxiliary information for an <m,options> pair
-   * 
+   *
    * @param m a method
    * @param options options governing ssa construction
+   * @param weight the weight of aux, which counts against the budget
    */
-  public synchronized void cache(IMethod m, Context c, SSAOptions options, Object aux) {
-    nItems++;
+  public void cache(IMethod m, Context c, SSAOptions options, Object aux, long weight) {
+    cache(Pair.make(m, c), options, aux, weight);
+  }
 
-    if (nItems > RESET_THRESHOLD) {
-      reset();
+  private void cache(Pair<IMethod, Context> p, SSAOptions options, Object aux, long w) {
+    synchronized (this) {
+      ConcurrentMap<SSAOptions, Entry> methodMap = dictionary.get(p);
+      if (methodMap == null) {
+        ConcurrentMap<SSAOptions, Entry> fresh = new ConcurrentHashMap<SSAOptions, Entry>(2);
+        methodMap = dictionary.putIfAbsent(p, fresh);
+        if (methodMap == null) {
+          methodMap = fresh;
+        }
+      }
+      Entry e = new Entry(aux, w, clock.incrementAndGet());
+      Entry old = methodMap.put(options, e);
+      weight.addAndGet(old == null ? w : w - old.weight);
     }
-    Pair<IMethod, Context> p = Pair.make(m, c);
-    // methodMap: SSAOptions -> SoftReference
-    Map<SSAOptions, Object> methodMap = MapUtil.findOrCreateMap(dictionary, p);
-    Object ref = CacheReference.make(aux);
-    methodMap.put(options, ref);
+    evictIfNecessary();
+  }
+
+  private void touch(Entry e) {
+    e.lastUse = clock.incrementAndGet();
+    e.uses.incrementAndGet();
   }
 
   /**
    * invalidate all cached information about a method
    */
   public void invalidate(IMethod method, Context c) {
-    dictionary.remove(Pair.make(method, c));
+    removeAll(Pair.make(method, c));
+  }
+
+  private synchronized void removeAll(Pair<IMethod, Context> p) {
+    Map<SSAOptions, Entry> methodMap = dictionary.remove(p);
+    if (methodMap != null) {
+      for (Entry e : methodMap.values()) {
+        weight.addAndGet(-e.weight);
+      }
+    }
+  }
+
+  private static final class Candidate {
+    final Pair<IMethod, Context> key;
+
+    final SSAOptions options;
+
+    final Entry entry;
+
+    final long lastUse;
+
+    final int uses;
+
+    Candidate(Pair<IMethod, Context> key, SSAOptions options, Entry entry) {
+      this.key = key;
+      this.options = options;
+      this.entry = entry;
+      this.lastUse = entry.lastUse;
+      this.uses = entry.uses.get();
+    }
+  }
+
+  private static final Comparator<Candidate> LRU = new Comparator<Candidate>() {
+    @Override
+    public int compare(Candidate a, Candidate b) {
+      return a.lastUse < b.lastUse ? -1 : a.lastUse > b.lastUse ? 1 : 0;
+    }
+  };
+
+  private static final Comparator<Candidate> LFU = new Comparator<Candidate>() {
+    @Override
+    public int compare(Candidate a, Candidate b) {
+      if (a.uses != b.uses) {
+        return a.uses < b.uses ? -1 : 1;
+      }
+      return LRU.compare(a, b);
+    }
+  };
+
+  /**
+   * If the budget is exceeded, evict entries until the total weight is down to 7/8 of the budget, and then tell the listener, if
+   * any, about them.
+   */
+  private void evictIfNecessary() {
+    if (weight.get() <= budget) {
+      return;
+    }
+    List<Candidate> evicted = new ArrayList<Candidate>();
+    synchronized (this) {
+      long target = budget - budget / 8;
+      if (weight.get() <= budget) {
+        return;
+      }
+      List<Candidate> candidates = new ArrayList<Candidate>();
+      for (Map.Entry<Pair<IMethod, Context>, ConcurrentMap<SSAOptions, Entry>> e : dictionary.entrySet()) {
+        for (Map.Entry<SSAOptions, Entry> e2 : e.getValue().entrySet()) {
+          candidates.add(new Candidate(e.getKey(), e2.getKey(), e2.getValue()));
+        }
+      }
+      Collections.sort(candidates, policy == EvictionPolicy.LFU ? LFU : LRU);
+      for (Candidate victim : candidates) {
+        if (weight.get() <= target) {
+          break;
+        }
+        ConcurrentMap<SSAOptions, Entry> methodMap = dictionary.get(victim.key);
+        if (methodMap != null && methodMap.remove(victim.options, victim.entry)) {
+          weight.addAndGet(-victim.entry.weight);
+          evictions.incrementAndGet();
+          evicted.add(victim);
+          if (methodMap.isEmpty()) {
+            dictionary.remove(victim.key, methodMap);
+          }
+        }
+      }
+    }
+    EvictionListener l = listener;
+    if (l != null) {
+      for (Candidate victim : evicted) {
+        l.evicted(victim.key.fst, victim.key.snd, victim.options, victim.entry.value);
+      }
+    }
   }
 }
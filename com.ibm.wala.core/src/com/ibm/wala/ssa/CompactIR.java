@@ -0,0 +1,795 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.ssa;
+
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.ibm.wala.cfg.ShrikeCFG;
+import com.ibm.wala.classLoader.IBytecodeMethod;
+import com.ibm.wala.classLoader.IClassLoader;
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.classLoader.ShrikeIRFactory;
+import com.ibm.wala.ipa.cha.IClassHierarchy;
+import com.ibm.wala.shrikeBT.IBinaryOpInstruction;
+import com.ibm.wala.shrikeBT.IComparisonInstruction;
+import com.ibm.wala.shrikeBT.IConditionalBranchInstruction;
+import com.ibm.wala.shrikeBT.IShiftInstruction;
+import com.ibm.wala.shrikeBT.IUnaryOpInstruction;
+import com.ibm.wala.shrikeCT.InvalidClassFileException;
+import com.ibm.wala.ssa.SSACFG.BasicBlock;
+import com.ibm.wala.ssa.SSACFG.ExceptionHandlerBasicBlock;
+import com.ibm.wala.types.ClassLoaderReference;
+import com.ibm.wala.types.Descriptor;
+import com.ibm.wala.types.FieldReference;
+import com.ibm.wala.types.MethodReference;
+import com.ibm.wala.types.TypeName;
+import com.ibm.wala.types.TypeReference;
+import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.collections.HashSetFactory;
+import com.ibm.wala.util.intset.IntPair;
+import com.ibm.wala.util.strings.Atom;
+import com.ibm.wala.util.strings.ImmutableByteArray;
+
+/**
+ * A compact binary encoding of the SSA {@link IR} of a bytecode method, for keeping IRs off the heap.
+ *
+ * A record holds what SSA construction computes: the instructions, the phis and catch instructions of each basic block, the
+ * symbol table, and the mapping from value numbers to locals. The instructions are recorded in their {@link PackedInstructions}
+ * form, and come right after the string table, so that {@link #decodeInstructions} can read them alone. Everything is written as
+ * variable-length integers, and all names are gathered in a string table at the start of the record. The control-flow graph is
+ * not recorded; {@link #decode} rebuilds it from the bytecodes, which is cheap compared to SSA construction.
+ *
+ * Only IRs as built by {@link ShrikeIRFactory} can be encoded, and then only if they have no pi nodes and their instructions can
+ * be packed; {@link #encode(IR)} returns null for all others.
+ */
+public class CompactIR {
+
+  /*
+   * reference tags
+   */
+  private final static int TYPE = 0;
+
+  private final static int FIELD = 1;
+
+  private final static int METHOD = 2;
+
+  private final static int OPERATOR = 3;
+
+  /*
+   * symbol table value tags
+   */
+  private final static int NO_VALUE = 0;
+
+  private final static int PHI = 1;
+
+  private final static int NULL = 2;
+
+  private final static int FALSE = 3;
+
+  private final static int TRUE = 4;
+
+  private final static int INT = 5;
+
+  private final static int LONG = 6;
+
+  private final static int FLOAT = 7;
+
+  private final static int DOUBLE = 8;
+
+  private final static int STRING = 9;
+
+  /**
+   * the operator enumerations, recorded by index in this array and ordinal
+   */
+  private final static Class<?>[] OPERATORS = { IBinaryOpInstruction.Operator.class, IShiftInstruction.Operator.class,
+      IUnaryOpInstruction.Operator.class, IConditionalBranchInstruction.Operator.class, IComparisonInstruction.Operator.class };
+
+  private CompactIR() {
+  }
+
+  /**
+   * @return the encoding of ir, or null if ir cannot be encoded
+   * @throws IllegalArgumentException if ir is null
+   */
+  public static byte[] encode(IR ir) {
+    if (ir == null) {
+      throw new IllegalArgumentException("null ir");
+    }
+    Object delegate = ir.getControlFlowGraph().delegate;
+    if (!(ir.getMethod() instanceof IBytecodeMethod) || !(delegate instanceof ShrikeCFG)) {
+      return null;
+    }
+    SSAIndirectionData<?> indirections = ir.getIndirectionData();
+    if (indirections != null && !indirections.getNames().isEmpty()) {
+      return null;
+    }
+    IR.SSA2LocalMap localMap = ir.getLocalMap();
+    if (localMap != null && !(localMap instanceof SSABuilder.SSA2LocalMap)) {
+      return null;
+    }
+    if (ir.getSymbolTable().hasDefaultValues()) {
+      return null;
+    }
+    PackedInstructions packed = PackedInstructions.make(ir);
+    if (packed == null) {
+      return null;
+    }
+    Encoder e = new Encoder(ir.getMethod().getClassHierarchy());
+    try {
+      if (e.encodeInstructions(packed) && e.encodeSymbolTable(ir.getSymbolTable())
+          && e.encodeBlocks(ir.getControlFlowGraph(), ir.getSymbolTable())) {
+        e.encodeLocalMap((SSABuilder.SSA2LocalMap) localMap);
+        return e.toByteArray();
+      } else {
+        return null;
+      }
+    } catch (UTFDataFormatException x) {
+      return null;
+    }
+  }
+
+  /**
+   * Rebuild an IR from its encoding.
+   *
+   * @param method the method whose IR was encoded
+   * @param options the options the IR was built with
+   * @param record the encoding, from its position to its limit; the position of the buffer is not changed
+   * @throws IllegalArgumentException if method is not a bytecode method
+   */
+  public static IR decode(IMethod method, SSAOptions options, ByteBuffer record) {
+    if (!(method instanceof IBytecodeMethod)) {
+      throw new IllegalArgumentException("not a bytecode method: " + method);
+    }
+    if (record == null) {
+      throw new IllegalArgumentException("null record");
+    }
+    return new Decoder(method.getClassHierarchy(), record.duplicate()).decode((IBytecodeMethod) method, options);
+  }
+
+  /**
+   * Read just the instructions of an encoded IR, without rebuilding its control-flow graph and symbol table.
+   *
+   * @param method the method whose IR was encoded
+   * @param record the encoding, from its position to its limit; the position of the buffer is not changed
+   * @throws IllegalArgumentException if method is not a bytecode method
+   */
+  public static PackedInstructions decodeInstructions(IMethod method, ByteBuffer record) {
+    if (!(method instanceof IBytecodeMethod)) {
+      throw new IllegalArgumentException("not a bytecode method: " + method);
+    }
+    if (record == null) {
+      throw new IllegalArgumentException("null record");
+    }
+    Decoder d = new Decoder(method.getClassHierarchy(), record.duplicate());
+    d.readStrings(method);
+    return d.readInstructions();
+  }
+
+  /**
+   * A growable buffer of variable-length integers
+   */
+  private static class Output {
+    private byte[] bytes = new byte[256];
+
+    private int size = 0;
+
+    private void ensureCapacity(int n) {
+      if (size + n > bytes.length) {
+        bytes = Arrays.copyOf(bytes, Math.max(2 * bytes.length, size + n));
+      }
+    }
+
+    /**
+     * write a non-negative int, seven bits per byte
+     */
+    void writeNat(int v) {
+      ensureCapacity(5);
+      while ((v & ~0x7f) != 0) {
+        bytes[size++] = (byte) ((v & 0x7f) | 0x80);
+        v >>>= 7;
+      }
+      bytes[size++] = (byte) v;
+    }
+
+    void writeLong(long v) {
+      ensureCapacity(10);
+      // zig-zag, so that small negative numbers are short too
+      v = (v << 1) ^ (v >> 63);
+      while ((v & ~0x7fL) != 0) {
+        bytes[size++] = (byte) ((v & 0x7f) | 0x80);
+        v >>>= 7;
+      }
+      bytes[size++] = (byte) v;
+    }
+
+    void writeInt(int v) {
+      writeNat((v << 1) ^ (v >> 31));
+    }
+
+    void writeBoolean(boolean b) {
+      writeNat(b ? 1 : 0);
+    }
+
+    void write(Output o) {
+      ensureCapacity(o.size);
+      System.arraycopy(o.bytes, 0, bytes, size, o.size);
+      size += o.size;
+    }
+  }
+
+  /**
+   * A cursor over an encoded record
+   */
+  private static class Input {
+    private final ByteBuffer buffer;
+
+    Input(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    int readNat() {
+      int result = 0;
+      for (int shift = 0;; shift += 7) {
+        byte b = buffer.get();
+        result |= (b & 0x7f) << shift;
+        if (b >= 0) {
+          return result;
+        }
+      }
+    }
+
+    long readLong() {
+      long v = 0;
+      for (int shift = 0;; shift += 7) {
+        byte b = buffer.get();
+        v |= (long) (b & 0x7f) << shift;
+        if (b >= 0) {
+          break;
+        }
+      }
+      return (v >>> 1) ^ -(v & 1);
+    }
+
+    int readInt() {
+      int v = readNat();
+      return (v >>> 1) ^ -(v & 1);
+    }
+
+    boolean readBoolean() {
+      return readNat() != 0;
+    }
+  }
+
+  private static class Encoder {
+
+    private final Output out = new Output();
+
+    /**
+     * index of each string in the string table
+     */
+    private final Map<String, Integer> strings = HashMapFactory.make();
+
+    private final List<String> stringTable = new ArrayList<String>();
+
+    /**
+     * index of each class loader in the class hierarchy
+     */
+    private final Map<ClassLoaderReference, Integer> loaders = HashMapFactory.make();
+
+    /**
+     * cleared when a reference cannot be encoded
+     */
+    private boolean encoded = true;
+
+    /**
+     * set when a name cannot be encoded
+     */
+    private UTFDataFormatException badName;
+
+    Encoder(IClassHierarchy cha) {
+      IClassLoader[] l = cha.getLoaders();
+      for (int i = 0; i < l.length; i++) {
+        loaders.put(l[i].getReference(), i);
+      }
+    }
+
+    byte[] toByteArray() {
+      Output result = new Output();
+      result.writeNat(stringTable.size());
+      for (String s : stringTable) {
+        result.writeNat(s.length());
+        for (int i = 0; i < s.length(); i++) {
+          result.writeNat(s.charAt(i));
+        }
+      }
+      result.write(out);
+      return Arrays.copyOf(result.bytes, result.size);
+    }
+
+    boolean encodeInstructions(PackedInstructions packed) throws UTFDataFormatException {
+      out.writeNat(packed.size());
+      for (int i = 0; i < packed.size(); i++) {
+        out.writeNat(packed.opcodes[i]);
+        if (packed.opcodes[i] != 0) {
+          out.writeNat(packed.starts[i + 1] - packed.starts[i]);
+          for (int j = packed.starts[i]; j < packed.starts[i + 1]; j++) {
+            out.writeInt(packed.data[j]);
+          }
+        }
+      }
+      out.writeNat(packed.references.length);
+      for (Object r : packed.references) {
+        writeReference(r);
+      }
+      if (badName != null) {
+        throw badName;
+      }
+      return encoded;
+    }
+
+    boolean encodeSymbolTable(SymbolTable symbolTable) {
+      Set<ConstantValue> constants = HashSetFactory.make();
+      out.writeNat(symbolTable.getMaxValueNumber());
+      for (int vn = symbolTable.getNumberOfParameters() + 1; vn <= symbolTable.getMaxValueNumber(); vn++) {
+        Value v = symbolTable.getValue(vn);
+        if (v == null) {
+          out.writeNat(NO_VALUE);
+        } else if (v instanceof PhiValue) {
+          out.writeNat(PHI);
+          writeUses(((PhiValue) v).getPhiInstruction());
+        } else if (v instanceof ConstantValue && constants.add((ConstantValue) v)) {
+          Object c = ((ConstantValue) v).getValue();
+          if (c == null) {
+            out.writeNat(NULL);
+          } else if (c instanceof Boolean) {
+            out.writeNat(((Boolean) c).booleanValue() ? TRUE : FALSE);
+          } else if (c instanceof Integer) {
+            out.writeNat(INT);
+            out.writeInt((Integer) c);
+          } else if (c instanceof Long) {
+            out.writeNat(LONG);
+            out.writeLong((Long) c);
+          } else if (c instanceof Float) {
+            out.writeNat(FLOAT);
+            out.writeInt(Float.floatToRawIntBits((Float) c));
+          } else if (c instanceof Double) {
+            out.writeNat(DOUBLE);
+            out.writeLong(Double.doubleToRawLongBits((Double) c));
+          } else if (c instanceof String) {
+            out.writeNat(STRING);
+            writeString((String) c);
+          } else {
+            return false;
+          }
+        } else {
+          // some other kind of value, or a constant with more than one value number
+          return false;
+        }
+      }
+      return true;
+    }
+
+    boolean encodeBlocks(SSACFG cfg, SymbolTable symbolTable) throws UTFDataFormatException {
+      out.writeNat(cfg.getMaxNumber() + 1);
+      for (int i = 0; i <= cfg.getMaxNumber(); i++) {
+        BasicBlock bb = cfg.getNode(i);
+        if (bb.iteratePis().hasNext()) {
+          return false;
+        }
+        List<SSAPhiInstruction> phis = new ArrayList<SSAPhiInstruction>();
+        for (Iterator<SSAPhiInstruction> it = bb.iteratePhis(); it.hasNext();) {
+          SSAPhiInstruction phi = it.next();
+          // phis are recorded by their value numbers, so they must be the ones in the symbol table
+          Value v = symbolTable.getValue(phi.getDef());
+          if (!(v instanceof PhiValue) || ((PhiValue) v).getPhiInstruction() != phi) {
+            return false;
+          }
+          phis.add(phi);
+        }
+        out.writeNat(phis.size());
+        for (SSAPhiInstruction phi : phis) {
+          out.writeNat(phi.getDef());
+        }
+        if (bb instanceof ExceptionHandlerBasicBlock) {
+          SSAGetCaughtExceptionInstruction s = ((ExceptionHandlerBasicBlock) bb).getCatchInstruction();
+          out.writeBoolean(s != null);
+          if (s != null) {
+            out.writeInt(s.iindex);
+            out.writeInt(s.getException());
+          }
+        }
+      }
+      return true;
+    }
+
+    void encodeLocalMap(SSABuilder.SSA2LocalMap localMap) {
+      out.writeBoolean(localMap != null);
+      if (localMap != null) {
+        IntPair[] stores = localMap.getLocalStoreMap();
+        int count = 0;
+        for (IntPair p : stores) {
+          if (p != null) {
+            count++;
+          }
+        }
+        out.writeNat(stores.length);
+        out.writeNat(count);
+        for (int i = 0; i < stores.length; i++) {
+          if (stores[i] != null) {
+            out.writeNat(i);
+            out.writeInt(stores[i].getX());
+            out.writeInt(stores[i].getY());
+          }
+        }
+        int[][] states = localMap.getBlock2LocalState();
+        out.writeNat(states.length);
+        for (int[] locals : states) {
+          if (locals == null) {
+            out.writeNat(0);
+          } else {
+            out.writeNat(locals.length + 1);
+            for (int l : locals) {
+              out.writeInt(l);
+            }
+          }
+        }
+      }
+    }
+
+    private void writeString(String s) {
+      Integer index = strings.get(s);
+      if (index == null) {
+        index = stringTable.size();
+        strings.put(s, index);
+        stringTable.add(s);
+      }
+      out.writeNat(index);
+    }
+
+    private void writeUses(SSAInstruction s) {
+      out.writeNat(s.getNumberOfUses());
+      for (int i = 0; i < s.getNumberOfUses(); i++) {
+        out.writeInt(s.getUse(i));
+      }
+    }
+
+    private void writeOperator(Object operator) {
+      for (int i = 0; i < OPERATORS.length; i++) {
+        if (OPERATORS[i].isInstance(operator)) {
+          out.writeNat(i);
+          out.writeNat(((Enum<?>) operator).ordinal());
+          return;
+        }
+      }
+      encoded = false;
+    }
+
+    private void writeLoader(ClassLoaderReference loader) {
+      Integer index = loaders.get(loader);
+      if (index == null) {
+        encoded = false;
+      } else {
+        out.writeNat(index);
+      }
+    }
+
+    private void writeTypeName(TypeName name) {
+      writeString(name.toUnicodeString());
+    }
+
+    private void writeAtom(Atom a) {
+      try {
+        writeString(a.toUnicodeString());
+      } catch (UTFDataFormatException e) {
+        badName = e;
+      }
+    }
+
+    private void writeType(TypeReference t) {
+      writeLoader(t.getClassLoader());
+      writeTypeName(t.getName());
+    }
+
+    private void writeField(FieldReference f) {
+      writeType(f.getDeclaringClass());
+      writeAtom(f.getName());
+      writeType(f.getFieldType());
+    }
+
+    private void writeMethod(MethodReference m) {
+      writeType(m.getDeclaringClass());
+      writeAtom(m.getName());
+      Descriptor d = m.getDescriptor();
+      TypeName[] parameters = d.getParameters();
+      out.writeNat(parameters == null ? 0 : parameters.length);
+      if (parameters != null) {
+        for (TypeName p : parameters) {
+          writeTypeName(p);
+        }
+      }
+      writeTypeName(d.getReturnType());
+    }
+
+    private void writeReference(Object r) {
+      if (r instanceof TypeReference) {
+        out.writeNat(TYPE);
+        writeType((TypeReference) r);
+      } else if (r instanceof FieldReference) {
+        out.writeNat(FIELD);
+        writeField((FieldReference) r);
+      } else if (r instanceof MethodReference) {
+        out.writeNat(METHOD);
+        writeMethod((MethodReference) r);
+      } else {
+        out.writeNat(OPERATOR);
+        writeOperator(r);
+      }
+    }
+  }
+
+  private static class Decoder {
+
+    private final Input in;
+
+    private final IClassLoader[] loaders;
+
+    private String[] strings;
+
+    private SSAInstructionFactory insts;
+
+    Decoder(IClassHierarchy cha, ByteBuffer record) {
+      this.in = new Input(record);
+      this.loaders = cha.getLoaders();
+    }
+
+    void readStrings(IMethod method) {
+      strings = new String[in.readNat()];
+      for (int i = 0; i < strings.length; i++) {
+        char[] chars = new char[in.readNat()];
+        for (int j = 0; j < chars.length; j++) {
+          chars[j] = (char) in.readNat();
+        }
+        strings[i] = new String(chars);
+      }
+      insts = method.getDeclaringClass().getClassLoader().getInstructionFactory();
+    }
+
+    PackedInstructions readInstructions() {
+      int[] opcodes = new int[in.readNat()];
+      int[] starts = new int[opcodes.length + 1];
+      int[] data = new int[16];
+      int size = 0;
+      for (int i = 0; i < opcodes.length; i++) {
+        opcodes[i] = in.readNat();
+        if (opcodes[i] != 0) {
+          int n = in.readNat();
+          if (size + n > data.length) {
+            data = Arrays.copyOf(data, Math.max(2 * data.length, size + n));
+          }
+          for (int j = 0; j < n; j++) {
+            data[size++] = in.readInt();
+          }
+        }
+        starts[i + 1] = size;
+      }
+      Object[] references = new Object[in.readNat()];
+      for (int i = 0; i < references.length; i++) {
+        references[i] = readReference();
+      }
+      return new PackedInstructions(insts, opcodes, starts, Arrays.copyOf(data, size), references);
+    }
+
+    IR decode(IBytecodeMethod method, SSAOptions options) {
+      readStrings(method);
+      SSAInstruction[] instructions = readInstructions().toArray();
+
+      ShrikeCFG shrikeCFG = ShrikeCFG.make(method);
+      SSACFG cfg = new SSACFG(method, shrikeCFG, instructions);
+
+      SymbolTable symbolTable = new SymbolTable(method.getNumberOfParameters());
+      int maxValueNumber = in.readNat();
+      for (int vn = symbolTable.getNumberOfParameters() + 1; vn <= maxValueNumber; vn++) {
+        int tag = in.readNat();
+        int v = readValue(tag, symbolTable);
+        if (v != vn) {
+          throw new IllegalStateException("corrupt IR record for " + method + ": value " + vn + " decoded as " + v);
+        }
+      }
+
+      int nBlocks = in.readNat();
+      for (int i = 0; i < nBlocks; i++) {
+        BasicBlock bb = cfg.getNode(i);
+        int local = 0;
+        for (int nPhis = in.readNat(); nPhis > 0; nPhis--) {
+          bb.addPhiForLocal(local++, symbolTable.getPhiValue(in.readNat()).getPhiInstruction());
+        }
+        if (bb instanceof ExceptionHandlerBasicBlock && in.readBoolean()) {
+          int iindex = in.readInt();
+          ((ExceptionHandlerBasicBlock) bb).setCatchInstruction(insts.GetCaughtExceptionInstruction(iindex, i, in.readInt()));
+        }
+      }
+
+      SSABuilder.SSA2LocalMap localMap = null;
+      if (in.readBoolean()) {
+        IntPair[] stores = new IntPair[in.readNat()];
+        for (int count = in.readNat(); count > 0; count--) {
+          int i = in.readNat();
+          int x = in.readInt();
+          stores[i] = new IntPair(x, in.readInt());
+        }
+        int[][] states = new int[in.readNat()][];
+        for (int i = 0; i < states.length; i++) {
+          int n = in.readNat();
+          if (n > 0) {
+            states[i] = new int[n - 1];
+            for (int j = 0; j < n - 1; j++) {
+              states[i][j] = in.readInt();
+            }
+          }
+        }
+        localMap = new SSABuilder.SSA2LocalMap(shrikeCFG, stores, states);
+      }
+
+      return new DecodedIR(method, instructions, symbolTable, cfg, options, localMap);
+    }
+
+    /**
+     * @return the value number of the value
+     */
+    private int readValue(int tag, SymbolTable symbolTable) {
+      switch (tag) {
+      case NO_VALUE:
+        return symbolTable.newSymbol();
+      case PHI:
+        return symbolTable.newPhi(readInts());
+      case NULL:
+        return symbolTable.getNullConstant();
+      case FALSE:
+        return symbolTable.getConstant(false);
+      case TRUE:
+        return symbolTable.getConstant(true);
+      case INT:
+        return symbolTable.getConstant(in.readInt());
+      case LONG:
+        return symbolTable.getConstant(in.readLong());
+      case FLOAT:
+        return symbolTable.getConstant(Float.intBitsToFloat(in.readInt()));
+      case DOUBLE:
+        return symbolTable.getConstant(Double.longBitsToDouble(in.readLong()));
+      case STRING:
+        return symbolTable.getConstant(readString());
+      default:
+        throw new IllegalStateException("corrupt IR record: value tag " + tag);
+      }
+    }
+
+    private int[] readInts() {
+      int[] result = new int[in.readNat()];
+      for (int i = 0; i < result.length; i++) {
+        result[i] = in.readInt();
+      }
+      return result;
+    }
+
+    private String readString() {
+      return strings[in.readNat()];
+    }
+
+    private Object readOperator() {
+      int kind = in.readNat();
+      return OPERATORS[kind].getEnumConstants()[in.readNat()];
+    }
+
+    private Atom readAtom() {
+      return Atom.findOrCreateUnicodeAtom(readString());
+    }
+
+    private TypeName readTypeName() {
+      return TypeName.findOrCreate(ImmutableByteArray.make(readString()));
+    }
+
+    private TypeReference readType() {
+      ClassLoaderReference loader = loaders[in.readNat()].getReference();
+      return TypeReference.findOrCreate(loader, readTypeName());
+    }
+
+    private FieldReference readField() {
+      TypeReference declaringClass = readType();
+      Atom name = readAtom();
+      return FieldReference.findOrCreate(declaringClass, name, readType());
+    }
+
+    private MethodReference readMethod() {
+      TypeReference declaringClass = readType();
+      Atom name = readAtom();
+      TypeName[] parameters = new TypeName[in.readNat()];
+      for (int i = 0; i < parameters.length; i++) {
+        parameters[i] = readTypeName();
+      }
+      Descriptor d = Descriptor.findOrCreate(parameters.length == 0 ? null : parameters, readTypeName());
+      return MethodReference.findOrCreate(declaringClass, name, d);
+    }
+
+    private Object readReference() {
+      int tag = in.readNat();
+      switch (tag) {
+      case TYPE:
+        return readType();
+      case FIELD:
+        return readField();
+      case METHOD:
+        return readMethod();
+      case OPERATOR:
+        return readOperator();
+      default:
+        throw new IllegalStateException("corrupt IR record: reference tag " + tag);
+      }
+    }
+  }
+
+  /**
+   * An IR rebuilt from its encoding; this mirrors the IRs built by {@link ShrikeIRFactory}
+   */
+  private static class DecodedIR extends IR {
+
+    private final IBytecodeMethod method;
+
+    private final SSABuilder.SSA2LocalMap localMap;
+
+    private final ShrikeIndirectionData indirectionData;
+
+    DecodedIR(IBytecodeMethod method, SSAInstruction[] instructions, SymbolTable symbolTable, SSACFG cfg, SSAOptions options,
+        SSABuilder.SSA2LocalMap localMap) {
+      super(method, instructions, symbolTable, cfg, options);
+      this.method = method;
+      this.localMap = localMap;
+      this.indirectionData = new ShrikeIndirectionData(instructions.length);
+      setupLocationMap();
+    }
+
+    @Override
+    protected String instructionPosition(int instructionIndex) {
+      try {
+        int bcIndex = method.getBytecodeIndex(instructionIndex);
+        int lineNumber = method.getLineNumber(bcIndex);
+
+        if (lineNumber == -1) {
+          return "";
+        } else {
+          return "(line " + lineNumber + ")";
+        }
+      } catch (InvalidClassFileException e) {
+        return "";
+      }
+    }
+
+    @Override
+    public SSA2LocalMap getLocalMap() {
+      return localMap;
+    }
+
+    /**
+     * Only ever asked for {@link ShrikeIndirectionData.ShrikeLocalName}s, the names used by bytecode IRs, so the cast is safe.
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    protected <T extends SSAIndirectionData.Name> SSAIndirectionData<T> getIndirectionData() {
+      return (SSAIndirectionData<T>) (SSAIndirectionData<?>) indirectionData;
+    }
+  }
+}
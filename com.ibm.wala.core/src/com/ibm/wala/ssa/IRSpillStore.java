@@ -0,0 +1,263 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.ssa;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.util.collections.Pair;
+
+/**
+ * A store for IRs in their {@link CompactIR} encoding, kept outside the Java heap.
+ *
+ * Records live either in direct byte buffers ({@link #makeOffHeap()}), or in a memory-mapped spill file ({@link #makeMapped(File)}),
+ * in which case the operating system pages them out to disk as needed. Either way, the heap only holds a small index entry per
+ * method. An {@link SSACache} given a spill store via {@link SSACache#setSpillStore(IRSpillStore)} spills the IRs it evicts, and
+ * rehydrates them from here rather than building them again.
+ *
+ * Records are appended to fixed-size segments and never move. Space is not reclaimed when a record is removed or replaced; a
+ * store is meant to live as long as one analysis.
+ *
+ * The store is safe for concurrent use.
+ */
+public class IRSpillStore {
+
+  /**
+   * default size of the segments records are allocated in
+   */
+  public static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+  /**
+   * the location of a record
+   */
+  private static final class Record {
+    final ByteBuffer segment;
+
+    final int offset;
+
+    final int length;
+
+    Record(ByteBuffer segment, int offset, int length) {
+      this.segment = segment;
+      this.offset = offset;
+      this.length = length;
+    }
+  }
+
+  /**
+   * the spill file, or null for a store in direct buffers
+   */
+  private final RandomAccessFile file;
+
+  private final int segmentSize;
+
+  /**
+   * the segment records are currently appended to
+   */
+  private ByteBuffer current;
+
+  /**
+   * total size of the segments allocated so far
+   */
+  private long allocated;
+
+  private final ConcurrentMap<Pair<IMethod, SSAOptions>, Record> index = new ConcurrentHashMap<Pair<IMethod, SSAOptions>, Record>();
+
+  private final AtomicLong bytes = new AtomicLong();
+
+  private final AtomicLong spills = new AtomicLong();
+
+  private final AtomicLong rehydrations = new AtomicLong();
+
+  private IRSpillStore(RandomAccessFile file, int segmentSize) {
+    if (segmentSize <= 0) {
+      throw new IllegalArgumentException("invalid segment size: " + segmentSize);
+    }
+    this.file = file;
+    this.segmentSize = segmentSize;
+  }
+
+  /**
+   * @return a store that keeps records in direct byte buffers
+   */
+  public static IRSpillStore makeOffHeap() {
+    return makeOffHeap(DEFAULT_SEGMENT_SIZE);
+  }
+
+  public static IRSpillStore makeOffHeap(int segmentSize) {
+    return new IRSpillStore(null, segmentSize);
+  }
+
+  /**
+   * @param spillFile a file to map records into; it is truncated, and may be deleted once the store is closed
+   * @return a store that keeps records in a memory-mapped file
+   */
+  public static IRSpillStore makeMapped(File spillFile) throws IOException {
+    return makeMapped(spillFile, DEFAULT_SEGMENT_SIZE);
+  }
+
+  public static IRSpillStore makeMapped(File spillFile, int segmentSize) throws IOException {
+    if (spillFile == null) {
+      throw new IllegalArgumentException("null spillFile");
+    }
+    RandomAccessFile f = new RandomAccessFile(spillFile, "rw");
+    f.setLength(0);
+    return new IRSpillStore(f, segmentSize);
+  }
+
+  /**
+   * Encode ir and store it, unless it is already stored.
+   *
+   * @return true if ir is now stored, false if it cannot be encoded
+   * @throws IOException if the spill file cannot be extended
+   */
+  public boolean spill(IR ir) throws IOException {
+    if (ir == null) {
+      throw new IllegalArgumentException("null ir");
+    }
+    Pair<IMethod, SSAOptions> key = Pair.make(ir.getMethod(), ir.getOptions());
+    if (index.containsKey(key)) {
+      return true;
+    }
+    byte[] record = CompactIR.encode(ir);
+    if (record == null) {
+      return false;
+    }
+    index.put(key, append(record));
+    bytes.addAndGet(record.length);
+    spills.incrementAndGet();
+    return true;
+  }
+
+  private synchronized Record append(byte[] record) throws IOException {
+    if (current == null || current.remaining() < record.length) {
+      current = allocate(Math.max(segmentSize, record.length));
+    }
+    int offset = current.position();
+    current.put(record);
+    return new Record(current, offset, record.length);
+  }
+
+  private ByteBuffer allocate(int size) throws IOException {
+    ByteBuffer result;
+    if (file == null) {
+      result = ByteBuffer.allocateDirect(size);
+    } else {
+      result = file.getChannel().map(FileChannel.MapMode.READ_WRITE, allocated, size);
+    }
+    allocated += size;
+    return result;
+  }
+
+  /**
+   * @return the IR stored for m and options, decoded afresh, or null if there is none
+   */
+  public IR rehydrate(IMethod m, SSAOptions options) {
+    ByteBuffer b = find(m, options);
+    if (b == null) {
+      return null;
+    }
+    rehydrations.incrementAndGet();
+    return CompactIR.decode(m, options, b);
+  }
+
+  /**
+   * @return the instructions of the IR stored for m and options, decoded afresh without the rest of the IR, or null if there is
+   *         none
+   */
+  public PackedInstructions rehydrateInstructions(IMethod m, SSAOptions options) {
+    ByteBuffer b = find(m, options);
+    return b == null ? null : CompactIR.decodeInstructions(m, b);
+  }
+
+  /**
+   * @return a view of the record stored for m and options, or null if there is none
+   */
+  private ByteBuffer find(IMethod m, SSAOptions options) {
+    Record r = index.get(Pair.make(m, options));
+    if (r == null) {
+      return null;
+    }
+    // records never change once written, so reading them through a private view needs no locking
+    ByteBuffer b = r.segment.duplicate();
+    b.limit(r.offset + r.length);
+    b.position(r.offset);
+    return b;
+  }
+
+  public boolean contains(IMethod m, SSAOptions options) {
+    return index.containsKey(Pair.make(m, options));
+  }
+
+  /**
+   * forget the records of a method, for any options
+   */
+  public void remove(IMethod m) {
+    for (Iterator<Pair<IMethod, SSAOptions>> it = index.keySet().iterator(); it.hasNext();) {
+      if (it.next().fst.equals(m)) {
+        it.remove();
+      }
+    }
+  }
+
+  /**
+   * @return the number of records in the store
+   */
+  public int size() {
+    return index.size();
+  }
+
+  /**
+   * @return the total size of the records spilled so far, in bytes
+   */
+  public long getSpilledBytes() {
+    return bytes.get();
+  }
+
+  /**
+   * @return the number of records spilled so far
+   */
+  public long getSpillCount() {
+    return spills.get();
+  }
+
+  /**
+   * @return the number of IRs decoded so far
+   */
+  public long getRehydrationCount() {
+    return rehydrations.get();
+  }
+
+  /**
+   * Forget all records and close the spill file, if any. The memory of direct buffers and mappings is released once they are
+   * garbage collected.
+   */
+  public synchronized void close() throws IOException {
+    index.clear();
+    current = null;
+    if (file != null) {
+      file.close();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "IRSpillStore: " + size() + " records, " + getSpilledBytes() + " bytes spilled";
+  }
+}
@@ -0,0 +1,547 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.ssa;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import com.ibm.wala.classLoader.CallSiteReference;
+import com.ibm.wala.classLoader.NewSiteReference;
+import com.ibm.wala.shrikeBT.IBinaryOpInstruction;
+import com.ibm.wala.shrikeBT.IComparisonInstruction;
+import com.ibm.wala.shrikeBT.IConditionalBranchInstruction;
+import com.ibm.wala.shrikeBT.IInvokeInstruction;
+import com.ibm.wala.shrikeBT.IUnaryOpInstruction;
+import com.ibm.wala.types.FieldReference;
+import com.ibm.wala.types.MethodReference;
+import com.ibm.wala.types.TypeReference;
+import com.ibm.wala.util.collections.HashMapFactory;
+
+/**
+ * The normal instructions of a method, packed into a few arrays rather than held as one object per instruction.
+ *
+ * For each instruction index there is an opcode word, holding the kind of instruction, its number of defs and uses, and its
+ * boolean attributes. The defs, the uses and the remaining operands of all instructions are laid out one instruction after the
+ * other in a single int array; types, fields, methods and operators appear there as indices into a table of references that is
+ * shared by all instructions of the method. Defs and uses can be read straight from the arrays. {@link #get(int)} builds an
+ * {@link SSAInstruction} view of an instruction on demand, so that code written against {@link SSAInstruction} and its visitors
+ * works on packed instructions as well. Views are not cached: each call builds a fresh one, equal to, but not identical with, the
+ * previous ones.
+ *
+ * Instructions from other languages, invokedynamic instructions, and the pi and phi instructions do not have a packed form;
+ * {@link #make(SSAInstructionFactory, SSAInstruction[])} returns null for arrays that hold any of them.
+ *
+ * {@link CompactIR} records hold the instructions of an IR in this form, and {@link CompactIR#decodeInstructions} reads just them
+ * back, without rebuilding the rest of the IR. {@link SSACache#findOrCreatePackedInstructions} uses that for IRs that were
+ * spilled.
+ */
+public class PackedInstructions {
+
+  /*
+   * instruction kinds; 0 marks an index with no instruction
+   */
+  private final static int GOTO = 1;
+
+  private final static int ARRAY_LOAD = 2;
+
+  private final static int ARRAY_STORE = 3;
+
+  private final static int BINARY_OP = 4;
+
+  private final static int UNARY_OP = 5;
+
+  private final static int CONVERSION = 6;
+
+  private final static int COMPARISON = 7;
+
+  private final static int CONDITIONAL_BRANCH = 8;
+
+  private final static int SWITCH = 9;
+
+  private final static int RETURN = 10;
+
+  private final static int GET = 11;
+
+  private final static int PUT = 12;
+
+  private final static int INVOKE = 13;
+
+  private final static int NEW = 14;
+
+  private final static int ARRAY_LENGTH = 15;
+
+  private final static int THROW = 16;
+
+  private final static int MONITOR = 17;
+
+  private final static int CHECK_CAST = 18;
+
+  private final static int INSTANCEOF = 19;
+
+  private final static int LOAD_METADATA = 20;
+
+  /*
+   * layout of an opcode word: the kind in the low 8 bits, then the number of defs, the number of uses, and a flag
+   */
+  private final static int KIND_MASK = 0xff;
+
+  private final static int DEFS_SHIFT = 8;
+
+  private final static int DEFS_MASK = 0x3;
+
+  private final static int USES_SHIFT = 10;
+
+  private final static int USES_MASK = 0xffff;
+
+  /**
+   * set for binary ops that may be integer ops, returns of primitive values, monitor enters, and check casts that may throw
+   */
+  private final static int FLAG = 1 << 26;
+
+  private final SSAInstructionFactory insts;
+
+  /**
+   * the opcode word of each instruction index
+   */
+  final int[] opcodes;
+
+  /**
+   * start of the data of each instruction index; the data of index i ends where the data of index i + 1 starts
+   */
+  final int[] starts;
+
+  /**
+   * defs, uses and operands of all instructions
+   */
+  final int[] data;
+
+  /**
+   * the types, fields, methods, operators and metadata tokens that the operands refer to
+   */
+  final Object[] references;
+
+  PackedInstructions(SSAInstructionFactory insts, int[] opcodes, int[] starts, int[] data, Object[] references) {
+    this.insts = insts;
+    this.opcodes = opcodes;
+    this.starts = starts;
+    this.data = data;
+    this.references = references;
+  }
+
+  /**
+   * @return the normal instructions of ir in packed form, or null if they cannot be packed
+   * @throws IllegalArgumentException if ir is null
+   */
+  public static PackedInstructions make(IR ir) {
+    if (ir == null) {
+      throw new IllegalArgumentException("null ir");
+    }
+    return make(ir.getMethod().getDeclaringClass().getClassLoader().getInstructionFactory(), ir.getInstructions());
+  }
+
+  /**
+   * @param insts the factory to build instruction views with
+   * @param instructions normal instructions, each at the index given by its {@link SSAInstruction#iindex}
+   * @return the instructions in packed form, or null if they cannot be packed
+   * @throws IllegalArgumentException if insts or instructions is null
+   */
+  public static PackedInstructions make(SSAInstructionFactory insts, SSAInstruction[] instructions) {
+    if (insts == null) {
+      throw new IllegalArgumentException("null insts");
+    }
+    if (instructions == null) {
+      throw new IllegalArgumentException("null instructions");
+    }
+    Packer p = new Packer(instructions.length);
+    for (int i = 0; i < instructions.length; i++) {
+      if (instructions[i] != null && (instructions[i].iindex != i || !p.pack(instructions[i]))) {
+        return null;
+      }
+      p.starts[i + 1] = p.size;
+    }
+    return new PackedInstructions(insts, p.opcodes, p.starts, Arrays.copyOf(p.data, p.size), p.references.toArray());
+  }
+
+  /**
+   * @return the number of instruction indices, including those with no instruction
+   */
+  public int size() {
+    return opcodes.length;
+  }
+
+  /**
+   * @return true iff there is an instruction at index i
+   */
+  public boolean hasInstruction(int i) {
+    return opcodes[i] != 0;
+  }
+
+  public int getNumberOfDefs(int i) {
+    return (opcodes[i] >>> DEFS_SHIFT) & DEFS_MASK;
+  }
+
+  /**
+   * @return the jth def of the instruction at index i, as {@link SSAInstruction#getDef(int)} would
+   */
+  public int getDef(int i, int j) {
+    if (j < 0 || j >= getNumberOfDefs(i)) {
+      throw new IllegalArgumentException("instruction " + i + " has no def " + j);
+    }
+    return data[starts[i] + j];
+  }
+
+  public int getNumberOfUses(int i) {
+    return (opcodes[i] >>> USES_SHIFT) & USES_MASK;
+  }
+
+  /**
+   * @return the jth use of the instruction at index i, as {@link SSAInstruction#getUse(int)} would
+   */
+  public int getUse(int i, int j) {
+    if (j < 0 || j >= getNumberOfUses(i)) {
+      throw new IllegalArgumentException("instruction " + i + " has no use " + j);
+    }
+    return data[starts[i] + getNumberOfDefs(i) + j];
+  }
+
+  /**
+   * @return a view of the instruction at index i, or null if there is none
+   */
+  public SSAInstruction get(int i) {
+    int opcode = opcodes[i];
+    if (opcode == 0) {
+      return null;
+    }
+    int defs = (opcode >>> DEFS_SHIFT) & DEFS_MASK;
+    int uses = (opcode >>> USES_SHIFT) & USES_MASK;
+    boolean flag = (opcode & FLAG) != 0;
+    int d = starts[i];
+    int u = d + defs;
+    int o = u + uses;
+    switch (opcode & KIND_MASK) {
+    case GOTO:
+      return insts.GotoInstruction(i, data[o]);
+    case ARRAY_LOAD:
+      return insts.ArrayLoadInstruction(i, data[d], data[u], data[u + 1], (TypeReference) reference(o));
+    case ARRAY_STORE:
+      return insts.ArrayStoreInstruction(i, data[u], data[u + 1], data[u + 2], (TypeReference) reference(o));
+    case BINARY_OP:
+      return insts.BinaryOpInstruction(i, (IBinaryOpInstruction.IOperator) reference(o), false, false, data[d], data[u],
+          data[u + 1], flag);
+    case UNARY_OP:
+      return insts.UnaryOpInstruction(i, (IUnaryOpInstruction.IOperator) reference(o), data[d], data[u]);
+    case CONVERSION:
+      return insts.ConversionInstruction(i, data[d], data[u], (TypeReference) reference(o), (TypeReference) reference(o + 1),
+          false);
+    case COMPARISON:
+      return insts.ComparisonInstruction(i, (IComparisonInstruction.Operator) reference(o), data[d], data[u], data[u + 1]);
+    case CONDITIONAL_BRANCH:
+      return insts.ConditionalBranchInstruction(i, (IConditionalBranchInstruction.IOperator) reference(o),
+          (TypeReference) reference(o + 1), data[u], data[u + 1], data[o + 2]);
+    case SWITCH:
+      return insts.SwitchInstruction(i, data[u], data[o], Arrays.copyOfRange(data, o + 1, starts[i + 1]));
+    case RETURN:
+      return uses == 0 ? insts.ReturnInstruction(i) : insts.ReturnInstruction(i, data[u], flag);
+    case GET:
+      if (uses == 0) {
+        return insts.GetInstruction(i, data[d], (FieldReference) reference(o));
+      } else {
+        return insts.GetInstruction(i, data[d], data[u], (FieldReference) reference(o));
+      }
+    case PUT:
+      if (uses == 1) {
+        return insts.PutInstruction(i, data[u], (FieldReference) reference(o));
+      } else {
+        return insts.PutInstruction(i, data[u], data[u + 1], (FieldReference) reference(o));
+      }
+    case INVOKE: {
+      int[] params = Arrays.copyOfRange(data, u, o);
+      CallSiteReference site = CallSiteReference.make(data[o], (MethodReference) reference(o + 1),
+          IInvokeInstruction.Dispatch.values()[data[o + 2]]);
+      if (defs == 2) {
+        return insts.InvokeInstruction(i, data[d], params, data[d + 1], site);
+      } else {
+        return insts.InvokeInstruction(i, params, data[d], site);
+      }
+    }
+    case NEW: {
+      NewSiteReference site = NewSiteReference.make(data[o], (TypeReference) reference(o + 1));
+      if (uses == 0) {
+        return insts.NewInstruction(i, data[d], site);
+      } else {
+        return insts.NewInstruction(i, data[d], site, Arrays.copyOfRange(data, u, o));
+      }
+    }
+    case ARRAY_LENGTH:
+      return insts.ArrayLengthInstruction(i, data[d], data[u]);
+    case THROW:
+      return insts.ThrowInstruction(i, data[u]);
+    case MONITOR:
+      return insts.MonitorInstruction(i, data[u], flag);
+    case CHECK_CAST: {
+      TypeReference[] types = new TypeReference[starts[i + 1] - o];
+      for (int t = 0; t < types.length; t++) {
+        types[t] = (TypeReference) reference(o + t);
+      }
+      return insts.CheckCastInstruction(i, data[d], data[u], types, flag);
+    }
+    case INSTANCEOF:
+      return insts.InstanceofInstruction(i, data[d], data[u], (TypeReference) reference(o));
+    case LOAD_METADATA:
+      return insts.LoadMetadataInstruction(i, data[d], (TypeReference) reference(o), reference(o + 1));
+    default:
+      throw new IllegalStateException("bad opcode word " + opcode + " at " + i);
+    }
+  }
+
+  private Object reference(int operand) {
+    return references[data[operand]];
+  }
+
+  /**
+   * Visit a view of the instruction at index i, if there is one
+   */
+  public void visit(int i, SSAInstruction.IVisitor v) {
+    SSAInstruction s = get(i);
+    if (s != null) {
+      s.visit(v);
+    }
+  }
+
+  /**
+   * Visit views of all instructions, in index order
+   */
+  public void visitAll(SSAInstruction.IVisitor v) {
+    for (int i = 0; i < opcodes.length; i++) {
+      visit(i, v);
+    }
+  }
+
+  /**
+   * @return views of all instructions, laid out as in {@link IR#getInstructions()}
+   */
+  public SSAInstruction[] toArray() {
+    SSAInstruction[] result = new SSAInstruction[opcodes.length];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = get(i);
+    }
+    return result;
+  }
+
+  private static class Packer extends SSAInstruction.Visitor {
+
+    final int[] opcodes;
+
+    final int[] starts;
+
+    int[] data = new int[16];
+
+    int size;
+
+    final List<Object> references = new ArrayList<Object>();
+
+    private final Map<Object, Integer> referenceIndex = HashMapFactory.make();
+
+    /**
+     * did the visitor pack the last instruction it visited?
+     */
+    private boolean packed;
+
+    Packer(int n) {
+      opcodes = new int[n];
+      starts = new int[n + 1];
+    }
+
+    boolean pack(SSAInstruction s) {
+      packed = false;
+      if (s.getNumberOfUses() > USES_MASK) {
+        return false;
+      }
+      try {
+        s.visit(this);
+      } catch (ClassCastException e) {
+        // instructions of other languages expect visitors of their own
+        return false;
+      }
+      return packed;
+    }
+
+    private void add(int x) {
+      if (size == data.length) {
+        data = Arrays.copyOf(data, 2 * size);
+      }
+      data[size++] = x;
+    }
+
+    private void addReference(Object o) {
+      Integer index = referenceIndex.get(o);
+      if (index == null) {
+        index = references.size();
+        referenceIndex.put(o, index);
+        references.add(o);
+      }
+      add(index);
+    }
+
+    /**
+     * record the opcode word, defs and uses of s; the visitor methods then add the remaining operands
+     */
+    private void start(int kind, SSAInstruction s, boolean flag) {
+      packed = true;
+      opcodes[s.iindex] = kind | (s.getNumberOfDefs() << DEFS_SHIFT) | (s.getNumberOfUses() << USES_SHIFT) | (flag ? FLAG : 0);
+      for (int j = 0; j < s.getNumberOfDefs(); j++) {
+        add(s.getDef(j));
+      }
+      for (int j = 0; j < s.getNumberOfUses(); j++) {
+        add(s.getUse(j));
+      }
+    }
+
+    private void start(int kind, SSAInstruction s) {
+      start(kind, s, false);
+    }
+
+    @Override
+    public void visitGoto(SSAGotoInstruction instruction) {
+      start(GOTO, instruction);
+      add(instruction.getTarget());
+    }
+
+    @Override
+    public void visitArrayLoad(SSAArrayLoadInstruction instruction) {
+      start(ARRAY_LOAD, instruction);
+      addReference(instruction.getElementType());
+    }
+
+    @Override
+    public void visitArrayStore(SSAArrayStoreInstruction instruction) {
+      start(ARRAY_STORE, instruction);
+      addReference(instruction.getElementType());
+    }
+
+    @Override
+    public void visitBinaryOp(SSABinaryOpInstruction instruction) {
+      start(BINARY_OP, instruction, instruction.mayBeIntegerOp());
+      addReference(instruction.getOperator());
+    }
+
+    @Override
+    public void visitUnaryOp(SSAUnaryOpInstruction instruction) {
+      start(UNARY_OP, instruction);
+      addReference(instruction.getOpcode());
+    }
+
+    @Override
+    public void visitConversion(SSAConversionInstruction instruction) {
+      start(CONVERSION, instruction);
+      addReference(instruction.getFromType());
+      addReference(instruction.getToType());
+    }
+
+    @Override
+    public void visitComparison(SSAComparisonInstruction instruction) {
+      start(COMPARISON, instruction);
+      addReference(instruction.getOperator());
+    }
+
+    @Override
+    public void visitConditionalBranch(SSAConditionalBranchInstruction instruction) {
+      start(CONDITIONAL_BRANCH, instruction);
+      addReference(instruction.getOperator());
+      addReference(instruction.getType());
+      add(instruction.getTarget());
+    }
+
+    @Override
+    public void visitSwitch(SSASwitchInstruction instruction) {
+      start(SWITCH, instruction);
+      add(instruction.getDefault());
+      for (int x : instruction.getCasesAndLabels()) {
+        add(x);
+      }
+    }
+
+    @Override
+    public void visitReturn(SSAReturnInstruction instruction) {
+      start(RETURN, instruction, !instruction.returnsVoid() && instruction.returnsPrimitiveType());
+    }
+
+    @Override
+    public void visitGet(SSAGetInstruction instruction) {
+      start(GET, instruction);
+      addReference(instruction.getDeclaredField());
+    }
+
+    @Override
+    public void visitPut(SSAPutInstruction instruction) {
+      start(PUT, instruction);
+      addReference(instruction.getDeclaredField());
+    }
+
+    @Override
+    public void visitInvoke(SSAInvokeInstruction instruction) {
+      if (instruction instanceof SSAInvokeDynamicInstruction
+          || !(instruction.getInvocationCode() instanceof IInvokeInstruction.Dispatch)) {
+        return;
+      }
+      start(INVOKE, instruction);
+      CallSiteReference site = instruction.getCallSite();
+      add(site.getProgramCounter());
+      addReference(site.getDeclaredTarget());
+      add(((IInvokeInstruction.Dispatch) site.getInvocationCode()).ordinal());
+    }
+
+    @Override
+    public void visitNew(SSANewInstruction instruction) {
+      start(NEW, instruction);
+      add(instruction.getNewSite().getProgramCounter());
+      addReference(instruction.getNewSite().getDeclaredType());
+    }
+
+    @Override
+    public void visitArrayLength(SSAArrayLengthInstruction instruction) {
+      start(ARRAY_LENGTH, instruction);
+    }
+
+    @Override
+    public void visitThrow(SSAThrowInstruction instruction) {
+      start(THROW, instruction);
+    }
+
+    @Override
+    public void visitMonitor(SSAMonitorInstruction instruction) {
+      start(MONITOR, instruction, instruction.isMonitorEnter());
+    }
+
+    @Override
+    public void visitCheckCast(SSACheckCastInstruction instruction) {
+      start(CHECK_CAST, instruction, instruction.isPEI());
+      for (TypeReference t : instruction.getDeclaredResultTypes()) {
+        addReference(t);
+      }
+    }
+
+    @Override
+    public void visitInstanceof(SSAInstanceofInstruction instruction) {
+      start(INSTANCEOF, instruction);
+      addReference(instruction.getCheckedType());
+    }
+
+    @Override
+    public void visitLoadMetadata(SSALoadMetadataInstruction instruction) {
+      start(LOAD_METADATA, instruction);
+      addReference(instruction.getType());
+      addReference(instruction.getToken());
+    }
+  }
+}
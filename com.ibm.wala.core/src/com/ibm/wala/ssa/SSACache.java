@@ -10,14 +10,23 @@
  *******************************************************************************/
 package com.ibm.wala.ssa;
 
+import java.io.IOException;
+
 import com.ibm.wala.classLoader.IMethod;
 import com.ibm.wala.ipa.callgraph.Context;
 import com.ibm.wala.ipa.callgraph.impl.Everywhere;
+import com.ibm.wala.util.WalaRuntimeException;
 
 /**
- * A mapping from IMethod -> SSAOptions -> SoftReference -> Something
+ * A mapping from IMethod -> SSAOptions -> Something
+ * 
+ * The cache is safe for concurrent use, and IRs for different methods are built in parallel when several threads ask for them.
+ * Instead of relying on soft references, each of the IR and {@link DefUse} caches keeps its contents within an explicit budget,
+ * measured in SSA instructions, and evicts entries according to an {@link EvictionPolicy} when the budget is exceeded.
  * 
- * This doesn't work very well ... GCs don't do such a great job with SoftReferences ... revamp it.
+ * Given an {@link IRSpillStore}, the cache spills the IRs it evicts into the store, and rehydrates them from there when they are
+ * asked for again, so that the heap only holds the working set of IRs. {@link DefUse}s are not spilled, since they are cheap to
+ * recompute from an IR.
  */
 public class SSACache {
 
@@ -26,6 +35,75 @@ public class SSACache {
    */
   private static final boolean DISABLE = false;
 
+  /**
+   * How to choose the entries to evict when a cache exceeds its budget
+   */
+  public static enum EvictionPolicy {
+    /**
+     * evict the least recently used entries first
+     */
+    LRU,
+    /**
+     * evict the least frequently used entries first, breaking ties by recency
+     */
+    LFU
+  }
+
+  /**
+   * A snapshot of the counters of one cache
+   */
+  public static final class Statistics {
+    private final long hits;
+
+    private final long misses;
+
+    private final long evictions;
+
+    private final long weight;
+
+    Statistics(long hits, long misses, long evictions, long weight) {
+      this.hits = hits;
+      this.misses = misses;
+      this.evictions = evictions;
+      this.weight = weight;
+    }
+
+    public long getHits() {
+      return hits;
+    }
+
+    public long getMisses() {
+      return misses;
+    }
+
+    public long getEvictions() {
+      return evictions;
+    }
+
+    /**
+     * @return the total weight of the cached entries, in SSA instructions
+     */
+    public long getWeight() {
+      return weight;
+    }
+
+    @Override
+    public String toString() {
+      return "hits: " + hits + " misses: " + misses + " evictions: " + evictions + " weight: " + weight;
+    }
+  }
+
+  /**
+   * rough estimate of the number of bytes an IR and its auxiliary structures take per instruction, for the default budget
+   */
+  private static final long BYTES_PER_INSTRUCTION = 256;
+
+  /**
+   * The default budget of each cache: instructions worth a quarter of the maximum heap size
+   */
+  public static final long DEFAULT_BUDGET = Runtime.getRuntime().maxMemory() == Long.MAX_VALUE ? Long.MAX_VALUE : Runtime
+      .getRuntime().maxMemory() / 4 / BYTES_PER_INSTRUCTION;
+
   /**
    * The factory that actually creates new IR objects
    */
@@ -34,31 +112,124 @@ public class SSACache {
   /**
    * A cache of SSA IRs
    */
-  final private AuxiliaryCache irCache = new AuxiliaryCache();
+  final private AuxiliaryCache irCache;
 
   /**
    * A cache of DefUse information
    */
-  final private AuxiliaryCache duCache = new AuxiliaryCache();
+  final private AuxiliaryCache duCache;
+
+  /**
+   * where evicted IRs go, if anywhere
+   */
+  private volatile IRSpillStore spillStore;
 
   /**
    * @param factory a factory for creating IRs
    */
   public SSACache(IRFactory<IMethod> factory) {
+    this(factory, DEFAULT_BUDGET, EvictionPolicy.LRU);
+  }
+
+  /**
+   * @param factory a factory for creating IRs
+   * @param budget the maximal number of SSA instructions in the cached IRs, and likewise for the cached {@link DefUse}s
+   * @param policy which entries to evict when the budget is exceeded
+   */
+  public SSACache(IRFactory<IMethod> factory, long budget, EvictionPolicy policy) {
+    if (budget < 0) {
+      throw new IllegalArgumentException("negative budget: " + budget);
+    }
+    if (policy == null) {
+      throw new IllegalArgumentException("null policy");
+    }
     this.factory = factory;
+    this.irCache = new AuxiliaryCache(budget, policy);
+    this.duCache = new AuxiliaryCache(budget, policy);
+    this.irCache.setEvictionListener(new AuxiliaryCache.EvictionListener() {
+      @Override
+      void evicted(IMethod m, Context c, SSAOptions options, Object value) {
+        IRSpillStore store = spillStore;
+        if (store != null && SSACache.this.factory.contextIsIrrelevant(m)) {
+          try {
+            store.spill((IR) value);
+          } catch (IOException e) {
+            throw new WalaRuntimeException("could not spill IR for " + m, e);
+          }
+        }
+      }
+    });
+  }
+
+  /**
+   * @param store where to spill evicted IRs from now on, or null to stop spilling
+   */
+  public void setSpillStore(IRSpillStore store) {
+    this.spillStore = store;
+  }
+
+  public IRSpillStore getSpillStore() {
+    return spillStore;
+  }
+
+  /**
+   * Change the budget of both caches, evicting entries if necessary
+   * 
+   * @param budget the maximal number of SSA instructions in the cached IRs, and likewise for the cached {@link DefUse}s
+   */
+  public void setBudget(long budget) {
+    if (budget < 0) {
+      throw new IllegalArgumentException("negative budget: " + budget);
+    }
+    irCache.setBudget(budget);
+    duCache.setBudget(budget);
+  }
+
+  public long getBudget() {
+    return irCache.getBudget();
+  }
+
+  public void setEvictionPolicy(EvictionPolicy policy) {
+    if (policy == null) {
+      throw new IllegalArgumentException("null policy");
+    }
+    irCache.setEvictionPolicy(policy);
+    duCache.setEvictionPolicy(policy);
+  }
+
+  public EvictionPolicy getEvictionPolicy() {
+    return irCache.getEvictionPolicy();
+  }
+
+  public Statistics getIRStatistics() {
+    return irCache.getStatistics();
+  }
+
+  public Statistics getDUStatistics() {
+    return duCache.getStatistics();
+  }
+
+  /**
+   * @return the weight of an IR, and of the {@link DefUse} built from it
+   */
+  private static long weigh(IR ir) {
+    return 1 + ir.getInstructions().length;
   }
 
   /**
    * @param m a "normal" (bytecode-based) method
    * @param options options governing ssa construction
    * @return an IR for m, built according to the specified options. null if m is abstract or native.
-   * @throws IllegalArgumentException if m is null
+   * @throws IllegalArgumentException if m or options is null
    */
-  public synchronized IR findOrCreateIR(final IMethod m, Context c, final SSAOptions options) {
+  public IR findOrCreateIR(final IMethod m, Context c, final SSAOptions options) {
 
     if (m == null) {
       throw new IllegalArgumentException("m is null");
     }
+    if (options == null) {
+      throw new IllegalArgumentException("options is null");
+    }
     if (m.isAbstract() || m.isNative()) {
       return null;
     }
@@ -71,24 +242,71 @@ public class SSACache {
       return factory.makeIR(m, c, options);
     }
 
-    IR ir = (IR) irCache.find(m, c, options);
-    if (ir == null) {
-      ir = factory.makeIR(m, c, options);
-      irCache.cache(m, c, options, ir);
+    final Context context = c;
+    return irCache.findOrCreate(m, c, options, new AuxiliaryCache.Creator<IR>() {
+      @Override
+      IR create() {
+        IRSpillStore store = spillStore;
+        if (store != null && factory.contextIsIrrelevant(m)) {
+          IR ir = store.rehydrate(m, options);
+          if (ir != null) {
+            return ir;
+          }
+        }
+        return factory.makeIR(m, context, options);
+      }
+
+      @Override
+      long weigh(IR ir) {
+        return SSACache.weigh(ir);
+      }
+    });
+  }
+
+  /**
+   * Get the instructions of the IR for m in packed form, for analyses that keep the instructions of many methods without their
+   * IRs. If the IR was spilled, only its instructions are decoded from the spilled record; otherwise they are packed from the IR,
+   * which is built and cached if necessary.
+   *
+   * @param m a "normal" (bytecode-based) method
+   * @param options options governing ssa construction
+   * @return the instructions of the IR for m, or null if m is abstract or native, or its instructions cannot be packed
+   * @throws IllegalArgumentException if m or options is null
+   */
+  public PackedInstructions findOrCreatePackedInstructions(IMethod m, Context c, SSAOptions options) {
+    if (m == null) {
+      throw new IllegalArgumentException("m is null");
+    }
+    if (options == null) {
+      throw new IllegalArgumentException("options is null");
     }
-    return ir;
+    if (m.isAbstract() || m.isNative()) {
+      return null;
+    }
+    IRSpillStore store = spillStore;
+    if (store != null && factory.contextIsIrrelevant(m)) {
+      PackedInstructions result = store.rehydrateInstructions(m, options);
+      if (result != null) {
+        return result;
+      }
+    }
+    IR ir = findOrCreateIR(m, c, options);
+    return ir == null ? null : PackedInstructions.make(ir);
   }
 
   /**
    * @param m a method
    * @param options options governing ssa construction
    * @return DefUse information for m, built according to the specified options. null if unavailable
-   * @throws IllegalArgumentException if m is null
+   * @throws IllegalArgumentException if m or options is null
    */
-  public synchronized DefUse findOrCreateDU(IMethod m, Context c, SSAOptions options) {
+  public DefUse findOrCreateDU(final IMethod m, Context c, final SSAOptions options) {
     if (m == null) {
       throw new IllegalArgumentException("m is null");
     }
+    if (options == null) {
+      throw new IllegalArgumentException("options is null");
+    }
     if (m.isAbstract() || m.isNative()) {
       return null;
     }
@@ -96,29 +314,42 @@ public class SSACache {
       c = Everywhere.EVERYWHERE;
     }
 
-    DefUse du = (DefUse) duCache.find(m, c, options);
-    if (du == null) {
-      IR ir = findOrCreateIR(m, c, options);
-      du = new DefUse(ir);
-      duCache.cache(m, c, options, du);
-    }
-    return du;
+    final Context context = c;
+    return duCache.findOrCreate(m, c, options, new AuxiliaryCache.Creator<DefUse>() {
+      private IR ir;
+
+      @Override
+      DefUse create() {
+        ir = findOrCreateIR(m, context, options);
+        return ir == null ? null : new DefUse(ir);
+      }
+
+      @Override
+      long weigh(DefUse du) {
+        return SSACache.weigh(ir);
+      }
+    });
   }
 
   /**
    * @return {@link DefUse} information for m, built according to the specified options. null if unavailable
    * @throws IllegalArgumentException if ir is null
    */
-  public synchronized DefUse findOrCreateDU(IR ir, Context C) {
+  public DefUse findOrCreateDU(final IR ir, Context C) {
     if (ir == null) {
       throw new IllegalArgumentException("ir is null");
     }
-    DefUse du = (DefUse) duCache.find(ir.getMethod(), C, ir.getOptions());
-    if (du == null) {
-      du = new DefUse(ir);
-      duCache.cache(ir.getMethod(), C, ir.getOptions(), du);
-    }
-    return du;
+    return duCache.findOrCreate(ir.getMethod(), C, ir.getOptions(), new AuxiliaryCache.Creator<DefUse>() {
+      @Override
+      DefUse create() {
+        return new DefUse(ir);
+      }
+
+      @Override
+      long weigh(DefUse du) {
+        return SSACache.weigh(ir);
+      }
+    });
   }
 
   /**
@@ -134,6 +365,10 @@ public class SSACache {
    */
   public void invalidateIR(IMethod method, Context c) {
     irCache.invalidate(method, c);
+    IRSpillStore store = spillStore;
+    if (store != null) {
+      store.remove(method);
+    }
   }
 
   /**
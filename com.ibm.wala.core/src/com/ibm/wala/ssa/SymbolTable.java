@@ -126,6 +126,10 @@ public class SymbolTable implements Cloneable {
       defaultValues[vn] = defaultValue;
    }
 
+  boolean hasDefaultValues() {
+    return defaultValues != null;
+  }
+
   public int getDefaultValue(int vn) {
     return findOrCreateConstant(defaultValues[vn]);
   }
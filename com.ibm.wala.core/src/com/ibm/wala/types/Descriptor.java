@@ -10,10 +10,9 @@
  *******************************************************************************/
 package com.ibm.wala.types;
 
-import java.util.Map;
 
 import com.ibm.wala.classLoader.Language;
-import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.collections.InternTable;
 import com.ibm.wala.util.strings.ImmutableByteArray;
 import com.ibm.wala.util.strings.StringStuff;
 import com.ibm.wala.util.strings.UTF8Convert;
@@ -28,7 +27,7 @@ public final class Descriptor {
   /**
    * A mapping from Key -> Descriptor
    */
-  private static final Map<Key, Descriptor> map = HashMapFactory.make();
+  private static final InternTable<Key, Descriptor> map = InternTable.make();
 
   /**
    * key holds the logical value of this descriptor
@@ -50,8 +49,7 @@ public final class Descriptor {
     Key k = new Key(returnType, parameters);
     Descriptor result = map.get(k);
     if (result == null) {
-      result = new Descriptor(k);
-      map.put(k, result);
+      result = map.intern(k, new Descriptor(k));
     }
     return result;
   }
@@ -66,8 +64,7 @@ public final class Descriptor {
     Key k = new Key(returnType, parameters);
     Descriptor result = map.get(k);
     if (result == null) {
-      result = new Descriptor(k);
-      map.put(k, result);
+      result = map.intern(k, new Descriptor(k));
     }
     return result;
   }
@@ -10,9 +10,8 @@
  *******************************************************************************/
 package com.ibm.wala.types;
 
-import java.util.HashMap;
 
-import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.collections.InternTable;
 import com.ibm.wala.util.debug.Assertions;
 import com.ibm.wala.util.debug.UnimplementedError;
 import com.ibm.wala.util.shrike.ShrikeUtil;
@@ -27,7 +26,7 @@ public final class FieldReference extends MemberReference {
   /**
    * Used to canonicalize MemberReferences a mapping from Key -> MemberReference
    */
-  final private static HashMap<Key, FieldReference> dictionary = HashMapFactory.make();
+  final private static InternTable<Key, FieldReference> dictionary = InternTable.make();
 
   private final TypeReference fieldType;
 
@@ -41,7 +40,7 @@ public final class FieldReference extends MemberReference {
    * 
    * @param mn the name of the member
    */
-  public static synchronized FieldReference findOrCreate(TypeReference tref, Atom mn, TypeReference fieldType) {
+  public static FieldReference findOrCreate(TypeReference tref, Atom mn, TypeReference fieldType) {
     if (tref == null) {
       throw new IllegalArgumentException("null tref");
     }
@@ -52,10 +51,7 @@ public final class FieldReference extends MemberReference {
       return val;
     }
 
-    val = new FieldReference(key, fieldType);
-
-    dictionary.put(key, val);
-    return val;
+    return dictionary.intern(key, new FieldReference(key, fieldType));
   }
 
   /**
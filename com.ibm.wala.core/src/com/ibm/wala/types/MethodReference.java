@@ -10,10 +10,9 @@
  *******************************************************************************/
 package com.ibm.wala.types;
 
-import java.util.HashMap;
 
 import com.ibm.wala.classLoader.Language;
-import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.collections.InternTable;
 import com.ibm.wala.util.shrike.ShrikeUtil;
 import com.ibm.wala.util.strings.Atom;
 
@@ -24,7 +23,7 @@ public final class MethodReference extends MemberReference {
   /**
    * Used to canonicalize MethodReferences a mapping from Key -> MethodReference
    */
-  final private static HashMap<Key, MethodReference> dictionary = HashMapFactory.make();
+  final private static InternTable<Key, MethodReference> dictionary = InternTable.make();
 
   public final static Atom newInstanceAtom = Atom.findOrCreateUnicodeAtom("newInstance");
 
@@ -89,7 +88,7 @@ public final class MethodReference extends MemberReference {
    * @param mn the name of the member
    * @param md the descriptor of the member
    */
-  public static synchronized MethodReference findOrCreate(TypeReference tref, Atom mn, Descriptor md) {
+  public static MethodReference findOrCreate(TypeReference tref, Atom mn, Descriptor md) {
     if (tref == null) {
       throw new IllegalArgumentException("null tref");
     }
@@ -98,9 +97,7 @@ public final class MethodReference extends MemberReference {
     MethodReference val = dictionary.get(key);
     if (val != null)
       return val;
-    val = new MethodReference(key);
-    dictionary.put(key, val);
-    return val;
+    return dictionary.intern(key, new MethodReference(key));
   }
 
   /**
@@ -110,7 +107,7 @@ public final class MethodReference extends MemberReference {
    * @param selector the selector for the method
    * @throws IllegalArgumentException if selector is null
    */
-  public static synchronized MethodReference findOrCreate(TypeReference tref, Selector selector) {
+  public static MethodReference findOrCreate(TypeReference tref, Selector selector) {
     if (selector == null) {
       throw new IllegalArgumentException("selector is null");
     }
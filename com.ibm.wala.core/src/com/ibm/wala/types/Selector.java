@@ -10,10 +10,8 @@
  *******************************************************************************/
 package com.ibm.wala.types;
 
-import java.util.HashMap;
-import java.util.Map;
-
 import com.ibm.wala.classLoader.Language;
+import com.ibm.wala.util.collections.InternTable;
 import com.ibm.wala.util.strings.Atom;
 
 /**
@@ -29,13 +27,12 @@ public final class Selector {
   
   private final String s;
   
-  private static final Map<String,Selector> CACHE = new HashMap<String,Selector>();
+  private static final InternTable<String,Selector> CACHE = InternTable.make();
   
   public static Selector make(String selectorStr) {
     Selector ret = CACHE.get(selectorStr);
     if (ret == null) {
-      ret = make(Language.JAVA, selectorStr);
-      CACHE.put(selectorStr, ret);
+      ret = CACHE.intern(selectorStr, make(Language.JAVA, selectorStr));
     }
     return ret;
   }
@@ -12,9 +12,8 @@ package com.ibm.wala.types;
 
 import java.io.Serializable;
 import java.io.UTFDataFormatException;
-import java.util.Map;
 
-import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.collections.InternTable;
 import com.ibm.wala.util.debug.Assertions;
 import com.ibm.wala.util.strings.Atom;
 import com.ibm.wala.util.strings.ImmutableByteArray;
@@ -41,14 +40,12 @@ public final class TypeName implements Serializable {
   /**
    * canonical mapping from TypeNameKey -> TypeName
    */
-  private final static Map<TypeNameKey, TypeName> map = HashMapFactory.make();
+  private final static InternTable<TypeNameKey, TypeName> map = InternTable.make();
 
-  private static synchronized TypeName findOrCreate(TypeNameKey t) {
+  private static TypeName findOrCreate(TypeNameKey t) {
     TypeName result = map.get(t);
     if (result == null) {
-      result = new TypeName(t);
-      map.put(t, result);
-
+      result = map.intern(t, new TypeName(t));
     }
     return result;
   }
@@ -18,6 +18,7 @@ import java.io.Serializable;
 import java.util.Map;
 
 import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.collections.InternTable;
 
 /**
  * A class to represent the reference in a class file to some type (class, primitive or array). A type reference is
@@ -48,7 +49,7 @@ public final class TypeReference implements Serializable {
   /**
    * Used to canonicalize TypeReferences.
    */
-  private final static Map<Key, TypeReference> dictionary = HashMapFactory.make();
+  private final static InternTable<Key, TypeReference> dictionary = InternTable.make();
 
   /*********************************************************************************************************************
    * Primitive Dispatch *
@@ -376,7 +377,7 @@ public final class TypeReference implements Serializable {
    * 
    * @param cl the classloader (defining/initiating depending on usage)
    */
-  public static synchronized TypeReference findOrCreate(ClassLoaderReference cl, TypeName typeName) {
+  public static TypeReference findOrCreate(ClassLoaderReference cl, TypeName typeName) {
 
     if (cl == null) {
       throw new IllegalArgumentException("null cl");
@@ -400,9 +401,7 @@ public final class TypeReference implements Serializable {
     if (val != null) {
       return val;
     } else {
-      val = new TypeReference(cl, typeName);
-      dictionary.put(key, val);
-      return val;
+      return dictionary.intern(key, new TypeReference(cl, typeName));
     }
   }
 
@@ -412,11 +411,11 @@ public final class TypeReference implements Serializable {
    * @param cl the classloader (defining/initiating depending on usage)
    * @param typeName something like "Ljava/util/Arrays"
    */
-  public static synchronized TypeReference findOrCreate(ClassLoaderReference cl, String typeName) {
+  public static TypeReference findOrCreate(ClassLoaderReference cl, String typeName) {
     return findOrCreate(cl, TypeName.string2TypeName(typeName));
   }
 
-  public static synchronized TypeReference find(ClassLoaderReference cl, String typeName) {
+  public static TypeReference find(ClassLoaderReference cl, String typeName) {
     return find(cl, TypeName.string2TypeName(typeName));
   }
 
@@ -425,7 +424,7 @@ public final class TypeReference implements Serializable {
    * 
    * @param cl the classloader (defining/initiating depending on usage)
    */
-  public static synchronized TypeReference find(ClassLoaderReference cl, TypeName typeName) {
+  public static TypeReference find(ClassLoaderReference cl, TypeName typeName) {
     if (cl == null) {
       throw new IllegalArgumentException("null cl");
     }
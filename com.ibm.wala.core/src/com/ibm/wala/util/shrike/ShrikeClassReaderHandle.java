@@ -14,6 +14,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
+import com.ibm.wala.classLoader.MappedModuleEntry;
 import com.ibm.wala.classLoader.ModuleEntry;
 import com.ibm.wala.shrikeCT.ClassReader;
 import com.ibm.wala.shrikeCT.InvalidClassFileException;
@@ -68,16 +69,26 @@ public class ShrikeClassReaderHandle {
           }
         }
       }
-      ByteArrayOutputStream S = new ByteArrayOutputStream();
-      try {
-        InputStream s = entry.getInputStream();
-        readBytes(s, S);
-        s.close();
-      } catch (IOException e) {
-        e.printStackTrace();
-        Assertions.UNREACHABLE();
+      if (entry instanceof MappedModuleEntry) {
+        // read the class file in place
+        try {
+          result = new ClassReader(((MappedModuleEntry) entry).getByteBuffer());
+        } catch (IOException e) {
+          e.printStackTrace();
+          Assertions.UNREACHABLE();
+        }
+      } else {
+        ByteArrayOutputStream S = new ByteArrayOutputStream();
+        try {
+          InputStream s = entry.getInputStream();
+          readBytes(s, S);
+          s.close();
+        } catch (IOException e) {
+          e.printStackTrace();
+          Assertions.UNREACHABLE();
+        }
+        result = new ClassReader(S.toByteArray());
       }
-      result = new ClassReader(S.toByteArray());
       reader = CacheReference.make(result);
     }
     return result;
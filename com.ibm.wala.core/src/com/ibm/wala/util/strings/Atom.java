@@ -11,9 +11,8 @@
 package com.ibm.wala.util.strings;
 
 import java.io.Serializable;
-import java.util.HashMap;
 
-import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.collections.InternTable;
 
 /**
  * An utf8-encoded byte string.
@@ -30,7 +29,7 @@ public final class Atom implements Serializable {
   /**
    * Used to canonicalize Atoms, a mapping from AtomKey -> Atom. AtomKeys are not canonical, but Atoms are.
    */
-  final private static HashMap<AtomKey, Atom> dictionary = HashMapFactory.make();
+  final private static InternTable<AtomKey, Atom> dictionary = InternTable.make();
 
   /**
    * The utf8 value this atom represents
@@ -113,7 +112,7 @@ public final class Atom implements Serializable {
 
   }
 
-  public static synchronized Atom findOrCreate(byte[] bytes) {
+  public static Atom findOrCreate(byte[] bytes) {
     if (bytes == null) {
       throw new IllegalArgumentException("bytes is null");
     }
@@ -122,19 +121,17 @@ public final class Atom implements Serializable {
     if (val != null) {
       return val;
     }
-    val = new Atom(key);
-    dictionary.put(key, val);
-    return val;
+    return dictionary.intern(key, new Atom(key));
   }
 
-  public static synchronized Atom findOrCreate(ImmutableByteArray b) {
+  public static Atom findOrCreate(ImmutableByteArray b) {
     if (b == null) {
       throw new IllegalArgumentException("b is null");
     }
     return findOrCreate(b.b);
   }
 
-  public static synchronized Atom findOrCreate(ImmutableByteArray b, int start, int length) {
+  public static Atom findOrCreate(ImmutableByteArray b, int start, int length) {
     if (b == null) {
       throw new IllegalArgumentException("b is null");
     }
@@ -0,0 +1,218 @@
+package com.ibm.wala.dalvik.test.cha;
+
+import static com.ibm.wala.dalvik.test.DalvikTestBase.convertJarToDex;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarInputStream;
+import java.util.jar.JarOutputStream;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.ibm.wala.classLoader.ClassLoaderFactoryImpl;
+import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.core.tests.callGraph.CallGraphTestUtil;
+import com.ibm.wala.core.tests.util.WalaTestCase;
+import com.ibm.wala.dalvik.classLoader.DexFileModule;
+import com.ibm.wala.dalvik.classLoader.DexIMethod;
+import com.ibm.wala.dalvik.dex.instructions.Instruction;
+import com.ibm.wala.ipa.callgraph.AnalysisScope;
+import com.ibm.wala.ipa.cha.ClassHierarchy;
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import com.ibm.wala.types.ClassLoaderReference;
+import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.ParallelUtil;
+import com.ibm.wala.util.ParallelUtil.IntAction;
+import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.collections.HashSetFactory;
+import com.ibm.wala.util.config.AnalysisScopeReader;
+import com.ibm.wala.util.io.FileProvider;
+import com.ibm.wala.util.io.TemporaryFile;
+
+/**
+ * Check that an .apk with several dex files loads the same classes, and decodes the same instructions, for any number of threads.
+ */
+public class MultiDexTest extends WalaTestCase {
+
+  public static void main(String[] args) {
+    justThisTest(MultiDexTest.class);
+  }
+
+  private static final int THREADS = 4;
+
+  /**
+   * an .apk holding the test data classes, split between classes.dex and classes2.dex
+   */
+  private static File apk;
+
+  /**
+   * the names of the classes in each dex file of {@link #apk}
+   */
+  private static List<Set<String>> dexClasses;
+
+  @BeforeClass
+  public static void beforeClass() throws IOException {
+    File jar = File.createTempFile("walatest", ".jar");
+    jar.deleteOnExit();
+    TemporaryFile.urlToFile(jar, (new FileProvider()).getResource("com.ibm.wala.core.testdata_1.0.0a.jar"));
+    File[] halves = { File.createTempFile("walatest1", ".jar"), File.createTempFile("walatest2", ".jar") };
+    dexClasses = split(jar, halves);
+    apk = File.createTempFile("walatest", ".apk");
+    apk.deleteOnExit();
+    JarOutputStream out = new JarOutputStream(new FileOutputStream(apk));
+    try {
+      for (int i = 0; i < halves.length; i++) {
+        halves[i].deleteOnExit();
+        File dex = convertJarToDex(halves[i].getAbsolutePath());
+        dex.deleteOnExit();
+        out.putNextEntry(new JarEntry(i == 0 ? "classes.dex" : "classes" + (i + 1) + ".dex"));
+        InputStream in = new FileInputStream(dex);
+        try {
+          copy(in, out);
+        } finally {
+          in.close();
+        }
+        out.closeEntry();
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Write the class files of jar alternately to the given jars.
+   *
+   * @return the names of the classes written to each jar, in the form of type names
+   */
+  private static List<Set<String>> split(File jar, File[] halves) throws IOException {
+    List<Set<String>> names = new ArrayList<Set<String>>();
+    JarOutputStream[] outs = new JarOutputStream[halves.length];
+    for (int i = 0; i < halves.length; i++) {
+      outs[i] = new JarOutputStream(new FileOutputStream(halves[i]));
+      names.add(HashSetFactory.<String> make());
+    }
+    JarInputStream in = new JarInputStream(new FileInputStream(jar));
+    try {
+      int n = 0;
+      for (JarEntry e = in.getNextJarEntry(); e != null; e = in.getNextJarEntry()) {
+        if (e.getName().endsWith(".class")) {
+          int i = n++ % halves.length;
+          outs[i].putNextEntry(new JarEntry(e.getName()));
+          copy(in, outs[i]);
+          outs[i].closeEntry();
+          names.get(i).add("L" + e.getName().substring(0, e.getName().length() - ".class".length()));
+        }
+      }
+    } finally {
+      in.close();
+      for (JarOutputStream out : outs) {
+        out.close();
+      }
+    }
+    return names;
+  }
+
+  private static void copy(InputStream in, OutputStream out) throws IOException {
+    byte[] buffer = new byte[8192];
+    for (int n; (n = in.read(buffer)) > 0;) {
+      out.write(buffer, 0, n);
+    }
+  }
+
+  private static ClassHierarchy makeCHA(int numberOfThreads) throws IOException, ClassHierarchyException {
+    AnalysisScope scope = AnalysisScopeReader.readJavaScope("primordial.txt", new File(CallGraphTestUtil.REGRESSION_EXCLUSIONS),
+        MultiDexTest.class.getClassLoader());
+    scope.setLoaderImpl(ClassLoaderReference.Application, "com.ibm.wala.dalvik.classLoader.WDexClassLoaderImpl");
+    scope.addToScope(ClassLoaderReference.Application, DexFileModule.make(apk, numberOfThreads));
+    ClassLoaderFactoryImpl factory = new ClassLoaderFactoryImpl(scope.getExclusions());
+    factory.setNumberOfThreads(numberOfThreads);
+    return ClassHierarchy.make(scope, factory);
+  }
+
+  private static List<DexIMethod> applicationMethods(ClassHierarchy cha) {
+    List<DexIMethod> result = new ArrayList<DexIMethod>();
+    for (Iterator<IClass> it = cha.getLoader(ClassLoaderReference.Application).iterateAllClasses(); it.hasNext();) {
+      for (IMethod m : it.next().getDeclaredMethods()) {
+        if (m instanceof DexIMethod && !m.isAbstract() && !m.isNative()) {
+          result.add((DexIMethod) m);
+        }
+      }
+    }
+    return result;
+  }
+
+  private static Set<String> applicationClasses(ClassHierarchy cha) {
+    Set<String> result = HashSetFactory.make();
+    for (Iterator<IClass> it = cha.getLoader(ClassLoaderReference.Application).iterateAllClasses(); it.hasNext();) {
+      result.add(it.next().getName().toString());
+    }
+    return result;
+  }
+
+  private static String describe(Instruction[] instructions) {
+    StringBuilder result = new StringBuilder();
+    for (Instruction inst : instructions) {
+      result.append(inst.pc).append(' ').append(inst.getOpcode()).append(' ').append(inst.getClass().getSimpleName()).append('\n');
+    }
+    return result.toString();
+  }
+
+  /**
+   * the classes of both dex files are loaded, and the same ones for any number of threads
+   */
+  @Test
+  public void testSameClasses() throws IOException, ClassHierarchyException {
+    // load with several threads first, before the dex files are cached
+    Set<String> parallel = applicationClasses(makeCHA(THREADS));
+    Set<String> sequential = applicationClasses(makeCHA(1));
+    Assert.assertEquals(sequential, parallel);
+    for (Set<String> names : dexClasses) {
+      Set<String> loaded = HashSetFactory.make(names);
+      loaded.retainAll(sequential);
+      Assert.assertFalse(loaded.isEmpty());
+    }
+  }
+
+  /**
+   * methods decoded on several threads at once get the same instructions as methods decoded one at a time, and are decoded only
+   * once
+   */
+  @Test
+  public void testInstructions() throws IOException, ClassHierarchyException, CancelException {
+    Map<String, String> expected = HashMapFactory.make();
+    for (DexIMethod m : applicationMethods(makeCHA(1))) {
+      expected.put(m.getSignature(), describe(m.getDexInstructions()));
+    }
+    Assert.assertFalse(expected.isEmpty());
+
+    // each method twice, so that some are decoded by two threads at once
+    final List<DexIMethod> methods = applicationMethods(makeCHA(THREADS));
+    final Instruction[][] decoded = new Instruction[2 * methods.size()][];
+    ParallelUtil.forEachIndex(decoded.length, THREADS, new IntAction<RuntimeException>() {
+      @Override
+      public void apply(int i) {
+        decoded[i] = methods.get(i / 2).getDexInstructions();
+      }
+    }, null);
+    Assert.assertEquals(expected.size(), methods.size());
+    for (int i = 0; i < methods.size(); i++) {
+      DexIMethod m = methods.get(i);
+      Assert.assertEquals(m.getSignature(), expected.get(m.getSignature()), describe(decoded[2 * i]));
+      Assert.assertArrayEquals(m.getSignature(), decoded[2 * i], decoded[2 * i + 1]);
+      Assert.assertArrayEquals(m.getSignature(), decoded[2 * i], m.getDexInstructions());
+    }
+  }
+}
@@ -17,6 +17,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -59,7 +60,7 @@ public class DexCFG extends AbstractCFG<Instruction, DexCFG.BasicBlock> implemen
     private final DexIMethod dexMethod;
     private final Context context;
 
-    private static int totalEdges = 0;
+    private static final AtomicInteger totalEdges = new AtomicInteger();
     private int tempTE;
 
 
@@ -99,7 +100,7 @@ public class DexCFG extends AbstractCFG<Instruction, DexCFG.BasicBlock> implemen
     }
 
     public static int getTotalEdges() {
-        return totalEdges;
+        return totalEdges.get();
     }
 
     @Override
@@ -583,13 +584,13 @@ public class DexCFG extends AbstractCFG<Instruction, DexCFG.BasicBlock> implemen
         }
 
         private void addNormalEdgeTo(BasicBlock b) {
-            totalEdges++;
+            totalEdges.incrementAndGet();
             tempTE++;
             addNormalEdge(this, b);
         }
 
         private void addExceptionalEdgeTo(BasicBlock b) {
-            totalEdges++;
+            totalEdges.incrementAndGet();
             tempTE++;
             addExceptionalEdge(this, b);
         }
@@ -48,10 +48,19 @@
 package com.ibm.wala.dalvik.classLoader;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 
 import org.jf.dexlib.ClassDefItem;
@@ -62,69 +71,195 @@ import org.slf4j.LoggerFactory;
 
 import com.ibm.wala.classLoader.Module;
 import com.ibm.wala.classLoader.ModuleEntry;
+import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.ParallelUtil;
+import com.ibm.wala.util.ParallelUtil.IntAction;
 import com.ibm.wala.util.io.TemporaryFile;
 
 /**
  * A module which is a wrapper around .dex and .apk file.
  *
+ * An .apk or .jar may hold several dex files (classes.dex, classes2.dex, ...), which are all read, on several threads if asked.
+ * Parsed dex files are kept, softly, by the SHA-1 signature in their headers, so that a dex file is only parsed once per process
+ * however many modules are made from it.
+ *
  * @author barjo
  */
 public class DexFileModule implements Module {
 	private static final Logger logger = LoggerFactory.getLogger(DexFileModule.class);
 
-    private final DexFile dexfile;
+    /**
+     * size of the part of a dex header that holds its magic, checksum and signature
+     */
+    private static final int HEADER_PREFIX = 32;
+
+    /**
+     * dex files parsed so far, by signature
+     */
+    private static final ConcurrentMap<String, SoftReference<DexFile>> parsed = new ConcurrentHashMap<String, SoftReference<DexFile>>();
+
+    private final List<DexFile> dexfiles;
     private final Collection<ModuleEntry> entries;
 
     public static DexFileModule make(File f) throws IllegalArgumentException, IOException {
-    	if (f.getName().endsWith("jar")) {
-    		return new DexFileModule(new JarFile(f));
+    	return make(f, 1);
+    }
+
+    /**
+     * @param f the .dex, .apk or .jar file
+     * @param numberOfThreads number of threads used to read the dex files of an .apk or .jar
+     */
+    public static DexFileModule make(File f, int numberOfThreads) throws IllegalArgumentException, IOException {
+    	if (numberOfThreads < 1) {
+    		throw new IllegalArgumentException("invalid number of threads: " + numberOfThreads);
+    	}
+    	if (f.getName().endsWith("jar") || f.getName().endsWith("apk")) {
+    		return new DexFileModule(readAll(new JarFile(f), numberOfThreads));
     	} else {
-    		return new DexFileModule(f);
+    		return new DexFileModule(Collections.singletonList(read(f)));
     	}
     }
     
-    private static File tf(JarFile f) {
+    private static File tf(JarFile f, JarEntry e) {
     	String name = f.getName();
     	if (name.indexOf('/') >= 0) {
     		name = name.substring(name.lastIndexOf('/')+1);
     	}
-    	File tf = new File(System.getProperty("java.io.tmpdir") + "/" + name + "_classes.dex");
+    	File tf = new File(System.getProperty("java.io.tmpdir") + "/" + name + "_" + e.getName());
     	tf.deleteOnExit();
     	System.err.println("using " + tf);
     	return tf;
     }
-    
-    private DexFileModule(JarFile f) throws IllegalArgumentException, IOException {    	
-    	this(TemporaryFile.streamToFile(tf(f), f.getInputStream(f.getEntry("classes.dex"))));
+
+    /**
+     * @return the dex files of an .apk or .jar, in order
+     */
+    private static List<DexFile> readAll(final JarFile f, int numberOfThreads) throws IllegalArgumentException, IOException {
+    	final List<JarEntry> dexEntries = new ArrayList<JarEntry>();
+    	for (int i = 1;; i++) {
+    		JarEntry e = f.getJarEntry(i == 1 ? "classes.dex" : "classes" + i + ".dex");
+    		if (e == null) {
+    			break;
+    		}
+    		dexEntries.add(e);
+    	}
+    	if (dexEntries.isEmpty()) {
+    		throw new IllegalArgumentException("no classes.dex in " + f.getName());
+    	}
+    	final DexFile[] result = new DexFile[dexEntries.size()];
+    	try {
+    		ParallelUtil.forEachIndex(result.length, numberOfThreads, new IntAction<IOException>() {
+    			@Override
+    			public void apply(int i) throws IOException {
+    				result[i] = read(f, dexEntries.get(i));
+    			}
+    		}, null);
+    	} catch (CancelException e) {
+    		throw new IOException("interrupted while reading " + f.getName(), e);
+    	}
+    	List<DexFile> list = new ArrayList<DexFile>(result.length);
+    	Collections.addAll(list, result);
+    	return list;
     }
-    
+
+    private static DexFile read(JarFile f, JarEntry e) throws IOException {
+    	String signature = signature(f.getInputStream(e));
+    	DexFile result = lookup(signature);
+    	if (result == null) {
+    		File tf = TemporaryFile.streamToFile(tf(f, e), f.getInputStream(e));
+    		result = parse(tf, signature);
+    	}
+    	return result;
+    }
+
     /**
-     * @param f
-     *            the .dex or .apk file
+     * @param f the .dex or .apk file
      * @throws IllegalArgumentException
      */
-    private DexFileModule(File f) throws IllegalArgumentException {    	
-        try {
-            dexfile = new DexFile(f);
-        } catch (IOException e) {
-            throw new IllegalArgumentException(e);
-        }
+    private static DexFile read(File f) throws IllegalArgumentException {
+    	try {
+    		String signature = signature(new FileInputStream(f));
+    		DexFile result = lookup(signature);
+    		return result != null ? result : parse(f, signature);
+    	} catch (IOException e) {
+    		throw new IllegalArgumentException(e);
+    	}
+    }
+
+    private static DexFile parse(File f, String signature) throws IOException {
+    	DexFile result = new DexFile(f);
+    	if (signature != null) {
+    		parsed.put(signature, new SoftReference<DexFile>(result));
+    	}
+    	return result;
+    }
+
+    private static DexFile lookup(String signature) {
+    	if (signature == null) {
+    		return null;
+    	}
+    	SoftReference<DexFile> ref = parsed.get(signature);
+    	DexFile result = ref == null ? null : ref.get();
+    	if (result != null) {
+    		logger.debug("DexFileModule reusing dex file " + signature);
+    	}
+    	return result;
+    }
+
+    /**
+     * @return the SHA-1 signature from the header of the dex file read by s, in hex, or null if s does not read a dex file
+     */
+    private static String signature(InputStream s) throws IOException {
+    	byte[] header = new byte[HEADER_PREFIX];
+    	try {
+    		int n = 0;
+    		while (n < header.length) {
+    			int r = s.read(header, n, header.length - n);
+    			if (r < 0) {
+    				return null;
+    			}
+    			n += r;
+    		}
+    	} finally {
+    		s.close();
+    	}
+    	if (header[0] != 'd' || header[1] != 'e' || header[2] != 'x' || header[3] != '\n') {
+    		return null;
+    	}
+    	StringBuffer result = new StringBuffer(40);
+    	for (int i = 12; i < HEADER_PREFIX; i++) {
+    		result.append(Integer.toHexString((header[i] >> 4) & 0xf)).append(Integer.toHexString(header[i] & 0xf));
+    	}
+    	return result.toString();
+    }
+
+    private DexFileModule(List<DexFile> dexfiles) {
+        this.dexfiles = dexfiles;
 
         // create ModuleEntries from ClassDefItem
         entries = new HashSet<ModuleEntry>();
 
-        Section<ClassDefItem> cldeff = dexfile.ClassDefsSection;
-        for (ClassDefItem cdefitems : cldeff.getItems()) {
-            logger.debug("DexFileModule adding class: " + cdefitems.getConciseIdentity());
-            entries.add(new DexModuleEntry(cdefitems));
+        for (DexFile dexfile : dexfiles) {
+            Section<ClassDefItem> cldeff = dexfile.ClassDefsSection;
+            for (ClassDefItem cdefitems : cldeff.getItems()) {
+                logger.debug("DexFileModule adding class: " + cdefitems.getConciseIdentity());
+                entries.add(new DexModuleEntry(cdefitems));
+            }
         }
     }
 
     /**
-     * @return The DexFile associated to this module.
+     * @return The DexFile associated to this module; for a multi-dex .apk, the one of classes.dex.
      */
     public DexFile getDexFile() {
-        return dexfile;
+        return dexfiles.get(0);
+    }
+
+    /**
+     * @return The DexFiles associated to this module, in order.
+     */
+    public List<DexFile> getDexFiles() {
+        return Collections.unmodifiableList(dexfiles);
     }
 
     /*
@@ -58,12 +58,14 @@ import static org.jf.dexlib.Util.AccessFlags.PUBLIC;
 import static org.jf.dexlib.Util.AccessFlags.STATIC;
 import static org.jf.dexlib.Util.AccessFlags.VOLATILE;
 
+import java.lang.ref.SoftReference;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.jf.dexlib.AnnotationItem;
 import org.jf.dexlib.AnnotationSetItem;
@@ -139,6 +141,7 @@ import com.ibm.wala.dalvik.dex.instructions.Switch;
 import com.ibm.wala.dalvik.dex.instructions.Throw;
 import com.ibm.wala.dalvik.dex.instructions.UnaryOperation;
 import com.ibm.wala.dalvik.dex.instructions.UnaryOperation.OpID;
+import com.ibm.wala.ipa.callgraph.Context;
 import com.ibm.wala.ipa.cha.IClassHierarchy;
 import com.ibm.wala.shrikeBT.ExceptionHandler;
 import com.ibm.wala.shrikeBT.IInstruction;
@@ -187,9 +190,19 @@ public class DexIMethod implements IBytecodeMethod {
 	
 	protected InstructionArray instructions;
 
+	/**
+	 * set once {@link #parseBytecode()} has finished, so that {@link #instructions()} need not lock afterwards
+	 */
+	private volatile boolean decoded = false;
+
+	/**
+	 * the control flow graph last built by {@link #getCFG(Context)}, and its context
+	 */
+	private SoftReference<DexCFG> cfg;
 
+	private Context cfgContext;
 
-	private static int totalInsts = 0;
+	private static final AtomicInteger totalInsts = new AtomicInteger();
 
 	public DexIMethod(EncodedMethod encodedMethod, DexIClass klass) {
 		eMethod = encodedMethod;
@@ -197,7 +210,7 @@ public class DexIMethod implements IBytecodeMethod {
 	}
 
 	public static int getTotalInsts() {
-		return totalInsts;
+		return totalInsts.get();
 	}
 
 	//------------------------------------------
@@ -598,7 +611,7 @@ public class DexIMethod implements IBytecodeMethod {
 	}
 
 
-	public ExceptionHandler[][] getHandlers() throws InvalidClassFileException {
+	public synchronized ExceptionHandler[][] getHandlers() throws InvalidClassFileException {
 
 		if (handlers != null)
 			return handlers;
@@ -701,10 +714,7 @@ public class DexIMethod implements IBytecodeMethod {
 
 
 	public IInstruction[] getInstructions() {
-		if (instructions == null)
-			parseBytecode();
-
-		logger.debug("Got " + instructions.size()
+		logger.debug("Got " + instructions().size()
 				+ " instructions for method " + myClass.toString() + "."
 				+ eMethod.toString() + ":");
 		for (Instruction inst : instructions()) {
@@ -838,9 +848,9 @@ public class DexIMethod implements IBytecodeMethod {
 		int instCounter = -1;
 		//int pc = 0;
 		int currentCodeAddress = 0;
+		totalInsts.addAndGet(instrucs.length);
 		for (org.jf.dexlib.Code.Instruction inst: instrucs)
 		{
-			totalInsts++;
 			instCounter++;
 			//          instLoc = pc - instCounter;
 			instLoc = currentCodeAddress;
@@ -3246,12 +3256,43 @@ public class DexIMethod implements IBytecodeMethod {
 
 
 
+	/**
+	 * Decodes the method on first use, once, under the method's lock, so that methods may be decoded from several threads; calls
+	 * made by {@link #parseBytecode()} itself see the instructions decoded so far. If decoding fails, the partial instructions are
+	 * dropped, so the next call decodes again rather than returning them.
+	 */
 	protected InstructionArray instructions(){
-		if (instructions == null)
-			parseBytecode();
+		if (!decoded) {
+			synchronized (this) {
+				if (instructions == null) {
+					try {
+						parseBytecode();
+						decoded = true;
+					} finally {
+						if (!decoded) {
+							instructions = null;
+						}
+					}
+				}
+			}
+		}
 		return instructions;
 	}
 
+	/**
+	 * @return the control flow graph of this method in context C; it is built once, and kept for later IRs of this method while
+	 *         memory allows
+	 */
+	synchronized DexCFG getCFG(Context C) {
+		DexCFG result = cfg == null ? null : cfg.get();
+		if (result == null || !(C == null ? cfgContext == null : C.equals(cfgContext))) {
+			result = new DexCFG(this, C);
+			cfg = new SoftReference<DexCFG>(result);
+			cfgContext = C;
+		}
+		return result;
+	}
+
 	public int getAddressFromIndex(int index) {
 		return instructions().getPcFromIndex(index);
 	}
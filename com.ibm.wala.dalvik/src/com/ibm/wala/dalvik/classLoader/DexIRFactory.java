@@ -41,7 +41,7 @@ public class DexIRFactory extends DefaultIRFactory {
     	      throw new IllegalArgumentException("null method");
     	}
     	if (method instanceof DexIMethod)
-    		return new DexCFG((DexIMethod)method, C);    
+    		return ((DexIMethod)method).getCFG(C);
     	return super.makeCFG(method,C);    	    
     }
 
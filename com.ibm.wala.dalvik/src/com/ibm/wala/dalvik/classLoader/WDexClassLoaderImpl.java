@@ -50,6 +50,7 @@ package com.ibm.wala.dalvik.classLoader;
 import static com.ibm.wala.classLoader.ClassLoaderImpl.DEBUG_LEVEL;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -67,6 +68,9 @@ import com.ibm.wala.classLoader.ModuleEntry;
 import com.ibm.wala.ipa.cha.IClassHierarchy;
 import com.ibm.wala.types.ClassLoaderReference;
 import com.ibm.wala.types.TypeName;
+import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.ParallelUtil;
+import com.ibm.wala.util.ParallelUtil.IntAction;
 import com.ibm.wala.util.collections.HashCodeComparator;
 import com.ibm.wala.util.collections.HashSetFactory;
 import com.ibm.wala.util.collections.Iterator2Collection;
@@ -159,58 +163,78 @@ public class WDexClassLoaderImpl extends ClassLoaderImpl {
     }
     
     
-    private void loadAllDexClasses(Collection<ModuleEntry> moduleEntries) {
-    	
+    /**
+     * If {@link #getNumberOfThreads()} is greater than one, the classes are first built in parallel. The checks for duplicate,
+     * excluded and invalid classes, and the insertion into {@link #loadedClasses}, always happen on the calling thread in the order
+     * of the given entries, so the resulting set of classes and warnings does not depend on the number of threads.
+     */
+    private void loadAllDexClasses(Collection<ModuleEntry> moduleEntries) throws IOException {
+    	List<DexModuleEntry> entries = new ArrayList<DexModuleEntry>(moduleEntries.size());
     	for (Iterator<ModuleEntry> it = moduleEntries.iterator(); it.hasNext();) {
     		ModuleEntry entry = it.next();
-
-    		// Dalvik class
     		if (entry instanceof DexModuleEntry) {
-    			DexModuleEntry dexEntry = ((DexModuleEntry) entry);
-    			String className = dexEntry.getClassName();
-				TypeName tName = TypeName.string2TypeName(className);
+    			entries.add((DexModuleEntry) entry);
+    		}
+    	}
 
-    			//if (DEBUG_LEVEL > 0) {
-    			//  System.err.println("Consider dex class: " + tName);
-    			//}
+    	IClass[] parsed = null;
+    	if (getNumberOfThreads() > 1 && entries.size() > 1) {
+    		parsed = makeAllDexClasses(entries);
+    	}
 
-    			//System.out.println("Typename: " + tName.toString());
-    			//System.out.println(tName.getClassName());
-    			if (loadedClasses.get(tName) != null) {
-    				Warnings.add(MultipleDexImplementationsWarning
-    						.create(className));
-    			} else if (lParent != null && lParent.lookupClass(tName) != null) {
-    				Warnings.add(MultipleDexImplementationsWarning
-    						.create(className));
-    			}
-    			//if the class is empty, ie an interface
-    			//                  else if (dexEntry.getClassDefItem().getClassData() == null) {
-    			//                      System.out.println("Jumping over (classdata null): "+dexEntry.getClassName());
-    			//                      Warnings.add(MultipleDexImplementationsWarning
-    			//                              .create(dexEntry.getClassName()));
-    			//                  }
-    			else {
-    				IClass iClass = new DexIClass(this, cha, dexEntry);
-    				if (iClass.getReference().getName().equals(tName)) {
-    					
-    					// className is a descriptor, so strip the 'L'
-    					if (exclusions != null && exclusions.contains(className.substring(1))) {
-    						if (DEBUG_LEVEL > 0) {
-    							System.err.println("Excluding " + className);
-    						}
-    						continue;
+    	for (int i = 0; i < entries.size(); i++) {
+    		DexModuleEntry dexEntry = entries.get(i);
+    		String className = dexEntry.getClassName();
+    		TypeName tName = TypeName.string2TypeName(className);
+
+    		if (loadedClasses.get(tName) != null) {
+    			Warnings.add(MultipleDexImplementationsWarning
+    					.create(className));
+    		} else if (lParent != null && lParent.lookupClass(tName) != null) {
+    			Warnings.add(MultipleDexImplementationsWarning
+    					.create(className));
+    		}
+    		else {
+    			IClass iClass = parsed != null ? parsed[i] : new DexIClass(this, cha, dexEntry);
+    			if (iClass.getReference().getName().equals(tName)) {
+
+    				// className is a descriptor, so strip the 'L'
+    				if (exclusions != null && exclusions.contains(className.substring(1))) {
+    					if (DEBUG_LEVEL > 0) {
+    						System.err.println("Excluding " + className);
     					}
- 
-    					logger.debug("Load class: " + className);
-    					loadedClasses.put(tName, iClass);
-    				} else {
-    					Warnings.add(InvalidDexFile.create(className));
+    					continue;
     				}
+
+    				logger.debug("Load class: " + className);
+    				loadedClasses.put(tName, iClass);
+    			} else {
+    				Warnings.add(InvalidDexFile.create(className));
     			}
     		}
     	}
     }
 
+    /**
+     * Build the classes of the given entries using {@link #getNumberOfThreads()} threads.
+     *
+     * @return the classes, indexed like entries
+     */
+    private IClass[] makeAllDexClasses(final List<DexModuleEntry> entries) throws IOException {
+    	final IClass[] result = new IClass[entries.size()];
+    	try {
+    		ParallelUtil.forEachIndex(result.length, getNumberOfThreads(), new IntAction<RuntimeException>() {
+    			@Override
+    			public void apply(int i) {
+    				result[i] = new DexIClass(WDexClassLoaderImpl.this, cha, entries.get(i));
+    			}
+    		}, null);
+    	} catch (CancelException e) {
+    		throw new IOException("interrupted while reading classes for " + this, e);
+    	}
+    	return result;
+    }
+
 
     /**
      * @return the IClassHierarchy of this classLoader.
@@ -10,13 +10,23 @@
  *******************************************************************************/
 package com.ibm.wala.shrikeCT;
 
+import java.nio.ByteBuffer;
+
 /**
  * This is the core class for reading class file data.
  * 
  * ClassReader performs lazy parsing, and thus most of the methods can throw an InvalidClassFileException.
+ * 
+ * The class file data is read in place from a {@link ByteBuffer}, which may wrap a byte array or be a direct or memory-mapped
+ * buffer; in the latter case the data is never copied onto the heap unless {@link #getBytes()} is called.
  */
 public final class ClassReader implements ClassConstants {
-  private final byte[] bytes;
+  private final ByteBuffer bytes;
+
+  /**
+   * the class file data as an array, if it was given as one or has been copied into one
+   */
+  private byte[] array;
 
   private int[] methodOffsets;
 
@@ -40,14 +50,30 @@ public final class ClassReader implements ClassConstants {
    * @throws InvalidClassFileException the class file data is corrupt
    */
   public ClassReader(byte[] bytes) throws InvalidClassFileException {
-    this.bytes = bytes;
+    this(ByteBuffer.wrap(bytes));
+    this.array = bytes;
+  }
+
+  /**
+   * Build a reader for the class file data between the position and the limit of a buffer. The buffer itself is not modified,
+   * but its contents must not change while the reader is in use.
+   * 
+   * @param buffer the class file data
+   * @throws InvalidClassFileException the class file data is corrupt
+   */
+  public ClassReader(ByteBuffer buffer) throws InvalidClassFileException {
+    if (buffer == null) {
+      throw new IllegalArgumentException("buffer is null");
+    }
+    // slice() gives us our own position and limit, and big-endian byte order
+    this.bytes = buffer.slice();
     parse();
   }
 
   private void checkLength(int offset, int required) throws InvalidClassFileException {
-    if (bytes.length < offset + required) {
+    if (getLength() < offset + required) {
       throw new InvalidClassFileException(offset, "file truncated, expected " + required + " bytes, saw only "
-          + (bytes.length - offset));
+          + (getLength() - offset));
     }
   }
 
@@ -103,7 +129,7 @@ public final class ClassReader implements ClassConstants {
     int attrCount = getUShort(offset);
     offset = skipAttributes(offset + 2, attrCount);
 
-    if (offset != bytes.length) {
+    if (offset != getLength()) {
       throw new InvalidClassFileException(offset, "extra data in class file");
     }
   }
@@ -149,10 +175,42 @@ public final class ClassReader implements ClassConstants {
   }
 
   /**
-   * @return the raw class data bytes
+   * @return the raw class data bytes. If the reader was not built from an array, they are copied into one the first time.
    */
   public byte[] getBytes() {
-    return bytes;
+    if (array == null) {
+      array = getBytes(0, getLength());
+    }
+    return array;
+  }
+
+  /**
+   * @return a copy of length bytes of the raw class data, starting at offset
+   */
+  public byte[] getBytes(int offset, int length) {
+    byte[] result = new byte[length];
+    if (array != null) {
+      System.arraycopy(array, offset, result, 0, length);
+    } else {
+      ByteBuffer b = bytes.duplicate();
+      b.position(offset);
+      b.get(result);
+    }
+    return result;
+  }
+
+  /**
+   * @return a read-only view of the raw class data, from position 0 to the end of the class file
+   */
+  public ByteBuffer getByteBuffer() {
+    return bytes.asReadOnlyBuffer();
+  }
+
+  /**
+   * @return the size of the class file data, in bytes
+   */
+  public int getLength() {
+    return bytes.limit();
   }
 
   /**
@@ -302,28 +360,28 @@ public final class ClassReader implements ClassConstants {
    * @return the signed 32-bit value at offset i in the class data
    */
   public int getInt(int i) {
-    return (bytes[i] << 24) + ((bytes[i + 1] & 0xFF) << 16) + ((bytes[i + 2] & 0xFF) << 8) + (bytes[i + 3] & 0xFF);
+    return bytes.getInt(i);
   }
 
   /**
    * @return the unsigned 16-bit value at offset i in the class data
    */
   public int getUShort(int i) {
-    return ((bytes[i] & 0xFF) << 8) + (bytes[i + 1] & 0xFF);
+    return bytes.getChar(i);
   }
 
   /**
    * @return the signed 16-bit value at offset i in the class data
    */
   public int getShort(int i) {
-    return (bytes[i] << 8) + (bytes[i + 1] & 0xFF);
+    return bytes.getShort(i);
   }
 
   /**
    * @return the signed 8-bit value at offset i in the class data
    */
   public byte getByte(int i) {
-    return bytes[i];
+    return bytes.get(i);
   }
 
   /**
@@ -10,6 +10,8 @@
  *******************************************************************************/
 package com.ibm.wala.shrikeCT;
 
+import java.nio.ByteBuffer;
+
 import com.ibm.wala.shrikeCT.BootstrapMethodsReader.BootstrapMethod;
 import com.ibm.wala.shrikeCT.ClassReader.AttrIterator;
 
@@ -87,10 +89,13 @@ public final class ConstantPoolParser implements ClassConstants {
     }
   }
 
-  final private byte[] bytes;
+  final private ByteBuffer bytes;
 
   private int[] cpOffsets;
 
+  /**
+   * decoded strings, by item; allocated on the first decode, since most pools are never looked at
+   */
   private String[] cpItems;
 
   private BootstrapMethodsReader invokeDynamicBootstraps;
@@ -100,7 +105,7 @@ public final class ConstantPoolParser implements ClassConstants {
 
   private BootstrapMethodsReader getBootstrapReader() throws InvalidClassFileException {
     if (invokeDynamicBootstraps == null) { 
-      ClassReader thisClass = new ClassReader(bytes);
+      ClassReader thisClass = new ClassReader(bytes.duplicate());
       AttrIterator attrs = new AttrIterator();
       thisClass.initClassAttributeIterator(attrs);
       for (; attrs.isValid(); attrs.advance()) {
@@ -119,9 +124,22 @@ public final class ConstantPoolParser implements ClassConstants {
    * @param bytes the raw class file data
    * @param offset the start of the constant pool data
    * @param itemCount the number of items in the pool
-   * @param classReader 
    */
   public ConstantPoolParser(byte[] bytes, int offset, int itemCount) throws InvalidClassFileException {
+    this(ByteBuffer.wrap(bytes), offset, itemCount);
+  }
+
+  /**
+   * Only the item offsets are computed up front; items are decoded when they are asked for.
+   * 
+   * @param bytes the raw class file data, starting at position 0 of the buffer
+   * @param offset the start of the constant pool data
+   * @param itemCount the number of items in the pool
+   */
+  public ConstantPoolParser(ByteBuffer bytes, int offset, int itemCount) throws InvalidClassFileException {
+    if (bytes == null) {
+      throw new IllegalArgumentException("bytes is null");
+    }
     this.bytes = bytes;
     if (offset < 0) {
       throw new IllegalArgumentException("invalid offset: " + offset);
@@ -133,10 +151,24 @@ public final class ConstantPoolParser implements ClassConstants {
   }
 
   /**
-   * @return the buffer holding the raw class file data
+   * @return the buffer holding the raw class file data. If the data is not held in an array, it is copied into one.
    */
   public byte[] getRawBytes() {
-    return bytes;
+    if (bytes.hasArray() && bytes.arrayOffset() == 0) {
+      return bytes.array();
+    }
+    byte[] result = new byte[bytes.limit()];
+    ByteBuffer b = bytes.duplicate();
+    b.position(0);
+    b.get(result);
+    return result;
+  }
+
+  /**
+   * @return a read-only view of the raw class file data; the constant pool is at {@link #getRawOffset()}
+   */
+  public ByteBuffer getRawBuffer() {
+    return bytes.asReadOnlyBuffer();
   }
 
   /**
@@ -167,9 +199,9 @@ public final class ConstantPoolParser implements ClassConstants {
   }
 
   private void checkLength(int offset, int required) throws InvalidClassFileException {
-    if (bytes.length < offset + required) {
+    if (bytes.limit() < offset + required) {
       throw new InvalidClassFileException(offset, "file truncated, expected " + required + " bytes, saw only "
-          + (bytes.length - offset));
+          + (bytes.limit() - offset));
     }
   }
 
@@ -177,7 +209,7 @@ public final class ConstantPoolParser implements ClassConstants {
    * @return the type of constant pool item i, or 0 if i is an unused constant pool item
    */
   public byte getItemType(int i) throws IllegalArgumentException {
-    if (i < 1 || i >= cpItems.length) {
+    if (i < 1 || i >= cpOffsets.length - 1) {
       throw new IllegalArgumentException("Constant pool item #" + i + " out of range");
     }
     int offset = cpOffsets[i];
@@ -192,21 +224,21 @@ public final class ConstantPoolParser implements ClassConstants {
    * @return the name of the Class at constant pool item i, in JVM format (e.g., java/lang/Object)
    */
   public String getCPClass(int i) throws InvalidClassFileException, IllegalArgumentException {
-    if (i < 1 || i >= cpItems.length) {
+    if (i < 1 || i >= cpOffsets.length - 1) {
       throw new IllegalArgumentException("Constant pool item #" + i + " out of range");
     }
     int offset = cpOffsets[i];
     if (offset == 0 || getByte(offset) != CONSTANT_Class) {
       throw new IllegalArgumentException("Constant pool item #" + i + " is not a Class");
     }
-    String s = cpItems[i];
+    String s = cpItems == null ? null : cpItems[i];
     if (s == null) {
       try {
         s = getCPUtf8(getUShort(offset + 1));
       } catch (IllegalArgumentException ex) {
         throw new InvalidClassFileException(offset, "Invalid class name at constant pool item #" + i + ": " + ex.getMessage());
       }
-      cpItems[i] = s;
+      cacheItem(i, s);
     }
     return s;
   }
@@ -215,21 +247,21 @@ public final class ConstantPoolParser implements ClassConstants {
    * @return the name of the method at constant pool item i, in JVM format (e.g., java/lang/Object)
    */
   public String getCPMethodType(int i) throws InvalidClassFileException, IllegalArgumentException {
-    if (i < 1 || i >= cpItems.length) {
+    if (i < 1 || i >= cpOffsets.length - 1) {
       throw new IllegalArgumentException("Constant pool item #" + i + " out of range");
     }
     int offset = cpOffsets[i];
     if (offset == 0 || getByte(offset) != CONSTANT_MethodType) {
       throw new IllegalArgumentException("Constant pool item #" + i + " is not a MethodType");
     }
-    String s = cpItems[i];
+    String s = cpItems == null ? null : cpItems[i];
     if (s == null) {
       try {
         s = getCPUtf8(getUShort(offset + 1));
       } catch (IllegalArgumentException ex) {
         throw new InvalidClassFileException(offset, "Invalid method type at constant pool item #" + i + ": " + ex.getMessage());
       }
-      cpItems[i] = s;
+      cacheItem(i, s);
     }
     return s;
   }
@@ -238,21 +270,21 @@ public final class ConstantPoolParser implements ClassConstants {
    * @return the String at constant pool item i
    */
   public String getCPString(int i) throws InvalidClassFileException, IllegalArgumentException {
-    if (i < 1 || i >= cpItems.length) {
+    if (i < 1 || i >= cpOffsets.length - 1) {
       throw new IllegalArgumentException("Constant pool item #" + i + " out of range");
     }
     int offset = cpOffsets[i];
     if (offset == 0 || getByte(offset) != CONSTANT_String) {
       throw new IllegalArgumentException("Constant pool item #" + i + " is not a String");
     }
-    String s = cpItems[i];
+    String s = cpItems == null ? null : cpItems[i];
     if (s == null) {
       try {
         s = getCPUtf8(getUShort(offset + 1));
       } catch (IllegalArgumentException ex) {
         throw new InvalidClassFileException(offset, "Invalid string at constant pool item #" + i + ": " + ex.getMessage());
       }
-      cpItems[i] = s;
+      cacheItem(i, s);
     }
     return s;
   }
@@ -276,7 +308,7 @@ public final class ConstantPoolParser implements ClassConstants {
    * @return the name of the class part of the FieldRef, MethodRef, or InterfaceMethodRef at constant pool item i
    */
   public String getCPRefClass(int i) throws InvalidClassFileException, IllegalArgumentException {
-    if (i < 1 || i >= cpItems.length) {
+    if (i < 1 || i >= cpOffsets.length - 1) {
       throw new IllegalArgumentException("Constant pool item #" + i + " out of range");
     }
     int offset = cpOffsets[i];
@@ -294,7 +326,7 @@ public final class ConstantPoolParser implements ClassConstants {
    * @return the name part of the FieldRef, MethodRef, or InterfaceMethodRef at constant pool item i
    */
   public String getCPRefName(int i) throws InvalidClassFileException, IllegalArgumentException {
-    if (i < 1 || i >= cpItems.length) {
+    if (i < 1 || i >= cpOffsets.length - 1) {
       throw new IllegalArgumentException("Constant pool item #" + i + " out of range");
     }
     int offset = cpOffsets[i];
@@ -313,7 +345,7 @@ public final class ConstantPoolParser implements ClassConstants {
    *         Ljava/lang/Object;)
    */
   public String getCPRefType(int i) throws InvalidClassFileException, IllegalArgumentException {
-    if (i < 1 || i >= cpItems.length) {
+    if (i < 1 || i >= cpOffsets.length - 1) {
       throw new IllegalArgumentException("Constant pool item #" + i + " out of range");
     }
     int offset = cpOffsets[i];
@@ -331,7 +363,7 @@ public final class ConstantPoolParser implements ClassConstants {
    * @return the name part of the NameAndType at constant pool item i
    */
   public String getCPNATName(int i) throws InvalidClassFileException, IllegalArgumentException {
-    if (i < 1 || i >= cpItems.length) {
+    if (i < 1 || i >= cpOffsets.length - 1) {
       throw new IllegalArgumentException("Constant pool item #" + i + " out of range");
     }
     int offset = cpOffsets[i];
@@ -349,7 +381,7 @@ public final class ConstantPoolParser implements ClassConstants {
    * @return the type part of the NameAndType at constant pool item i, in JVM format (e.g., I, Z, or Ljava/lang/Object;)
    */
   public String getCPNATType(int i) throws InvalidClassFileException, IllegalArgumentException {
-    if (i < 1 || i >= cpItems.length) {
+    if (i < 1 || i >= cpOffsets.length - 1) {
       throw new IllegalArgumentException("Constant pool item #" + i + " out of range");
     }
     int offset = cpOffsets[i];
@@ -367,7 +399,7 @@ public final class ConstantPoolParser implements ClassConstants {
    * @return the name part of the MethodHandle at constant pool item i, in JVM format (e.g., I, Z, or Ljava/lang/Object;)
    */
   public String getCPHandleName(int i) throws InvalidClassFileException, IllegalArgumentException {
-    if (i < 1 || i >= cpItems.length) {
+    if (i < 1 || i >= cpOffsets.length - 1) {
       throw new IllegalArgumentException("Constant pool item #" + i + " out of range");
     }
     int offset = cpOffsets[i];
@@ -385,7 +417,7 @@ public final class ConstantPoolParser implements ClassConstants {
    * @return the name part of the MethodHandle at constant pool item i, in JVM format (e.g., I, Z, or Ljava/lang/Object;)
    */
   public String getCPHandleType(int i) throws InvalidClassFileException, IllegalArgumentException {
-    if (i < 1 || i >= cpItems.length) {
+    if (i < 1 || i >= cpOffsets.length - 1) {
       throw new IllegalArgumentException("Constant pool item #" + i + " out of range");
     }
     int offset = cpOffsets[i];
@@ -403,7 +435,7 @@ public final class ConstantPoolParser implements ClassConstants {
    * @return the name part of the MethodHandle at constant pool item i, in JVM format (e.g., I, Z, or Ljava/lang/Object;)
    */
   public String getCPHandleClass(int i) throws InvalidClassFileException, IllegalArgumentException {
-    if (i < 1 || i >= cpItems.length) {
+    if (i < 1 || i >= cpOffsets.length - 1) {
       throw new IllegalArgumentException("Constant pool item #" + i + " out of range");
     }
     int offset = cpOffsets[i];
@@ -421,7 +453,7 @@ public final class ConstantPoolParser implements ClassConstants {
    * @return the type of the MethodHandle at constant pool item i
    */
   public byte getCPHandleKind(int i) throws InvalidClassFileException, IllegalArgumentException {
-    if (i < 1 || i >= cpItems.length) {
+    if (i < 1 || i >= cpOffsets.length - 1) {
       throw new IllegalArgumentException("Constant pool item #" + i + " out of range");
     }
     int offset = cpOffsets[i];
@@ -439,7 +471,7 @@ public final class ConstantPoolParser implements ClassConstants {
    * @return the value of the Integer at constant pool item i
    */
   public int getCPInt(int i) throws InvalidClassFileException, IllegalArgumentException {
-    if (i < 1 || i >= cpItems.length) {
+    if (i < 1 || i >= cpOffsets.length - 1) {
       throw new IllegalArgumentException("Constant pool item #" + i + " out of range");
     }
     int offset = cpOffsets[i];
@@ -453,7 +485,7 @@ public final class ConstantPoolParser implements ClassConstants {
    * @return the value of the Float at constant pool item i
    */
   public float getCPFloat(int i) throws InvalidClassFileException, IllegalArgumentException {
-    if (i < 1 || i >= cpItems.length) {
+    if (i < 1 || i >= cpOffsets.length - 1) {
       throw new IllegalArgumentException("Constant pool item #" + i + " out of range");
     }
     int offset = cpOffsets[i];
@@ -467,7 +499,7 @@ public final class ConstantPoolParser implements ClassConstants {
    * @return the value of the Long at constant pool item i
    */
   public long getCPLong(int i) throws InvalidClassFileException, IllegalArgumentException {
-    if (i < 1 || i >= cpItems.length) {
+    if (i < 1 || i >= cpOffsets.length - 1) {
       throw new IllegalArgumentException("Constant pool item #" + i + " out of range");
     }
     int offset = cpOffsets[i];
@@ -481,7 +513,7 @@ public final class ConstantPoolParser implements ClassConstants {
    * @return the value of the Double at constant pool item i
    */
   public double getCPDouble(int i) throws InvalidClassFileException, IllegalArgumentException {
-    if (i < 1 || i >= cpItems.length) {
+    if (i < 1 || i >= cpOffsets.length - 1) {
       throw new IllegalArgumentException("Constant pool item #" + i + " out of range");
     }
     int offset = cpOffsets[i];
@@ -495,7 +527,7 @@ public final class ConstantPoolParser implements ClassConstants {
    * @return the BootstrapMethodTable index of the bootstrap method for this invokedynamic
    */
   public BootstrapMethod getCPDynBootstrap(int i) throws InvalidClassFileException, IllegalArgumentException {
-    if (i < 1 || i >= cpItems.length) {
+    if (i < 1 || i >= cpOffsets.length - 1) {
       throw new IllegalArgumentException("Constant pool item #" + i + " out of range");
     }
     int offset = cpOffsets[i];
@@ -512,7 +544,7 @@ public final class ConstantPoolParser implements ClassConstants {
   }
 
   public String getCPDynName(int i) throws InvalidClassFileException, IllegalArgumentException {
-    if (i < 1 || i >= cpItems.length) {
+    if (i < 1 || i >= cpOffsets.length - 1) {
       throw new IllegalArgumentException("Constant pool item #" + i + " out of range");
     }
     int offset = cpOffsets[i];
@@ -527,7 +559,7 @@ public final class ConstantPoolParser implements ClassConstants {
   }
 
   public String getCPDynType(int i) throws InvalidClassFileException, IllegalArgumentException {
-    if (i < 1 || i >= cpItems.length) {
+    if (i < 1 || i >= cpOffsets.length - 1) {
       throw new IllegalArgumentException("Constant pool item #" + i + " out of range");
     }
     int offset = cpOffsets[i];
@@ -550,14 +582,14 @@ public final class ConstantPoolParser implements ClassConstants {
    * @return the value of the Utf8 string at constant pool item i
    */
   public String getCPUtf8(int i) throws InvalidClassFileException, IllegalArgumentException {
-    if (i < 1 || i >= cpItems.length) {
+    if (i < 1 || i >= cpOffsets.length - 1) {
       throw new IllegalArgumentException("Constant pool item #" + i + " out of range");
     }
     int offset = cpOffsets[i];
     if (offset == 0 || getByte(offset) != CONSTANT_Utf8) {
       throw new IllegalArgumentException("Constant pool item #" + i + " is not a Utf8");
     }
-    String s = cpItems[i];
+    String s = cpItems == null ? null : cpItems[i];
     if (s == null) {
       int count = getUShort(offset + 1);
       int end = count + offset + 3;
@@ -598,14 +630,20 @@ public final class ConstantPoolParser implements ClassConstants {
       }
       // s = buf.toString().intern(); // removed intern() call --MS
       s = buf.toString();
-      cpItems[i] = s;
+      cacheItem(i, s);
     }
     return s;
   }
 
+  private void cacheItem(int i, String s) {
+    if (cpItems == null) {
+      cpItems = new String[cpOffsets.length - 1];
+    }
+    cpItems[i] = s;
+  }
+
   private void parseConstantPool(int offset, int itemCount) throws InvalidClassFileException {
     cpOffsets = new int[itemCount + 1];
-    cpItems = new String[itemCount];
     for (int i = 1; i < itemCount; i++) {
       cpOffsets[i] = offset;
       byte tag = getByte(offset);
@@ -650,23 +688,19 @@ public final class ConstantPoolParser implements ClassConstants {
   }
 
   private byte getByte(int i) {
-    return bytes[i];
+    return bytes.get(i);
   }
 
   private int getUShort(int i) {
-    return ((bytes[i] & 0xFF) << 8) + (bytes[i + 1] & 0xFF);
+    return bytes.getChar(i);
   }
 
-  // private short getShort(int i) {
-  // return (short) ((bytes[i] << 8) + (bytes[i + 1] & 0xFF));
-  // }
-
   private int getInt(int i) {
-    return (bytes[i] << 24) + ((bytes[i + 1] & 0xFF) << 16) + ((bytes[i + 2] & 0xFF) << 8) + (bytes[i + 3] & 0xFF);
+    return bytes.getInt(i);
   }
 
   private long getLong(int i) {
-    return ((long) getInt(i) << 32) + (getInt(i + 4) & 0xFFFFFFFFL);
+    return bytes.getLong(i);
   }
 
   private float getFloat(int i) {
@@ -35,6 +35,14 @@ public class BitVectorKillGen extends UnaryOperator<BitVectorVariable> {
     this.gen = new BitVectorIntSet(gen);
   }
 
+  BitVectorIntSet getKill() {
+    return kill;
+  }
+
+  BitVectorIntSet getGen() {
+    return gen;
+  }
+
   @Override
   public byte evaluate(BitVectorVariable lhs, BitVectorVariable rhs) throws IllegalArgumentException {
     if (rhs == null) {
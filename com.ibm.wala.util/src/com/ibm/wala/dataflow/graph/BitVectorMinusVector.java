@@ -25,6 +25,10 @@ public class BitVectorMinusVector extends UnaryOperator<BitVectorVariable> {
   public BitVectorMinusVector(BitVector v) {
     this.v = new BitVectorIntSet(v);
   }
+
+  BitVectorIntSet getVector() {
+    return v;
+  }
   
 
   @Override
@@ -27,6 +27,10 @@ public class BitVectorOr extends UnaryOperator<BitVectorVariable> {
     }
     this.v = v;
   }
+
+  BitVector getVector() {
+    return v;
+  }
   
 
   @Override
@@ -0,0 +1,830 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.dataflow.graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.ibm.wala.fixpoint.BitVectorVariable;
+import com.ibm.wala.fixpoint.UnaryOperator;
+import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.MonitorUtil;
+import com.ibm.wala.util.MonitorUtil.IProgressMonitor;
+import com.ibm.wala.util.ParallelUtil;
+import com.ibm.wala.util.ParallelUtil.IntAction;
+import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.collections.Pair;
+import com.ibm.wala.util.graph.Graph;
+import com.ibm.wala.util.graph.traverse.DFS;
+import com.ibm.wala.util.intset.BitVector;
+import com.ibm.wala.util.intset.IntIterator;
+import com.ibm.wala.util.intset.IntSet;
+import com.ibm.wala.util.intset.IntegerUnionFind;
+
+/**
+ * A solver for {@link BitVectorVariable} dataflow problems which keeps all the sets of the problem in one array of longs, rather than
+ * in a {@link BitVectorVariable} per set.
+ *
+ * The sets are laid out in reverse postorder of the flow graph, which is also the order in which nodes are evaluated: each sweep
+ * visits the pending nodes in that order, so that in the absence of back edges one sweep suffices, and the sets read by a node are
+ * usually close to the ones it writes. The common operators ({@link BitVectorUnion}, {@link BitVectorIntersection},
+ * {@link BitVectorKillGen}, {@link BitVectorUnionConstant} and the like) are evaluated word by word in place, without allocation;
+ * any other operator is evaluated on {@link BitVectorVariable}s copied out of the array and back.
+ *
+ * The results are the same as those of {@link BitVectorSolver}, including its sharing of variables for identity functions and
+ * single-predecessor meets. A solver keeps no state outside itself, so solvers for different problems, e.g. one per method, may
+ * run on different threads: see {@link #solve(Collection, int, IProgressMonitor)}.
+ *
+ * @param <T> type of nodes in the flow graph
+ */
+public class BitVectorSlabSolver<T> {
+
+  private final IKilldallFramework<T, BitVectorVariable> problem;
+
+  /**
+   * number of 64-bit words in each set
+   */
+  private int words;
+
+  /**
+   * the sets, words apiece
+   */
+  private long[] slab;
+
+  /**
+   * for each set, has it been assigned? An unassigned set is the null value of a {@link BitVectorVariable}, which
+   * {@link BitVectorIntersection} skips.
+   */
+  private boolean[] defined;
+
+  /**
+   * the nodes of the flow graph, in reverse postorder
+   */
+  private Object[] nodes;
+
+  /**
+   * the index of each node in {@link #nodes}
+   */
+  private final Map<Object, Integer> nodeIndex = HashMapFactory.make();
+
+  /**
+   * for each node, the set holding its IN value
+   */
+  private int[] inSet;
+
+  /**
+   * for each node, the set holding its OUT value; the same as its IN set if it has no node transfer function
+   */
+  private int[] outSet;
+
+  /**
+   * for each edge, as a {@link Pair}, the set holding its value, if there are edge transfer functions
+   */
+  private final Map<Object, Integer> edgeSet = HashMapFactory.make();
+
+  /**
+   * for each node, the sets met into its IN set, or null if it has no meet
+   */
+  private int[][] meetInputs;
+
+  /**
+   * for each node, its transfer function, or null if the OUT set is the IN set
+   */
+  private Transfer[] transfer;
+
+  /**
+   * for each node, the sets of its outgoing edges that have a transfer function of their own
+   */
+  private int[][] edgeOutputs;
+
+  /**
+   * the transfer functions producing {@link #edgeOutputs}
+   */
+  private Transfer[][] edgeTransfer;
+
+  /**
+   * for each set, the nodes that read it
+   */
+  private int[][] readers;
+
+  private AbstractMeetOperator<BitVectorVariable> meet;
+
+  private final static int UNION = 0;
+
+  private final static int INTERSECTION = 1;
+
+  private final static int OTHER = 2;
+
+  private int meetKind;
+
+  /**
+   * scratch space for one set
+   */
+  private long[] scratch;
+
+  /**
+   * nodes to be evaluated
+   */
+  private boolean[] pending;
+
+  private int nPending;
+
+  public BitVectorSlabSolver(IKilldallFramework<T, BitVectorVariable> problem) {
+    if (problem == null) {
+      throw new IllegalArgumentException("null problem");
+    }
+    this.problem = problem;
+  }
+
+  public IKilldallFramework<T, BitVectorVariable> getProblem() {
+    return problem;
+  }
+
+  /**
+   * Solve the problem.
+   *
+   * @return true iff the evaluation of some transfer function or meet changed some set
+   */
+  public boolean solve(IProgressMonitor monitor) throws CancelException {
+    if (slab == null) {
+      initialize();
+    }
+    for (int i = 0; i < nodes.length; i++) {
+      pending[i] = true;
+    }
+    nPending = nodes.length;
+    boolean globalChange = false;
+    while (nPending > 0) {
+      MonitorUtil.throwExceptionIfCanceled(monitor);
+      for (int i = 0; i < nodes.length; i++) {
+        if (pending[i]) {
+          pending[i] = false;
+          nPending--;
+          globalChange |= evaluate(i);
+        }
+      }
+    }
+    return globalChange;
+  }
+
+  /**
+   * Solve several problems, using the given number of threads. The transfer function providers of the problems must allow this.
+   */
+  public static void solve(Collection<? extends BitVectorSlabSolver<?>> solvers, int nThreads, final IProgressMonitor monitor)
+      throws CancelException {
+    if (solvers == null) {
+      throw new IllegalArgumentException("null solvers");
+    }
+    if (nThreads < 1) {
+      throw new IllegalArgumentException("invalid number of threads: " + nThreads);
+    }
+    final List<BitVectorSlabSolver<?>> list = new ArrayList<BitVectorSlabSolver<?>>(solvers);
+    ParallelUtil.forEachIndex(list.size(), nThreads, new IntAction<CancelException>() {
+      @Override
+      public void apply(int i) throws CancelException {
+        list.get(i).solve(monitor);
+      }
+    }, monitor);
+  }
+
+  /**
+   * @return a copy of the IN value of node n
+   */
+  public BitVectorVariable getIn(Object n) {
+    return toVariable(inSet[index(n)]);
+  }
+
+  /**
+   * @return a copy of the OUT value of node n
+   */
+  public BitVectorVariable getOut(Object n) {
+    return toVariable(outSet[index(n)]);
+  }
+
+  /**
+   * @return a copy of the value of the edge from src to dst
+   */
+  public BitVectorVariable getEdge(Object src, Object dst) {
+    if (slab == null) {
+      throw new IllegalStateException("not solved yet");
+    }
+    Integer set = edgeSet.get(Pair.make(src, dst));
+    if (set == null) {
+      throw new IllegalArgumentException("no edge set for " + src + " -> " + dst);
+    }
+    return toVariable(set);
+  }
+
+  private int index(Object n) {
+    if (slab == null) {
+      throw new IllegalStateException("not solved yet");
+    }
+    Integer i = nodeIndex.get(n);
+    if (i == null) {
+      throw new IllegalArgumentException("not a node of the flow graph: " + n);
+    }
+    return i;
+  }
+
+  /**
+   * Number the nodes in reverse postorder, and lay out the sets. As in {@link DataflowSolver}, variables related by an identity
+   * function or a meet of a single value share a set.
+   */
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  private void initialize() {
+    Graph<T> G = problem.getFlowGraph();
+    ITransferFunctionProvider<T, BitVectorVariable> functions = problem.getTransferFunctionProvider();
+    meet = functions.getMeetOperator();
+    meetKind = (meet instanceof BitVectorUnion) ? UNION : (meet instanceof BitVectorIntersection) ? INTERSECTION : OTHER;
+    boolean nodeFunctions = functions.hasNodeTransferFunctions();
+    boolean edgeFunctions = functions.hasEdgeTransferFunctions();
+
+    // reverse postorder, starting from the entries
+    List<T> roots = new ArrayList<T>();
+    for (T n : G) {
+      if (G.getPredNodeCount(n) == 0) {
+        roots.add(n);
+      }
+    }
+    for (T n : G) {
+      roots.add(n);
+    }
+    List<T> postorder = new ArrayList<T>();
+    for (Iterator<T> it = DFS.iterateFinishTime(G, roots.iterator()); it.hasNext();) {
+      postorder.add(it.next());
+    }
+    int n = postorder.size();
+    nodes = new Object[n];
+    for (int i = 0; i < n; i++) {
+      nodes[i] = postorder.get(n - 1 - i);
+      nodeIndex.put(nodes[i], i);
+    }
+
+    // variables: IN of node i is i, OUT is n + i, edges follow
+    List<Pair<T, T>> edges = new ArrayList<Pair<T, T>>();
+    if (edgeFunctions) {
+      for (int i = 0; i < n; i++) {
+        for (Iterator<? extends T> it = G.getSuccNodes((T) nodes[i]); it.hasNext();) {
+          edges.add(Pair.make((T) nodes[i], (T) it.next()));
+        }
+      }
+    }
+    Map<Object, Integer> edgeVar = HashMapFactory.make();
+    for (int e = 0; e < edges.size(); e++) {
+      edgeVar.put(edges.get(e), 2 * n + e);
+    }
+    IntegerUnionFind uf = new IntegerUnionFind(2 * n + edges.size());
+    UnaryOperator<BitVectorVariable>[] nodeOps = new UnaryOperator[n];
+    for (int i = 0; i < n; i++) {
+      if (nodeFunctions) {
+        nodeOps[i] = functions.getNodeTransferFunction((T) nodes[i]);
+        if (nodeOps[i].isIdentity()) {
+          uf.union(i, n + i);
+        }
+      } else {
+        uf.union(i, n + i);
+      }
+    }
+    UnaryOperator<BitVectorVariable>[] edgeOps = new UnaryOperator[edges.size()];
+    for (int e = 0; e < edges.size(); e++) {
+      Pair<T, T> edge = edges.get(e);
+      edgeOps[e] = functions.getEdgeTransferFunction(edge.fst, edge.snd);
+      if (edgeOps[e].isIdentity()) {
+        uf.union(2 * n + e, n + nodeIndex.get(edge.fst));
+      }
+    }
+    int meetThreshold = meet.isUnaryNoOp() ? 2 : 1;
+    for (int i = 0; i < n; i++) {
+      if (meet.isUnaryNoOp() && G.getPredNodeCount((T) nodes[i]) == 1) {
+        T p = G.getPredNodes((T) nodes[i]).next();
+        uf.union(i, edgeFunctions ? edgeVar.get(Pair.make(p, nodes[i])) : n + nodeIndex.get(p));
+      }
+    }
+
+    // one set for each class of variables
+    int[] setOf = new int[uf.size()];
+    int[] setOfRep = new int[uf.size()];
+    Arrays.fill(setOfRep, -1);
+    int nSets = 0;
+    for (int v = 0; v < uf.size(); v++) {
+      int rep = uf.find(v);
+      if (setOfRep[rep] == -1) {
+        setOfRep[rep] = nSets++;
+      }
+      setOf[v] = setOfRep[rep];
+    }
+    inSet = new int[n];
+    outSet = new int[n];
+    for (int i = 0; i < n; i++) {
+      inSet[i] = setOf[i];
+      outSet[i] = setOf[n + i];
+    }
+    for (int e = 0; e < edges.size(); e++) {
+      edgeSet.put(edges.get(e), setOf[2 * n + e]);
+    }
+
+    // the statements of each node, and the nodes reading each set
+    Map<UnaryOperator<BitVectorVariable>, Transfer> compiled = new IdentityHashMap<UnaryOperator<BitVectorVariable>, Transfer>();
+    List<List<Integer>> readerLists = new ArrayList<List<Integer>>(nSets);
+    for (int s = 0; s < nSets; s++) {
+      readerLists.add(new ArrayList<Integer>(2));
+    }
+    meetInputs = new int[n][];
+    transfer = new Transfer[n];
+    edgeOutputs = new int[n][];
+    edgeTransfer = new Transfer[n][];
+    int maxBit = -1;
+    for (int i = 0; i < n; i++) {
+      T node = (T) nodes[i];
+      int nPred = G.getPredNodeCount(node);
+      if (nPred >= meetThreshold) {
+        int[] inputs = new int[nPred];
+        int k = 0;
+        for (Iterator<? extends T> it = G.getPredNodes(node); it.hasNext();) {
+          T p = it.next();
+          inputs[k] = edgeFunctions ? edgeSet.get(Pair.make(p, node)) : outSet[nodeIndex.get(p)];
+          addReader(readerLists, inputs[k++], i);
+        }
+        meetInputs[i] = inputs;
+      }
+      if (nodeFunctions && !nodeOps[i].isIdentity()) {
+        transfer[i] = compile(nodeOps[i], compiled);
+        maxBit = Math.max(maxBit, transfer[i].maxBit());
+        addReader(readerLists, inSet[i], i);
+      }
+      if (edgeFunctions) {
+        List<Integer> outputs = new ArrayList<Integer>();
+        List<Transfer> fs = new ArrayList<Transfer>();
+        for (Iterator<? extends T> it = G.getSuccNodes(node); it.hasNext();) {
+          Pair<T, T> edge = Pair.make(node, (T) it.next());
+          UnaryOperator<BitVectorVariable> f = edgeOps[edgeVar.get(edge) - 2 * n];
+          if (!f.isIdentity()) {
+            Transfer t = compile(f, compiled);
+            maxBit = Math.max(maxBit, t.maxBit());
+            outputs.add(edgeSet.get(edge));
+            fs.add(t);
+            addReader(readerLists, outSet[i], i);
+          }
+        }
+        if (!outputs.isEmpty()) {
+          edgeOutputs[i] = new int[outputs.size()];
+          edgeTransfer[i] = fs.toArray(new Transfer[fs.size()]);
+          for (int k = 0; k < outputs.size(); k++) {
+            edgeOutputs[i][k] = outputs.get(k);
+          }
+        }
+      }
+    }
+    readers = new int[nSets][];
+    for (int s = 0; s < nSets; s++) {
+      List<Integer> l = readerLists.get(s);
+      readers[s] = new int[l.size()];
+      for (int k = 0; k < l.size(); k++) {
+        readers[s][k] = l.get(k);
+      }
+    }
+
+    if (problem instanceof BitVectorFramework) {
+      maxBit = Math.max(maxBit, ((BitVectorFramework<T, ?>) problem).getLatticeValues().getMaximumIndex());
+    }
+    words = wordsFor(maxBit);
+    slab = new long[nSets * words];
+    defined = new boolean[nSets];
+    scratch = new long[words];
+    pending = new boolean[n];
+  }
+
+  private static void addReader(List<List<Integer>> readerLists, int set, int node) {
+    List<Integer> l = readerLists.get(set);
+    if (l.isEmpty() || l.get(l.size() - 1) != node) {
+      l.add(node);
+    }
+  }
+
+  private static int wordsFor(int maxBit) {
+    return Math.max(1, (maxBit >> 6) + 1);
+  }
+
+  /**
+   * Evaluate the meet, the transfer function and the edge transfer functions of node i, and mark the nodes reading any set that
+   * changed.
+   *
+   * @return true iff some set changed
+   */
+  private boolean evaluate(int i) {
+    boolean changed = false;
+    if (meetInputs[i] != null) {
+      if (meet(i)) {
+        changed = true;
+        changedSet(i, inSet[i], 0);
+      }
+    }
+    if (transfer[i] != null) {
+      if (transfer[i].apply(this, inSet[i], outSet[i])) {
+        changed = true;
+        changedSet(i, outSet[i], 1);
+      }
+    }
+    if (edgeOutputs[i] != null) {
+      for (int k = 0; k < edgeOutputs[i].length; k++) {
+        if (edgeTransfer[i][k].apply(this, outSet[i], edgeOutputs[i][k])) {
+          changed = true;
+          changedSet(i, edgeOutputs[i][k], 2);
+        }
+      }
+    }
+    return changed;
+  }
+
+  /**
+   * Set s, written by step (0 meet, 1 transfer, 2 edges) of node i, has changed. Mark its readers, except for node i itself if it
+   * only reads s in a later step.
+   */
+  private void changedSet(int i, int s, int step) {
+    for (int j : readers[s]) {
+      if (j != i || readsAtOrBefore(i, s, step)) {
+        if (!pending[j]) {
+          pending[j] = true;
+          nPending++;
+        }
+      }
+    }
+  }
+
+  private boolean readsAtOrBefore(int i, int s, int step) {
+    if (meetInputs[i] != null) {
+      for (int x : meetInputs[i]) {
+        if (x == s) {
+          return true;
+        }
+      }
+    }
+    if (step >= 1 && transfer[i] != null && inSet[i] == s) {
+      return true;
+    }
+    return step >= 2 && edgeOutputs[i] != null && outSet[i] == s;
+  }
+
+  /**
+   * Evaluate the meet into the IN set of node i.
+   *
+   * @return true iff the IN set changed
+   */
+  private boolean meet(int i) {
+    int lhs = inSet[i];
+    int[] inputs = meetInputs[i];
+    switch (meetKind) {
+    case UNION: {
+      boolean changed = false;
+      int t = lhs * words;
+      for (int s : inputs) {
+        if (s == lhs) {
+          continue;
+        }
+        if (defined[s] && !defined[lhs]) {
+          defined[lhs] = true;
+          changed = true;
+        }
+        int b = s * words;
+        for (int w = 0; w < words; w++) {
+          long old = slab[t + w];
+          long v = old | slab[b + w];
+          if (v != old) {
+            slab[t + w] = v;
+            changed = true;
+          }
+        }
+      }
+      return changed;
+    }
+    case INTERSECTION: {
+      // as in BitVectorIntersection, unassigned values are ignored
+      int start = defined[lhs] ? lhs : -1;
+      for (int k = 0; start == -1 && k < inputs.length; k++) {
+        if (defined[inputs[k]]) {
+          start = inputs[k];
+        }
+      }
+      if (start == -1) {
+        return false;
+      }
+      System.arraycopy(slab, start * words, scratch, 0, words);
+      boolean empty = true;
+      for (int s : inputs) {
+        if (defined[s]) {
+          int b = s * words;
+          for (int w = 0; w < words; w++) {
+            scratch[w] &= slab[b + w];
+          }
+        }
+      }
+      for (int w = 0; w < words; w++) {
+        empty &= scratch[w] == 0;
+      }
+      // as in BitVectorIntersection, an empty intersection leaves the value unassigned
+      return store(lhs, scratch, !empty);
+    }
+    default: {
+      BitVectorVariable[] rhs = new BitVectorVariable[inputs.length];
+      for (int k = 0; k < inputs.length; k++) {
+        rhs[k] = toVariable(inputs[k]);
+      }
+      BitVectorVariable result = toVariable(lhs);
+      meet.evaluate(result, rhs);
+      return store(lhs, result);
+    }
+    }
+  }
+
+  /**
+   * Replace set s by the given words, and mark it assigned if isDefined.
+   *
+   * @return true iff s changed
+   */
+  private boolean store(int s, long[] value, boolean isDefined) {
+    boolean changed = defined[s] != isDefined;
+    defined[s] = isDefined;
+    int b = s * words;
+    for (int w = 0; w < words; w++) {
+      if (slab[b + w] != value[w]) {
+        slab[b + w] = value[w];
+        changed = true;
+      }
+    }
+    return changed;
+  }
+
+  /**
+   * Replace set s by the value of v, making room for more bits if needed.
+   *
+   * @return true iff s changed
+   */
+  private boolean store(int s, BitVectorVariable v) {
+    IntSet value = v.getValue();
+    if (value != null && value.max() >= words * 64) {
+      grow(value.max());
+    }
+    long[] bits = new long[words];
+    if (value != null) {
+      for (IntIterator it = value.intIterator(); it.hasNext();) {
+        int x = it.next();
+        bits[x >> 6] |= 1L << x;
+      }
+    }
+    return store(s, bits, value != null);
+  }
+
+  /**
+   * Make every set large enough to hold maxBit.
+   */
+  private void grow(int maxBit) {
+    int newWords = wordsFor(maxBit);
+    long[] newSlab = new long[defined.length * newWords];
+    for (int s = 0; s < defined.length; s++) {
+      System.arraycopy(slab, s * words, newSlab, s * newWords, words);
+    }
+    slab = newSlab;
+    words = newWords;
+    scratch = new long[words];
+  }
+
+  /**
+   * @return a fresh variable holding the value of set s
+   */
+  private BitVectorVariable toVariable(int s) {
+    BitVectorVariable result = new BitVectorVariable();
+    if (defined[s]) {
+      BitVector bv = new BitVector();
+      int b = s * words;
+      for (int w = 0; w < words; w++) {
+        long x = slab[b + w];
+        while (x != 0) {
+          int bit = Long.numberOfTrailingZeros(x);
+          bv.set((w << 6) + bit);
+          x &= x - 1;
+        }
+      }
+      result.addAll(bv);
+    }
+    return result;
+  }
+
+  /**
+   * @return the given set of bits as words
+   */
+  private static long[] toWords(IntSet s) {
+    long[] result = new long[wordsFor(s.isEmpty() ? -1 : s.max())];
+    for (IntIterator it = s.intIterator(); it.hasNext();) {
+      int x = it.next();
+      result[x >> 6] |= 1L << x;
+    }
+    return result;
+  }
+
+  private static long[] toWords(BitVector v) {
+    long[] result = new long[wordsFor(v.max())];
+    for (int x = v.nextSetBit(0); x >= 0; x = v.nextSetBit(x + 1)) {
+      result[x >> 6] |= 1L << x;
+    }
+    return result;
+  }
+
+  private static int maxBit(long[] v) {
+    for (int w = v.length - 1; w >= 0; w--) {
+      if (v[w] != 0) {
+        return (w << 6) + 63 - Long.numberOfLeadingZeros(v[w]);
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @return a transfer function on sets equivalent to f, shared by all uses of f
+   */
+  private Transfer compile(UnaryOperator<BitVectorVariable> f, Map<UnaryOperator<BitVectorVariable>, Transfer> compiled) {
+    Transfer result = compiled.get(f);
+    if (result == null) {
+      if (f instanceof BitVectorKillGen) {
+        BitVectorKillGen kg = (BitVectorKillGen) f;
+        result = new KillGen(toWords(kg.getKill()), toWords(kg.getGen()));
+      } else if (f instanceof BitVectorMinusVector) {
+        result = new KillGen(toWords(((BitVectorMinusVector) f).getVector()), new long[0]);
+      } else if (f instanceof BitVectorKillAll) {
+        result = new KillAll();
+      } else if (f instanceof BitVectorUnionVector) {
+        result = new Union(toWords(((BitVectorUnionVector) f).getVector()));
+      } else if (f instanceof BitVectorOr) {
+        result = new Union(toWords(((BitVectorOr) f).getVector()));
+      } else if (f instanceof BitVectorUnionConstant) {
+        int c = ((BitVectorUnionConstant) f).getConstant();
+        long[] v = new long[wordsFor(c)];
+        v[c >> 6] |= 1L << c;
+        result = new Union(v);
+      } else if (f instanceof UnaryBitVectorUnion) {
+        result = new Union(null);
+      } else {
+        result = new Opaque(f);
+      }
+      compiled.put(f, result);
+    }
+    return result;
+  }
+
+  /**
+   * A transfer function evaluated on the sets of the slab
+   */
+  private static abstract class Transfer {
+    /**
+     * @return the largest bit this function may add by itself, or -1 if none
+     */
+    abstract int maxBit();
+
+    /**
+     * set lhs to the value of the function for rhs, in the sets of solver s; lhs and rhs may be the same set
+     *
+     * @return true iff lhs changed
+     */
+    abstract boolean apply(BitVectorSlabSolver<?> s, int rhs, int lhs);
+  }
+
+  /**
+   * lhs = (rhs - kill) | gen, as {@link BitVectorKillGen} and {@link BitVectorMinusVector}
+   */
+  private static final class KillGen extends Transfer {
+    private final long[] kill;
+
+    private final long[] gen;
+
+    KillGen(long[] kill, long[] gen) {
+      this.kill = kill;
+      this.gen = gen;
+    }
+
+    @Override
+    int maxBit() {
+      return BitVectorSlabSolver.maxBit(gen);
+    }
+
+    @Override
+    boolean apply(BitVectorSlabSolver<?> s, int rhs, int lhs) {
+      boolean changed = !s.defined[lhs];
+      s.defined[lhs] = true;
+      int r = rhs * s.words;
+      int l = lhs * s.words;
+      for (int w = 0; w < s.words; w++) {
+        long v = s.slab[r + w];
+        if (w < kill.length) {
+          v &= ~kill[w];
+        }
+        if (w < gen.length) {
+          v |= gen[w];
+        }
+        if (s.slab[l + w] != v) {
+          s.slab[l + w] = v;
+          changed = true;
+        }
+      }
+      return changed;
+    }
+  }
+
+  /**
+   * lhs = {}, unassigned, as {@link BitVectorKillAll}
+   */
+  private static final class KillAll extends Transfer {
+    @Override
+    int maxBit() {
+      return -1;
+    }
+
+    @Override
+    boolean apply(BitVectorSlabSolver<?> s, int rhs, int lhs) {
+      boolean changed = s.defined[lhs];
+      s.defined[lhs] = false;
+      int l = lhs * s.words;
+      for (int w = 0; w < s.words; w++) {
+        if (s.slab[l + w] != 0) {
+          s.slab[l + w] = 0;
+          changed = true;
+        }
+      }
+      return changed;
+    }
+  }
+
+  /**
+   * lhs = lhs | rhs | v, as {@link BitVectorUnionVector}, {@link BitVectorOr}, {@link BitVectorUnionConstant} and, if v is null,
+   * {@link UnaryBitVectorUnion}
+   */
+  private static final class Union extends Transfer {
+    private final long[] v;
+
+    Union(long[] v) {
+      this.v = v;
+    }
+
+    @Override
+    int maxBit() {
+      return v == null ? -1 : BitVectorSlabSolver.maxBit(v);
+    }
+
+    @Override
+    boolean apply(BitVectorSlabSolver<?> s, int rhs, int lhs) {
+      boolean changed = false;
+      if (!s.defined[lhs] && (v != null || s.defined[rhs])) {
+        s.defined[lhs] = true;
+        changed = true;
+      }
+      int r = rhs * s.words;
+      int l = lhs * s.words;
+      for (int w = 0; w < s.words; w++) {
+        long old = s.slab[l + w];
+        long x = old | s.slab[r + w];
+        if (v != null && w < v.length) {
+          x |= v[w];
+        }
+        if (x != old) {
+          s.slab[l + w] = x;
+          changed = true;
+        }
+      }
+      return changed;
+    }
+  }
+
+  /**
+   * any other function, evaluated on copies of the sets
+   */
+  private static final class Opaque extends Transfer {
+    private final UnaryOperator<BitVectorVariable> f;
+
+    Opaque(UnaryOperator<BitVectorVariable> f) {
+      this.f = f;
+    }
+
+    @Override
+    int maxBit() {
+      return -1;
+    }
+
+    @Override
+    boolean apply(BitVectorSlabSolver<?> s, int rhs, int lhs) {
+      BitVectorVariable result = s.toVariable(lhs);
+      f.evaluate(result, s.toVariable(rhs));
+      return s.store(lhs, result);
+    }
+  }
+}
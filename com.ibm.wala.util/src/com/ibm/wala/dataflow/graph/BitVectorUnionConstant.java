@@ -26,6 +26,10 @@ public class BitVectorUnionConstant extends UnaryOperator<BitVectorVariable> {
     }
     this.c = c;
   }
+
+  int getConstant() {
+    return c;
+  }
   
 
   @Override
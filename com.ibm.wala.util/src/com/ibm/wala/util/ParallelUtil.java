@@ -0,0 +1,155 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.ibm.wala.util.MonitorUtil.IProgressMonitor;
+
+/**
+ * Simple utilities for running loops on several threads
+ */
+public class ParallelUtil {
+
+  /**
+   * The body of a loop over indices
+   *
+   * @param <E> the checked exception the body may throw; {@link RuntimeException} if none
+   */
+  public interface IntAction<E extends Exception> {
+    void apply(int i) throws E;
+  }
+
+  /**
+   * Run action on each index in [0, n), using up to numberOfThreads threads. The threads claim indices one at a time, so the
+   * order in which indices are run is unspecified. If numberOfThreads is 1 or there are fewer than 2 indices, the loop runs on the
+   * calling thread; otherwise, on a pool created for this call.
+   *
+   * @throws CancelException if the monitor is canceled, or the calling thread is interrupted while waiting
+   * @throws E the exception thrown by the action, if any
+   */
+  public static <E extends Exception> void forEachIndex(int n, int numberOfThreads, IntAction<E> action, IProgressMonitor monitor)
+      throws CancelException, E {
+    if (numberOfThreads < 1) {
+      throw new IllegalArgumentException("invalid number of threads: " + numberOfThreads);
+    }
+    if (numberOfThreads == 1 || n < 2) {
+      forEachIndex(null, 1, n, 1, action, monitor);
+      return;
+    }
+    int nTasks = Math.min(numberOfThreads, n);
+    ExecutorService pool = Executors.newFixedThreadPool(nTasks);
+    try {
+      forEachIndex(pool, nTasks, n, 1, action, monitor);
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  /**
+   * Run action on each index in [0, n), in numberOfTasks tasks submitted to the given pool, which is left running. Each task claims
+   * chunkSize indices at a time. Once the action fails, or the monitor is canceled, no more indices are claimed.
+   *
+   * @param pool the pool to run on, or null to run on the calling thread
+   * @throws CancelException if the monitor is canceled, or the calling thread is interrupted while waiting
+   * @throws E the exception thrown by the action, if any
+   */
+  public static <E extends Exception> void forEachIndex(ExecutorService pool, int numberOfTasks, final int n, final int chunkSize,
+      final IntAction<E> action, final IProgressMonitor monitor) throws CancelException, E {
+    if (action == null) {
+      throw new IllegalArgumentException("null action");
+    }
+    if (numberOfTasks < 1) {
+      throw new IllegalArgumentException("invalid number of tasks: " + numberOfTasks);
+    }
+    if (chunkSize < 1) {
+      throw new IllegalArgumentException("invalid chunk size: " + chunkSize);
+    }
+    if (pool == null || numberOfTasks == 1 || n <= chunkSize) {
+      for (int i = 0; i < n; i++) {
+        MonitorUtil.throwExceptionIfCanceled(monitor);
+        action.apply(i);
+      }
+      return;
+    }
+    final AtomicInteger next = new AtomicInteger();
+    Callable<Object> task = new Callable<Object>() {
+      @Override
+      public Object call() throws E {
+        boolean done = false;
+        try {
+          int start;
+          while ((start = next.getAndAdd(chunkSize)) < n && !MonitorUtil.isCanceled(monitor)) {
+            int end = Math.min(start + chunkSize, n);
+            for (int i = start; i < end; i++) {
+              action.apply(i);
+            }
+          }
+          done = true;
+        } finally {
+          if (!done) {
+            // stop the other tasks claiming more work
+            next.set(n);
+          }
+        }
+        return null;
+      }
+    };
+    List<Future<Object>> futures = new ArrayList<Future<Object>>(numberOfTasks);
+    for (int t = 0; t < numberOfTasks; t++) {
+      futures.add(pool.submit(task));
+    }
+    try {
+      for (Future<Object> f : futures) {
+        f.get();
+      }
+    } catch (InterruptedException e) {
+      next.set(n);
+      Thread.currentThread().interrupt();
+      throw new CancelException(e);
+    } catch (ExecutionException e) {
+      ParallelUtil.<E> rethrow(e.getCause());
+    }
+    MonitorUtil.throwExceptionIfCanceled(monitor);
+  }
+
+  /**
+   * @param cause an exception thrown by an action with exception type E, so if checked it is an E
+   */
+  @SuppressWarnings("unchecked")
+  private static <E extends Exception> void rethrow(Throwable cause) throws E {
+    if (cause instanceof Exception && !(cause instanceof RuntimeException)) {
+      throw (E) cause;
+    }
+    throw unchecked(cause);
+  }
+
+  /**
+   * Convert the cause of a failed task to an unchecked exception, for the caller to throw: runtime exceptions are returned as they
+   * are, errors are thrown, and anything else is wrapped.
+   */
+  public static RuntimeException unchecked(Throwable cause) {
+    if (cause instanceof RuntimeException) {
+      return (RuntimeException) cause;
+    } else if (cause instanceof Error) {
+      throw (Error) cause;
+    } else {
+      return new RuntimeException(cause);
+    }
+  }
+}
@@ -0,0 +1,159 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.util.collections;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A thread-safe table of canonical values, for the hash-consing dictionaries behind the various findOrCreate() methods.
+ *
+ * Lookups and insertions never block: the table is backed by a {@link ConcurrentHashMap}, and when two threads race to intern
+ * equal keys, both get back the value that won.
+ *
+ * In weak mode, the table only holds its values through weak references, so canonical objects that are no longer referenced
+ * anywhere else can be collected. This is safe for identity-compared values, since no one can observe that a fresh canonical object
+ * replaced one that nobody holds any more. Weak mode is selected for all tables by setting the system property
+ * {@link #WEAK_PROPERTY} to <code>true</code>, which is useful for long-running processes that see an unbounded stream of names.
+ */
+public abstract class InternTable<K, V> {
+
+  /**
+   * name of the system property that, when set to <code>true</code>, makes {@link #make()} return weak tables
+   */
+  public static final String WEAK_PROPERTY = "com.ibm.wala.weakInternTables";
+
+  private static final boolean DEFAULT_WEAK = Boolean.getBoolean(WEAK_PROPERTY);
+
+  /**
+   * @return a new table, weak iff the system property {@link #WEAK_PROPERTY} is set
+   */
+  public static <K, V> InternTable<K, V> make() {
+    return make(DEFAULT_WEAK);
+  }
+
+  /**
+   * @param weak should the table hold its values only weakly?
+   */
+  public static <K, V> InternTable<K, V> make(boolean weak) {
+    if (weak) {
+      return new Weak<K, V>();
+    } else {
+      return new Strong<K, V>();
+    }
+  }
+
+  /**
+   * @return the canonical value for key, or null if there is none
+   */
+  public abstract V get(K key);
+
+  /**
+   * @param candidate a value to become canonical for key if there is none yet
+   * @return the canonical value for key; either a previously interned value, or candidate
+   */
+  public abstract V intern(K key, V candidate);
+
+  /**
+   * @return the number of entries in the table. For weak tables this may include entries whose values were just collected.
+   */
+  public abstract int size();
+
+  private static final class Strong<K, V> extends InternTable<K, V> {
+
+    private final ConcurrentMap<K, V> map = new ConcurrentHashMap<K, V>();
+
+    @Override
+    public V get(K key) {
+      return map.get(key);
+    }
+
+    @Override
+    public V intern(K key, V candidate) {
+      if (candidate == null) {
+        throw new IllegalArgumentException("null candidate");
+      }
+      V old = map.putIfAbsent(key, candidate);
+      return old == null ? candidate : old;
+    }
+
+    @Override
+    public int size() {
+      return map.size();
+    }
+  }
+
+  private static final class Weak<K, V> extends InternTable<K, V> {
+
+    private final ConcurrentMap<K, Entry<K, V>> map = new ConcurrentHashMap<K, Entry<K, V>>();
+
+    private final ReferenceQueue<V> queue = new ReferenceQueue<V>();
+
+    /**
+     * a weak reference to a value, which remembers its key so that the mapping can be removed once the value is collected
+     */
+    private static final class Entry<K, V> extends WeakReference<V> {
+      private final K key;
+
+      Entry(K key, V value, ReferenceQueue<V> queue) {
+        super(value, queue);
+        this.key = key;
+      }
+    }
+
+    @Override
+    public V get(K key) {
+      Entry<K, V> e = map.get(key);
+      return e == null ? null : e.get();
+    }
+
+    @Override
+    public V intern(K key, V candidate) {
+      if (candidate == null) {
+        throw new IllegalArgumentException("null candidate");
+      }
+      expungeStaleEntries();
+      Entry<K, V> fresh = new Entry<K, V>(key, candidate, queue);
+      while (true) {
+        Entry<K, V> old = map.putIfAbsent(key, fresh);
+        if (old == null) {
+          return candidate;
+        }
+        V v = old.get();
+        if (v != null) {
+          return v;
+        }
+        // the old value was collected; try to take over its slot
+        if (map.replace(key, old, fresh)) {
+          return candidate;
+        }
+      }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void expungeStaleEntries() {
+      Reference<? extends V> r;
+      while ((r = queue.poll()) != null) {
+        Entry<K, V> e = (Entry<K, V>) r;
+        map.remove(e.key, e);
+      }
+    }
+
+    @Override
+    public int size() {
+      expungeStaleEntries();
+      return map.size();
+    }
+  }
+}
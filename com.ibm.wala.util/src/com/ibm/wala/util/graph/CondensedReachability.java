@@ -0,0 +1,324 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.util.graph;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.MonitorUtil;
+import com.ibm.wala.util.MonitorUtil.IProgressMonitor;
+import com.ibm.wala.util.ParallelUtil;
+import com.ibm.wala.util.ParallelUtil.IntAction;
+import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.functions.Function;
+import com.ibm.wala.util.graph.traverse.SCCIterator;
+import com.ibm.wala.util.intset.EmptyIntSet;
+import com.ibm.wala.util.intset.IntIterator;
+import com.ibm.wala.util.intset.IntSet;
+import com.ibm.wala.util.intset.MutableSparseIntSet;
+import com.ibm.wala.util.intset.RoaringMutableIntSet;
+
+/**
+ * Computes, for each node n of a graph, the union of the "gen" sets of all nodes reachable from n, including n itself.
+ *
+ * Rather than iterating a dataflow system over every node, the graph is condensed to its strongly connected components, whose
+ * members all share one result. The components are then solved once each, from the sinks of the condensation upwards: a component
+ * is solved as soon as all its successors are, so the components of one height are independent of each other, and are solved in
+ * parallel when more than one thread is asked for.
+ *
+ * Results are held as {@link RoaringMutableIntSet}s with runs compressed, and are shared wherever possible: a component that adds
+ * nothing to its largest successor's set gets that set itself. In a call graph, where most methods reach the same large core of
+ * library code, this keeps memory far below one set per node.
+ *
+ * The sets returned by {@link #getReachableSet(Object)} are shared, and must not be modified.
+ *
+ * @param <T> type of nodes in the graph
+ */
+public class CondensedReachability<T> {
+
+  private final Graph<T> g;
+
+  private final Function<T, IntSet> gen;
+
+  /**
+   * number of each node, in the order of the graph's iterator
+   */
+  private final Map<T, Integer> nodeIndex = HashMapFactory.make();
+
+  /**
+   * component number of each node number
+   */
+  private int[] component;
+
+  /**
+   * node numbers of the members of each component
+   */
+  private int[][] members;
+
+  /**
+   * component numbers of the successors of each component, less itself
+   */
+  private IntSet[] successors;
+
+  /**
+   * gen set of each node number, or null
+   */
+  private IntSet[] genSets;
+
+  /**
+   * component numbers grouped by height in the condensation: the components of height 0 are the sinks
+   */
+  private List<int[]> levels;
+
+  /**
+   * the result of each component
+   */
+  private IntSet[] result;
+
+  /**
+   * @param g the graph to analyze
+   * @param gen the gen set of each node; may return null for an empty set
+   * @throws IllegalArgumentException if g or gen is null
+   */
+  public CondensedReachability(Graph<T> g, Function<T, IntSet> gen) {
+    if (g == null) {
+      throw new IllegalArgumentException("g is null");
+    }
+    if (gen == null) {
+      throw new IllegalArgumentException("gen is null");
+    }
+    this.g = g;
+    this.gen = gen;
+  }
+
+  /**
+   * Solve on the calling thread.
+   */
+  public void solve(IProgressMonitor monitor) throws CancelException {
+    solve(1, monitor);
+  }
+
+  /**
+   * Solve, using up to the given number of threads for the components of each height.
+   *
+   * @throws IllegalArgumentException if numberOfThreads < 1
+   */
+  public void solve(int numberOfThreads, IProgressMonitor monitor) throws CancelException {
+    if (numberOfThreads < 1) {
+      throw new IllegalArgumentException("invalid number of threads: " + numberOfThreads);
+    }
+    condense();
+    MonitorUtil.throwExceptionIfCanceled(monitor);
+    result = new IntSet[members.length];
+    ExecutorService pool = numberOfThreads > 1 ? Executors.newFixedThreadPool(numberOfThreads) : null;
+    boolean done = false;
+    try {
+      for (final int[] level : levels) {
+        ParallelUtil.forEachIndex(pool, numberOfThreads, level.length, 1, new IntAction<RuntimeException>() {
+          @Override
+          public void apply(int i) {
+            result[level[i]] = evaluate(level[i]);
+          }
+        }, monitor);
+      }
+      done = true;
+    } finally {
+      if (pool != null) {
+        pool.shutdownNow();
+      }
+      genSets = null;
+      if (!done) {
+        result = null;
+      }
+    }
+  }
+
+  /**
+   * @return the union of the gen sets of the nodes reachable from n, including n
+   * @throws IllegalStateException if the problem has not been solved
+   * @throws IllegalArgumentException if n is not a node of the graph
+   */
+  public IntSet getReachableSet(Object n) throws IllegalStateException {
+    if (result == null) {
+      throw new IllegalStateException("must call solve() before calling getReachableSet()");
+    }
+    Integer i = nodeIndex.get(n);
+    if (i == null) {
+      throw new IllegalArgumentException("not a node: " + n);
+    }
+    return result[component[i]];
+  }
+
+  /**
+   * @return the number of strongly connected components of the graph
+   */
+  public int getNumberOfComponents() {
+    if (members == null) {
+      throw new IllegalStateException("must call solve() first");
+    }
+    return members.length;
+  }
+
+  /**
+   * @return the number of distinct sets held for the results
+   */
+  public int getNumberOfDistinctSets() {
+    if (result == null) {
+      throw new IllegalStateException("must call solve() first");
+    }
+    Map<IntSet, IntSet> distinct = new IdentityHashMap<IntSet, IntSet>();
+    for (IntSet s : result) {
+      distinct.put(s, s);
+    }
+    return distinct.size();
+  }
+
+  /**
+   * number the nodes, find the components and their successors, and group the components by height
+   */
+  private void condense() {
+    nodeIndex.clear();
+    List<T> nodes = new ArrayList<T>();
+    for (Iterator<? extends T> it = g.iterator(); it.hasNext();) {
+      T n = it.next();
+      nodeIndex.put(n, nodes.size());
+      nodes.add(n);
+    }
+    genSets = new IntSet[nodes.size()];
+    for (int i = 0; i < genSets.length; i++) {
+      genSets[i] = gen.apply(nodes.get(i));
+    }
+
+    component = new int[nodes.size()];
+    List<int[]> comps = new ArrayList<int[]>();
+    for (SCCIterator<T> it = new SCCIterator<T>(g); it.hasNext();) {
+      Set<T> scc = it.next();
+      int[] m = new int[scc.size()];
+      int k = 0;
+      for (T n : scc) {
+        m[k] = nodeIndex.get(n);
+        component[m[k]] = comps.size();
+        k++;
+      }
+      comps.add(m);
+    }
+    members = comps.toArray(new int[comps.size()][]);
+
+    // successors and predecessors in the condensation
+    successors = new IntSet[members.length];
+    MutableSparseIntSet[] predecessors = new MutableSparseIntSet[members.length];
+    for (int c = 0; c < members.length; c++) {
+      predecessors[c] = MutableSparseIntSet.makeEmpty();
+    }
+    for (int c = 0; c < members.length; c++) {
+      MutableSparseIntSet s = MutableSparseIntSet.makeEmpty();
+      for (int m : members[c]) {
+        for (Iterator<? extends T> it = g.getSuccNodes(nodes.get(m)); it.hasNext();) {
+          int d = component[nodeIndex.get(it.next())];
+          if (d != c) {
+            s.add(d);
+          }
+        }
+      }
+      successors[c] = s;
+      for (IntIterator it = s.intIterator(); it.hasNext();) {
+        predecessors[it.next()].add(c);
+      }
+    }
+
+    // height of each component, from the sinks up
+    int[] height = new int[members.length];
+    int[] pending = new int[members.length];
+    int[] worklist = new int[members.length];
+    int head = 0;
+    int tail = 0;
+    int maxHeight = -1;
+    for (int c = 0; c < members.length; c++) {
+      pending[c] = successors[c].size();
+      if (pending[c] == 0) {
+        worklist[tail++] = c;
+      }
+    }
+    while (head < tail) {
+      int c = worklist[head++];
+      int h = 0;
+      for (IntIterator it = successors[c].intIterator(); it.hasNext();) {
+        h = Math.max(h, height[it.next()] + 1);
+      }
+      height[c] = h;
+      maxHeight = Math.max(maxHeight, h);
+      for (IntIterator it = predecessors[c].intIterator(); it.hasNext();) {
+        int p = it.next();
+        if (--pending[p] == 0) {
+          worklist[tail++] = p;
+        }
+      }
+    }
+    assert tail == members.length : "cycle in condensation";
+
+    int[] count = new int[maxHeight + 1];
+    for (int c = 0; c < members.length; c++) {
+      count[height[c]]++;
+    }
+    levels = new ArrayList<int[]>(maxHeight + 1);
+    for (int h = 0; h <= maxHeight; h++) {
+      levels.add(new int[count[h]]);
+    }
+    for (int c = 0; c < members.length; c++) {
+      levels.get(height[c])[--count[height[c]]] = c;
+    }
+  }
+
+  /**
+   * @return the result of component c, given the results of its successors
+   */
+  private IntSet evaluate(int c) {
+    IntSet largest = null;
+    for (IntIterator it = successors[c].intIterator(); it.hasNext();) {
+      IntSet s = result[it.next()];
+      if (largest == null || s.size() > largest.size()) {
+        largest = s;
+      }
+    }
+    RoaringMutableIntSet set;
+    if (largest instanceof RoaringMutableIntSet) {
+      set = new RoaringMutableIntSet((RoaringMutableIntSet) largest);
+    } else {
+      set = new RoaringMutableIntSet();
+    }
+    for (IntIterator it = successors[c].intIterator(); it.hasNext();) {
+      IntSet s = result[it.next()];
+      if (s != largest) {
+        set.addAll(s);
+      }
+    }
+    for (int m : members[c]) {
+      if (genSets[m] != null) {
+        set.addAll(genSets[m]);
+      }
+    }
+    if (set.isEmpty()) {
+      return EmptyIntSet.instance;
+    } else if (largest != null && largest.size() == set.size()) {
+      return largest;
+    } else {
+      set.runOptimize();
+      return set;
+    }
+  }
+}
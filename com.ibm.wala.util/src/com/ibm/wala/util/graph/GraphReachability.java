@@ -12,29 +12,20 @@ package com.ibm.wala.util.graph;
 
 import java.util.Iterator;
 
-import com.ibm.wala.dataflow.graph.AbstractMeetOperator;
-import com.ibm.wala.dataflow.graph.BitVectorFramework;
-import com.ibm.wala.dataflow.graph.BitVectorIdentity;
-import com.ibm.wala.dataflow.graph.BitVectorSolver;
-import com.ibm.wala.dataflow.graph.BitVectorUnion;
-import com.ibm.wala.dataflow.graph.BitVectorUnionConstant;
-import com.ibm.wala.dataflow.graph.DataflowSolver;
-import com.ibm.wala.dataflow.graph.ITransferFunctionProvider;
-import com.ibm.wala.fixpoint.BitVectorVariable;
-import com.ibm.wala.fixpoint.UnaryOperator;
 import com.ibm.wala.util.CancelException;
 import com.ibm.wala.util.MonitorUtil.IProgressMonitor;
 import com.ibm.wala.util.Predicate;
 import com.ibm.wala.util.collections.FilterIterator;
 import com.ibm.wala.util.collections.Iterator2Collection;
-import com.ibm.wala.util.debug.Assertions;
-import com.ibm.wala.util.graph.impl.GraphInverter;
+import com.ibm.wala.util.functions.Function;
+import com.ibm.wala.util.intset.IntSet;
 import com.ibm.wala.util.intset.MutableMapping;
 import com.ibm.wala.util.intset.OrdinalSet;
 import com.ibm.wala.util.intset.OrdinalSetMapping;
+import com.ibm.wala.util.intset.SparseIntSet;
 
 /**
- * A dataflow system that computes, for each graph node, the set of "interesting" nodes that are reachable
+ * Computes, for each graph node, the set of "interesting" nodes that are reachable, with a {@link CondensedReachability}.
  */
 public class GraphReachability<T, S> {
 
@@ -44,9 +35,9 @@ public class GraphReachability<T, S> {
   private final Graph<T> g;
 
   /**
-   * Killdall-style dataflow solver
+   * the solver, once solve() has been called
    */
-  private DataflowSolver<T, BitVectorVariable> solver;
+  private CondensedReachability<T> solver;
 
   /**
    * set of "interesting" CGNodes
@@ -75,72 +66,42 @@ public class GraphReachability<T, S> {
     if (solver == null) {
       throw new IllegalStateException("must call solve() before calling getReachableSet()");
     }
-    BitVectorVariable v = solver.getOut(n);
-    assert v != null : "null variable for node " + n;
-    if (v.getValue() == null) {
+    IntSet v = solver.getReachableSet(n);
+    if (v.isEmpty()) {
       return OrdinalSet.empty();
     } else {
-      return new OrdinalSet<S>(v.getValue(), domain);
+      return new OrdinalSet<S>(v, domain);
     }
   }
 
   /**
-   * @return true iff the evaluation of some equation caused a change in the value of some variable.
+   * @return true iff some node reaches an interesting node
    */
   public boolean solve(IProgressMonitor monitor) throws CancelException {
+    return solve(1, monitor);
+  }
 
-    ITransferFunctionProvider<T, BitVectorVariable> functions = new ITransferFunctionProvider<T, BitVectorVariable>() {
-
-      /*
-       * @see com.ibm.wala.dataflow.graph.ITransferFunctionProvider#getNodeTransferFunction(java.lang.Object)
-       */
+  /**
+   * Solve, using up to the given number of threads.
+   *
+   * @return true iff some node reaches an interesting node
+   */
+  public boolean solve(int numberOfThreads, IProgressMonitor monitor) throws CancelException {
+    CondensedReachability<T> s = new CondensedReachability<T>(g, new Function<T, IntSet>() {
       @Override
-      public UnaryOperator<BitVectorVariable> getNodeTransferFunction(T n) {
+      public IntSet apply(T n) {
         int index = domain.getMappedIndex(n);
-        if (index > -1) {
-          return new BitVectorUnionConstant(index);
-        } else {
-          return BitVectorIdentity.instance();
-        }
+        return index > -1 ? SparseIntSet.singleton(index) : null;
       }
-
-      /*
-       * @see com.ibm.wala.dataflow.graph.ITransferFunctionProvider#hasNodeTransferFunctions()
-       */
-      @Override
-      public boolean hasNodeTransferFunctions() {
+    });
+    s.solve(numberOfThreads, monitor);
+    solver = s;
+    for (Iterator<? extends T> it = g.iterator(); it.hasNext();) {
+      if (!s.getReachableSet(it.next()).isEmpty()) {
         return true;
       }
-
-      /*
-       * @see com.ibm.wala.dataflow.graph.ITransferFunctionProvider#getEdgeTransferFunction(java.lang.Object, java.lang.Object)
-       */
-      @Override
-      public UnaryOperator<BitVectorVariable> getEdgeTransferFunction(Object from, Object to) {
-        Assertions.UNREACHABLE();
-        return null;
-      }
-
-      /*
-       * @see com.ibm.wala.dataflow.graph.ITransferFunctionProvider#hasEdgeTransferFunctions()
-       */
-      @Override
-      public boolean hasEdgeTransferFunctions() {
-        return false;
-      }
-
-      /*
-       * @see com.ibm.wala.dataflow.graph.ITransferFunctionProvider#getMeetOperator()
-       */
-      @Override
-      public AbstractMeetOperator<BitVectorVariable> getMeetOperator() {
-        return BitVectorUnion.instance();
-      }
-    };
-
-    BitVectorFramework<T, S> f = new BitVectorFramework<T, S>(GraphInverter.invert(g), functions, domain);
-    solver = new BitVectorSolver<T>(f);
-    return solver.solve(monitor);
+    }
+    return false;
   }
 
-}
\ No newline at end of file
+}
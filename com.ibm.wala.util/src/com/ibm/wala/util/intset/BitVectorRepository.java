@@ -10,15 +10,22 @@
  *******************************************************************************/
 package com.ibm.wala.util.intset;
 
+import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
 import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.Map;
-
-import com.ibm.wala.util.collections.HashMapFactory;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * A repository for shared bit vectors as described by Heintze
+ * A repository for shared bit vectors as described by Heintze.
+ *
+ * The shared vectors are hash-consed: there is at most one live vector with any given contents, and finding it takes one lookup in
+ * a concurrent table. Vectors that are only a few bits smaller than the value asked for are found by scanning per-size queues,
+ * which are read without locking. The repository holds its vectors weakly, so a vector is dropped once no
+ * {@link MutableSharedBitVectorIntSet} uses it any more.
+ *
+ * The vectors handed out must never be modified.
  */
 public class BitVectorRepository {
 
@@ -26,13 +33,112 @@ public class BitVectorRepository {
 
   private final static int STATS_WINDOW = 100;
 
-  private static int queries = 0;
+  private static final AtomicInteger queries = new AtomicInteger();
 
-  private static int hits = 0;
+  private static final AtomicInteger hits = new AtomicInteger();
 
   private final static int SUBSET_DELTA = 5;
 
-  final private static Map<Integer, LinkedList<WeakReference<BitVectorIntSet>>> buckets = HashMapFactory.make();
+  /**
+   * the shared vectors, by contents; keys and values are the same entries
+   */
+  private static final ConcurrentHashMap<Object, Entry> canonical = new ConcurrentHashMap<Object, Entry>();
+
+  /**
+   * the shared vectors, by size. Entries whose vector has been collected are removed lazily, by the scans.
+   */
+  private static final ConcurrentHashMap<Integer, ConcurrentLinkedQueue<Entry>> buckets = new ConcurrentHashMap<Integer, ConcurrentLinkedQueue<Entry>>();
+
+  /**
+   * entries whose vector has been collected, to be removed from {@link #canonical}
+   */
+  private static final ReferenceQueue<BitVectorIntSet> collected = new ReferenceQueue<BitVectorIntSet>();
+
+  /**
+   * @return a hash of the bits of v that does not depend on trailing zero words
+   */
+  private static int contentHash(BitVectorIntSet v) {
+    int[] bits = v.getBitVector().bits;
+    int last = bits.length - 1;
+    while (last >= 0 && bits[last] == 0) {
+      last--;
+    }
+    int h = 1234;
+    for (int i = 0; i <= last; i++) {
+      h = 31 * h + bits[i];
+    }
+    return h;
+  }
+
+  /**
+   * A shared vector in the repository. Two entries are equal if both vectors are live and have the same bits; a collected entry is
+   * only equal to itself, so that it can still be removed.
+   */
+  private static final class Entry extends WeakReference<BitVectorIntSet> {
+    private final int hash;
+
+    Entry(BitVectorIntSet v) {
+      super(v, collected);
+      this.hash = contentHash(v);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (obj instanceof Probe) {
+        return obj.equals(this);
+      }
+      if (obj instanceof Entry) {
+        Entry other = (Entry) obj;
+        if (hash != other.hash) {
+          return false;
+        }
+        BitVectorIntSet v = get();
+        BitVectorIntSet w = other.get();
+        return v != null && w != null && v.getBitVector().sameBits(w.getBitVector());
+      }
+      return false;
+    }
+  }
+
+  /**
+   * A lookup key for the contents of a vector that is not in the repository
+   */
+  private static final class Probe {
+    private final BitVectorIntSet value;
+
+    private final int hash;
+
+    Probe(BitVectorIntSet value) {
+      this.value = value;
+      this.hash = contentHash(value);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (obj instanceof Entry) {
+        Entry e = (Entry) obj;
+        if (hash != e.hash) {
+          return false;
+        }
+        BitVectorIntSet v = e.get();
+        return v != null && v.getBitVector().sameBits(value.getBitVector());
+      }
+      return false;
+    }
+  }
 
   /**
    * @param value
@@ -41,31 +147,41 @@ public class BitVectorRepository {
    *         as value, except it may exclude up to SUBSET_DELTA bits.
    * @throws IllegalArgumentException  if value is null
    */
-  public static synchronized BitVectorIntSet findOrCreateSharedSubset(BitVectorIntSet value) {
+  public static BitVectorIntSet findOrCreateSharedSubset(BitVectorIntSet value) {
     if (value == null) {
       throw new IllegalArgumentException("value is null");
     }
     if (STATS) {
-      queries++;
-      if (queries % STATS_WINDOW == 0) {
+      if (queries.incrementAndGet() % STATS_WINDOW == 0) {
         reportStats();
       }
     }
+    expungeCollected();
+    Probe probe = new Probe(value);
+    Entry e = canonical.get(probe);
+    if (e != null) {
+      BitVectorIntSet bv = e.get();
+      if (bv != null) {
+        if (STATS) {
+          hits.incrementAndGet();
+        }
+        return bv;
+      }
+    }
     int size = value.size();
-    for (int i = size; i > size - SUBSET_DELTA; i--) {
-      LinkedList<WeakReference<BitVectorIntSet>> m = buckets.get(Integer.valueOf(i));
+    for (int i = size - 1; i > size - SUBSET_DELTA; i--) {
+      ConcurrentLinkedQueue<Entry> m = buckets.get(i);
       if (m != null) {
-        Iterator<WeakReference<BitVectorIntSet>> it = m.iterator();
+        Iterator<Entry> it = m.iterator();
         while (it.hasNext()) {
-          WeakReference<BitVectorIntSet> wr = it.next();
-          BitVectorIntSet bv = wr.get();
+          BitVectorIntSet bv = it.next().get();
           if (bv != null) {
             if (bv.isSubset(value)) {
               // FOUND ONE!
               if (STATS) {
-                hits++;
+                hits.incrementAndGet();
               }
-              return bv;            
+              return bv;
             }
           } else {
             // remove the weak reference to avoid leaks
@@ -74,35 +190,56 @@ public class BitVectorRepository {
         }
       }
     }
-    // didn't find one. create one.
-    LinkedList<WeakReference<BitVectorIntSet>> m = buckets.get(size);
+    // didn't find one. create one, unless another thread got there first.
+    BitVectorIntSet bv = new BitVectorIntSet(value);
+    Entry fresh = new Entry(bv);
+    while (true) {
+      Entry old = canonical.putIfAbsent(fresh, fresh);
+      if (old == null) {
+        break;
+      }
+      BitVectorIntSet existing = old.get();
+      if (existing != null) {
+        return existing;
+      }
+      // the other vector was collected since; drop its entry, which still holds the slot, and try again
+      canonical.remove(old, old);
+    }
+    ConcurrentLinkedQueue<Entry> m = buckets.get(size);
     if (m == null) {
-      m = new LinkedList<WeakReference<BitVectorIntSet>>();
-      buckets.put(size, m);
+      m = new ConcurrentLinkedQueue<Entry>();
+      ConcurrentLinkedQueue<Entry> other = buckets.putIfAbsent(size, m);
+      if (other != null) {
+        m = other;
+      }
     }
-    BitVectorIntSet bv = new BitVectorIntSet(value);
-    m.add(new WeakReference<BitVectorIntSet>(bv));
+    m.add(fresh);
     return bv;
   }
 
   /**
-   * 
+   * remove the entries of collected vectors from the table by contents
+   */
+  private static void expungeCollected() {
+    for (Object e = collected.poll(); e != null; e = collected.poll()) {
+      canonical.remove(e);
+    }
+  }
+
+  /**
+   *
    */
   private static void reportStats() {
-    double percent = 100.0 * hits / queries;
-    System.err.println(("BitVectorRepository: queries " + queries + " hits " + percent));
+    double percent = 100.0 * hits.get() / queries.get();
+    System.err.println(("BitVectorRepository: queries " + queries.get() + " hits " + percent));
     System.err.println(("                     entries " + countEntries()));
   }
 
   /**
    */
   private static int countEntries() {
-    int result = 0;
-    for (LinkedList<WeakReference<BitVectorIntSet>> l : buckets.values()) {
-      // don't worry about cleared WeakReferences; count will be rough
-      result += l.size();
-    }
-    return result;
+    // don't worry about collected vectors; count will be rough
+    return canonical.size();
   }
 
-}
\ No newline at end of file
+}
@@ -86,6 +86,8 @@ public class IntSetUtil {
       return new MutableSharedBitVectorIntSet((MutableSharedBitVectorIntSet) set);
     } else if (set instanceof SemiSparseMutableIntSet) {
       return new SemiSparseMutableIntSet((SemiSparseMutableIntSet) set);
+    } else if (set instanceof RoaringMutableIntSet) {
+      return new RoaringMutableIntSet((RoaringMutableIntSet) set);
     } else if (set instanceof DebuggingMutableIntSet) {
       MutableIntSet pCopy = makeMutableCopy(((DebuggingMutableIntSet) set).primaryImpl);
       MutableIntSet sCopy = makeMutableCopy(((DebuggingMutableIntSet) set).secondaryImpl);
@@ -148,6 +150,8 @@ public class IntSetUtil {
     } else if (A instanceof SemiSparseMutableIntSet && B instanceof SemiSparseMutableIntSet) {
       IntSet d = SemiSparseMutableIntSet.diff((SemiSparseMutableIntSet) A, (SemiSparseMutableIntSet) B);
       return d;
+    } else if (A instanceof RoaringMutableIntSet && B instanceof RoaringMutableIntSet) {
+      return RoaringMutableIntSet.diff((RoaringMutableIntSet) A, (RoaringMutableIntSet) B);
     } else {
       return defaultSlowDiff(A, B, factory);
     }
@@ -170,6 +174,8 @@ public class IntSetUtil {
         System.err.println("call SemiSparseMutableIntSet.removeAll");
       }
       return ((SemiSparseMutableIntSet) A).removeAll((SemiSparseMutableIntSet) B);
+    } else if (A instanceof RoaringMutableIntSet && B instanceof RoaringMutableIntSet) {
+      return ((RoaringMutableIntSet) A).removeAll((RoaringMutableIntSet) B);
     } else {
       for (IntIterator it = B.intIterator(); it.hasNext();) {
         int I = it.next();
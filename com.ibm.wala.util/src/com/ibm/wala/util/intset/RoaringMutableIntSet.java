@@ -0,0 +1,1378 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.util.intset;
+
+import java.util.NoSuchElementException;
+
+/**
+ * A compressed {@link MutableIntSet} in the style of Roaring bitmaps (Chambi, Lemire, Kaser and Godin, "Better bitmap performance
+ * with Roaring bitmaps").
+ *
+ * The integers are split into chunks of 2^16 consecutive values, and each non-empty chunk is held in the container that suits its
+ * contents:
+ * <ul>
+ * <li>a sorted array of 16-bit values, for chunks with at most {@link #ARRAY_MAX} elements;
+ * <li>a bitmap of 2^16 bits, for denser chunks;
+ * <li>a list of runs, for full chunks, and for chunks made of a few long intervals after {@link #runOptimize()}.
+ * </ul>
+ * So the space taken depends on how many elements there are and how they cluster, not on how large they are, which makes this a
+ * good fit for points-to sets when instance keys are numbered over a wide range. Operations between two of these sets work chunk by
+ * chunk and skip chunks that only one of them has.
+ *
+ * Only non-negative integers may be stored.
+ */
+public class RoaringMutableIntSet implements MutableIntSet {
+
+  /**
+   * maximum number of elements in an array container; beyond this a bitmap is smaller
+   */
+  static final int ARRAY_MAX = 4096;
+
+  /**
+   * number of values in a chunk
+   */
+  private static final int CHUNK_SIZE = 1 << 16;
+
+  private static final int LOW_MASK = CHUNK_SIZE - 1;
+
+  private static final int BITMAP_WORDS = CHUNK_SIZE / 64;
+
+  private static final int[] NO_KEYS = new int[0];
+
+  private static final Container[] NO_CONTAINERS = new Container[0];
+
+  /**
+   * the high 16 bits of the elements of each non-empty chunk, in ascending order
+   */
+  private int[] keys = NO_KEYS;
+
+  /**
+   * the low 16 bits of the elements of each chunk, parallel to keys
+   */
+  private Container[] containers = NO_CONTAINERS;
+
+  /**
+   * number of chunks in use
+   */
+  private int nChunks;
+
+  /**
+   * number of elements
+   */
+  private int size;
+
+  public RoaringMutableIntSet() {
+  }
+
+  /**
+   * @throws IllegalArgumentException if set is null
+   */
+  public RoaringMutableIntSet(RoaringMutableIntSet set) {
+    if (set == null) {
+      throw new IllegalArgumentException("set is null");
+    }
+    copyFrom(set);
+  }
+
+  private void copyFrom(RoaringMutableIntSet set) {
+    keys = new int[set.nChunks];
+    containers = new Container[set.nChunks];
+    System.arraycopy(set.keys, 0, keys, 0, set.nChunks);
+    for (int i = 0; i < set.nChunks; i++) {
+      containers[i] = set.containers[i].copy();
+    }
+    nChunks = set.nChunks;
+    size = set.size;
+  }
+
+  /**
+   * @return the index of the chunk with the given key, or -(insertion point + 1) if there is none
+   */
+  private int findChunk(int key) {
+    // elements tend to be added in increasing order, so try the last chunk first
+    if (nChunks > 0 && keys[nChunks - 1] <= key) {
+      return keys[nChunks - 1] == key ? nChunks - 1 : -(nChunks + 1);
+    }
+    int low = 0;
+    int high = nChunks - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int k = keys[mid];
+      if (k < key) {
+        low = mid + 1;
+      } else if (k > key) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -(low + 1);
+  }
+
+  private void insertChunk(int index, int key, Container c) {
+    if (nChunks == keys.length) {
+      int capacity = Math.max(4, 2 * nChunks);
+      int[] newKeys = new int[capacity];
+      Container[] newContainers = new Container[capacity];
+      System.arraycopy(keys, 0, newKeys, 0, nChunks);
+      System.arraycopy(containers, 0, newContainers, 0, nChunks);
+      keys = newKeys;
+      containers = newContainers;
+    }
+    System.arraycopy(keys, index, keys, index + 1, nChunks - index);
+    System.arraycopy(containers, index, containers, index + 1, nChunks - index);
+    keys[index] = key;
+    containers[index] = c;
+    nChunks++;
+  }
+
+  private void removeChunk(int index) {
+    System.arraycopy(keys, index + 1, keys, index, nChunks - index - 1);
+    System.arraycopy(containers, index + 1, containers, index, nChunks - index - 1);
+    nChunks--;
+    containers[nChunks] = null;
+  }
+
+  /**
+   * append a chunk with a key larger than all others; for building results in order
+   */
+  private void appendChunk(int key, Container c) {
+    insertChunk(nChunks, key, c);
+    size += c.cardinality();
+  }
+
+  @Override
+  public boolean contains(int i) {
+    if (i < 0) {
+      return false;
+    }
+    int index = findChunk(i >>> 16);
+    return index >= 0 && containers[index].contains(i & LOW_MASK);
+  }
+
+  /**
+   * @throws IllegalArgumentException if i is negative
+   */
+  @Override
+  public boolean add(int i) {
+    if (i < 0) {
+      throw new IllegalArgumentException("negative element: " + i);
+    }
+    int index = findChunk(i >>> 16);
+    if (index < 0) {
+      insertChunk(-index - 1, i >>> 16, new ArrayContainer(i & LOW_MASK));
+      size++;
+      return true;
+    }
+    Container c = containers[index];
+    int before = c.cardinality();
+    c = c.add(i & LOW_MASK);
+    containers[index] = c;
+    if (c.cardinality() != before) {
+      size++;
+      return true;
+    } else {
+      return false;
+    }
+  }
+
+  @Override
+  public boolean remove(int i) {
+    if (i < 0) {
+      return false;
+    }
+    int index = findChunk(i >>> 16);
+    if (index < 0) {
+      return false;
+    }
+    Container c = containers[index];
+    int before = c.cardinality();
+    c = c.remove(i & LOW_MASK);
+    if (c.cardinality() == before) {
+      return false;
+    }
+    size--;
+    if (c.cardinality() == 0) {
+      removeChunk(index);
+    } else {
+      containers[index] = c;
+    }
+    return true;
+  }
+
+  @Override
+  public void clear() {
+    keys = NO_KEYS;
+    containers = NO_CONTAINERS;
+    nChunks = 0;
+    size = 0;
+  }
+
+  /**
+   * @throws IllegalArgumentException if set is null
+   */
+  @Override
+  public void copySet(IntSet set) {
+    if (set == null) {
+      throw new IllegalArgumentException("set is null");
+    }
+    if (set == this) {
+      return;
+    }
+    if (set instanceof RoaringMutableIntSet) {
+      copyFrom((RoaringMutableIntSet) set);
+    } else {
+      clear();
+      addAll(set);
+    }
+  }
+
+  /**
+   * @throws IllegalArgumentException if set is null
+   */
+  @Override
+  public boolean addAll(IntSet set) {
+    if (set == null) {
+      throw new IllegalArgumentException("set is null");
+    }
+    if (set instanceof RoaringMutableIntSet) {
+      return unionWith((RoaringMutableIntSet) set);
+    }
+    boolean result = false;
+    for (IntIterator it = set.intIterator(); it.hasNext();) {
+      result |= add(it.next());
+    }
+    return result;
+  }
+
+  private boolean unionWith(RoaringMutableIntSet that) {
+    if (that == this || that.size == 0) {
+      return false;
+    }
+    // count the chunks of that which we lack
+    int missing = 0;
+    for (int i = 0, j = 0; j < that.nChunks;) {
+      if (i == nChunks || keys[i] > that.keys[j]) {
+        missing++;
+        j++;
+      } else if (keys[i] < that.keys[j]) {
+        i++;
+      } else {
+        i++;
+        j++;
+      }
+    }
+    int[] newKeys = keys;
+    Container[] newContainers = containers;
+    if (nChunks + missing > keys.length) {
+      newKeys = new int[nChunks + missing];
+      newContainers = new Container[nChunks + missing];
+    }
+    // merge from the back, so that it can be done in place
+    int oldSize = size;
+    int i = nChunks - 1;
+    int j = that.nChunks - 1;
+    for (int k = nChunks + missing - 1; j >= 0; k--) {
+      if (i >= 0 && keys[i] > that.keys[j]) {
+        newKeys[k] = keys[i];
+        newContainers[k] = containers[i];
+        i--;
+      } else if (i >= 0 && keys[i] == that.keys[j]) {
+        Container c = containers[i];
+        int before = c.cardinality();
+        c = orInPlace(c, that.containers[j]);
+        size += c.cardinality() - before;
+        newKeys[k] = keys[i];
+        newContainers[k] = c;
+        i--;
+        j--;
+      } else {
+        Container c = that.containers[j].copy();
+        size += c.cardinality();
+        newKeys[k] = that.keys[j];
+        newContainers[k] = c;
+        j--;
+      }
+    }
+    if (newKeys != keys) {
+      System.arraycopy(keys, 0, newKeys, 0, i + 1);
+      System.arraycopy(containers, 0, newContainers, 0, i + 1);
+      keys = newKeys;
+      containers = newContainers;
+    }
+    nChunks += missing;
+    return size != oldSize;
+  }
+
+  /**
+   * @throws IllegalArgumentException if set is null
+   */
+  @Override
+  public boolean containsAny(IntSet set) {
+    if (set == null) {
+      throw new IllegalArgumentException("set is null");
+    }
+    if (set instanceof RoaringMutableIntSet) {
+      RoaringMutableIntSet that = (RoaringMutableIntSet) set;
+      for (int i = 0, j = 0; i < nChunks && j < that.nChunks;) {
+        if (keys[i] < that.keys[j]) {
+          i++;
+        } else if (keys[i] > that.keys[j]) {
+          j++;
+        } else {
+          if (intersects(containers[i], that.containers[j])) {
+            return true;
+          }
+          i++;
+          j++;
+        }
+      }
+      return false;
+    }
+    for (IntIterator it = set.intIterator(); it.hasNext();) {
+      if (contains(it.next())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @throws IllegalArgumentException if that is null
+   */
+  @Override
+  public RoaringMutableIntSet intersection(IntSet that) {
+    if (that == null) {
+      throw new IllegalArgumentException("that is null");
+    }
+    RoaringMutableIntSet result = new RoaringMutableIntSet();
+    if (that instanceof RoaringMutableIntSet) {
+      RoaringMutableIntSet other = (RoaringMutableIntSet) that;
+      for (int i = 0, j = 0; i < nChunks && j < other.nChunks;) {
+        if (keys[i] < other.keys[j]) {
+          i++;
+        } else if (keys[i] > other.keys[j]) {
+          j++;
+        } else {
+          Container c = and(containers[i], other.containers[j]);
+          if (c.cardinality() > 0) {
+            result.appendChunk(keys[i], c);
+          }
+          i++;
+          j++;
+        }
+      }
+    } else {
+      for (IntIterator it = intIterator(); it.hasNext();) {
+        int x = it.next();
+        if (that.contains(x)) {
+          result.add(x);
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @throws IllegalArgumentException if that is null
+   */
+  @Override
+  public RoaringMutableIntSet union(IntSet that) {
+    if (that == null) {
+      throw new IllegalArgumentException("that is null");
+    }
+    RoaringMutableIntSet result = new RoaringMutableIntSet(this);
+    result.addAll(that);
+    return result;
+  }
+
+  /**
+   * @throws IllegalArgumentException if set is null
+   */
+  @Override
+  public void intersectWith(IntSet set) {
+    if (set == null) {
+      throw new IllegalArgumentException("set is null");
+    }
+    if (set == this) {
+      return;
+    }
+    RoaringMutableIntSet result = intersection(set);
+    keys = result.keys;
+    containers = result.containers;
+    nChunks = result.nChunks;
+    size = result.size;
+  }
+
+  /**
+   * @throws IllegalArgumentException if other or filter is null
+   */
+  @Override
+  public boolean addAllInIntersection(IntSet other, IntSet filter) {
+    if (other == null) {
+      throw new IllegalArgumentException("other is null");
+    }
+    if (filter == null) {
+      throw new IllegalArgumentException("filter is null");
+    }
+    if (other instanceof RoaringMutableIntSet && filter instanceof RoaringMutableIntSet) {
+      return unionWith(((RoaringMutableIntSet) other).intersection(filter));
+    }
+    boolean result = false;
+    for (IntIterator it = other.intIterator(); it.hasNext();) {
+      int x = it.next();
+      if (filter.contains(x)) {
+        result |= add(x);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return a new set holding the elements of A that are not in B
+   * @throws IllegalArgumentException if A or B is null
+   */
+  public static RoaringMutableIntSet diff(RoaringMutableIntSet A, RoaringMutableIntSet B) {
+    if (A == null) {
+      throw new IllegalArgumentException("A is null");
+    }
+    if (B == null) {
+      throw new IllegalArgumentException("B is null");
+    }
+    RoaringMutableIntSet result = new RoaringMutableIntSet();
+    int j = 0;
+    for (int i = 0; i < A.nChunks; i++) {
+      while (j < B.nChunks && B.keys[j] < A.keys[i]) {
+        j++;
+      }
+      Container c = j < B.nChunks && B.keys[j] == A.keys[i] ? andNot(A.containers[i], B.containers[j]) : A.containers[i].copy();
+      if (c.cardinality() > 0) {
+        result.appendChunk(A.keys[i], c);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Remove the elements of B from this.
+   * 
+   * @return this
+   * @throws IllegalArgumentException if B is null
+   */
+  public RoaringMutableIntSet removeAll(RoaringMutableIntSet B) {
+    RoaringMutableIntSet result = diff(this, B);
+    keys = result.keys;
+    containers = result.containers;
+    nChunks = result.nChunks;
+    size = result.size;
+    return this;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return the largest element, or -1 if the set is empty
+   */
+  @Override
+  public int max() {
+    return nChunks == 0 ? -1 : (keys[nChunks - 1] << 16) | containers[nChunks - 1].last();
+  }
+
+  /**
+   * @throws IllegalArgumentException if that is null
+   */
+  @Override
+  public boolean sameValue(IntSet that) {
+    if (that == null) {
+      throw new IllegalArgumentException("that is null");
+    }
+    if (that instanceof RoaringMutableIntSet) {
+      RoaringMutableIntSet other = (RoaringMutableIntSet) that;
+      if (size != other.size || nChunks != other.nChunks) {
+        return false;
+      }
+      for (int i = 0; i < nChunks; i++) {
+        if (keys[i] != other.keys[i] || !isSubset(containers[i], other.containers[i])) {
+          return false;
+        }
+      }
+      return true;
+    }
+    return size == that.size() && isSubset(that);
+  }
+
+  /**
+   * @throws IllegalArgumentException if that is null
+   */
+  @Override
+  public boolean isSubset(IntSet that) {
+    if (that == null) {
+      throw new IllegalArgumentException("that is null");
+    }
+    if (that instanceof RoaringMutableIntSet) {
+      RoaringMutableIntSet other = (RoaringMutableIntSet) that;
+      if (size > other.size) {
+        return false;
+      }
+      int j = 0;
+      for (int i = 0; i < nChunks; i++) {
+        while (j < other.nChunks && other.keys[j] < keys[i]) {
+          j++;
+        }
+        if (j == other.nChunks || other.keys[j] != keys[i] || !isSubset(containers[i], other.containers[j])) {
+          return false;
+        }
+      }
+      return true;
+    }
+    for (IntIterator it = intIterator(); it.hasNext();) {
+      if (!that.contains(it.next())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public IntIterator intIterator() {
+    return new IntIterator() {
+      private int chunk = 0;
+
+      private int[] buffer;
+
+      private int next = 0;
+
+      private int end = 0;
+
+      @Override
+      public boolean hasNext() {
+        while (next == end && chunk < nChunks) {
+          Container c = containers[chunk];
+          if (buffer == null || buffer.length < c.cardinality()) {
+            buffer = new int[c.cardinality()];
+          }
+          end = c.toArray(keys[chunk] << 16, buffer);
+          next = 0;
+          chunk++;
+        }
+        return next < end;
+      }
+
+      @Override
+      public int next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        return buffer[next++];
+      }
+    };
+  }
+
+  /**
+   * @throws IllegalArgumentException if action is null
+   */
+  @Override
+  public void foreach(IntSetAction action) {
+    if (action == null) {
+      throw new IllegalArgumentException("action is null");
+    }
+    for (int i = 0; i < nChunks; i++) {
+      containers[i].foreach(keys[i] << 16, action);
+    }
+  }
+
+  /**
+   * @throws IllegalArgumentException if action is null
+   */
+  @Override
+  public void foreachExcluding(IntSet X, IntSetAction action) {
+    if (action == null) {
+      throw new IllegalArgumentException("action is null");
+    }
+    if (X instanceof RoaringMutableIntSet) {
+      diff(this, (RoaringMutableIntSet) X).foreach(action);
+    } else {
+      for (IntIterator it = intIterator(); it.hasNext();) {
+        int x = it.next();
+        if (!X.contains(x)) {
+          action.act(x);
+        }
+      }
+    }
+  }
+
+  /**
+   * Convert each chunk to a list of runs where that takes less space. This is worth calling on long-lived sets whose elements come
+   * in long intervals; the other operations do not look for runs, except that a full chunk is always kept as a single run.
+   */
+  public void runOptimize() {
+    for (int i = 0; i < nChunks; i++) {
+      containers[i] = containers[i].runOptimize();
+    }
+  }
+
+  @Override
+  public String toString() {
+    StringBuffer sb = new StringBuffer(6 * size);
+    sb.append("{ ");
+    for (IntIterator it = intIterator(); it.hasNext();) {
+      sb.append(it.next());
+      sb.append(" ");
+    }
+    sb.append("}");
+    return sb.toString();
+  }
+
+  /*
+   * Operations on pairs of containers. These never modify their second argument, and never return it or share its storage.
+   */
+
+  private static Container or(Container a, Container b) {
+    if (a.isFull() || b.isFull()) {
+      return RunContainer.full();
+    }
+    a = a.expand();
+    b = b.expand();
+    if (a instanceof ArrayContainer && b instanceof ArrayContainer) {
+      return ArrayContainer.union((ArrayContainer) a, (ArrayContainer) b);
+    } else if (a instanceof BitmapContainer) {
+      return orInPlace(a.copy(), b);
+    } else {
+      return orInPlace(b.copy(), a);
+    }
+  }
+
+  /**
+   * @return the union of a and b, which may be a itself, updated
+   */
+  private static Container orInPlace(Container a, Container b) {
+    if (a.isFull()) {
+      return a;
+    } else if (b.isFull()) {
+      return RunContainer.full();
+    } else if (a instanceof BitmapContainer) {
+      BitmapContainer bits = (BitmapContainer) a;
+      b = b.expand();
+      if (b instanceof BitmapContainer) {
+        bits.or((BitmapContainer) b);
+      } else {
+        ArrayContainer array = (ArrayContainer) b;
+        for (int i = 0; i < array.n; i++) {
+          bits.add(array.values[i]);
+        }
+      }
+      return bits.isFull() ? RunContainer.full() : bits;
+    } else {
+      return or(a, b);
+    }
+  }
+
+  private static Container and(Container a, Container b) {
+    if (a.isFull()) {
+      return b.copy();
+    } else if (b.isFull()) {
+      return a.copy();
+    }
+    a = a.expand();
+    b = b.expand();
+    if (a instanceof ArrayContainer && b instanceof ArrayContainer) {
+      return ArrayContainer.intersection((ArrayContainer) a, (ArrayContainer) b);
+    } else if (a instanceof ArrayContainer) {
+      return ((ArrayContainer) a).filter((BitmapContainer) b, true);
+    } else if (b instanceof ArrayContainer) {
+      return ((ArrayContainer) b).filter((BitmapContainer) a, true);
+    } else {
+      BitmapContainer result = (BitmapContainer) a.copy();
+      result.and((BitmapContainer) b);
+      return result.shrink();
+    }
+  }
+
+  private static boolean intersects(Container a, Container b) {
+    if (a.isFull() || b.isFull()) {
+      return true;
+    }
+    a = a.expand();
+    b = b.expand();
+    if (a instanceof ArrayContainer && b instanceof ArrayContainer) {
+      return ArrayContainer.intersects((ArrayContainer) a, (ArrayContainer) b);
+    } else if (a instanceof ArrayContainer) {
+      return ((ArrayContainer) a).intersects((BitmapContainer) b);
+    } else if (b instanceof ArrayContainer) {
+      return ((ArrayContainer) b).intersects((BitmapContainer) a);
+    } else {
+      return ((BitmapContainer) a).intersects((BitmapContainer) b);
+    }
+  }
+
+  private static Container andNot(Container a, Container b) {
+    if (b.isFull()) {
+      return new ArrayContainer();
+    }
+    a = a.expand();
+    b = b.expand();
+    if (a instanceof ArrayContainer && b instanceof ArrayContainer) {
+      return ArrayContainer.difference((ArrayContainer) a, (ArrayContainer) b);
+    } else if (a instanceof ArrayContainer) {
+      return ((ArrayContainer) a).filter((BitmapContainer) b, false);
+    } else {
+      BitmapContainer result = (BitmapContainer) a.copy();
+      if (b instanceof ArrayContainer) {
+        ArrayContainer array = (ArrayContainer) b;
+        for (int i = 0; i < array.n; i++) {
+          result.remove(array.values[i]);
+        }
+      } else {
+        result.andNot((BitmapContainer) b);
+      }
+      return result.shrink();
+    }
+  }
+
+  private static boolean isSubset(Container a, Container b) {
+    if (a.cardinality() > b.cardinality()) {
+      return false;
+    } else if (b.isFull()) {
+      return true;
+    }
+    a = a.expand();
+    b = b.expand();
+    if (a instanceof BitmapContainer && b instanceof BitmapContainer) {
+      return ((BitmapContainer) a).isSubset((BitmapContainer) b);
+    } else if (a instanceof ArrayContainer) {
+      ArrayContainer array = (ArrayContainer) a;
+      for (int i = 0; i < array.n; i++) {
+        if (!b.contains(array.values[i])) {
+          return false;
+        }
+      }
+      return true;
+    } else {
+      // a bitmap has more elements than an array
+      return false;
+    }
+  }
+
+  /**
+   * The low 16 bits of the elements of one chunk.
+   */
+  private static abstract class Container {
+
+    abstract int cardinality();
+
+    abstract boolean contains(int low);
+
+    /**
+     * @return the container holding the old contents and low; this, or a replacement if another kind of container is now better
+     */
+    abstract Container add(int low);
+
+    /**
+     * @return the container holding the old contents but not low; this, or a replacement
+     */
+    abstract Container remove(int low);
+
+    /**
+     * @return the largest element
+     */
+    abstract int last();
+
+    abstract Container copy();
+
+    /**
+     * @return an array or bitmap container with the same contents; this, if it is one
+     */
+    abstract Container expand();
+
+    /**
+     * @return a run container with the same contents, if that is smaller; otherwise this
+     */
+    abstract Container runOptimize();
+
+    /**
+     * store the elements, each or'ed with base, in ascending order
+     *
+     * @return the number of elements stored
+     */
+    abstract int toArray(int base, int[] dest);
+
+    abstract void foreach(int base, IntSetAction action);
+
+    boolean isFull() {
+      return cardinality() == CHUNK_SIZE;
+    }
+  }
+
+  private static final class ArrayContainer extends Container {
+
+    char[] values;
+
+    int n;
+
+    ArrayContainer() {
+      values = new char[4];
+    }
+
+    ArrayContainer(int low) {
+      values = new char[4];
+      values[0] = (char) low;
+      n = 1;
+    }
+
+    ArrayContainer(char[] values, int n) {
+      this.values = values;
+      this.n = n;
+    }
+
+    @Override
+    int cardinality() {
+      return n;
+    }
+
+    private int indexOf(int low) {
+      int lo = 0;
+      int hi = n - 1;
+      while (lo <= hi) {
+        int mid = (lo + hi) >>> 1;
+        int v = values[mid];
+        if (v < low) {
+          lo = mid + 1;
+        } else if (v > low) {
+          hi = mid - 1;
+        } else {
+          return mid;
+        }
+      }
+      return -(lo + 1);
+    }
+
+    @Override
+    boolean contains(int low) {
+      return indexOf(low) >= 0;
+    }
+
+    @Override
+    Container add(int low) {
+      int index = n > 0 && values[n - 1] < low ? -(n + 1) : indexOf(low);
+      if (index >= 0) {
+        return this;
+      }
+      if (n == ARRAY_MAX) {
+        return toBitmap().add(low);
+      }
+      index = -index - 1;
+      if (n == values.length) {
+        char[] newValues = new char[Math.min(ARRAY_MAX, 2 * n)];
+        System.arraycopy(values, 0, newValues, 0, index);
+        System.arraycopy(values, index, newValues, index + 1, n - index);
+        values = newValues;
+      } else {
+        System.arraycopy(values, index, values, index + 1, n - index);
+      }
+      values[index] = (char) low;
+      n++;
+      return this;
+    }
+
+    @Override
+    Container remove(int low) {
+      int index = indexOf(low);
+      if (index >= 0) {
+        System.arraycopy(values, index + 1, values, index, n - index - 1);
+        n--;
+      }
+      return this;
+    }
+
+    @Override
+    int last() {
+      return values[n - 1];
+    }
+
+    @Override
+    Container copy() {
+      char[] v = new char[Math.max(n, 1)];
+      System.arraycopy(values, 0, v, 0, n);
+      return new ArrayContainer(v, n);
+    }
+
+    @Override
+    Container expand() {
+      return this;
+    }
+
+    BitmapContainer toBitmap() {
+      BitmapContainer result = new BitmapContainer();
+      for (int i = 0; i < n; i++) {
+        result.add(values[i]);
+      }
+      return result;
+    }
+
+    @Override
+    Container runOptimize() {
+      int runs = n == 0 ? 0 : 1;
+      for (int i = 1; i < n; i++) {
+        if (values[i] != values[i - 1] + 1) {
+          runs++;
+        }
+      }
+      if (2 * runs >= n) {
+        return this;
+      }
+      RunContainer result = new RunContainer(runs);
+      for (int i = 0; i < n; i++) {
+        result.append(values[i]);
+      }
+      return result;
+    }
+
+    @Override
+    int toArray(int base, int[] dest) {
+      for (int i = 0; i < n; i++) {
+        dest[i] = base | values[i];
+      }
+      return n;
+    }
+
+    @Override
+    void foreach(int base, IntSetAction action) {
+      for (int i = 0; i < n; i++) {
+        action.act(base | values[i]);
+      }
+    }
+
+    /**
+     * @return the union of a and b, as an array or, if it is too big, a bitmap
+     */
+    static Container union(ArrayContainer a, ArrayContainer b) {
+      char[] result = new char[a.n + b.n];
+      int i = 0, j = 0, k = 0;
+      while (i < a.n && j < b.n) {
+        char x = a.values[i];
+        char y = b.values[j];
+        if (x < y) {
+          result[k++] = x;
+          i++;
+        } else if (x > y) {
+          result[k++] = y;
+          j++;
+        } else {
+          result[k++] = x;
+          i++;
+          j++;
+        }
+      }
+      while (i < a.n) {
+        result[k++] = a.values[i++];
+      }
+      while (j < b.n) {
+        result[k++] = b.values[j++];
+      }
+      ArrayContainer union = new ArrayContainer(result, k);
+      return k > ARRAY_MAX ? union.toBitmap() : union;
+    }
+
+    static ArrayContainer intersection(ArrayContainer a, ArrayContainer b) {
+      char[] result = new char[Math.max(1, Math.min(a.n, b.n))];
+      int i = 0, j = 0, k = 0;
+      while (i < a.n && j < b.n) {
+        char x = a.values[i];
+        char y = b.values[j];
+        if (x < y) {
+          i++;
+        } else if (x > y) {
+          j++;
+        } else {
+          result[k++] = x;
+          i++;
+          j++;
+        }
+      }
+      return new ArrayContainer(result, k);
+    }
+
+    static ArrayContainer difference(ArrayContainer a, ArrayContainer b) {
+      char[] result = new char[Math.max(1, a.n)];
+      int i = 0, j = 0, k = 0;
+      while (i < a.n) {
+        char x = a.values[i];
+        while (j < b.n && b.values[j] < x) {
+          j++;
+        }
+        if (j == b.n || b.values[j] != x) {
+          result[k++] = x;
+        }
+        i++;
+      }
+      return new ArrayContainer(result, k);
+    }
+
+    static boolean intersects(ArrayContainer a, ArrayContainer b) {
+      int i = 0, j = 0;
+      while (i < a.n && j < b.n) {
+        char x = a.values[i];
+        char y = b.values[j];
+        if (x < y) {
+          i++;
+        } else if (x > y) {
+          j++;
+        } else {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    /**
+     * @return the elements of this that are (if keep) or are not (if !keep) in bits
+     */
+    ArrayContainer filter(BitmapContainer bits, boolean keep) {
+      char[] result = new char[Math.max(1, n)];
+      int k = 0;
+      for (int i = 0; i < n; i++) {
+        if (bits.contains(values[i]) == keep) {
+          result[k++] = values[i];
+        }
+      }
+      return new ArrayContainer(result, k);
+    }
+
+    boolean intersects(BitmapContainer bits) {
+      for (int i = 0; i < n; i++) {
+        if (bits.contains(values[i])) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  private static final class BitmapContainer extends Container {
+
+    final long[] words;
+
+    int n;
+
+    BitmapContainer() {
+      words = new long[BITMAP_WORDS];
+    }
+
+    private BitmapContainer(long[] words, int n) {
+      this.words = words;
+      this.n = n;
+    }
+
+    @Override
+    int cardinality() {
+      return n;
+    }
+
+    @Override
+    boolean contains(int low) {
+      return (words[low >>> 6] & (1L << low)) != 0;
+    }
+
+    @Override
+    Container add(int low) {
+      long w = words[low >>> 6];
+      long bit = 1L << low;
+      if ((w & bit) == 0) {
+        words[low >>> 6] = w | bit;
+        n++;
+      }
+      return isFull() ? RunContainer.full() : this;
+    }
+
+    @Override
+    Container remove(int low) {
+      long w = words[low >>> 6];
+      long bit = 1L << low;
+      if ((w & bit) != 0) {
+        words[low >>> 6] = w & ~bit;
+        n--;
+      }
+      return shrink();
+    }
+
+    /**
+     * @return an array container with the same contents if it is small enough; otherwise this
+     */
+    Container shrink() {
+      if (n > ARRAY_MAX) {
+        return this;
+      }
+      char[] values = new char[Math.max(1, n)];
+      int k = 0;
+      for (int i = 0; i < BITMAP_WORDS; i++) {
+        for (long w = words[i]; w != 0; w &= w - 1) {
+          values[k++] = (char) ((i << 6) + Long.numberOfTrailingZeros(w));
+        }
+      }
+      return new ArrayContainer(values, k);
+    }
+
+    @Override
+    int last() {
+      for (int i = BITMAP_WORDS - 1;; i--) {
+        if (words[i] != 0) {
+          return (i << 6) + 63 - Long.numberOfLeadingZeros(words[i]);
+        }
+      }
+    }
+
+    @Override
+    Container copy() {
+      return new BitmapContainer(words.clone(), n);
+    }
+
+    @Override
+    Container expand() {
+      return this;
+    }
+
+    @Override
+    Container runOptimize() {
+      // a run starts at each set bit whose predecessor is clear
+      int runs = 0;
+      long carry = 0;
+      for (int i = 0; i < BITMAP_WORDS; i++) {
+        long w = words[i];
+        runs += Long.bitCount(w & ~((w << 1) | carry));
+        carry = w >>> 63;
+      }
+      // two chars per run, against 64K bits
+      if (4 * runs >= BITMAP_WORDS * 8) {
+        return this;
+      }
+      RunContainer result = new RunContainer(runs);
+      for (int i = 0; i < BITMAP_WORDS; i++) {
+        for (long w = words[i]; w != 0; w &= w - 1) {
+          result.append((i << 6) + Long.numberOfTrailingZeros(w));
+        }
+      }
+      return result;
+    }
+
+    @Override
+    int toArray(int base, int[] dest) {
+      int k = 0;
+      for (int i = 0; i < BITMAP_WORDS; i++) {
+        for (long w = words[i]; w != 0; w &= w - 1) {
+          dest[k++] = base | ((i << 6) + Long.numberOfTrailingZeros(w));
+        }
+      }
+      return k;
+    }
+
+    @Override
+    void foreach(int base, IntSetAction action) {
+      for (int i = 0; i < BITMAP_WORDS; i++) {
+        for (long w = words[i]; w != 0; w &= w - 1) {
+          action.act(base | ((i << 6) + Long.numberOfTrailingZeros(w)));
+        }
+      }
+    }
+
+    void or(BitmapContainer other) {
+      int count = 0;
+      for (int i = 0; i < BITMAP_WORDS; i++) {
+        long w = words[i] | other.words[i];
+        words[i] = w;
+        count += Long.bitCount(w);
+      }
+      n = count;
+    }
+
+    void and(BitmapContainer other) {
+      int count = 0;
+      for (int i = 0; i < BITMAP_WORDS; i++) {
+        long w = words[i] & other.words[i];
+        words[i] = w;
+        count += Long.bitCount(w);
+      }
+      n = count;
+    }
+
+    void andNot(BitmapContainer other) {
+      int count = 0;
+      for (int i = 0; i < BITMAP_WORDS; i++) {
+        long w = words[i] & ~other.words[i];
+        words[i] = w;
+        count += Long.bitCount(w);
+      }
+      n = count;
+    }
+
+    boolean intersects(BitmapContainer other) {
+      for (int i = 0; i < BITMAP_WORDS; i++) {
+        if ((words[i] & other.words[i]) != 0) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    boolean isSubset(BitmapContainer other) {
+      for (int i = 0; i < BITMAP_WORDS; i++) {
+        if ((words[i] & ~other.words[i]) != 0) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  /**
+   * Sorted, disjoint, non-adjacent intervals. Run containers are only made whole, by {@link #full()} or by appending in order, and
+   * are turned into another kind of container before being changed.
+   */
+  private static final class RunContainer extends Container {
+
+    /**
+     * the start of each run, followed by its length minus one
+     */
+    final char[] runs;
+
+    int nRuns;
+
+    int n;
+
+    RunContainer(int capacity) {
+      runs = new char[2 * Math.max(1, capacity)];
+    }
+
+    static RunContainer full() {
+      RunContainer result = new RunContainer(1);
+      result.runs[0] = 0;
+      result.runs[1] = (char) (CHUNK_SIZE - 1);
+      result.nRuns = 1;
+      result.n = CHUNK_SIZE;
+      return result;
+    }
+
+    /**
+     * add a value larger than all others
+     */
+    void append(int low) {
+      if (nRuns > 0 && runs[2 * nRuns - 2] + runs[2 * nRuns - 1] + 1 == low) {
+        runs[2 * nRuns - 1]++;
+      } else {
+        runs[2 * nRuns] = (char) low;
+        runs[2 * nRuns + 1] = 0;
+        nRuns++;
+      }
+      n++;
+    }
+
+    @Override
+    int cardinality() {
+      return n;
+    }
+
+    @Override
+    boolean contains(int low) {
+      int lo = 0;
+      int hi = nRuns - 1;
+      while (lo <= hi) {
+        int mid = (lo + hi) >>> 1;
+        int start = runs[2 * mid];
+        if (low < start) {
+          hi = mid - 1;
+        } else if (low > start + runs[2 * mid + 1]) {
+          lo = mid + 1;
+        } else {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    @Override
+    Container add(int low) {
+      return contains(low) ? this : expand().add(low);
+    }
+
+    @Override
+    Container remove(int low) {
+      return contains(low) ? expand().remove(low) : this;
+    }
+
+    @Override
+    int last() {
+      return runs[2 * nRuns - 2] + runs[2 * nRuns - 1];
+    }
+
+    @Override
+    Container copy() {
+      RunContainer result = new RunContainer(nRuns);
+      System.arraycopy(runs, 0, result.runs, 0, 2 * nRuns);
+      result.nRuns = nRuns;
+      result.n = n;
+      return result;
+    }
+
+    @Override
+    Container expand() {
+      if (n <= ARRAY_MAX) {
+        char[] values = new char[Math.max(1, n)];
+        int k = 0;
+        for (int r = 0; r < nRuns; r++) {
+          for (int v = runs[2 * r], end = v + runs[2 * r + 1]; v <= end; v++) {
+            values[k++] = (char) v;
+          }
+        }
+        return new ArrayContainer(values, k);
+      }
+      BitmapContainer result = new BitmapContainer();
+      for (int r = 0; r < nRuns; r++) {
+        for (int v = runs[2 * r], end = v + runs[2 * r + 1]; v <= end; v++) {
+          result.words[v >>> 6] |= 1L << v;
+        }
+      }
+      result.n = n;
+      return result;
+    }
+
+    @Override
+    Container runOptimize() {
+      return this;
+    }
+
+    @Override
+    int toArray(int base, int[] dest) {
+      int k = 0;
+      for (int r = 0; r < nRuns; r++) {
+        for (int v = runs[2 * r], end = v + runs[2 * r + 1]; v <= end; v++) {
+          dest[k++] = base | v;
+        }
+      }
+      return k;
+    }
+
+    @Override
+    void foreach(int base, IntSetAction action) {
+      for (int r = 0; r < nRuns; r++) {
+        for (int v = runs[2 * r], end = v + runs[2 * r + 1]; v <= end; v++) {
+          action.act(base | v);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.util.intset;
+
+import java.util.Arrays;
+
+/**
+ * A factory for {@link RoaringMutableIntSet}s.
+ * 
+ * To have the propagation system keep its points-to sets in these, make this the default factory, with
+ * {@link IntSetUtil#setDefaultIntSetFactory(MutableIntSetFactory)} or by naming this class in the
+ * {@link IntSetUtil#INT_SET_FACTORY_CONFIG_PROPERTY_NAME} system property.
+ */
+public class RoaringMutableIntSetFactory implements MutableIntSetFactory<RoaringMutableIntSet> {
+
+  /**
+   * @throws IllegalArgumentException if set is null
+   */
+  @Override
+  public RoaringMutableIntSet make(int[] set) {
+    if (set == null) {
+      throw new IllegalArgumentException("set is null");
+    }
+    // adding in ascending order appends to the last chunk
+    int[] sorted = set.clone();
+    Arrays.sort(sorted);
+    RoaringMutableIntSet result = new RoaringMutableIntSet();
+    for (int i = 0; i < sorted.length; i++) {
+      result.add(sorted[i]);
+    }
+    return result;
+  }
+
+  @Override
+  public RoaringMutableIntSet parse(String string) throws NumberFormatException {
+    return make(SparseIntSet.parseIntArray(string));
+  }
+
+  /**
+   * @throws IllegalArgumentException if x is null
+   */
+  @Override
+  public RoaringMutableIntSet makeCopy(IntSet x) {
+    if (x == null) {
+      throw new IllegalArgumentException("x is null");
+    }
+    if (x instanceof RoaringMutableIntSet) {
+      return new RoaringMutableIntSet((RoaringMutableIntSet) x);
+    }
+    RoaringMutableIntSet result = new RoaringMutableIntSet();
+    result.addAll(x);
+    return result;
+  }
+
+  @Override
+  public RoaringMutableIntSet make() {
+    return new RoaringMutableIntSet();
+  }
+
+}